@@ -80,7 +80,7 @@ public class OperationVisualizer implements IRepositoryListener {
         }
         fileInfo = finfo;
         
-        presentMarks = new boolean[fileInfo.getOperations().size()];
+        presentMarks = new boolean[fileInfo.getNumberOfOprations()];
         setAllMarks(true);
         
         readyToVisualize = true;
@@ -116,7 +116,7 @@ public class OperationVisualizer implements IRepositoryListener {
      * Updates the array that memorizes which change operations are marked.
      */
     public void updatePresentMarks() {
-        boolean[] presentMarks2 = new boolean[fileInfo.getOperations().size()];
+        boolean[] presentMarks2 = new boolean[fileInfo.getNumberOfOprations()];
         for (int i = 0; i < presentMarks.length; i++) {
             presentMarks2[i] = presentMarks[i];
         }
@@ -149,7 +149,7 @@ public class OperationVisualizer implements IRepositoryListener {
         if (fileInfo == null) {
             return false;
         }
-        if (index < 0 || index >= fileInfo.getOperations().size()) {
+        if (index < 0 || index >= fileInfo.getNumberOfOprations()) {
             return false;
         }
         
@@ -223,7 +223,7 @@ public class OperationVisualizer implements IRepositoryListener {
      * @return the precedent source code, or the empty string if there is no precedent source code found.
      */
     public String getPrecedentCode() {
-        if (fileInfo != null && 0 < presentIndex && presentIndex < fileInfo.getOperations().size()) {
+        if (fileInfo != null && 0 < presentIndex && presentIndex < fileInfo.getNumberOfOprations()) {
             String code = fileInfo.getCode(presentCode, presentIndex, presentIndex - 1);
             if (code != null) {
                 return code;
@@ -237,7 +237,7 @@ public class OperationVisualizer implements IRepositoryListener {
      * @return the successive source code, or the empty string if there is no successive source code found.
      */
     public String getSucessiveCode() {
-        if (fileInfo != null && 0 <= presentIndex && presentIndex < fileInfo.getOperations().size() - 1) {
+        if (fileInfo != null && 0 <= presentIndex && presentIndex < fileInfo.getNumberOfOprations() - 1) {
             String code = fileInfo.getCode(presentCode, presentIndex, presentIndex + 1);
             if (code != null) {
                 return code;
@@ -280,7 +280,7 @@ public class OperationVisualizer implements IRepositoryListener {
         if (fileInfo == null) {
             return -1;
         }
-        if (presentIndex < fileInfo.getOperations().size() - 1) {
+        if (presentIndex < fileInfo.getNumberOfOprations() - 1) {
             return presentIndex + 1;
         } else {
             return -1;
@@ -295,7 +295,7 @@ public class OperationVisualizer implements IRepositoryListener {
         if (fileInfo == null) {
             return -1;
         }
-        if (fileInfo.getOperations().size() > 0) {
+        if (fileInfo.getNumberOfOprations() > 0) {
             return 0;
         } else {
             return -1;
@@ -310,7 +310,7 @@ public class OperationVisualizer implements IRepositoryListener {
         if (fileInfo == null) {
             return -1;
         }
-        int size = fileInfo.getOperations().size();
+        int size = fileInfo.getNumberOfOprations();
         if (size > 0) {
             return size - 1;
         } else {
@@ -309,7 +309,7 @@ public class TableControl {
      */
     protected void reveal() {
         int index = historyView.getPresentIndex();
-        int size = historyView.getFile().getOperations().size();
+        int size = historyView.getFile().getNumberOfOprations();
         Rectangle area = operationTable.getClientArea();
         int num = area.height / operationTable.getItemHeight() - 1;
         int top = operationTable.getTopIndex();
@@ -0,0 +1,183 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.convert;
+
+import org.jtool.changetracker.core.CTConsole;
+import org.jtool.changetracker.core.CTDialog;
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.xml.Binary2Operation;
+import org.jtool.changetracker.xml.CodeSnapshotEncoder;
+import org.jtool.changetracker.xml.Operation2Binary;
+import org.jtool.changetracker.xml.Operation2Xml;
+import org.jtool.changetracker.xml.Xml2Operation;
+import org.jtool.changetracker.xml.XmlFileManager;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.events.SelectionListener;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.DirectoryDialog;
+import java.util.List;
+import java.io.File;
+import java.time.ZonedDateTime;
+
+/**
+ * Performs the actions that convert operation history between XML files and binary segments.
+ * @author Katsuhisa Maruyama
+ */
+public class BinaryConverter {
+    
+    /**
+     * Creates an empty instance.
+     */
+    public BinaryConverter() {
+    }
+    
+    /**
+     * Creates the actions that convert operation history between XML files and binary segments.
+     * @param parent the parent control
+     */
+    public void createAction(Composite parent) {
+        Button toBinary = new Button(parent, SWT.NONE);
+        toBinary.setText("Migrate Repository to Binary Segments...");
+        toBinary.addSelectionListener(new SelectionListener() {
+            
+            /**
+             * Receives a selection event when selection occurs in the control.
+             * @param evt the event containing information about the selection
+             */
+            @Override
+            public void widgetSelected(SelectionEvent evt) {
+                DirectoryDialog dialog = new DirectoryDialog(parent.getShell());
+                String dirpath = dialog.open();
+                if (dirpath == null) {
+                    return;
+                }
+                
+                String convertedPath = getConvertedPath(dirpath, "_binary-");
+                if (convertXmlToBinary(dirpath, convertedPath)) {
+                    CTDialog.informationDialog("Migrate Repository", "The converted segments are stored in " + convertedPath);
+                } else {
+                    CTDialog.errorDialog("Migrate Repository", "Failed to convert history files in " + dirpath);
+                }
+            }
+            
+            /**
+             * Receives a selection event when default selection occurs in the control.
+             * @param evt the event containing information about the selection
+             */
+            @Override
+            public void widgetDefaultSelected(SelectionEvent evt) {
+            }
+        });
+        
+        Button toXml = new Button(parent, SWT.NONE);
+        toXml.setText("Export Binary Segments to XML...");
+        toXml.addSelectionListener(new SelectionListener() {
+            
+            /**
+             * Receives a selection event when selection occurs in the control.
+             * @param evt the event containing information about the selection
+             */
+            @Override
+            public void widgetSelected(SelectionEvent evt) {
+                DirectoryDialog dialog = new DirectoryDialog(parent.getShell());
+                String dirpath = dialog.open();
+                if (dirpath == null) {
+                    return;
+                }
+                
+                String convertedPath = getConvertedPath(dirpath, "_xml-");
+                if (convertBinaryToXml(dirpath, convertedPath)) {
+                    CTDialog.informationDialog("Export Segments", "The converted files are stored in " + convertedPath);
+                } else {
+                    CTDialog.errorDialog("Export Segments", "Failed to convert segments in " + dirpath);
+                }
+            }
+            
+            /**
+             * Receives a selection event when default selection occurs in the control.
+             * @param evt the event containing information about the selection
+             */
+            @Override
+            public void widgetDefaultSelected(SelectionEvent evt) {
+            }
+        });
+    }
+    
+    /**
+     * Creates a directory that stores converted files under a source directory.
+     * The name of the created directory starts with the underscore so that the converted files are not read as history.
+     * @param dirpath the source directory
+     * @param prefix the prefix of the name of the created directory
+     * @return the path of the created directory
+     */
+    private String getConvertedPath(String dirpath, String prefix) {
+        String timeString = String.valueOf(ZonedDateTime.now().toInstant().toEpochMilli());
+        String convertedPath = dirpath + File.separatorChar + prefix + timeString;
+        XmlFileManager.makeDir(new File(convertedPath));
+        return convertedPath;
+    }
+    
+    /**
+     * Converts change operations stored in XML files into binary segments.
+     * The change operations in each XML file are stored as a single block of the segments.
+     * The space saved by storing the code of file operations as deltas is reported on the console.
+     * @param dirpath the source directory that contains the XML files
+     * @param convertedPath the target directory that stores the segments
+     * @return <code>true</code> if all the XML files were successfully converted, otherwise <code>false</code>
+     */
+    public static boolean convertXmlToBinary(String dirpath, String convertedPath) {
+        boolean success = true;
+        long codeLength = 0;
+        long storedLength = 0;
+        List<File> files = Xml2Operation.getHistoryFiles(dirpath, "_");
+        for (File file : files) {
+            List<IChangeOperation> ops = Xml2Operation.getOperations(file.getAbsolutePath());
+            if (!Operation2Binary.storeOperations(ops, convertedPath)) {
+                success = false;
+            }
+            
+            CodeSnapshotEncoder encoder = new CodeSnapshotEncoder();
+            encoder.encode(ops);
+            codeLength = codeLength + encoder.getCodeLength();
+            storedLength = storedLength + encoder.getStoredLength();
+        }
+        
+        if (codeLength > 0) {
+            CTConsole.println("Code snapshots: " + codeLength + " characters stored in " + storedLength +
+                    " characters (" + (100 - storedLength * 100 / codeLength) + "% saved by deltas)");
+        }
+        return success;
+    }
+    
+    /**
+     * Converts change operations stored in binary segments into XML files.
+     * The change operations in each block of the segments are stored into a single XML file.
+     * @param dirpath the source directory that contains the segments
+     * @param convertedPath the target directory that stores the XML files
+     * @return <code>true</code> if all the segments were successfully converted, otherwise <code>false</code>
+     */
+    public static boolean convertBinaryToXml(String dirpath, String convertedPath) {
+        boolean success = true;
+        List<File> files = Binary2Operation.getSegmentFiles(dirpath, "_");
+        for (File file : files) {
+            for (List<IChangeOperation> ops : Binary2Operation.getOperationBlocks(file.getAbsolutePath())) {
+                if (ops.size() == 0) {
+                    continue;
+                }
+                
+                long time = ops.get(0).getTimeAsLong();
+                String filename = convertedPath + File.separatorChar + String.valueOf(time) + Xml2Operation.XML_FILE_EXTENTION;
+                if (!Operation2Xml.storeOperations(ops, filename)) {
+                    success = false;
+                }
+            }
+        }
+        return success;
+    }
+}
@@ -8,6 +8,7 @@ package org.jtool.changetracker.convert;
 
 import org.jtool.changetracker.core.CTDialog;
 import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.dependencyanalyzer.SnapshotParsingPool;
 import org.jtool.changetracker.repository.OperationCompactor;
 import org.jtool.changetracker.repository.Repository;
 import org.jtool.changetracker.xml.Xml2Operation;
@@ -88,6 +89,12 @@ public class XmlChecker {
             repository.addOperationAll(ops);
         }
         
+        try {
+            SnapshotParsingPool.getInstance().awaitQuiescence(repository.getFileHistory());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
         return repository.checkOperationConsistency();
     }
 }
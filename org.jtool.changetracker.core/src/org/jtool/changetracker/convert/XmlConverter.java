@@ -8,6 +8,7 @@ package org.jtool.changetracker.convert;
 
 import org.jtool.changetracker.core.CTDialog;
 import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.dependencyanalyzer.SnapshotParsingPool;
 import org.jtool.changetracker.repository.OperationCompactor;
 import org.jtool.changetracker.repository.Repository;
 import org.jtool.changetracker.xml.XmlFileManager;
@@ -104,6 +105,12 @@ public class XmlConverter {
             fileMap.put(file.getAbsolutePath(), ops);
         }
         
+        try {
+            SnapshotParsingPool.getInstance().awaitQuiescence(repository.getFileHistory());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
         repository.checkOperationConsistency();
         
         for (File file : files) {
@@ -6,6 +6,8 @@
 
 package org.jtool.changetracker.core;
 
+import org.jtool.changetracker.dependencyanalyzer.IncrementalDependencyDetector;
+import org.jtool.changetracker.dependecygraph.OpGraphManager;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.core.runtime.preferences.AbstractPreferenceInitializer;
 
@@ -22,5 +24,11 @@ public class CTPreferenceInitializer extends AbstractPreferenceInitializer {
     public void initializeDefaultPreferences() {
         IPreferenceStore store = Activator.getPlugin().getPreferenceStore();
         store.setDefault(CTPreferencePage.REPOSITORY_LOCATION, CTPreferencePage.getDefaultPath());
+        store.setDefault(CTPreferencePage.STORE_BINARY_SEGMENTS, false);
+        store.setDefault(CTPreferencePage.STORE_CODE_DELTAS, false);
+        store.setDefault(CTPreferencePage.INCREMENTAL_ANALYSIS, false);
+        store.setDefault(CTPreferencePage.ANALYSIS_QUIET_PERIOD, IncrementalDependencyDetector.DEFAULT_QUIET_PERIOD);
+        store.setDefault(CTPreferencePage.ANALYSIS_BURST_SIZE, IncrementalDependencyDetector.DEFAULT_BURST_SIZE);
+        store.setDefault(CTPreferencePage.GRAPH_PARALLELISM, OpGraphManager.DEFAULT_PARALLELISM);
     }
 }
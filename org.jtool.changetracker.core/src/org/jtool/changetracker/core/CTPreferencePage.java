@@ -7,14 +7,17 @@
 package org.jtool.changetracker.core;
 
 import org.jtool.changetracker.xml.XmlFileManager;
+import org.jtool.changetracker.convert.BinaryConverter;
 import org.jtool.changetracker.convert.XmlChecker;
 import org.jtool.changetracker.convert.XmlConverter;
 import org.jtool.changetracker.xml.ZipArchiveExporter;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.swt.widgets.Control;
@@ -34,6 +37,36 @@ public class CTPreferencePage extends FieldEditorPreferencePage implements IWork
      */
     static final String REPOSITORY_LOCATION = "repository.location";
     
+    /**
+     * Stores change operations into binary segments instead of XML files.
+     */
+    static final String STORE_BINARY_SEGMENTS = "repository.store.binary";
+    
+    /**
+     * Stores the code of file operations in XML files as deltas against the previous code of the same files.
+     */
+    static final String STORE_CODE_DELTAS = "repository.store.codedelta";
+    
+    /**
+     * Analyzes change operations only at meaningful boundaries instead of parsing code at every change operation.
+     */
+    static final String INCREMENTAL_ANALYSIS = "analysis.incremental";
+    
+    /**
+     * The length (milliseconds) of a quiet period that ends a burst of edits in the incremental analysis.
+     */
+    static final String ANALYSIS_QUIET_PERIOD = "analysis.quiet.period";
+    
+    /**
+     * The number of code change operations in a burst of edits that are followed by a parse attempt in the incremental analysis.
+     */
+    static final String ANALYSIS_BURST_SIZE = "analysis.burst.size";
+    
+    /**
+     * The maximum number of threads that construct operation history graphs of files in parallel.
+     */
+    static final String GRAPH_PARALLELISM = "graph.parallelism";
+    
     /**
      * The prefix word that indicates the workspace directory.
      */
@@ -61,6 +94,27 @@ public class CTPreferencePage extends FieldEditorPreferencePage implements IWork
      */
     @Override
     public void createFieldEditors() {
+        addField(new BooleanFieldEditor(STORE_BINARY_SEGMENTS,
+                "Stores change operations into binary segments instead of XML files", getFieldEditorParent()));
+        addField(new BooleanFieldEditor(STORE_CODE_DELTAS,
+                "Stores code snapshots in XML files as deltas (unreadable by older versions)", getFieldEditorParent()));
+        addField(new BooleanFieldEditor(INCREMENTAL_ANALYSIS,
+                "Analyzes code only at saves, closes, and pauses of editing", getFieldEditorParent()));
+        
+        IntegerFieldEditor quietPeriodEditor = new IntegerFieldEditor(ANALYSIS_QUIET_PERIOD,
+                "Pause of editing (milliseconds): ", getFieldEditorParent());
+        quietPeriodEditor.setValidRange(0, Integer.MAX_VALUE);
+        addField(quietPeriodEditor);
+        
+        IntegerFieldEditor burstSizeEditor = new IntegerFieldEditor(ANALYSIS_BURST_SIZE,
+                "Edits between parse attempts: ", getFieldEditorParent());
+        burstSizeEditor.setValidRange(1, Integer.MAX_VALUE);
+        addField(burstSizeEditor);
+        
+        IntegerFieldEditor parallelismEditor = new IntegerFieldEditor(GRAPH_PARALLELISM,
+                "Threads constructing operation history graphs: ", getFieldEditorParent());
+        parallelismEditor.setValidRange(1, Integer.MAX_VALUE);
+        addField(parallelismEditor);
     }
     
     /**
@@ -91,9 +145,48 @@ public class CTPreferencePage extends FieldEditorPreferencePage implements IWork
         
         XmlConverter converter = new XmlConverter();
         converter.createAction(area);
+        
+        BinaryConverter binaryConverter = new BinaryConverter();
+        binaryConverter.createAction(area);
         return area;
     }
     
+    /**
+     * Tests if change operations are analyzed only at meaningful boundaries.
+     * @return <code>true</code> if the incremental analysis is enabled, otherwise <code>false</code>
+     */
+    public static boolean incrementalAnalysis() {
+        IPreferenceStore store = Activator.getPlugin().getPreferenceStore();
+        return store.getBoolean(INCREMENTAL_ANALYSIS);
+    }
+    
+    /**
+     * Returns the length of a quiet period that ends a burst of edits in the incremental analysis.
+     * @return the length in milliseconds
+     */
+    public static int getAnalysisQuietPeriod() {
+        IPreferenceStore store = Activator.getPlugin().getPreferenceStore();
+        return store.getInt(ANALYSIS_QUIET_PERIOD);
+    }
+    
+    /**
+     * Returns the number of code change operations in a burst of edits that are followed by a parse attempt.
+     * @return the number of the code change operations
+     */
+    public static int getAnalysisBurstSize() {
+        IPreferenceStore store = Activator.getPlugin().getPreferenceStore();
+        return store.getInt(ANALYSIS_BURST_SIZE);
+    }
+    
+    /**
+     * Returns the maximum number of threads that construct operation history graphs of files in parallel.
+     * @return the number of the threads
+     */
+    public static int getGraphParallelism() {
+        IPreferenceStore store = Activator.getPlugin().getPreferenceStore();
+        return Math.max(1, store.getInt(GRAPH_PARALLELISM));
+    }
+    
     /**
      * Returns the location of a directory that contains operation history files.
      * @return the location of the directory
@@ -112,6 +205,24 @@ public class CTPreferencePage extends FieldEditorPreferencePage implements IWork
         store.setValue(REPOSITORY_LOCATION, getPath(location));
     }
     
+    /**
+     * Tests if change operations are stored into binary segments instead of XML files.
+     * @return <code>true</code> if binary segments are used, otherwise <code>false</code>
+     */
+    public static boolean storeBinarySegments() {
+        IPreferenceStore store = Activator.getPlugin().getPreferenceStore();
+        return store.getBoolean(STORE_BINARY_SEGMENTS);
+    }
+    
+    /**
+     * Tests if the code of file operations is stored in XML files as deltas.
+     * @return <code>true</code> if deltas are used, otherwise <code>false</code>
+     */
+    public static boolean storeCodeDeltas() {
+        IPreferenceStore store = Activator.getPlugin().getPreferenceStore();
+        return store.getBoolean(STORE_CODE_DELTAS);
+    }
+    
     /**
      * Returns the absolute location of a directory that contains history files.
      * @param the relative path of the directory
@@ -0,0 +1,446 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.dependecygraph;
+
+import org.jtool.changetracker.operation.ICodeOperation;
+import org.jtool.changetracker.dependencyanalyzer.JavaConstruct;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.time.ZonedDateTime;
+
+/**
+ * Stores an operation history graph in primitive arrays.
+ * Nodes are identified by integer numbers, and the edges of each sort are stored as compressed adjacency arrays in both
+ * directions. A side table maps the number of each node to its change operation or Java construct.
+ * Nodes are numbered in the order of their time, so that the ascending order of their numbers is the time order.
+ * @author Katsuhisa Maruyama
+ */
+public class CompactOpGraph {
+    
+    /**
+     * The number of sorts of edges.
+     */
+    private static final int SORTS = OpGraphEdge.Sort.values().length;
+    
+    /**
+     * The change operations or Java constructs corresponding to the nodes.
+     */
+    private Object[] elements;
+    
+    /**
+     * The map that stores the numbers of the nodes for their change operations or Java constructs.
+     */
+    private Map<Object, Integer> ids;
+    
+    /**
+     * The start positions of the outgoing edges of each node within the destination arrays, for each sort.
+     */
+    private int[][] outOffsets;
+    
+    /**
+     * The destination nodes of the outgoing edges, for each sort.
+     */
+    private int[][] outTargets;
+    
+    /**
+     * The start positions of the incoming edges of each node within the source arrays, for each sort.
+     */
+    private int[][] inOffsets;
+    
+    /**
+     * The source nodes of the incoming edges, for each sort.
+     */
+    private int[][] inSources;
+    
+    /**
+     * Creates a compact graph.
+     * @param elements the change operations or Java constructs corresponding to the nodes
+     * @param ids the map that stores the numbers of the nodes
+     * @param outOffsets the start positions of the outgoing edges for each sort
+     * @param outTargets the destination nodes of the outgoing edges for each sort
+     * @param inOffsets the start positions of the incoming edges for each sort
+     * @param inSources the source nodes of the incoming edges for each sort
+     */
+    private CompactOpGraph(Object[] elements, Map<Object, Integer> ids,
+                           int[][] outOffsets, int[][] outTargets, int[][] inOffsets, int[][] inSources) {
+        this.elements = elements;
+        this.ids = ids;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+    }
+    
+    /**
+     * Creates a compact graph from an operation history graph for a file.
+     * Edges connected to nodes outside the file are not contained.
+     * @param fgraph the operation history graph for the file
+     * @return the created compact graph
+     */
+    public static CompactOpGraph create(OpGraphForFile fgraph) {
+        return create(fgraph.getNodes(), fgraph.getEdges());
+    }
+    
+    /**
+     * Creates a compact graph from an operation history graph for a project.
+     * @param pgraph the operation history graph for the project
+     * @return the created compact graph
+     */
+    public static CompactOpGraph create(OpGraphForProject pgraph) {
+        return create(pgraph.getNodes(), pgraph.getEdges());
+    }
+    
+    /**
+     * Creates a compact graph from nodes and edges.
+     * @param nodes the collection of the nodes
+     * @param edges the collection of the edges
+     * @return the created compact graph
+     */
+    private static CompactOpGraph create(Iterable<OpGraphNode> nodes, Iterable<OpGraphEdge> edges) {
+        List<OpGraphNode> ns = new ArrayList<OpGraphNode>();
+        for (OpGraphNode node : nodes) {
+            ns.add(node);
+        }
+        OpGraphNode.sortNodes(ns);
+        
+        Builder builder = new Builder();
+        Map<OpGraphNode, Integer> nodeIds = new HashMap<OpGraphNode, Integer>(ns.size() * 2);
+        for (OpGraphNode node : ns) {
+            if (node.isOperation()) {
+                nodeIds.put(node, builder.addOperation(((OperationNode)node).getOperation()));
+            } else if (node.isJavaConstruct()) {
+                nodeIds.put(node, builder.addJavaConstruct(((JavaMemberNode)node).getJavaConstruct()));
+            }
+        }
+        for (OpGraphEdge edge : edges) {
+            Integer src = nodeIds.get(edge.getSrcNode());
+            Integer dst = nodeIds.get(edge.getDstNode());
+            if (src != null && dst != null) {
+                builder.addEdge(src, dst, edge.getSort());
+            }
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Returns the number of the nodes in this graph.
+     * @return the number of the nodes
+     */
+    public int size() {
+        return elements.length;
+    }
+    
+    /**
+     * Returns the number of the edges of a sort in this graph.
+     * @param sort the sort of the edges
+     * @return the number of the edges
+     */
+    public int getNumberOfEdges(OpGraphEdge.Sort sort) {
+        return outTargets[sort.ordinal()].length;
+    }
+    
+    /**
+     * Obtains the number of the node corresponding to a change operation.
+     * @param op the change operation
+     * @return the number of the node, or <code>-1</code> if none
+     */
+    public int getId(ICodeOperation op) {
+        Integer id = ids.get(op);
+        return id != null ? id : -1;
+    }
+    
+    /**
+     * Obtains the number of the node corresponding to a Java construct.
+     * @param con the Java construct
+     * @return the number of the node, or <code>-1</code> if none
+     */
+    public int getId(JavaConstruct con) {
+        Integer id = ids.get(con);
+        return id != null ? id : -1;
+    }
+    
+    /**
+     * Tests if a node corresponds to a change operation.
+     * @param id the number of the node
+     * @return <code>true</code> if the node is a change operation node, otherwise <code>false</code>
+     */
+    public boolean isOperation(int id) {
+        return elements[id] instanceof ICodeOperation;
+    }
+    
+    /**
+     * Tests if a node corresponds to a Java construct.
+     * @param id the number of the node
+     * @return <code>true</code> if the node is a Java construct node, otherwise <code>false</code>
+     */
+    public boolean isJavaConstruct(int id) {
+        return elements[id] instanceof JavaConstruct;
+    }
+    
+    /**
+     * Returns the change operation corresponding to a node.
+     * @param id the number of the node
+     * @return the change operation, or <code>null</code> if the node is not a change operation node
+     */
+    public ICodeOperation getOperation(int id) {
+        if (isOperation(id)) {
+            return (ICodeOperation)elements[id];
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the Java construct corresponding to a node.
+     * @param id the number of the node
+     * @return the Java construct, or <code>null</code> if the node is not a Java construct node
+     */
+    public JavaConstruct getJavaConstruct(int id) {
+        if (isJavaConstruct(id)) {
+            return (JavaConstruct)elements[id];
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the time of a node.
+     * @param id the number of the node
+     * @return the time of the change operation or the Java construct
+     */
+    public ZonedDateTime getTime(int id) {
+        if (isOperation(id)) {
+            return ((ICodeOperation)elements[id]).getTime();
+        }
+        return ((JavaConstruct)elements[id]).getTime();
+    }
+    
+    /**
+     * Obtains the destination nodes of the outgoing edges of a node.
+     * @param id the number of the node
+     * @param sort the sort of the edges
+     * @return the numbers of the destination nodes
+     */
+    public int[] getDstIds(int id, OpGraphEdge.Sort sort) {
+        int s = sort.ordinal();
+        return Arrays.copyOfRange(outTargets[s], outOffsets[s][id], outOffsets[s][id + 1]);
+    }
+    
+    /**
+     * Obtains the source nodes of the incoming edges of a node.
+     * @param id the number of the node
+     * @param sort the sort of the edges
+     * @return the numbers of the source nodes
+     */
+    public int[] getSrcIds(int id, OpGraphEdge.Sort sort) {
+        int s = sort.ordinal();
+        return Arrays.copyOfRange(inSources[s], inOffsets[s][id], inOffsets[s][id + 1]);
+    }
+    
+    /**
+     * Returns the start positions of the outgoing edges of the nodes.
+     * The outgoing edges of a node <code>n</code> are stored from <code>offsets[n]</code> to <code>offsets[n + 1] - 1</code>.
+     * @param sort the sort of the edges
+     * @return the array of the start positions, which must not be modified
+     */
+    int[] getOutgoingOffsets(OpGraphEdge.Sort sort) {
+        return outOffsets[sort.ordinal()];
+    }
+    
+    /**
+     * Returns the destination nodes of the outgoing edges.
+     * @param sort the sort of the edges
+     * @return the array of the numbers of the destination nodes, which must not be modified
+     */
+    int[] getOutgoingTargets(OpGraphEdge.Sort sort) {
+        return outTargets[sort.ordinal()];
+    }
+    
+    /**
+     * Returns the start positions of the incoming edges of the nodes.
+     * The incoming edges of a node <code>n</code> are stored from <code>offsets[n]</code> to <code>offsets[n + 1] - 1</code>.
+     * @param sort the sort of the edges
+     * @return the array of the start positions, which must not be modified
+     */
+    int[] getIncomingOffsets(OpGraphEdge.Sort sort) {
+        return inOffsets[sort.ordinal()];
+    }
+    
+    /**
+     * Returns the source nodes of the incoming edges.
+     * @param sort the sort of the edges
+     * @return the array of the numbers of the source nodes, which must not be modified
+     */
+    int[] getIncomingSources(OpGraphEdge.Sort sort) {
+        return inSources[sort.ordinal()];
+    }
+    
+    /**
+     * Obtains the change operation nodes within a set of nodes.
+     * @param nodes the set of the numbers of the nodes
+     * @return the numbers of the change operation nodes in ascending order
+     */
+    int[] getOperationIds(BitSet nodes) {
+        int[] ns = new int[nodes.cardinality()];
+        int count = 0;
+        for (int id = nodes.nextSetBit(0); id >= 0; id = nodes.nextSetBit(id + 1)) {
+            if (isOperation(id)) {
+                ns[count] = id;
+                count++;
+            }
+        }
+        return Arrays.copyOf(ns, count);
+    }
+    
+    /**
+     * Returns the string for printing.
+     * @return the string for printing
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("-- Compact graph: N=" + elements.length);
+        for (OpGraphEdge.Sort sort : OpGraphEdge.Sort.values()) {
+            buf.append(" " + sort.name() + "=" + getNumberOfEdges(sort));
+        }
+        return buf.toString();
+    }
+    
+    /**
+     * Builds a compact graph by adding nodes and edges.
+     * Nodes are expected to be added in the order of their time. A builder builds a single graph.
+     */
+    public static class Builder {
+        
+        /**
+         * The change operations or Java constructs corresponding to the added nodes.
+         */
+        private List<Object> elements = new ArrayList<Object>();
+        
+        /**
+         * The map that stores the numbers of the added nodes.
+         */
+        private Map<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+        
+        /**
+         * The source nodes of the added edges.
+         */
+        private int[] srcs = new int[16];
+        
+        /**
+         * The destination nodes of the added edges.
+         */
+        private int[] dsts = new int[16];
+        
+        /**
+         * The sorts of the added edges.
+         */
+        private byte[] sorts = new byte[16];
+        
+        /**
+         * The number of the added edges.
+         */
+        private int edgeCount = 0;
+        
+        /**
+         * Adds a node corresponding to a change operation.
+         * @param op the change operation
+         * @return the number of the node
+         */
+        public int addOperation(ICodeOperation op) {
+            return addElement(op);
+        }
+        
+        /**
+         * Adds a node corresponding to a Java construct.
+         * @param con the Java construct
+         * @return the number of the node
+         */
+        public int addJavaConstruct(JavaConstruct con) {
+            return addElement(con);
+        }
+        
+        /**
+         * Adds a node corresponding to a change operation or a Java construct.
+         * @param elem the change operation or the Java construct
+         * @return the number of the node, which is already given if the same element was added
+         */
+        private int addElement(Object elem) {
+            Integer id = ids.get(elem);
+            if (id != null) {
+                return id;
+            }
+            id = elements.size();
+            elements.add(elem);
+            ids.put(elem, id);
+            return id;
+        }
+        
+        /**
+         * Adds an edge between two nodes.
+         * @param src the number of the source node
+         * @param dst the number of the destination node
+         * @param sort the sort of the edge
+         */
+        public void addEdge(int src, int dst, OpGraphEdge.Sort sort) {
+            if (edgeCount == srcs.length) {
+                srcs = Arrays.copyOf(srcs, edgeCount * 2);
+                dsts = Arrays.copyOf(dsts, edgeCount * 2);
+                sorts = Arrays.copyOf(sorts, edgeCount * 2);
+            }
+            srcs[edgeCount] = src;
+            dsts[edgeCount] = dst;
+            sorts[edgeCount] = (byte)sort.ordinal();
+            edgeCount++;
+        }
+        
+        /**
+         * Builds the compact graph.
+         * @return the built graph
+         */
+        public CompactOpGraph build() {
+            int size = elements.size();
+            int[][] outOffsets = new int[SORTS][];
+            int[][] outTargets = new int[SORTS][];
+            int[][] inOffsets = new int[SORTS][];
+            int[][] inSources = new int[SORTS][];
+            for (int s = 0; s < SORTS; s++) {
+                outOffsets[s] = new int[size + 1];
+                inOffsets[s] = new int[size + 1];
+            }
+            
+            for (int e = 0; e < edgeCount; e++) {
+                outOffsets[sorts[e]][srcs[e] + 1]++;
+                inOffsets[sorts[e]][dsts[e] + 1]++;
+            }
+            for (int s = 0; s < SORTS; s++) {
+                for (int id = 0; id < size; id++) {
+                    outOffsets[s][id + 1] += outOffsets[s][id];
+                    inOffsets[s][id + 1] += inOffsets[s][id];
+                }
+                outTargets[s] = new int[outOffsets[s][size]];
+                inSources[s] = new int[inOffsets[s][size]];
+            }
+            
+            int[][] outFill = new int[SORTS][];
+            int[][] inFill = new int[SORTS][];
+            for (int s = 0; s < SORTS; s++) {
+                outFill[s] = Arrays.copyOf(outOffsets[s], size);
+                inFill[s] = Arrays.copyOf(inOffsets[s], size);
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                int s = sorts[e];
+                outTargets[s][outFill[s][srcs[e]]++] = dsts[e];
+                inSources[s][inFill[s][dsts[e]]++] = srcs[e];
+            }
+            return new CompactOpGraph(elements.toArray(), ids, outOffsets, outTargets, inOffsets, inSources);
+        }
+    }
+}
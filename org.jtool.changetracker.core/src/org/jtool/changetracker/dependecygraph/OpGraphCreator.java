@@ -14,13 +14,19 @@ import org.jtool.changetracker.repository.CTProject;
 import org.jtool.changetracker.repository.CTFile;
 import org.jtool.changetracker.dependencyanalyzer.JavaConstruct;
 import org.jtool.changetracker.dependencyanalyzer.ParseableSnapshot;
-import org.jtool.changetracker.dependencyanalyzer.DependencyDetector;
+import org.jtool.changetracker.dependencyanalyzer.OffsetMap;
+import org.jtool.changetracker.dependencyanalyzer.SnapshotParsingPool;
 import org.jtool.changetracker.core.CTConsole;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.time.ZonedDateTime;
 
 /**
  * Constructs an operation history graph for a file.
@@ -44,20 +50,15 @@ class OpGraphCreator {
             @Override
             protected IStatus run(IProgressMonitor monitor) {
                 try {
-                    List<IChangeOperation> ops = finfo.getOperations();
-                    monitor.beginTask("Constructing an operation history graph: " + finfo.getQualifiedName(), ops.size() * 2);
-                    
-                    collectOperationNodes(finfo, fgraph, monitor);
-                    collectJavaConstructNodes(finfo, fgraph, monitor);
-                    collectDependencyEdges(fgraph, monitor);
-                    collectNoChangeEdges(fgraph, monitor);
+                    monitor.beginTask("Constructing an operation history graph: " + finfo.getQualifiedName(), getAmountOfWork(finfo));
+                    constructGraph(fgraph, monitor);
                     return Status.OK_STATUS;
-                    
+                
                 } catch (Exception e) {
                     CTConsole.println("Failed to construct an operation history graph");
                     fgraph.clear();
                     return Status.CANCEL_STATUS;
-                    
+                
                 } finally {
                     monitor.done();
                 }
@@ -74,6 +75,168 @@ class OpGraphCreator {
         return fgraph;
     }
     
+    /**
+     * Creates operation history graphs of files in parallel and waits until all of them are constructed.
+     * Each graph is constructed by a single thread, so the graphs do not depend on the parallelism level.
+     * A graph that failed to be constructed is cleared, and then its file is <code>null</code>.
+     * @param finfos the collection of information about the files
+     * @param parallelism the maximum number of threads that construct the graphs
+     * @param monitor the progress monitor shared by the threads, on which the caller begins the task
+     * @return the created operation history graphs in the order of the files
+     * @throws InterruptedException if the operation detects a request to cancel
+     */
+    static List<OpGraphForFile> createGraphs(List<CTFile> finfos, int parallelism, IProgressMonitor monitor) throws InterruptedException {
+        OpGraphForFile[] fgraphs = new OpGraphForFile[finfos.size()];
+        for (int idx = 0; idx < fgraphs.length; idx++) {
+            fgraphs[idx] = new OpGraphForFile(finfos.get(idx));
+        }
+        if (fgraphs.length != 0) {
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+            try {
+                pool.invoke(new GraphConstructionTask(fgraphs, 0, fgraphs.length, new SynchronizedProgressMonitor(monitor)));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        
+        if (monitor.isCanceled()) {
+            throw new InterruptedException();
+        }
+        return Arrays.asList(fgraphs);
+    }
+    
+    /**
+     * Returns the amount of work for constructing an operation history graph of a file.
+     * @param finfo information about the file
+     * @return the amount of the work
+     */
+    static int getAmountOfWork(CTFile finfo) {
+        return finfo.getOperations().size() * 2;
+    }
+    
+    /**
+     * Constructs an operation history graph of a file in the current thread.
+     * @param fgraph the operation history graph to be constructed
+     * @param monitor the progress monitor to use to display progress and receive requests for cancellation
+     * @throws InterruptedException if the operation detects a request to cancel
+     */
+    private static void constructGraph(OpGraphForFile fgraph, IProgressMonitor monitor) throws InterruptedException {
+        CTFile finfo = fgraph.getFile();
+        SnapshotParsingPool.getInstance().awaitQuiescence(finfo);
+        collectOperationNodes(finfo, fgraph, monitor);
+        collectJavaConstructNodes(finfo, fgraph, monitor);
+        collectDependencyEdges(fgraph, monitor);
+        collectNoChangeEdges(fgraph, monitor);
+    }
+    
+    /**
+     * Appends the nodes and edges for change operations and snapshots that were added to a file after the last construction.
+     * Only the snapshots that have already been added to the file are appended, so the graph may wait for later snapshots.
+     * @param fgraph the operation history graph for the file
+     * @return the collection of the appended operation nodes, or <code>null</code> if the operation history of the file
+     *         was changed other than by appending change operations, and thus the graph must be constructed again
+     */
+    static List<OperationNode> appendToGraph(OpGraphForFile fgraph) {
+        CTFile finfo = fgraph.getFile();
+        List<IChangeOperation> operations = finfo.getOperations();
+        int numOfOps = fgraph.getNumOfAppendedOperations();
+        if (numOfOps > operations.size() ||
+            (numOfOps > 0 && operations.get(numOfOps - 1) != fgraph.getLastAppendedOperation())) {
+            return null;
+        }
+        
+        List<OperationNode> opnodes = new ArrayList<OperationNode>();
+        int size = operations.size();
+        for (int idx = numOfOps; idx < size; idx++) {
+            OperationNode node = collectOperationNode(fgraph, operations.get(idx));
+            if (node != null) {
+                opnodes.add(node);
+            }
+        }
+        if (size > numOfOps) {
+            fgraph.setAppendedOperations(size, operations.get(size - 1));
+        }
+        
+        List<ParseableSnapshot> snapshots = finfo.getSnapshots();
+        int numOfSnapshots = fgraph.getNumOfAppendedSnapshots();
+        if (snapshots.size() > numOfSnapshots) {
+            for (int idx = numOfSnapshots; idx < snapshots.size(); idx++) {
+                collectJavaConstructNodes(fgraph, snapshots.get(idx));
+            }
+            
+            int last = Math.min(snapshots.get(snapshots.size() - 1).getIndex(), size - 1);
+            for (int idx = fgraph.getNumOfEdgedOperations(); idx <= last; idx++) {
+                IChangeOperation op = operations.get(idx);
+                if (op.isDocumentOrCopy()) {
+                    OperationNode opnode = fgraph.getOperationNode((ICodeOperation)op);
+                    if (opnode != null) {
+                        collectDependencyEdges(fgraph, opnode);
+                    }
+                }
+            }
+            fgraph.setNumOfEdgedOperations(Math.max(fgraph.getNumOfEdgedOperations(), last + 1));
+            
+            for (int idx = Math.max(1, numOfSnapshots); idx < snapshots.size(); idx++) {
+                ParseableSnapshot srcsn = snapshots.get(idx - 1);
+                ParseableSnapshot dstsn = snapshots.get(idx);
+                collectNoChangeEdgesByOffset(fgraph, srcsn, dstsn);
+                collectNoChangeEdgesByName(fgraph, srcsn, dstsn);
+            }
+            fgraph.setNumOfAppendedSnapshots(snapshots.size());
+        }
+        
+        if (fgraph.hasOrderedEdges()) {
+            OrderedEditTracker tracker = fgraph.getOrderedEditTracker();
+            tracker.advance(operations);
+            for (OperationNode opnode : opnodes) {
+                collectOrderedEdges(fgraph, tracker, opnode);
+            }
+        }
+        return opnodes;
+    }
+    
+    /**
+     * Appends the nodes and edges for change operations and snapshots that were added to files within a project.
+     * The graph of a file whose operation history was changed other than by appending is constructed again,
+     * and then all the inter-edges are collected again. Otherwise, only the ccp edges for appended paste operations are collected.
+     * @param pgraph the operation history graph for the project
+     */
+    static void appendToGraph(OpGraphForProject pgraph) {
+        List<OperationNode> opnodes = new ArrayList<OperationNode>();
+        boolean reconstructed = false;
+        for (CTFile finfo : pgraph.getProject().getFiles()) {
+            OpGraphForFile fgraph = pgraph.get(finfo);
+            if (fgraph == null) {
+                fgraph = new OpGraphForFile(finfo);
+                pgraph.add(fgraph);
+            }
+            
+            List<OperationNode> nodes = appendToGraph(fgraph);
+            if (nodes == null) {
+                fgraph = new OpGraphForFile(finfo);
+                nodes = appendToGraph(fgraph);
+                pgraph.remove(finfo);
+                pgraph.add(fgraph);
+                reconstructed = true;
+            }
+            fgraph.setLastUpdatedTime(ZonedDateTime.now());
+            opnodes.addAll(nodes);
+        }
+        
+        if (reconstructed) {
+            pgraph.removeAllEdges();
+            for (IChangeOperation op : pgraph.getProject().getOperations()) {
+                if (op.isDocumentOrCopy()) {
+                    collectCCPEdge(pgraph, (ICodeOperation)op);
+                }
+            }
+        } else {
+            for (OperationNode opnode : opnodes) {
+                collectCCPEdge(pgraph, opnode.getOperation());
+            }
+        }
+    }
+    
     /**
      * Collects ordered editing within the operation history graph for a file.
      * @param fgraph the operation history graph for the file
@@ -115,16 +278,13 @@ class OpGraphCreator {
      */
     private static void collectOperationNodes(CTFile finfo, OpGraphForFile fgraph, IProgressMonitor monitor) throws InterruptedException {
         List<IChangeOperation> operations = finfo.getOperations();
-        for (int idx = 0; idx < operations.size(); idx++) {
+        int idx = 0;
+        for (; idx < operations.size(); idx++) {
             
             monitor.subTask("Collecting opearation nodes " +
                              String.valueOf(idx + 1) + "/" + String.valueOf(operations.size()));
             IChangeOperation op = operations.get(idx);
-            if (op.isDocumentOrCopy()) {
-                ICodeOperation operation = (ICodeOperation)op;
-                OperationNode node = new OperationNode(fgraph, operation);
-                fgraph.add(node);
-            }
+            collectOperationNode(fgraph, op);
             
             if (monitor.isCanceled()) {
                 monitor.done();
@@ -132,6 +292,23 @@ class OpGraphCreator {
             }
             monitor.worked(1);
         }
+        fgraph.setAppendedOperations(idx, idx > 0 ? operations.get(idx - 1) : null);
+    }
+    
+    /**
+     * Collects an operation node of an operation history graph.
+     * @param fgraph the operation history graph
+     * @param op the change operation
+     * @return the collected operation node, or <code>null</code> if the change operation does not change code
+     */
+    private static OperationNode collectOperationNode(OpGraphForFile fgraph, IChangeOperation op) {
+        if (op.isDocumentOrCopy()) {
+            ICodeOperation operation = (ICodeOperation)op;
+            OperationNode node = new OperationNode(fgraph, operation);
+            fgraph.add(node);
+            return node;
+        }
+        return null;
     }
     
     /**
@@ -143,15 +320,13 @@ class OpGraphCreator {
      */
     private static void collectJavaConstructNodes(CTFile finfo, OpGraphForFile fgraph, IProgressMonitor monitor) throws InterruptedException {
         List<ParseableSnapshot> snapshots = finfo.getSnapshots();
-        for (int idx = 0; idx < snapshots.size(); idx++) {
+        int idx = 0;
+        for (; idx < snapshots.size(); idx++) {
             
             monitor.subTask("Collecting Java class member nodes " +
                              String.valueOf(idx + 1) + "/" + String.valueOf(snapshots.size()));
             ParseableSnapshot sn = snapshots.get(idx);
-            for (JavaConstruct con : sn.getJavaClassMembers()) {
-                JavaMemberNode node = new JavaMemberNode(fgraph, con);
-                fgraph.add(node);
-            }
+            collectJavaConstructNodes(fgraph, sn);
             
             if (monitor.isCanceled()) {
                 monitor.done();
@@ -159,6 +334,20 @@ class OpGraphCreator {
             }
             monitor.worked(1);
         }
+        fgraph.setNumOfAppendedSnapshots(idx);
+        fgraph.setNumOfEdgedOperations(idx > 0 ? snapshots.get(idx - 1).getIndex() + 1 : 0);
+    }
+    
+    /**
+     * Collects Java construct nodes of an operation history graph for a snapshot.
+     * @param fgraph the operation history graph
+     * @param sn the snapshot that contains the Java constructs
+     */
+    private static void collectJavaConstructNodes(OpGraphForFile fgraph, ParseableSnapshot sn) {
+        for (JavaConstruct con : sn.getJavaClassMembers()) {
+            JavaMemberNode node = new JavaMemberNode(fgraph, con);
+            fgraph.add(node);
+        }
     }
     
     /**
@@ -174,26 +363,42 @@ class OpGraphCreator {
             
             monitor.subTask("Collecting backward and forward editing edges: " +
                              String.valueOf(idx + 1) + "/" + String.valueOf(nodes.size()));
-            for (JavaConstruct construct : opnode.getOperation().getBackwardJavaConstructs()) {
+            collectDependencyEdges(fgraph, opnode);
+            
+            if (monitor.isCanceled()) {
+                monitor.done();
+                throw new InterruptedException();
+            }
+            monitor.worked(1);
+        }
+    }
+    
+    /**
+     * Collects forward and backward editing edges of an operation history graph for an operation node.
+     * A change operation has no Java constructs until a parse-able snapshot after it is analyzed.
+     * @param fgraph the operation history graph
+     * @param opnode the operation node
+     */
+    private static void collectDependencyEdges(OpGraphForFile fgraph, OperationNode opnode) {
+        List<JavaConstruct> backwardJavaConstructs = opnode.getOperation().getBackwardJavaConstructs();
+        if (backwardJavaConstructs != null) {
+            for (JavaConstruct construct : backwardJavaConstructs) {
                 JavaMemberNode jcnode = fgraph.getJavaConstructNode(construct);
                 if (jcnode != null) {
                     OpGraphEdge edge = new OpGraphEdge(jcnode, opnode, OpGraphEdge.Sort.BACKWARD_EDITING);
                     fgraph.add(edge);
                 }
             }
-            for (JavaConstruct construct : opnode.getOperation().getForwardJavaConstructs()) {
+        }
+        List<JavaConstruct> forwardJavaConstructs = opnode.getOperation().getForwardJavaConstructs();
+        if (forwardJavaConstructs != null) {
+            for (JavaConstruct construct : forwardJavaConstructs) {
                 JavaMemberNode jcnode = fgraph.getJavaConstructNode(construct);
                 if (jcnode != null) {
                     OpGraphEdge edge = new OpGraphEdge(opnode, jcnode, OpGraphEdge.Sort.FORWARD_EDITING);
                     fgraph.add(edge);
                 }
             }
-            
-            if (monitor.isCanceled()) {
-                monitor.done();
-                throw new InterruptedException();
-            }
-            monitor.worked(1);
         }
     }
     
@@ -204,17 +409,16 @@ class OpGraphCreator {
      * @throws InterruptedException if the operation detects a request to cancel
      */
     private static void collectOrderedEdges(OpGraphForFile fgraph, IProgressMonitor monitor) throws InterruptedException {
+        OrderedEditTracker tracker = new OrderedEditTracker();
+        tracker.advance(fgraph.getFile().getOperations());
+        fgraph.setOrderedEdges(tracker);
         List<OperationNode> nodes = fgraph.getOperationNodes();
         for (int idx = 0; idx < nodes.size(); idx++) {
             OperationNode opnode = nodes.get(idx);
             
             monitor.subTask("Collecting ordered editing edges: " +
                              String.valueOf(idx + 1) + "/" + String.valueOf(nodes.size()));
-            for (ICodeOperation op : opnode.getOperation().getAffectingOperations()) {
-                OperationNode node = fgraph.getOperationNode(op);
-                OpGraphEdge edge = new OpGraphEdge(node, opnode, OpGraphEdge.Sort.ORDERED_EDITING);
-                fgraph.add(edge);
-            }
+            collectOrderedEdges(fgraph, tracker, opnode);
             
             if (monitor.isCanceled()) {
                 monitor.done();
@@ -224,6 +428,22 @@ class OpGraphCreator {
         }
     }
     
+    /**
+     * Collects ordered editing edges of an operation history graph for an operation node.
+     * @param fgraph the operation history graph
+     * @param tracker the tracker that has found the change operations affecting the operation of the node
+     * @param opnode the operation node
+     */
+    private static void collectOrderedEdges(OpGraphForFile fgraph, OrderedEditTracker tracker, OperationNode opnode) {
+        for (ICodeOperation op : tracker.takeAffectingOperations(opnode.getOperation())) {
+            OperationNode node = fgraph.getOperationNode(op);
+            if (node != null) {
+                OpGraphEdge edge = new OpGraphEdge(node, opnode, OpGraphEdge.Sort.ORDERED_EDITING);
+                fgraph.add(edge);
+            }
+        }
+    }
+    
     /**
      * Collects no-change edges of an operation history graph.
      * @param fgraph the operation history graph
@@ -259,6 +479,7 @@ class OpGraphCreator {
      * @param dstsn the latter snapshot that contains the Java constructs.
      */
     private static void collectNoChangeEdgesByOffset(OpGraphForFile fgraph, ParseableSnapshot srcsn, ParseableSnapshot dstsn) {
+        OffsetMap map = getBackwardOffsetMap(srcsn, dstsn);
         for (JavaConstruct src : srcsn.getJavaClassMembers()) {
             for (JavaConstruct dst : dstsn.getJavaClassMembers()) {
                 
@@ -266,7 +487,7 @@ class OpGraphCreator {
                 JavaMemberNode dstnode = fgraph.getJavaConstructNode(dst);
                 if (noChange(srcnode, dstnode)) {
                     int srcoff = src.getStart();
-                    int dstoff = DependencyDetector.adjustBackwardOffset(dst.getStart(), getOperations(srcsn, dstsn));
+                    int dstoff = map.map(dst.getStart());
                     if (srcoff == dstoff && src.getSimpleName().equals(dst.getSimpleName())) {
                         OpGraphEdge edge = new OpGraphEdge(srcnode, dstnode, OpGraphEdge.Sort.NO_CHANGE);
                         fgraph.add(edge);
@@ -313,7 +534,7 @@ class OpGraphCreator {
         }
         int NumOfAddNodes = 0;
         for (OpGraphNode node : dstnode.getSrcNodes()) {
-            if (node.isOperation() && ((OperationNode)node).getSrcNodes().size() == 0) {
+            if (node.isOperation() && !hasBackwardEditingEdge((OperationNode)node)) {
                 NumOfAddNodes++;
             }
         }
@@ -323,6 +544,21 @@ class OpGraphCreator {
         return NumOfForwardNodes == 0 || NumOfBackwardNodes == 0;
     }
     
+    /**
+     * Tests if an operation node has any backward editing edge from a Java construct node.
+     * Ordered editing and ccp edges, which may be appended before later snapshots, are not taken into account.
+     * @param opnode the operation node
+     * @return <code>true</code> if the operation node has the backward editing edge, otherwise <code>false</code>
+     */
+    private static boolean hasBackwardEditingEdge(OperationNode opnode) {
+        for (OpGraphEdge edge : opnode.getIncomingEdges()) {
+            if (edge.isBackwardEdit()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Collects inter-edges across file operation history graphs within a project.
      * @param pgraph an operation history graph for the project
@@ -338,9 +574,8 @@ class OpGraphCreator {
             @Override
             protected IStatus run(IProgressMonitor monitor) {
                 try {
-                    List<IChangeOperation> ops = pinfo.getOperations();
-                    monitor.beginTask("Collecting inter-edges: " + pinfo.getName(), ops.size());
-                    collectCCPEdges(pgraph, ops, monitor);
+                    monitor.beginTask("Collecting inter-edges: " + pinfo.getName(), pinfo.getOperations().size());
+                    collectInterEdges(pgraph, monitor);
                     return Status.OK_STATUS;
                 } catch (Exception e) {
                     CTConsole.println("Failed to collect inter-edges");
@@ -354,6 +589,16 @@ class OpGraphCreator {
         System.out.println(pgraph.toStringOnEdges(OpGraphEdge.Sort.CCP_EDITING));
     }
     
+    /**
+     * Collects inter-edges across file operation history graphs within a project in the current thread.
+     * @param pgraph an operation history graph for the project
+     * @param monitor the progress monitor to use to display progress and receive requests for cancellation
+     * @throws InterruptedException if the operation detects a request to cancel
+     */
+    static void collectInterEdges(OpGraphForProject pgraph, IProgressMonitor monitor) throws InterruptedException {
+        collectCCPEdges(pgraph, pgraph.getProject().getOperations(), monitor);
+    }
+    
     /**
      * Collects ccp-edges between the node for the copy/copy operation and the node for the paste operation.
      * @param projectGraph a operation history graph for the project
@@ -366,20 +611,7 @@ class OpGraphCreator {
             monitor.subTask("Collecting ccp edges " + String.valueOf(idx + 1) + "/" + ops.size());
             IChangeOperation op = ops.get(idx);
             if (op.isDocument()) {
-                DocumentOperation dop = (DocumentOperation)op;
-                if (dop.isPaste()) {
-                    ICodeOperation cc = dop.getCutOrCopyOperationForPaste();
-                    if (cc != null) {
-                        OpGraphNode srcNode = pgraph.getOperationNode((ICodeOperation)cc);
-                        OpGraphNode dstNode = pgraph.getOperationNode((ICodeOperation)op);
-                        if (srcNode != null && dstNode != null) {
-                            OpGraphEdge edge = new OpGraphEdge(srcNode, dstNode, OpGraphEdge.Sort.CCP_EDITING);
-                            if (!pgraph.contains(edge)) {
-                                pgraph.add(edge);
-                            }
-                        }
-                    }
-                }
+                collectCCPEdge(pgraph, (ICodeOperation)op);
             }
             
             if (monitor.isCanceled()) {
@@ -392,6 +624,30 @@ class OpGraphCreator {
         System.out.println(pgraph.toStringOnEdges((OpGraphEdge.Sort.CCP_EDITING)));
     }
     
+    /**
+     * Collects a ccp-edge between the node for the cut/copy operation and the node for a paste operation.
+     * @param pgraph a operation history graph for the project
+     * @param op the code change operation that might represent the paste action
+     */
+    private static void collectCCPEdge(OpGraphForProject pgraph, ICodeOperation op) {
+        if (op.isDocument()) {
+            DocumentOperation dop = (DocumentOperation)op;
+            if (dop.isPaste()) {
+                ICodeOperation cc = dop.getCutOrCopyOperationForPaste();
+                if (cc != null) {
+                    OpGraphNode srcNode = pgraph.getOperationNode(cc);
+                    OpGraphNode dstNode = pgraph.getOperationNode(op);
+                    if (srcNode != null && dstNode != null) {
+                        OpGraphEdge edge = new OpGraphEdge(srcNode, dstNode, OpGraphEdge.Sort.CCP_EDITING);
+                        if (!pgraph.contains(edge)) {
+                            pgraph.add(edge);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
     /**
      * Collects all code change operations that appear between two snapshots.
      * @param srcsn the former snapshot 
@@ -401,4 +657,168 @@ class OpGraphCreator {
     private static List<CodeOperation> getOperations(ParseableSnapshot srcsn, ParseableSnapshot dstsn) {
         return CodeOperation.getOperations(srcsn.getFile(), srcsn.getTime(), dstsn.getTime());
     }
+    
+    /**
+     * Obtains the map that adjusts offset values within a latter snapshot into a former snapshot.
+     * The map cached in the latter snapshot is used if the two snapshots are consecutive.
+     * @param srcsn the former snapshot
+     * @param dstsn the latter snapshot
+     * @return the map of offset values
+     */
+    private static OffsetMap getBackwardOffsetMap(ParseableSnapshot srcsn, ParseableSnapshot dstsn) {
+        if (dstsn.getPrevParseableSnapshot() == srcsn) {
+            return dstsn.getBackwardOffsetMap();
+        }
+        return OffsetMap.backward(getOperations(srcsn, dstsn));
+    }
+    
+    /**
+     * Constructs operation history graphs of files by splitting them into halves.
+     */
+    @SuppressWarnings("serial")
+    private static class GraphConstructionTask extends RecursiveAction {
+        
+        /**
+         * The operation history graphs to be constructed.
+         */
+        private OpGraphForFile[] fgraphs;
+        
+        /**
+         * The index number of the first graph constructed by this task.
+         */
+        private int from;
+        
+        /**
+         * The index number next to the last graph constructed by this task.
+         */
+        private int to;
+        
+        /**
+         * The progress monitor shared by the tasks.
+         */
+        private IProgressMonitor monitor;
+        
+        /**
+         * Creates a task that constructs operation history graphs.
+         * @param fgraphs the operation history graphs to be constructed
+         * @param from the index number of the first graph
+         * @param to the index number next to the last graph
+         * @param monitor the progress monitor shared by the tasks
+         */
+        GraphConstructionTask(OpGraphForFile[] fgraphs, int from, int to, IProgressMonitor monitor) {
+            this.fgraphs = fgraphs;
+            this.from = from;
+            this.to = to;
+            this.monitor = monitor;
+        }
+        
+        /**
+         * Constructs the graphs, or forks the tasks for the halves of the graphs.
+         */
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                OpGraphForFile fgraph = fgraphs[from];
+                try {
+                    constructGraph(fgraph, monitor);
+                } catch (Exception e) {
+                    CTConsole.println("Failed to construct an operation history graph");
+                    fgraph.clear();
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new GraphConstructionTask(fgraphs, from, mid, monitor), new GraphConstructionTask(fgraphs, mid, to, monitor));
+        }
+    }
+    
+    /**
+     * Forwards progress reported by multiple threads to a single progress monitor.
+     * The task of the progress monitor is begun and done by its owner, not by the threads.
+     */
+    private static class SynchronizedProgressMonitor implements IProgressMonitor {
+        
+        /**
+         * The progress monitor that receives progress.
+         */
+        private IProgressMonitor monitor;
+        
+        /**
+         * Creates a progress monitor that is shared by multiple threads.
+         * @param monitor the progress monitor that receives progress
+         */
+        SynchronizedProgressMonitor(IProgressMonitor monitor) {
+            this.monitor = monitor;
+        }
+        
+        /**
+         * Ignores the beginning of a task since the owner begins it.
+         * @param name the name of the task
+         * @param totalWork the total amount of work
+         */
+        @Override
+        public void beginTask(String name, int totalWork) {
+        }
+        
+        /**
+         * Ignores the end of a task since the owner ends it.
+         */
+        @Override
+        public void done() {
+        }
+        
+        /**
+         * Reports the amount of the done work.
+         * @param work the amount of the work
+         */
+        @Override
+        public synchronized void internalWorked(double work) {
+            monitor.internalWorked(work);
+        }
+        
+        /**
+         * Tests if cancellation of the task is requested.
+         * @return <code>true</code> if the cancellation is requested, otherwise <code>false</code>
+         */
+        @Override
+        public synchronized boolean isCanceled() {
+            return monitor.isCanceled();
+        }
+        
+        /**
+         * Sets the cancellation of the task.
+         * @param value <code>true</code> if the cancellation is requested, otherwise <code>false</code>
+         */
+        @Override
+        public synchronized void setCanceled(boolean value) {
+            monitor.setCanceled(value);
+        }
+        
+        /**
+         * Sets the name of the task.
+         * @param name the name of the task
+         */
+        @Override
+        public synchronized void setTaskName(String name) {
+            monitor.setTaskName(name);
+        }
+        
+        /**
+         * Sets the name of the sub-task.
+         * @param name the name of the sub-task
+         */
+        @Override
+        public synchronized void subTask(String name) {
+            monitor.subTask(name);
+        }
+        
+        /**
+         * Reports the amount of the done work.
+         * @param work the amount of the work
+         */
+        @Override
+        public synchronized void worked(int work) {
+            monitor.worked(work);
+        }
+    }
 }
@@ -31,7 +31,7 @@ public class OpGraphEdge {
          */
         @Override
         public String toString() {
-            return toString().substring(0, 0);
+            return name().substring(0, 1);
         }
     }
     
@@ -97,7 +97,7 @@ public class OpGraphEdge {
      * @return <code>true</code> if this edge represents backward editing, otherwise <code>false</code>
      */
     public boolean isBackwardEdit() {
-        return Sort.BACKWARD_EDITING.toString().equals(sort);
+        return sort == Sort.BACKWARD_EDITING;
     }
     
     /**
@@ -105,7 +105,7 @@ public class OpGraphEdge {
      * @return <code>true</code> if this edge represents forward editing, otherwise <code>false</code>
      */
     public boolean isForwardEdit() {
-        return Sort.BACKWARD_EDITING.toString().equals(sort);
+        return sort == Sort.FORWARD_EDITING;
     }
     
     /**
@@ -113,7 +113,7 @@ public class OpGraphEdge {
      * @return <code>true</code> if this edge represents no change, otherwise <code>false</code>
      */
     public boolean isNoChange() {
-        return Sort.NO_CHANGE.toString().equals(sort);
+        return sort == Sort.NO_CHANGE;
     }
     
     /**
@@ -121,7 +121,7 @@ public class OpGraphEdge {
      * @return <code>true</code> if this edge represents cut-copy-paste editing, otherwise <code>false</code>
      */
     public boolean isCCP() {
-        return Sort.CCP_EDITING.toString().equals(sort);
+        return sort == Sort.CCP_EDITING;
     }
     
     /**
@@ -129,7 +129,7 @@ public class OpGraphEdge {
      * @return <code>true</code> if this edge represents cut-copy-paste editing, otherwise <code>false</code>
      */
     public boolean isOrdered() {
-        return Sort.ORDERED_EDITING.toString().equals(sort);
+        return sort == Sort.ORDERED_EDITING;
     }
     
     /**
@@ -161,11 +161,13 @@ public class OpGraphEdge {
     
     /**
      * Returns a hash code value for this object.
-     * @return always <code>0</code> that means all objects have the same hash code
+     * @return the hash code value, which is computed from the source node, the destination node, and the sort
      */
     @Override
     public int hashCode() {
-        return 0;
+        int hash = getSrcNode().hashCode();
+        hash = 31 * hash + getDstNode().hashCode();
+        return 31 * hash + getSort().ordinal();
     }
     
     /**
@@ -7,6 +7,7 @@
 package org.jtool.changetracker.dependecygraph;
 
 import org.jtool.changetracker.operation.ICodeOperation;
+import org.jtool.changetracker.operation.IChangeOperation;
 import org.jtool.changetracker.dependencyanalyzer.JavaConstruct;
 import org.jtool.changetracker.dependencyanalyzer.ParseableSnapshot;
 import org.jtool.changetracker.repository.CTFile;
@@ -35,7 +36,7 @@ public class OpGraphForFile {
     private Map<String, OpGraphNode> nodes = new HashMap<String, OpGraphNode>();
     
     /**
-     * The collection of edges of this graph.
+     * The collection of edges of this graph, which are hashed by their source nodes, destination nodes, and sorts.
      */
     private Set<OpGraphEdge> edges = new HashSet<OpGraphEdge>();
     
@@ -44,6 +45,32 @@ public class OpGraphForFile {
      */
     private ZonedDateTime lastUpdatedTime;
     
+    /**
+     * The number of the change operations of the file whose nodes have been added to this graph.
+     */
+    private int numOfOperations = 0;
+    
+    /**
+     * The change operation whose node was last added to this graph, which detects the change of the operation history.
+     */
+    private IChangeOperation lastOperation = null;
+    
+    /**
+     * The number of the change operations of the file whose backward and forward editing edges have been added to this graph.
+     */
+    private int numOfEdgedOperations = 0;
+    
+    /**
+     * The number of the snapshots of the file whose nodes and no-change edges have been added to this graph.
+     */
+    private int numOfSnapshots = 0;
+    
+    /**
+     * The tracker that finds ordered editing edges for appended change operations, or <code>null</code> if this graph
+     * does not contain ordered editing edges.
+     */
+    private OrderedEditTracker orderedEditTracker = null;
+    
     /**
      * Creates an instance that stores information about an operation history graph for a file.
      * @param finfo information of the file
@@ -122,7 +149,7 @@ public class OpGraphForFile {
      */
     public OperationNode getOperationNode(ICodeOperation op) {
         OpGraphNode node = nodes.get(op.getQualifiedName());
-        if (node.isOperation()) {
+        if (node != null && node.isOperation()) {
             return (OperationNode)node;
         }
         return null;
@@ -135,7 +162,7 @@ public class OpGraphForFile {
      */
     public JavaMemberNode getJavaConstructNode(JavaConstruct con) {
         OpGraphNode node = nodes.get(con.getQualifiedName());
-        if (node.isJavaConstruct()) {
+        if (node != null && node.isJavaConstruct()) {
             return (JavaMemberNode)node;
         }
         return null;
@@ -148,8 +175,12 @@ public class OpGraphForFile {
      * @return <code>true</code> an edge was found, otherwise <code>false</code>
      */
     public boolean isConnected(OpGraphNode src, OpGraphNode dst) {
-        for (OpGraphEdge edge : edges) {
-            if (edge.getSrcNode().equals(src) && edge.getDstNode().equals(dst)) {
+        OpGraphNode node = nodes.get(src.getQualifiedName());
+        if (node == null) {
+            return false;
+        }
+        for (OpGraphEdge edge : node.getOutgoingEdges()) {
+            if (edge.getDstNode().equals(dst) && edges.contains(edge)) {
                 return true;
             }
         }
@@ -163,8 +194,12 @@ public class OpGraphForFile {
      */
     public List<OpGraphNode> getSrcNodes(OpGraphNode dst) {
         List<OpGraphNode> ns = new ArrayList<OpGraphNode>();
-        for (OpGraphEdge edge : edges) {
-            if (edge.getDstNode().equals(dst)) {
+        OpGraphNode node = nodes.get(dst.getQualifiedName());
+        if (node == null) {
+            return ns;
+        }
+        for (OpGraphEdge edge : node.getIncomingEdges()) {
+            if (edges.contains(edge)) {
                 ns.add(edge.getSrcNode());
             }
         }
@@ -178,8 +213,12 @@ public class OpGraphForFile {
      */
     public List<OpGraphNode> getDstNodes(OpGraphNode src) {
         List<OpGraphNode> ns = new ArrayList<OpGraphNode>();
-        for (OpGraphEdge edge : edges) {
-            if (edge.getSrcNode().equals(src)) {
+        OpGraphNode node = nodes.get(src.getQualifiedName());
+        if (node == null) {
+            return ns;
+        }
+        for (OpGraphEdge edge : node.getOutgoingEdges()) {
+            if (edges.contains(edge)) {
                 ns.add(edge.getDstNode());
             }
         }
@@ -192,12 +231,10 @@ public class OpGraphForFile {
      * @return <code>true</code> if this graph contains the node, otherwise <code>false</code>
      */
     public boolean contains(OpGraphNode node) {
-        for (OpGraphNode n : nodes.values()) {
-            if (n.equals(node)) {
-                return true;
-            }
+        if (node == null) {
+            return false;
         }
-        return false;
+        return nodes.containsKey(node.getQualifiedName());
     }
     
     /**
@@ -206,12 +243,7 @@ public class OpGraphForFile {
      * @return <code>true</code> if this graph contains the edge, otherwise <code>false</code>
      */
     public boolean contains(OpGraphEdge edge) {
-        for (OpGraphEdge e : edges) {
-            if (e.equals(edge)) {
-                return true;
-            }
-        }
-        return false;
+        return edges.contains(edge);
     }
     
     /**
@@ -222,7 +254,7 @@ public class OpGraphForFile {
     public List<OperationNode> getOperationNodesBefore(ZonedDateTime time) {
         List<OperationNode> ns = new ArrayList<OperationNode>();
         for (OpGraphNode node : nodes.values()) {
-            if (node.isOperation() && (node.getTime().isBefore(node.getTime()) || node.getTime().isEqual(time))) {
+            if (node.isOperation() && (!node.getTime().isAfter(time))) {
                 ns.add((OperationNode)node);
             }
         }
@@ -238,7 +270,7 @@ public class OpGraphForFile {
     public List<OperationNode> getOperationNodesAfter(ZonedDateTime time) {
         List<OperationNode> ns = new ArrayList<OperationNode>();
         for (OpGraphNode node : nodes.values()) {
-            if (node.isOperation() && (node.getTime().isAfter(node.getTime()) || node.getTime().isEqual(time))) {
+            if (node.isOperation() && (!node.getTime().isBefore(time))) {
                 ns.add((OperationNode)node);
             }
         }
@@ -278,6 +310,99 @@ public class OpGraphForFile {
         lastUpdatedTime = time;
     }
     
+    /**
+     * Records the change operations of the file whose nodes have been added to this graph.
+     * @param num the number of the change operations
+     * @param op the change operation whose node was last added, or <code>null</code> if none
+     */
+    void setAppendedOperations(int num, IChangeOperation op) {
+        numOfOperations = num;
+        lastOperation = op;
+    }
+    
+    /**
+     * Returns the number of the change operations of the file whose nodes have been added to this graph.
+     * @return the number of the change operations
+     */
+    int getNumOfAppendedOperations() {
+        return numOfOperations;
+    }
+    
+    /**
+     * Returns the change operation whose node was last added to this graph.
+     * @return the change operation, or <code>null</code> if none
+     */
+    IChangeOperation getLastAppendedOperation() {
+        return lastOperation;
+    }
+    
+    /**
+     * Records the number of the change operations of the file whose backward and forward editing edges have been added.
+     * @param num the number of the change operations
+     */
+    void setNumOfEdgedOperations(int num) {
+        numOfEdgedOperations = num;
+    }
+    
+    /**
+     * Returns the number of the change operations of the file whose backward and forward editing edges have been added.
+     * @return the number of the change operations
+     */
+    int getNumOfEdgedOperations() {
+        return numOfEdgedOperations;
+    }
+    
+    /**
+     * Records the number of the snapshots of the file whose nodes and no-change edges have been added to this graph.
+     * @param num the number of the snapshots
+     */
+    void setNumOfAppendedSnapshots(int num) {
+        numOfSnapshots = num;
+    }
+    
+    /**
+     * Returns the number of the snapshots of the file whose nodes and no-change edges have been added to this graph.
+     * @return the number of the snapshots
+     */
+    int getNumOfAppendedSnapshots() {
+        return numOfSnapshots;
+    }
+    
+    /**
+     * Records that this graph contains ordered editing edges, which are maintained for appended change operations.
+     * @param tracker the tracker that has processed the change operations whose ordered editing edges have been added
+     */
+    void setOrderedEdges(OrderedEditTracker tracker) {
+        orderedEditTracker = tracker;
+    }
+    
+    /**
+     * Tests if this graph contains ordered editing edges.
+     * @return <code>true</code> if the ordered editing edges are contained, otherwise <code>false</code>
+     */
+    boolean hasOrderedEdges() {
+        return orderedEditTracker != null;
+    }
+    
+    /**
+     * Returns the tracker that finds ordered editing edges for appended change operations.
+     * @return the tracker, or <code>null</code> if this graph does not contain ordered editing edges
+     */
+    OrderedEditTracker getOrderedEditTracker() {
+        return orderedEditTracker;
+    }
+    
+    /**
+     * Tests if this graph reflects all the change operations and snapshots of the file.
+     * @return <code>true</code> if no change operation or snapshot remains to be appended, otherwise <code>false</code>
+     */
+    boolean isUpToDate() {
+        if (fileInfo == null || !fileInfo.getSnapshotQueue().isQuiescent()) {
+            return false;
+        }
+        return numOfOperations == fileInfo.getOperations().size() && numOfSnapshots == fileInfo.getSnapshots().size();
+    }
+    
     /**
      * Returns the time when this graph was last generated or modified.
      * @return the last generated or modified time
@@ -128,8 +128,8 @@ public class OpGraphForProject {
      * @return <code>true</code> if this graph contains the node, otherwise <code>false</code>
      */
     public boolean contains(OpGraphNode node) {
-        for (OpGraphNode n : getNodes()) {
-            if (n.equals(node)) {
+        for (OpGraphForFile fgraph : fileGraphs.values()) {
+            if (fgraph.contains(node)) {
                 return true;
             }
         }
@@ -142,8 +142,11 @@ public class OpGraphForProject {
      * @return <code>true</code> if this graph contains the edge, otherwise <code>false</code>
      */
     public boolean contains(OpGraphEdge edge) {
-        for (OpGraphEdge e : getEdges()) {
-            if (e.equals(edge)) {
+        if (interEdges.contains(edge)) {
+            return true;
+        }
+        for (OpGraphForFile fgraph : fileGraphs.values()) {
+            if (fgraph.contains(edge)) {
                 return true;
             }
         }
@@ -7,8 +7,17 @@
 package org.jtool.changetracker.dependecygraph;
 
 import org.jtool.changetracker.core.CTConsole;
+import org.jtool.changetracker.core.CTPreferencePage;
 import org.jtool.changetracker.repository.CTFile;
 import org.jtool.changetracker.repository.CTProject;
+import org.jtool.changetracker.repository.IRepositoryHandler;
+import org.jtool.changetracker.repository.RepositoryEvent;
+import org.jtool.changetracker.repository.RepositoryManager;
+import org.jtool.changetracker.dependencyanalyzer.SnapshotParsingPool;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
@@ -17,9 +26,17 @@ import java.time.ZonedDateTime;
 
 /**
  * Manages operation history graphs.
+ * The graphs are constructed and updated in jobs, and the lock of this manager only guards the map of the graphs.
+ * The nodes and edges for appended change operations are added to a project graph while holding the lock of the graph.
+ * Callers that traverse a graph while change operations are being recorded must synchronize on the graph.
  * @author Katsuhisa Maruyama
  */
-public class OpGraphManager {
+public class OpGraphManager implements IRepositoryHandler {
+    
+    /**
+     * The default maximum number of threads that construct operation history graphs of files in parallel.
+     */
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
     
     /**
      * The single instance of this operation history graph manager.
@@ -31,6 +48,32 @@ public class OpGraphManager {
      */
     private Map<String, OpGraphForProject> projectGraphs = new HashMap<String, OpGraphForProject>();
     
+    /**
+     * The job that appends the nodes and edges for appended change operations to the existing graphs.
+     */
+    private Job updateJob = new Job("Updating operation history graphs") {
+        
+        /**
+         * Executes this job. Returns the result of the execution.
+         * @param monitor the progress monitor to use to display progress and receive requests for cancellation
+         */
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            for (OpGraphForProject pgraph : getGraphs()) {
+                synchronized (pgraph) {
+                    try {
+                        OpGraphCreator.appendToGraph(pgraph);
+                    } catch (RuntimeException e) {
+                        pgraph.clear();
+                        CTConsole.println("Failed to update an operation history graph " +
+                            pgraph.getProject().getQualifiedName());
+                    }
+                }
+            }
+            return Status.OK_STATUS;
+        }
+    };
+    
     /**
      * Prohibits the creation of an instance.
      */
@@ -45,14 +88,42 @@ public class OpGraphManager {
         return instance;
     }
     
+    /**
+     * Invoked to initialize this manager before receiving repository change events.
+     */
+    @Override
+    public void initialize() {
+    }
+    
+    /**
+     * Invoked to terminate this manager.
+     */
+    @Override
+    public void terminate() {
+        clear();
+    }
+    
     /**
      * Clears all the operation history graphs
      */
     public void clear() {
-        for (OpGraphForProject graph : projectGraphs.values()) {
-            graph.clear();
+        List<OpGraphForProject> graphs = getGraphs();
+        synchronized (this) {
+            projectGraphs.clear();
+        }
+        for (OpGraphForProject graph : graphs) {
+            synchronized (graph) {
+                graph.clear();
+            }
         }
-        projectGraphs.clear();
+    }
+    
+    /**
+     * Returns the operation history graphs of all the projects.
+     * @return the copied collection of the graphs
+     */
+    private synchronized List<OpGraphForProject> getGraphs() {
+        return new ArrayList<OpGraphForProject>(projectGraphs.values());
     }
     
     /**
@@ -60,70 +131,183 @@ public class OpGraphManager {
      * @param pinfo information about the project
      * @return the operation history graph for the project, or <code>null</code> if none
      */
-    public OpGraphForProject getGraph(CTProject pinfo) {
+    public synchronized OpGraphForProject getGraph(CTProject pinfo) {
         return projectGraphs.get(pinfo.getQualifiedName());
     }
     
     /**
      * Creates an operation history graph of a project.
+     * The operation history graphs of its files are constructed in parallel with the parallelism level in the preferences.
      * @param pinfo information about the project
      * @return the created operation history graph
      */
     public OpGraphForProject createGraph(CTProject pinfo) {
+        return createGraph(pinfo, CTPreferencePage.getGraphParallelism());
+    }
+    
+    /**
+     * Creates an operation history graph of a project.
+     * The operation history graphs of its files are constructed in parallel, and the inter-edges across them are
+     * collected after all of them are constructed. The created graph does not depend on the parallelism level.
+     * If the graph was already created, the nodes and edges for change operations appended after that are added to it.
+     * A newly constructed graph is registered after its construction finishes, so that the lock of this manager is not
+     * held while waiting for the construction.
+     * @param pinfo information about the project
+     * @param parallelism the maximum number of threads that construct the operation history graphs of the files
+     * @return the created operation history graph
+     */
+    public OpGraphForProject createGraph(CTProject pinfo, int parallelism) {
         if (pinfo == null) {
             return null;
         }
         
+        RepositoryManager.getInstance().addRepositoryHandler(this);
         OpGraphForProject pgraph = getGraph(pinfo);
-        List<CTFile> finfos = new ArrayList<CTFile>(); 
-        if (pgraph != null) {
-            for (CTFile finfo : pinfo.getFiles()) {
-                OpGraphForFile fgraph = pgraph.get(finfo);
-                if (finfo.getLastUpdatedTime().isAfter(fgraph.getLastUpdatedTime())) {
-                    finfos.add(finfo);
-                }
+        if (pgraph != null && pgraph.getProject() == pinfo) {
+            if (!existGraph(pinfo)) {
+                appendToGraph(pgraph);
             }
+        
+        } else {
+            pgraph = new OpGraphForProject(pinfo);
+            constructGraph(pgraph, pinfo.getFiles(), parallelism);
+            synchronized (this) {
+                projectGraphs.put(pinfo.getQualifiedName(), pgraph);
+            }
+        }
+        
+        System.out.println(pgraph.toString());
+        return pgraph;
+    }
+    
+    /**
+     * Constructs the operation history graphs of files within a project graph, and waits until the construction finishes.
+     * @param pgraph the operation history graph for the project
+     * @param finfos the collection of information about the files whose graphs are constructed
+     * @param parallelism the maximum number of threads that construct the operation history graphs of the files
+     */
+    private void constructGraph(OpGraphForProject pgraph, List<CTFile> finfos, int parallelism) {
+        CTProject pinfo = pgraph.getProject();
+        Job job = new Job("Constructing operation history graphs") {
             
-            if (finfos.size() != 0) {
-                for (CTFile finfo : finfos) {
-                    OpGraphForFile fgraph = OpGraphCreator.createGraph(finfo);
-                    if (fgraph.getFile() != null) {
+            /**
+             * Executes this job. Returns the result of the execution.
+             * @param monitor the progress monitor to use to display progress and receive requests for cancellation
+             */
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    int work = pinfo.getOperations().size();
+                    for (CTFile finfo : finfos) {
+                        work = work + OpGraphCreator.getAmountOfWork(finfo);
+                    }
+                    monitor.beginTask("Constructing operation history graphs: " + pinfo.getName(), work);
+                    
+                    List<OpGraphForFile> fgraphs = OpGraphCreator.createGraphs(finfos, parallelism, monitor);
+                    for (OpGraphForFile fgraph : fgraphs) {
+                        if (fgraph.getFile() == null) {
+                            pgraph.clear();
+                            CTConsole.println("Failed to create an operation history graph " + pinfo.getQualifiedName());
+                            return Status.CANCEL_STATUS;
+                        }
+                    }
+                    
+                    for (OpGraphForFile fgraph : fgraphs) {
                         fgraph.setLastUpdatedTime(ZonedDateTime.now());
-                        pgraph.remove(finfo);
                         pgraph.add(fgraph);
-                    } else {
-                        pgraph.clear();
-                        CTConsole.println("Failed to create an operation history graph " + pinfo.getQualifiedName());
-                        break;
                     }
-                }
-                if (pgraph.size() != 0) {
-                    pgraph.removeAllEdges();
-                    OpGraphCreator.collectInterEdges(pgraph);
-                }
-            }
-            
-        } else {
-            pgraph = new OpGraphForProject(pinfo);
-            projectGraphs.put(pinfo.getQualifiedName(), pgraph);
-            for (CTFile finfo : pinfo.getFiles()) {
-                OpGraphForFile fgraph = OpGraphCreator.createGraph(finfo);
-                if (fgraph.getFile() != null) {
-                    fgraph.setLastUpdatedTime(ZonedDateTime.now());
-                    pgraph.add(fgraph);
-                } else {
+                    if (pgraph.size() != 0) {
+                        OpGraphCreator.collectInterEdges(pgraph, monitor);
+                    }
+                    return Status.OK_STATUS;
+                
+                } catch (Exception e) {
                     pgraph.clear();
                     CTConsole.println("Failed to create an operation history graph " + pinfo.getQualifiedName());
-                    break;
+                    return Status.CANCEL_STATUS;
+                
+                } finally {
+                    monitor.done();
                 }
             }
-            if (pgraph.size() != 0) {
-                OpGraphCreator.collectInterEdges(pgraph);
+        };
+        job.schedule();
+        
+        try {
+            job.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Appends the nodes and edges for change operations appended to files within a project graph, after the analysis
+     * of the files quiesces. Waits until the appending finishes.
+     * @param pgraph the operation history graph for the project
+     */
+    private void appendToGraph(OpGraphForProject pgraph) {
+        CTProject pinfo = pgraph.getProject();
+        Job job = new Job("Updating operation history graphs") {
+            
+            /**
+             * Executes this job. Returns the result of the execution.
+             * @param monitor the progress monitor to use to display progress and receive requests for cancellation
+             */
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    monitor.beginTask("Updating operation history graphs: " + pinfo.getName(), IProgressMonitor.UNKNOWN);
+                    SnapshotParsingPool.getInstance().awaitQuiescence(pinfo.getFiles());
+                    synchronized (pgraph) {
+                        OpGraphCreator.appendToGraph(pgraph);
+                    }
+                    return Status.OK_STATUS;
+                
+                } catch (Exception e) {
+                    synchronized (pgraph) {
+                        pgraph.clear();
+                    }
+                    CTConsole.println("Failed to update an operation history graph " + pinfo.getQualifiedName());
+                    return Status.CANCEL_STATUS;
+                
+                } finally {
+                    monitor.done();
+                }
             }
+        };
+        job.schedule();
+        
+        try {
+            job.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Invoked before a repository change event is about to occur.
+     * @param evt the sent event
+     */
+    @Override
+    public void aboutTo(RepositoryEvent evt) {
+    }
+    
+    /**
+     * Invoked after a repository change event occurred.
+     * Schedules the job that appends the nodes and edges for appended change operations to the existing operation
+     * history graphs, so that the graphs are not updated in the UI thread.
+     * Snapshots that are still being parsed are appended by a later event or by the next creation of the graphs.
+     * @param evt the sent event
+     */
+    @Override
+    public void changed(RepositoryEvent evt) {
+        if (evt.getType() != RepositoryEvent.Type.OPERATION_ADD) {
+            return;
         }
         
-        System.out.println(pgraph.toString());
-        return pgraph;
+        if (!getGraphs().isEmpty()) {
+            updateJob.schedule();
+        }
     }
     
     /**
@@ -135,15 +319,17 @@ public class OpGraphManager {
         if (pinfo == null) {
             return false; 
         }
-        OpGraphForProject pgraph = projectGraphs.get(pinfo.getQualifiedName());
+        OpGraphForProject pgraph = getGraph(pinfo);
         if (pgraph == null) {
             return false;
         }
         
-        for (CTFile finfo : pinfo.getFiles()) {
-            OpGraphForFile fgraph = pgraph.get(finfo);
-            if (finfo.getLastUpdatedTime().isAfter(fgraph.getLastUpdatedTime())) {
-                return false;
+        synchronized (pgraph) {
+            for (CTFile finfo : pinfo.getFiles()) {
+                OpGraphForFile fgraph = pgraph.get(finfo);
+                if (fgraph == null || !fgraph.isUpToDate()) {
+                    return false;
+                }
             }
         }
         return true;
@@ -190,11 +190,11 @@ public abstract class OpGraphNode {
     
     /**
      * Returns a hash code value for this object.
-     * @return always <code>0</code> that means all objects have the same hash code
+     * @return the hash code value, which is computed from the qualified name of this node
      */
     @Override
     public int hashCode() {
-        return 0;
+        return getQualifiedName().hashCode();
     }
     
     /**
@@ -8,6 +8,12 @@ package org.jtool.changetracker.dependecygraph;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Deque;
+import java.util.ArrayDeque;
 
 /**
  * Slices an operation history graph, starting from a Java construct node.
@@ -21,7 +27,7 @@ public class OpSlicer {
      * @return the collection of the change operation nodes in the backward slice
      */
     static List<OperationNode> getOperationNodesInBackwardSlice(JavaMemberNode jcnode) {
-        List<OpGraphNode> nodes = new ArrayList<OpGraphNode>();
+        Set<OpGraphNode> nodes = new HashSet<OpGraphNode>();
         if (jcnode != null) {
             collectReachableNodesTo(nodes, jcnode);
             collectNodesWithoutForwardEdges(nodes);
@@ -40,27 +46,32 @@ public class OpSlicer {
     
     /**
      * Collects all nodes that reach a specified node of an operation history graph.
-     * @param nodes the collection of the reachable nodes, which is to be returned
+     * The graph is traversed with an explicit stack, so long chains of edges do not overflow the call stack.
+     * @param nodes the set of the reachable nodes, which is to be returned
      * @param node the specified node 
      */
-    private static void collectReachableNodesTo(List<OpGraphNode> nodes, OpGraphNode node) {
-        if (nodes.contains(node)) {
+    private static void collectReachableNodesTo(Set<OpGraphNode> nodes, OpGraphNode node) {
+        if (!nodes.add(node)) {
             return;
         }
-        nodes.add(node);
         
-        for (OpGraphEdge edge : node.getIncomingEdges()) {
-            if (!edge.isOrdered()) {
-                collectReachableNodesTo(nodes, edge.getSrcNode());
+        Deque<OpGraphNode> stack = new ArrayDeque<OpGraphNode>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            OpGraphNode n = stack.pop();
+            for (OpGraphEdge edge : n.getIncomingEdges()) {
+                if (!edge.isOrdered() && nodes.add(edge.getSrcNode())) {
+                    stack.push(edge.getSrcNode());
+                }
             }
         }
     }
     
     /**
      * Collects operation nodes that are connected to nodes in the slice, which have no forward edit edges. 
-     * @param nodes the collection of the nodes including the added nodes, which is to be returned
+     * @param nodes the set of the nodes including the added nodes, which is to be returned
      */
-    private static void collectNodesWithoutForwardEdges(List<OpGraphNode> nodes) {
+    private static void collectNodesWithoutForwardEdges(Set<OpGraphNode> nodes) {
         List<OpGraphNode> ns = new ArrayList<OpGraphNode>();
         for (OpGraphNode n : nodes) {
             for (OpGraphEdge e : n.getOutgoingEdges()) {
@@ -80,7 +91,7 @@ public class OpSlicer {
      * @return the collection of the change operation nodes in the forward slice
      */
     static List<OperationNode> getOperationNodesInForwardSlice(JavaMemberNode jcnode) {
-        List<OpGraphNode> nodes = new ArrayList<OpGraphNode>();
+        Set<OpGraphNode> nodes = new HashSet<OpGraphNode>();
         if (jcnode != null) {
             collectReachableNodesFrom(nodes, jcnode);
             collectNodesWithoutBackwardEdges(nodes);
@@ -99,27 +110,32 @@ public class OpSlicer {
     
     /**
      * Collects all nodes that a specified node of an operation history graph reaches.
-     * @param nodes the collection of the reachable nodes, which is to be returned
+     * The graph is traversed with an explicit stack, so long chains of edges do not overflow the call stack.
+     * @param nodes the set of the reachable nodes, which is to be returned
      * @param node the specified node 
      */
-    private static void collectReachableNodesFrom(List<OpGraphNode> nodes, OpGraphNode node) {
-        if (nodes.contains(node)) {
+    private static void collectReachableNodesFrom(Set<OpGraphNode> nodes, OpGraphNode node) {
+        if (!nodes.add(node)) {
             return;
         }
-        nodes.add(node);
         
-        for (OpGraphEdge edge : node.getOutgoingEdges()) {
-            if (!edge.isOrdered()) {
-                collectReachableNodesFrom(nodes, edge.getDstNode());
+        Deque<OpGraphNode> stack = new ArrayDeque<OpGraphNode>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            OpGraphNode n = stack.pop();
+            for (OpGraphEdge edge : n.getOutgoingEdges()) {
+                if (!edge.isOrdered() && nodes.add(edge.getDstNode())) {
+                    stack.push(edge.getDstNode());
+                }
             }
         }
     }
     
     /**
      * Collects operation nodes that are connected to nodes in the slice, which have no backward edit edges. 
-     * @param nodes the collection of the nodes including the added nodes, which is to be returned
+     * @param nodes the set of the nodes including the added nodes, which is to be returned
      */
-    private static void collectNodesWithoutBackwardEdges(List<OpGraphNode> nodes) {
+    private static void collectNodesWithoutBackwardEdges(Set<OpGraphNode> nodes) {
         List<OpGraphNode> ns = new ArrayList<OpGraphNode>();
         for (OpGraphNode n : nodes) {
             for (OpGraphEdge e : n.getOutgoingEdges()) {
@@ -132,4 +148,224 @@ public class OpSlicer {
         }
         nodes.addAll(ns);
     }
+    
+    /**
+     * Obtains change operation nodes in a backward slice on a Java construct node of interest within a compact graph.
+     * @param graph the compact operation history graph
+     * @param jcid the number of the Java construct node
+     * @return the numbers of the change operation nodes in the backward slice, in the order of their time
+     */
+    public static int[] getOperationNodesInBackwardSlice(CompactOpGraph graph, int jcid) {
+        BitSet nodes = new BitSet(graph.size());
+        if (jcid >= 0) {
+            collectReachableNodes(graph, jcid, nodes, false);
+            collectNodesWithBackwardEdges(graph, nodes);
+        }
+        return graph.getOperationIds(nodes);
+    }
+    
+    /**
+     * Obtains change operation nodes in a forward slice on a Java construct node of interest within a compact graph.
+     * @param graph the compact operation history graph
+     * @param jcid the number of the Java construct node
+     * @return the numbers of the change operation nodes in the forward slice, in the order of their time
+     */
+    public static int[] getOperationNodesInForwardSlice(CompactOpGraph graph, int jcid) {
+        BitSet nodes = new BitSet(graph.size());
+        if (jcid >= 0) {
+            collectReachableNodes(graph, jcid, nodes, true);
+            collectNodesWithBackwardEdges(graph, nodes);
+        }
+        return graph.getOperationIds(nodes);
+    }
+    
+    /**
+     * Collects all nodes that reach or are reached from a specified node of a compact graph, through edges except
+     * ordered editing edges.
+     * @param graph the compact operation history graph
+     * @param id the number of the specified node
+     * @param nodes the set of the reachable nodes, which is to be returned
+     * @param forward <code>true</code> if the edges are traversed forward, or <code>false</code> if backward
+     */
+    private static void collectReachableNodes(CompactOpGraph graph, int id, BitSet nodes, boolean forward) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = id;
+        nodes.set(id);
+        while (top > 0) {
+            int node = stack[--top];
+            for (OpGraphEdge.Sort sort : OpGraphEdge.Sort.values()) {
+                if (sort == OpGraphEdge.Sort.ORDERED_EDITING) {
+                    continue;
+                }
+                int[] offsets = forward ? graph.getOutgoingOffsets(sort) : graph.getIncomingOffsets(sort);
+                int[] adjacents = forward ? graph.getOutgoingTargets(sort) : graph.getIncomingSources(sort);
+                for (int pos = offsets[node]; pos < offsets[node + 1]; pos++) {
+                    int next = adjacents[pos];
+                    if (!nodes.get(next)) {
+                        nodes.set(next);
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, top * 2);
+                        }
+                        stack[top++] = next;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Collects nodes that are connected from nodes in the slice through backward editing edges within a compact graph.
+     * @param graph the compact operation history graph
+     * @param nodes the set of the nodes including the added nodes, which is to be returned
+     */
+    private static void collectNodesWithBackwardEdges(CompactOpGraph graph, BitSet nodes) {
+        int[] offsets = graph.getOutgoingOffsets(OpGraphEdge.Sort.BACKWARD_EDITING);
+        int[] targets = graph.getOutgoingTargets(OpGraphEdge.Sort.BACKWARD_EDITING);
+        BitSet ns = new BitSet(graph.size());
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            for (int pos = offsets[node]; pos < offsets[node + 1]; pos++) {
+                ns.set(targets[pos]);
+            }
+        }
+        nodes.or(ns);
+    }
+    
+    /**
+     * Obtains change operation nodes in backward slices on Java construct nodes within a compact graph at once.
+     * @param graph the compact operation history graph
+     * @param jcids the numbers of the Java construct nodes
+     * @return the numbers of the change operation nodes in each backward slice, in the order of their time
+     */
+    public static int[][] getOperationNodesInBackwardSlices(CompactOpGraph graph, int[] jcids) {
+        return getOperationNodesInSlices(graph, jcids, false);
+    }
+    
+    /**
+     * Obtains change operation nodes in forward slices on Java construct nodes within a compact graph at once.
+     * @param graph the compact operation history graph
+     * @param jcids the numbers of the Java construct nodes
+     * @return the numbers of the change operation nodes in each forward slice, in the order of their time
+     */
+    public static int[][] getOperationNodesInForwardSlices(CompactOpGraph graph, int[] jcids) {
+        return getOperationNodesInSlices(graph, jcids, true);
+    }
+    
+    /**
+     * Obtains change operation nodes in slices on Java construct nodes within a compact graph at once.
+     * Up to 64 slices share a single traversal, in which each node holds a bit mask of the slices containing it.
+     * A node is visited again only when its mask gains a new slice.
+     * @param graph the compact operation history graph
+     * @param jcids the numbers of the Java construct nodes
+     * @param forward <code>true</code> for forward slices, or <code>false</code> for backward slices
+     * @return the numbers of the change operation nodes in each slice, in the order of their time
+     */
+    private static int[][] getOperationNodesInSlices(CompactOpGraph graph, int[] jcids, boolean forward) {
+        int[][] slices = new int[jcids.length][];
+        for (int first = 0; first < jcids.length; first += Long.SIZE) {
+            int last = Math.min(first + Long.SIZE, jcids.length);
+            long[] masks = new long[graph.size()];
+            int[] queue = new int[16];
+            int head = 0;
+            int tail = 0;
+            BitSet queued = new BitSet(graph.size());
+            for (int idx = first; idx < last; idx++) {
+                int id = jcids[idx];
+                if (id >= 0) {
+                    masks[id] |= 1L << (idx - first);
+                    if (!queued.get(id)) {
+                        queued.set(id);
+                        queue = push(queue, tail++, id);
+                    }
+                }
+            }
+            
+            while (head < tail) {
+                int node = queue[head++];
+                queued.clear(node);
+                long mask = masks[node];
+                for (OpGraphEdge.Sort sort : OpGraphEdge.Sort.values()) {
+                    if (sort == OpGraphEdge.Sort.ORDERED_EDITING) {
+                        continue;
+                    }
+                    int[] offsets = forward ? graph.getOutgoingOffsets(sort) : graph.getIncomingOffsets(sort);
+                    int[] adjacents = forward ? graph.getOutgoingTargets(sort) : graph.getIncomingSources(sort);
+                    for (int pos = offsets[node]; pos < offsets[node + 1]; pos++) {
+                        int next = adjacents[pos];
+                        if ((masks[next] | mask) != masks[next]) {
+                            masks[next] |= mask;
+                            if (!queued.get(next)) {
+                                queued.set(next);
+                                if (tail == queue.length && head > 0) {
+                                    System.arraycopy(queue, head, queue, 0, tail - head);
+                                    tail = tail - head;
+                                    head = 0;
+                                }
+                                queue = push(queue, tail++, next);
+                            }
+                        }
+                    }
+                }
+            }
+            
+            long[] results = Arrays.copyOf(masks, masks.length);
+            int[] offsets = graph.getOutgoingOffsets(OpGraphEdge.Sort.BACKWARD_EDITING);
+            int[] targets = graph.getOutgoingTargets(OpGraphEdge.Sort.BACKWARD_EDITING);
+            for (int node = 0; node < masks.length; node++) {
+                if (masks[node] != 0) {
+                    for (int pos = offsets[node]; pos < offsets[node + 1]; pos++) {
+                        results[targets[pos]] |= masks[node];
+                    }
+                }
+            }
+            collectSlices(graph, results, slices, first, last);
+        }
+        return slices;
+    }
+    
+    /**
+     * Stores a node number into a queue, enlarging the queue if it is full.
+     * @param queue the queue
+     * @param pos the position to store the node number
+     * @param id the node number
+     * @return the queue, which may be a new array
+     */
+    private static int[] push(int[] queue, int pos, int id) {
+        if (pos == queue.length) {
+            queue = Arrays.copyOf(queue, pos * 2);
+        }
+        queue[pos] = id;
+        return queue;
+    }
+    
+    /**
+     * Collects the change operation nodes in slices from the bit masks of the nodes.
+     * @param graph the compact operation history graph
+     * @param masks the bit masks of the slices containing each node
+     * @param slices the numbers of the change operation nodes in each slice, which are to be returned
+     * @param first the index number of the slice corresponding to the lowest bit
+     * @param last the index number next to the slice corresponding to the highest bit
+     */
+    private static void collectSlices(CompactOpGraph graph, long[] masks, int[][] slices, int first, int last) {
+        int[] counts = new int[last - first];
+        for (int node = 0; node < masks.length; node++) {
+            if (masks[node] != 0 && graph.isOperation(node)) {
+                for (long bits = masks[node]; bits != 0; bits &= bits - 1) {
+                    counts[Long.numberOfTrailingZeros(bits)]++;
+                }
+            }
+        }
+        for (int idx = first; idx < last; idx++) {
+            slices[idx] = new int[counts[idx - first]];
+            counts[idx - first] = 0;
+        }
+        for (int node = 0; node < masks.length; node++) {
+            if (masks[node] != 0 && graph.isOperation(node)) {
+                for (long bits = masks[node]; bits != 0; bits &= bits - 1) {
+                    int bit = Long.numberOfTrailingZeros(bits);
+                    slices[first + bit][counts[bit]++] = node;
+                }
+            }
+        }
+    }
 }
@@ -8,9 +8,15 @@ package org.jtool.changetracker.dependecygraph;
 
 import org.jtool.changetracker.operation.ICodeOperation;
 import org.jtool.changetracker.operation.CodeOperation;
-import org.jtool.changetracker.dependencyanalyzer.DependencyDetector;
+import org.jtool.changetracker.dependencyanalyzer.OffsetMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Deque;
+import java.util.ArrayDeque;
 
 /**
  * Slices an operation history graph, starting from a code snippet.
@@ -25,29 +31,38 @@ public class OpSlicerOnCodeSnippet {
      * @return the collection of the change operation nodes in the backward slice
      */
     static List<OperationNode> getOperationNodesInBackwardSlice(OpGraphForFile fgraph, CodeSnippet snippet) {
-        List<OperationNode> ns = new ArrayList<OperationNode>();
+        Set<OperationNode> nodes = new HashSet<OperationNode>();
         for (OperationNode node : getBackwardOperationNodes(fgraph, snippet)) {
-            collectReachableNodesTo(ns, node);
+            collectReachableNodesTo(nodes, node);
         }
         
+        List<OperationNode> ns = new ArrayList<OperationNode>(nodes);
         OpGraphNode.sortNodes(ns);
         return ns;
     }
     
     /**
      * Collects all nodes that reach a specified node of an operation history graph.
-     * @param nodes the collection of the reachable nodes, which is to be returned
+     * The graph is traversed with an explicit stack, so long chains of edges do not overflow the call stack.
+     * @param nodes the set of the reachable nodes, which is to be returned
      * @param node the specified node 
      */
-    private static void collectReachableNodesTo(List<OperationNode> nodes, OperationNode node) {
-        if (nodes.contains(node)) {
+    private static void collectReachableNodesTo(Set<OperationNode> nodes, OperationNode node) {
+        if (!nodes.add(node)) {
             return;
         }
-        nodes.add(node);
         
-        for (OpGraphEdge edge : node.getIncomingEdges()) {
-            if (edge.isOrdered() || edge.isCCP()) {
-                collectReachableNodesTo(nodes, (OperationNode)edge.getSrcNode());
+        Deque<OperationNode> stack = new ArrayDeque<OperationNode>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            OperationNode n = stack.pop();
+            for (OpGraphEdge edge : n.getIncomingEdges()) {
+                if (edge.isOrdered() || edge.isCCP()) {
+                    OperationNode next = (OperationNode)edge.getSrcNode();
+                    if (nodes.add(next)) {
+                        stack.push(next);
+                    }
+                }
             }
         }
     }
@@ -63,12 +78,9 @@ public class OpSlicerOnCodeSnippet {
         List<OperationNode> nodes = fgraph.getOperationNodesBefore(snippet.getTime());
         for (OperationNode node : nodes) {
             List<CodeOperation> ops = CodeOperation.getOperations(fgraph.getFile(), node.getTime(), snippet.getTime());
-            for (int o = snippet.getStart(); o < snippet.getStart() + snippet.getLength(); o++) {
-                int offset = DependencyDetector.adjustBackwardOffset(o, ops);
-                if (isIn(offset, node)) {
-                    ns.add(node);
-                    break;
-                }
+            OffsetMap map = OffsetMap.backward(ops);
+            if (isIn(map, snippet.getStart(), snippet.getStart() + snippet.getLength() - 1, node.getOperation())) {
+                ns.add(node);
             }
         }
         return ns;
@@ -81,29 +93,38 @@ public class OpSlicerOnCodeSnippet {
      * @return the collection of the change operation nodes in the backward slice
      */
     static List<OperationNode> getOperationNodesInForwardSlice(OpGraphForFile fgraph, CodeSnippet snippet) {
-        List<OperationNode> ns = new ArrayList<OperationNode>();
+        Set<OperationNode> nodes = new HashSet<OperationNode>();
         for (OperationNode node : getForwardOperationNodes(fgraph, snippet)) {
-            collectReachableNodesFrom(ns, node);
+            collectReachableNodesFrom(nodes, node);
         }
         
+        List<OperationNode> ns = new ArrayList<OperationNode>(nodes);
         OpGraphNode.sortNodes(ns);
         return ns;
     }
     
     /**
      * Collects all nodes that a specified node of an operation history graph reaches.
-     * @param nodes the collection of the reachable nodes, which is to be returned
+     * The graph is traversed with an explicit stack, so long chains of edges do not overflow the call stack.
+     * @param nodes the set of the reachable nodes, which is to be returned
      * @param node the specified node 
      */
-    private static void collectReachableNodesFrom(List<OperationNode> nodes, OperationNode node) {
-        if (nodes.contains(node)) {
+    private static void collectReachableNodesFrom(Set<OperationNode> nodes, OperationNode node) {
+        if (!nodes.add(node)) {
             return;
         }
-        nodes.add(node);
         
-        for (OpGraphEdge edge : node.getOutgoingEdges()) {
-            if (edge.isOrdered() || edge.isCCP()) {
-                collectReachableNodesFrom(nodes, (OperationNode)edge.getDstNode());
+        Deque<OperationNode> stack = new ArrayDeque<OperationNode>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            OperationNode n = stack.pop();
+            for (OpGraphEdge edge : n.getOutgoingEdges()) {
+                if (edge.isOrdered() || edge.isCCP()) {
+                    OperationNode next = (OperationNode)edge.getDstNode();
+                    if (nodes.add(next)) {
+                        stack.push(next);
+                    }
+                }
             }
         }
     }
@@ -119,32 +140,108 @@ public class OpSlicerOnCodeSnippet {
         List<OperationNode> nodes = fgraph.getOperationNodesAfter(snippet.getTime());
         for (OperationNode node : nodes) {
             List<CodeOperation> ops = CodeOperation.getOperations(fgraph.getFile(), node.getTime(), snippet.getTime());
-            for (int o = snippet.getStart(); o < snippet.getStart() + snippet.getLength(); o++) {
-                int offset = DependencyDetector.adjustForwardOffset(o, ops);
-                if (isIn(offset, node)) {
-                    ns.add(node);
-                    break;
-                }
+            OffsetMap map = OffsetMap.forward(ops);
+            if (isIn(map, snippet.getStart(), snippet.getStart() + snippet.getLength() - 1, node.getOperation())) {
+                ns.add(node);
             }
         }
         return ns;
     }
     
     /**
-     * Tests if the offset value is related to a change operation.
-     * @param offset the offset value to be checked
-     * @param node the node for the change operation
-     * @return <code>true</code> if the offset value is related to a change operation, otherwise <code<false</code>
+     * Obtains change operation nodes in a backward slice on a code snippet of interest within a compact graph.
+     * @param graph the compact operation history graph
+     * @param snippet the code snippet
+     * @return the numbers of the change operation nodes in the backward slice, in the order of their time
+     */
+    public static int[] getOperationNodesInBackwardSlice(CompactOpGraph graph, CodeSnippet snippet) {
+        BitSet nodes = new BitSet(graph.size());
+        for (int id = 0; id < graph.size(); id++) {
+            ICodeOperation op = graph.getOperation(id);
+            if (op != null && op.getFile() == snippet.getFile() && !op.getTime().isAfter(snippet.getTime())) {
+                List<CodeOperation> ops = CodeOperation.getOperations(snippet.getFile(), op.getTime(), snippet.getTime());
+                OffsetMap map = OffsetMap.backward(ops);
+                if (isIn(map, snippet.getStart(), snippet.getStart() + snippet.getLength() - 1, op)) {
+                    collectReachableNodes(graph, id, nodes, false);
+                }
+            }
+        }
+        return graph.getOperationIds(nodes);
+    }
+    
+    /**
+     * Obtains change operation nodes in a forward slice on a code snippet of interest within a compact graph.
+     * @param graph the compact operation history graph
+     * @param snippet the code snippet
+     * @return the numbers of the change operation nodes in the forward slice, in the order of their time
+     */
+    public static int[] getOperationNodesInForwardSlice(CompactOpGraph graph, CodeSnippet snippet) {
+        BitSet nodes = new BitSet(graph.size());
+        for (int id = 0; id < graph.size(); id++) {
+            ICodeOperation op = graph.getOperation(id);
+            if (op != null && op.getFile() == snippet.getFile() && !op.getTime().isBefore(snippet.getTime())) {
+                List<CodeOperation> ops = CodeOperation.getOperations(snippet.getFile(), op.getTime(), snippet.getTime());
+                OffsetMap map = OffsetMap.forward(ops);
+                if (isIn(map, snippet.getStart(), snippet.getStart() + snippet.getLength() - 1, op)) {
+                    collectReachableNodes(graph, id, nodes, true);
+                }
+            }
+        }
+        return graph.getOperationIds(nodes);
+    }
+    
+    /**
+     * Collects all nodes that reach or are reached from a specified node of a compact graph, through ordered editing
+     * edges and cut-copy-paste editing edges.
+     * @param graph the compact operation history graph
+     * @param id the number of the specified node
+     * @param nodes the set of the reachable nodes, which is to be returned
+     * @param forward <code>true</code> if the edges are traversed forward, or <code>false</code> if backward
+     */
+    private static void collectReachableNodes(CompactOpGraph graph, int id, BitSet nodes, boolean forward) {
+        if (nodes.get(id)) {
+            return;
+        }
+        OpGraphEdge.Sort[] sorts = { OpGraphEdge.Sort.ORDERED_EDITING, OpGraphEdge.Sort.CCP_EDITING };
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = id;
+        nodes.set(id);
+        while (top > 0) {
+            int node = stack[--top];
+            for (OpGraphEdge.Sort sort : sorts) {
+                int[] offsets = forward ? graph.getOutgoingOffsets(sort) : graph.getIncomingOffsets(sort);
+                int[] adjacents = forward ? graph.getOutgoingTargets(sort) : graph.getIncomingSources(sort);
+                for (int pos = offsets[node]; pos < offsets[node + 1]; pos++) {
+                    int next = adjacents[pos];
+                    if (!nodes.get(next)) {
+                        nodes.set(next);
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, top * 2);
+                        }
+                        stack[top++] = next;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Tests if any of offset values within a range is related to a change operation after the offset values are mapped.
+     * @param map the map that adjusts the offset values
+     * @param first the first offset value of the range
+     * @param last the last offset value of the range
+     * @param op the change operation
+     * @return <code>true</code> if any of the offset values is related to a change operation, otherwise <code<false</code>
      */
-    private static boolean isIn(int offset, OperationNode node) {
-        ICodeOperation op = node.getOperation();
-        if (op.getStart() < offset && offset < op.getStart() + op.getInsertedText().length()) {
+    private static boolean isIn(OffsetMap map, int first, int last, ICodeOperation op) {
+        if (map.mapsInto(first, last, op.getStart() + 1, op.getStart() + op.getInsertedText().length() - 1)) {
             return true;
         }
-        if (op.getStart() <= offset && offset < op.getStart() + op.getDeletedText().length()) {
+        if (map.mapsInto(first, last, op.getStart(), op.getStart() + op.getDeletedText().length() - 1)) {
             return true;
         }
-        if (op.getStart() <= offset && offset < op.getStart() + op.getCopiedText().length()) {
+        if (map.mapsInto(first, last, op.getStart(), op.getStart() + op.getCopiedText().length() - 1)) {
             return true;
         }
         return false;
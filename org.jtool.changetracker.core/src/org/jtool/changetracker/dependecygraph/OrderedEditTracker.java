@@ -0,0 +1,709 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.dependecygraph;
+
+import org.jtool.changetracker.operation.ChangeOperation;
+import org.jtool.changetracker.operation.CodeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.ICodeOperation;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.IdentityHashMap;
+
+/**
+ * Finds change operations that affect document operations of a file in one forward pass over its operation history.
+ * Each earlier document operation keeps the span of offset values at which its inserted or deleted text is touched
+ * in the code after the latest change operation, and the spans are adjusted by every subsequent change operation.
+ * The found operations are the same as the ones that <code>getAffectingOperations()</code> of each change operation returns.
+ * The spans are sorted by their offset values and divided into blocks, so a change operation only adjusts the spans
+ * around its start point one by one, and shifts the spans of the other blocks at once.
+ * @author Katsuhisa Maruyama
+ */
+class OrderedEditTracker {
+    
+    /**
+     * The kind of a span for a document operation that inserts any text.
+     */
+    private static final byte INSERTION = 0;
+    
+    /**
+     * The kind of a span for a document operation that only deletes any text.
+     */
+    private static final byte DELETION = 1;
+    
+    /**
+     * The number of the spans of a block, which is doubled before the block is split.
+     */
+    private static final int BLOCK_SIZE = 64;
+    
+    /**
+     * The offset value that is lower than any offset value.
+     */
+    private static final long LOWEST = Long.MIN_VALUE / 4;
+    
+    /**
+     * The change operations that have been processed in the order of the operation history.
+     */
+    private List<IChangeOperation> operations = new ArrayList<IChangeOperation>();
+    
+    /**
+     * The index number of the first change operation performed at the time of the last processed change operation.
+     */
+    private int groupStart = -1;
+    
+    /**
+     * The number of the change operations that have adjusted the spans.
+     * The adjustment by change operations performed at the same time as the first one of them is deferred,
+     * since the spans are looked up just after the first one.
+     */
+    private int numOfAdjusted = 0;
+    
+    /**
+     * The spans that are not adjusted by some of the change operations to be adjusted next, in the order of the operations.
+     */
+    private SpanBlock pending = new SpanBlock(BLOCK_SIZE);
+    
+    /**
+     * The blocks of the spans that are adjusted by every change operation, in ascending order of the spans.
+     */
+    private List<SpanBlock> blocks = new ArrayList<SpanBlock>();
+    
+    /**
+     * The maximum length of deleted text of the spans for document operations that only delete any text.
+     */
+    private int maxDeletionLength = 0;
+    
+    /**
+     * The index numbers of the cut or copy operations that a paste operation might depend on.
+     */
+    private List<Integer> cutOrCopyIndices = new ArrayList<Integer>();
+    
+    /**
+     * The map of document operations and the change operations that affect them, which have not been taken yet.
+     */
+    private Map<IChangeOperation, List<ICodeOperation>> results = new IdentityHashMap<IChangeOperation, List<ICodeOperation>>();
+    
+    /**
+     * Creates a tracker that has processed no change operation.
+     */
+    OrderedEditTracker() {
+    }
+    
+    /**
+     * Processes change operations that have not been processed yet, and finds the change operations affecting them.
+     * The change operations that have been processed must not be changed in the given operation history.
+     * @param ops the operation history of a file in time order
+     */
+    void advance(List<IChangeOperation> ops) {
+        for (int idx = operations.size(); idx < ops.size(); idx++) {
+            IChangeOperation op = ops.get(idx);
+            operations.add(op);
+            
+            if (groupStart < 0 || !op.getTime().toInstant().equals(operations.get(groupStart).getTime().toInstant())) {
+                while (numOfAdjusted < idx) {
+                    adjust();
+                }
+                groupStart = idx;
+                adjust();
+            }
+            
+            if (op.isDocument()) {
+                register(idx, (DocumentOperation)op);
+            }
+            if (op instanceof DocumentOperation) {
+                results.put(op, find((DocumentOperation)op));
+            }
+        }
+    }
+    
+    /**
+     * Takes change operations that affect a given change operation, which are forgotten by this tracker.
+     * The affecting operations of a change operation other than the processed document operations are obtained
+     * from the change operation itself.
+     * @param op the change operation
+     * @return the collection of the affecting change operations
+     */
+    List<ICodeOperation> takeAffectingOperations(IChangeOperation op) {
+        List<ICodeOperation> ops = results.remove(op);
+        if (ops != null) {
+            return ops;
+        }
+        return op.getAffectingOperations();
+    }
+    
+    /**
+     * Registers the span of a document operation.
+     * The span is adjusted from the second change operation after the first one performed at the same time.
+     * @param idx the index number of the document operation
+     * @param op the document operation
+     */
+    private void register(int idx, DocumentOperation op) {
+        int start = op.getStart();
+        int ilen = op.getInsertedText().length();
+        int dlen = op.getDeletedText().length();
+        if (ilen > 0) {
+            pending.add(pending.size, idx, INSERTION, groupStart + 2, start + 1, start, start + ilen - 1, 0);
+        } else if (dlen > 0) {
+            pending.add(pending.size, idx, DELETION, groupStart + 2, start, start, start + dlen, dlen);
+            maxDeletionLength = Math.max(maxDeletionLength, dlen);
+        }
+        
+        if (op.isCut() || op.isCopy()) {
+            cutOrCopyIndices.add(idx);
+        }
+    }
+    
+    /**
+     * Adjusts the spans across the next change operation, and moves the pending spans that are adjusted by all
+     * the subsequent change operations into the blocks.
+     */
+    private void adjust() {
+        int idx = numOfAdjusted;
+        numOfAdjusted++;
+        
+        IChangeOperation op = operations.get(idx);
+        if (op.isDocumentOrCopy()) {
+            CodeOperation cop = (CodeOperation)op;
+            int start = cop.getStart();
+            int shift = cop.getDeletedText().length() - cop.getInsertedText().length();
+            if (shift != 0) {
+                for (SpanBlock block : blocks) {
+                    block.adjust(start, shift);
+                }
+                pending.adjustExactly(start, shift, idx);
+            }
+        }
+        
+        int num = 0;
+        while (num < pending.size && pending.activations[num] <= numOfAdjusted) {
+            insert(pending.indices[num], pending.kinds[num],
+                   pending.lows[num], pending.bases[num], pending.highs[num], pending.lengths[num]);
+            num++;
+        }
+        pending.removeFirst(num);
+    }
+    
+    /**
+     * Inserts a span into the blocks in ascending order of the spans.
+     * @param idx the index number of the document operation that has the span
+     * @param kind the kind of the span
+     * @param low the first offset value at which the text is touched by insertion or before which it is touched by deletion
+     * @param base the first offset value at which the text is touched by deletion
+     * @param high the last offset value at which the text is touched or after which the end of it is touched by deletion
+     * @param length the length of the deleted text
+     */
+    private void insert(int idx, byte kind, long low, long base, long high, int length) {
+        if (blocks.isEmpty()) {
+            blocks.add(new SpanBlock(BLOCK_SIZE * 2));
+        }
+        int bidx = 0;
+        while (bidx < blocks.size() - 1 &&
+               (blocks.get(bidx).size == 0 || blocks.get(bidx).getBase(blocks.get(bidx).size - 1) < base)) {
+            bidx++;
+        }
+        
+        SpanBlock block = blocks.get(bidx);
+        block.push();
+        int pos = block.size;
+        while (pos > 0 && block.bases[pos - 1] > base) {
+            pos--;
+        }
+        block.add(pos, idx, kind, 0, low, base, high, length);
+        if (block.size >= BLOCK_SIZE * 2) {
+            blocks.add(bidx + 1, block.split());
+        }
+    }
+    
+    /**
+     * Finds change operations that affect a document operation among the ones performed before it.
+     * @param op the document operation
+     * @return the collection of the affecting change operations in time order
+     */
+    private List<ICodeOperation> find(DocumentOperation op) {
+        boolean paste = op.isPaste();
+        ICodeOperation cc = op.getCutOrCopyOperationForPaste();
+        int start = op.getStart();
+        int ilen = op.getInsertedText().length();
+        int dlen = op.getDeletedText().length();
+        
+        IndexList found = new IndexList();
+        long limit = (long)start + Math.max(dlen, maxDeletionLength);
+        for (SpanBlock block : blocks) {
+            if (block.size == 0) {
+                continue;
+            }
+            if (block.getBase(0) > limit) {
+                break;
+            }
+            if (block.maxInsertionUpper < start && block.getBase(block.size - 1) <= start) {
+                continue;
+            }
+            for (int sdx = 0; sdx < block.size && block.getBase(sdx) <= limit; sdx++) {
+                if (block.touches(sdx, start, ilen, dlen) && !(paste && isCutOrCopy(block.indices[sdx]))) {
+                    found.add(block.indices[sdx]);
+                }
+            }
+        }
+        for (int sdx = 0; sdx < pending.size && pending.indices[sdx] < groupStart; sdx++) {
+            if (pending.touches(sdx, start, ilen, dlen) && !(paste && isCutOrCopy(pending.indices[sdx]))) {
+                found.add(pending.indices[sdx]);
+            }
+        }
+        if (cc != null) {
+            for (int idx : cutOrCopyIndices) {
+                if (idx >= groupStart) {
+                    break;
+                }
+                if (cc.equals(operations.get(idx))) {
+                    found.add(idx);
+                }
+            }
+        }
+        
+        int[] indices = found.toSortedArray();
+        List<ICodeOperation> ops = new ArrayList<ICodeOperation>(indices.length + 1);
+        for (int idx : indices) {
+            ops.add((ICodeOperation)operations.get(idx));
+        }
+        if (cc != null) {
+            ops.add(cc);
+            ChangeOperation.sort(ops);
+        }
+        return ops;
+    }
+    
+    /**
+     * Tests if a change operation is a cut or copy operation.
+     * @param idx the index number of the change operation
+     * @return <code>true</code> if the change operation is a cut or copy operation, otherwise <code>false</code>
+     */
+    private boolean isCutOrCopy(int idx) {
+        ICodeOperation op = (ICodeOperation)operations.get(idx);
+        return op.isCut() || op.isCopy();
+    }
+    
+    /**
+     * Adjusts the offset value from which offset values are mapped to a given offset value or after
+     * by <code>OffsetMap.backward()</code> for a change operation.
+     * @param offset the offset value before the adjustment
+     * @param start the start point of the change operation
+     * @param shift the length of the deleted text minus the length of the inserted text
+     * @return the adjusted offset value
+     */
+    private static long lower(long offset, int start, int shift) {
+        if (shift > 0) {
+            return offset < start ? offset : Math.max(start, offset - shift);
+        }
+        return offset <= start ? offset : offset - shift;
+    }
+    
+    /**
+     * Adjusts the offset value up to which offset values are mapped to a given offset value or before
+     * by <code>OffsetMap.backward()</code> for a change operation.
+     * @param offset the offset value before the adjustment
+     * @param start the start point of the change operation
+     * @param shift the length of the deleted text minus the length of the inserted text
+     * @return the adjusted offset value
+     */
+    private static long upper(long offset, int start, int shift) {
+        if (shift > 0) {
+            return offset < start ? offset : Math.max(offset - shift, (long)start - 1);
+        }
+        return offset < start ? offset : offset - shift;
+    }
+    
+    /**
+     * Stores spans in parallel arrays. The offset values of the spans are shifted lazily, each of which is moved to
+     * the greater of the offset value plus the amount of the shift and the bound.
+     */
+    private static class SpanBlock {
+        
+        /**
+         * The number of the spans.
+         */
+        int size = 0;
+        
+        /**
+         * The index numbers of the document operations that have the spans.
+         */
+        int[] indices;
+        
+        /**
+         * The kinds of the spans.
+         */
+        byte[] kinds;
+        
+        /**
+         * The index numbers of the first change operations that adjust the spans.
+         */
+        int[] activations;
+        
+        /**
+         * The first offset values at which inserted text is touched by insertion,
+         * or the offset values before which deleted text is touched by deletion.
+         */
+        long[] lows;
+        
+        /**
+         * The first offset values at which inserted text is touched by deletion, which equal to the offset values
+         * before which deleted text is touched by deletion.
+         */
+        long[] bases;
+        
+        /**
+         * The last offset values at which inserted text is touched,
+         * or the offset values after which the end of deleted text is touched by deletion.
+         */
+        long[] highs;
+        
+        /**
+         * The lengths of deleted text of the document operations that only delete any text.
+         */
+        int[] lengths;
+        
+        /**
+         * The amount of the lazy shift of the low and base offset values.
+         */
+        long lowerShift = 0;
+        
+        /**
+         * The bound of the lazy shift of the low and base offset values.
+         */
+        long lowerBound = LOWEST;
+        
+        /**
+         * The amount of the lazy shift of the high offset values.
+         */
+        long upperShift = 0;
+        
+        /**
+         * The bound of the lazy shift of the high offset values.
+         */
+        long upperBound = LOWEST;
+        
+        /**
+         * The minimum of the low and base offset values.
+         */
+        long minLower;
+        
+        /**
+         * The maximum of the low and base offset values.
+         */
+        long maxLower;
+        
+        /**
+         * The minimum of the high offset values.
+         */
+        long minUpper;
+        
+        /**
+         * The maximum of the high offset values.
+         */
+        long maxUpper;
+        
+        /**
+         * The maximum of the high offset values of the spans for document operations that insert any text.
+         */
+        long maxInsertionUpper;
+        
+        /**
+         * Creates an empty block.
+         * @param capacity the initial capacity for the spans
+         */
+        SpanBlock(int capacity) {
+            indices = new int[capacity];
+            kinds = new byte[capacity];
+            activations = new int[capacity];
+            lows = new long[capacity];
+            bases = new long[capacity];
+            highs = new long[capacity];
+            lengths = new int[capacity];
+        }
+        
+        /**
+         * Inserts a span into this block whose offset values have been shifted.
+         * @param pos the position of the inserted span
+         * @param idx the index number of the document operation that has the span
+         * @param kind the kind of the span
+         * @param activation the index number of the first change operation that adjusts the span
+         * @param low the first offset value at which the text is touched by insertion or before which it is touched by deletion
+         * @param base the first offset value at which the text is touched by deletion
+         * @param high the last offset value at which the text is touched or after which the end of it is touched by deletion
+         * @param length the length of the deleted text
+         */
+        void add(int pos, int idx, byte kind, int activation, long low, long base, long high, int length) {
+            if (size == indices.length) {
+                int capacity = size * 2;
+                indices = Arrays.copyOf(indices, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                activations = Arrays.copyOf(activations, capacity);
+                lows = Arrays.copyOf(lows, capacity);
+                bases = Arrays.copyOf(bases, capacity);
+                highs = Arrays.copyOf(highs, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            move(pos, pos + 1, size - pos);
+            indices[pos] = idx;
+            kinds[pos] = kind;
+            activations[pos] = activation;
+            lows[pos] = low;
+            bases[pos] = base;
+            highs[pos] = high;
+            lengths[pos] = length;
+            size++;
+            
+            if (size == 1) {
+                minLower = Math.min(low, base);
+                maxLower = Math.max(low, base);
+                minUpper = high;
+                maxUpper = high;
+                maxInsertionUpper = LOWEST;
+            } else {
+                minLower = Math.min(minLower, Math.min(low, base));
+                maxLower = Math.max(maxLower, Math.max(low, base));
+                minUpper = Math.min(minUpper, high);
+                maxUpper = Math.max(maxUpper, high);
+            }
+            if (kind == INSERTION) {
+                maxInsertionUpper = Math.max(maxInsertionUpper, high);
+            }
+        }
+        
+        /**
+         * Moves spans within this block.
+         * @param from the position of the first span to be moved
+         * @param to the position to which the first span is moved
+         * @param num the number of the moved spans
+         */
+        private void move(int from, int to, int num) {
+            System.arraycopy(indices, from, indices, to, num);
+            System.arraycopy(kinds, from, kinds, to, num);
+            System.arraycopy(activations, from, activations, to, num);
+            System.arraycopy(lows, from, lows, to, num);
+            System.arraycopy(bases, from, bases, to, num);
+            System.arraycopy(highs, from, highs, to, num);
+            System.arraycopy(lengths, from, lengths, to, num);
+        }
+        
+        /**
+         * Removes the first spans of this block.
+         * @param num the number of the removed spans
+         */
+        void removeFirst(int num) {
+            if (num > 0) {
+                move(num, 0, size - num);
+                size = size - num;
+                updateBounds();
+            }
+        }
+        
+        /**
+         * Splits this block into two blocks.
+         * @return the block that stores the latter half of the spans
+         */
+        SpanBlock split() {
+            push();
+            int half = size / 2;
+            SpanBlock block = new SpanBlock(indices.length);
+            for (int sdx = half; sdx < size; sdx++) {
+                block.add(block.size, indices[sdx], kinds[sdx], activations[sdx],
+                          lows[sdx], bases[sdx], highs[sdx], lengths[sdx]);
+            }
+            size = half;
+            updateBounds();
+            return block;
+        }
+        
+        /**
+         * Returns the base offset value of a span.
+         * @param sdx the position of the span
+         * @return the shifted offset value
+         */
+        long getBase(int sdx) {
+            return Math.max(bases[sdx] + lowerShift, lowerBound);
+        }
+        
+        /**
+         * Applies the lazy shift to all the spans of this block.
+         */
+        void push() {
+            if (lowerShift == 0 && lowerBound == LOWEST && upperShift == 0 && upperBound == LOWEST) {
+                return;
+            }
+            for (int sdx = 0; sdx < size; sdx++) {
+                lows[sdx] = Math.max(lows[sdx] + lowerShift, lowerBound);
+                bases[sdx] = Math.max(bases[sdx] + lowerShift, lowerBound);
+                highs[sdx] = Math.max(highs[sdx] + upperShift, upperBound);
+            }
+            lowerShift = 0;
+            lowerBound = LOWEST;
+            upperShift = 0;
+            upperBound = LOWEST;
+        }
+        
+        /**
+         * Adjusts the spans of this block across a change operation.
+         * All the spans are shifted lazily if all their offset values are after the start point of the change operation.
+         * @param start the start point of the change operation
+         * @param shift the length of the deleted text minus the length of the inserted text
+         */
+        void adjust(int start, int shift) {
+            if (size == 0 || (maxLower < start && maxUpper < start)) {
+                return;
+            }
+            
+            if (minLower > start && minUpper >= start) {
+                if (shift > 0) {
+                    lowerShift = lowerShift - shift;
+                    lowerBound = Math.max(lowerBound - shift, start);
+                    upperShift = upperShift - shift;
+                    upperBound = Math.max(upperBound - shift, (long)start - 1);
+                    minLower = Math.max(minLower - shift, start);
+                    maxLower = Math.max(maxLower - shift, start);
+                    minUpper = Math.max(minUpper - shift, (long)start - 1);
+                    maxUpper = Math.max(maxUpper - shift, (long)start - 1);
+                    if (maxInsertionUpper != LOWEST) {
+                        maxInsertionUpper = Math.max(maxInsertionUpper - shift, (long)start - 1);
+                    }
+                } else {
+                    lowerShift = lowerShift - shift;
+                    lowerBound = Math.max(lowerBound - shift, LOWEST);
+                    upperShift = upperShift - shift;
+                    upperBound = Math.max(upperBound - shift, LOWEST);
+                    minLower = minLower - shift;
+                    maxLower = maxLower - shift;
+                    minUpper = minUpper - shift;
+                    maxUpper = maxUpper - shift;
+                    if (maxInsertionUpper != LOWEST) {
+                        maxInsertionUpper = maxInsertionUpper - shift;
+                    }
+                }
+            } else {
+                push();
+                adjustExactly(start, shift, Integer.MAX_VALUE);
+            }
+        }
+        
+        /**
+         * Adjusts the spans of this block one by one across a change operation, and removes the spans of inserted text
+         * that is no longer touched. This block must not have any lazy shift.
+         * @param start the start point of the change operation
+         * @param shift the length of the deleted text minus the length of the inserted text
+         * @param idx the index number of the change operation, which does not adjust the spans activated after it
+         */
+        void adjustExactly(int start, int shift, int idx) {
+            int num = 0;
+            for (int sdx = 0; sdx < size; sdx++) {
+                if (activations[sdx] <= idx) {
+                    lows[sdx] = lower(lows[sdx], start, shift);
+                    bases[sdx] = lower(bases[sdx], start, shift);
+                    highs[sdx] = upper(highs[sdx], start, shift);
+                    if (kinds[sdx] == INSERTION && bases[sdx] > highs[sdx]) {
+                        continue;
+                    }
+                }
+                if (num < sdx) {
+                    indices[num] = indices[sdx];
+                    kinds[num] = kinds[sdx];
+                    activations[num] = activations[sdx];
+                    lows[num] = lows[sdx];
+                    bases[num] = bases[sdx];
+                    highs[num] = highs[sdx];
+                    lengths[num] = lengths[sdx];
+                }
+                num++;
+            }
+            size = num;
+            updateBounds();
+        }
+        
+        /**
+         * Updates the minimum and maximum offset values of the spans of this block.
+         */
+        private void updateBounds() {
+            minLower = Long.MAX_VALUE;
+            maxLower = Long.MIN_VALUE;
+            minUpper = Long.MAX_VALUE;
+            maxUpper = Long.MIN_VALUE;
+            maxInsertionUpper = LOWEST;
+            for (int sdx = 0; sdx < size; sdx++) {
+                long low = Math.max(lows[sdx] + lowerShift, lowerBound);
+                long base = Math.max(bases[sdx] + lowerShift, lowerBound);
+                long high = Math.max(highs[sdx] + upperShift, upperBound);
+                minLower = Math.min(minLower, Math.min(low, base));
+                maxLower = Math.max(maxLower, Math.max(low, base));
+                minUpper = Math.min(minUpper, high);
+                maxUpper = Math.max(maxUpper, high);
+                if (kinds[sdx] == INSERTION) {
+                    maxInsertionUpper = Math.max(maxInsertionUpper, high);
+                }
+            }
+        }
+        
+        /**
+         * Tests if a document operation touches the text of a span.
+         * @param sdx the position of the span
+         * @param start the start point of the document operation
+         * @param ilen the length of the text inserted by the document operation
+         * @param dlen the length of the text deleted by the document operation
+         * @return <code>true</code> if the document operation touches the text, otherwise <code>false</code>
+         */
+        boolean touches(int sdx, int start, int ilen, int dlen) {
+            long low = Math.max(lows[sdx] + lowerShift, lowerBound);
+            long base = Math.max(bases[sdx] + lowerShift, lowerBound);
+            long high = Math.max(highs[sdx] + upperShift, upperBound);
+            if (kinds[sdx] == INSERTION) {
+                if (ilen > 0 && low <= start && start <= high) {
+                    return true;
+                }
+                return dlen > 0 && base <= high && start <= high && (long)start + dlen >= base;
+            }
+            return dlen > 0 && start < low && (long)start + lengths[sdx] > high;
+        }
+    }
+    
+    /**
+     * Stores index numbers of change operations.
+     */
+    private static class IndexList {
+        
+        /**
+         * The index numbers.
+         */
+        private int[] indices = new int[4];
+        
+        /**
+         * The number of the index numbers.
+         */
+        private int size = 0;
+        
+        /**
+         * Adds an index number.
+         * @param idx the index number
+         */
+        void add(int idx) {
+            if (size == indices.length) {
+                indices = Arrays.copyOf(indices, size * 2);
+            }
+            indices[size] = idx;
+            size++;
+        }
+        
+        /**
+         * Returns the index numbers in ascending order.
+         * @return the array of the index numbers
+         */
+        int[] toSortedArray() {
+            int[] sorted = Arrays.copyOf(indices, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import org.jtool.changetracker.repository.CTFile;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.BitSet;
 
 /**
  * Detects dependency edges of an operation history graph.
@@ -71,28 +72,24 @@ public class DependencyDetector {
             return;
         }
         
-        List<CodeOperation> aops = new ArrayList<CodeOperation>(ops);
+        JavaConstructIndex index = sn.getJavaConstructIndex();
+        BitSet marks = new BitSet(index.size());
         for (int idx = 0; idx < ops.size(); idx++) {
             CodeOperation op = ops.get(idx);
-            aops.remove(0);
+            List<CodeOperation> aops = ops.subList(idx + 1, ops.size());
             
-            List<JavaConstruct> cons = new ArrayList<JavaConstruct>();
-            for (JavaConstruct con : sn.getJavaConstructs()) {
-                int len = getLengthOfDeletedOrCopiedText(op);
-                for (int offset = op.getStart(); offset < op.getStart() + len; offset++) {
-                    int aoffset = adjustBackwardOffset(offset, aops);
-                    if (con.inRangeForDeletion(aoffset) && !cons.contains(con)) {
-                        cons.add(con);
-                    }
-                }
-                if (op.getInsertedText().length() != 0) {
-                    int aoffset = adjustBackwardOffset(op.getStart(), aops);
-                    if (con.inRangeForInsertion(aoffset) && !cons.contains(con)) {
-                        cons.add(con);
-                    }
+            marks.clear();
+            int len = getLengthOfDeletedOrCopiedText(op);
+            if (len != 0) {
+                for (int[] range : adjustBackwardRange(op.getStart(), op.getStart() + len - 1, aops)) {
+                    index.collectForDeletion(range[0], range[1], marks);
                 }
             }
-            op.setBackwardJavaConstructs(cons);
+            if (op.getInsertedText().length() != 0) {
+                int aoffset = adjustBackwardOffset(op.getStart(), aops);
+                index.collectForInsertion(aoffset, aoffset, marks);
+            }
+            op.setBackwardJavaConstructs(index.getJavaConstructs(marks));
         }
     }
     
@@ -106,28 +103,24 @@ public class DependencyDetector {
             return;
         }
         
-        List<CodeOperation> aops = new ArrayList<CodeOperation>(ops);
+        JavaConstructIndex index = sn.getJavaConstructIndex();
+        BitSet marks = new BitSet(index.size());
         for (int idx = 0; idx < ops.size(); idx++) {
             CodeOperation op = ops.get(idx);
-            aops.remove(0);
+            List<CodeOperation> aops = ops.subList(idx + 1, ops.size());
             
-            List<JavaConstruct> cons = new ArrayList<JavaConstruct>();
-            for (JavaConstruct con : sn.getJavaConstructs()) {
-                int len = op.getInsertedText().length();
-                for (int offset = op.getStart(); offset < op.getStart() + len; offset++) {
-                    int aoffset = adjustForwardOffset(offset, aops);
-                    if (con.inRangeForInsertion(aoffset) && !cons.contains(con)) {
-                        cons.add(con);
-                    }
-                }
-                if (op.getDeletedText().length() != 0) {
-                    int aoffset = adjustBackwardOffset(op.getStart(), aops);
-                    if (con.inRangeForDeletion(aoffset) && !cons.contains(con)) {
-                        cons.add(con);
-                    }
+            marks.clear();
+            int len = op.getInsertedText().length();
+            if (len != 0) {
+                for (int[] range : adjustForwardRange(op.getStart(), op.getStart() + len - 1, aops)) {
+                    index.collectForInsertion(range[0], range[1], marks);
                 }
             }
-            op.setForwardJavaConstructs(cons);
+            if (op.getDeletedText().length() != 0) {
+                int aoffset = adjustBackwardOffset(op.getStart(), aops);
+                index.collectForDeletion(aoffset, aoffset, marks);
+            }
+            op.setForwardJavaConstructs(index.getJavaConstructs(marks));
         }
     }
     
@@ -186,6 +179,87 @@ public class DependencyDetector {
         return offset;
     }
     
+    /**
+     * Adjusts the offset values within a range based on the related operations.
+     * The resulting set equals the set of the values that <code>adjustBackwardOffset()</code> returns for the offset
+     * values within the range.
+     * @param first the first offset value of the range
+     * @param last the last offset value of the range
+     * @param ops the operations related to the adjustment
+     * @return the sorted and disjoint ranges of the offset values after the adjustment
+     */
+    static List<int[]> adjustBackwardRange(int first, int last, List<CodeOperation> ops) {
+        List<int[]> ranges = new ArrayList<int[]>();
+        ranges.add(new int[] { first, last });
+        for (int idx = ops.size() - 1; idx >= 0; idx--) {
+            CodeOperation op = ops.get(idx);
+            ranges = adjustRanges(ranges, op.getStart(), op.getDeletedText().length() - op.getInsertedText().length());
+        }
+        return ranges;
+    }
+    
+    /**
+     * Adjusts the offset values within a range based on the related operations.
+     * The resulting set equals the set of the values that <code>adjustForwardOffset()</code> returns for the offset
+     * values within the range.
+     * @param first the first offset value of the range
+     * @param last the last offset value of the range
+     * @param ops the operations related to the adjustment
+     * @return the sorted and disjoint ranges of the offset values after the adjustment
+     */
+    static List<int[]> adjustForwardRange(int first, int last, List<CodeOperation> ops) {
+        List<int[]> ranges = new ArrayList<int[]>();
+        ranges.add(new int[] { first, last });
+        for (int idx = 0; idx < ops.size(); idx++) {
+            CodeOperation op = ops.get(idx);
+            ranges = adjustRanges(ranges, op.getStart(), op.getInsertedText().length() - op.getDeletedText().length());
+        }
+        return ranges;
+    }
+    
+    /**
+     * Adjusts the offset values within ranges based on a single operation.
+     * An offset value at the start point of the operation or after is shifted but not moved before the start point.
+     * Since the adjustment keeps the order of offset values, the resulting ranges are still sorted.
+     * @param ranges the sorted and disjoint ranges of the offset values
+     * @param start the start point of the operation
+     * @param shift the amount of the shift
+     * @return the sorted and disjoint ranges of the offset values after the adjustment
+     */
+    private static List<int[]> adjustRanges(List<int[]> ranges, int start, int shift) {
+        List<int[]> result = new ArrayList<int[]>(ranges.size() + 1);
+        for (int[] range : ranges) {
+            if (range[1] < start) {
+                appendRange(result, range[0], range[1]);
+            } else {
+                if (range[0] < start) {
+                    appendRange(result, range[0], start - 1);
+                }
+                int lo = Math.max(start, Math.max(range[0], start) + shift);
+                int hi = Math.max(start, range[1] + shift);
+                appendRange(result, lo, hi);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Appends a range to sorted ranges, merging it with the last range if they overlap or adjoin.
+     * @param ranges the sorted and disjoint ranges
+     * @param lo the first value of the appended range
+     * @param hi the last value of the appended range
+     */
+    private static void appendRange(List<int[]> ranges, int lo, int hi) {
+        if (!ranges.isEmpty()) {
+            int[] last = ranges.get(ranges.size() - 1);
+            if (lo <= last[1] + 1) {
+                last[1] = Math.max(last[1], hi);
+                return;
+            }
+        }
+        ranges.add(new int[] { lo, hi });
+    }
+    
     /**
      * Obtains the collection of code change operations from change operations.
      * @param ops the collection of change operations
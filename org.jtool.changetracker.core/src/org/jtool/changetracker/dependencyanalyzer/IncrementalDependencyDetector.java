@@ -0,0 +1,231 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.dependencyanalyzer;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import org.jtool.changetracker.repository.CTFile;
+import java.util.Map;
+import java.util.IdentityHashMap;
+
+/**
+ * Detects Java constructs affected by change operations only at meaningful boundaries of the history.
+ * A file is parsed when it is saved or closed, when a quiet period follows a burst of edits, or when a burst of edits
+ * is long enough to be checked for a compilable state. The code is parsed by the snapshot parsing pool, and the change
+ * operations between two parse-able snapshots are mapped into the previous and next snapshots at once. The change
+ * operations remain pending until the next parse attempt if the code is not compilable.
+ * @author Katsuhisa Maruyama
+ */
+public class IncrementalDependencyDetector {
+    
+    /**
+     * The default length (milliseconds) of a quiet period that ends a burst of edits.
+     */
+    public static final int DEFAULT_QUIET_PERIOD = 3000;
+    
+    /**
+     * The default number of code change operations in a burst of edits that are followed by a parse attempt.
+     */
+    public static final int DEFAULT_BURST_SIZE = 100;
+    
+    /**
+     * The length (milliseconds) of a quiet period that ends a burst of edits.
+     */
+    private long quietPeriod;
+    
+    /**
+     * The number of code change operations in a burst of edits that are followed by a parse attempt.
+     */
+    private int burstSize;
+    
+    /**
+     * The map that stores the states of the files whose change operations are not analyzed yet.
+     */
+    private Map<CTFile, PendingState> pendingStates = new IdentityHashMap<CTFile, PendingState>();
+    
+    /**
+     * The number of change operations that were added.
+     */
+    private long operationCount = 0;
+    
+    /**
+     * The number of parse attempts.
+     */
+    private long parseCount = 0;
+    
+    /**
+     * Creates a detector with the default boundaries.
+     */
+    public IncrementalDependencyDetector() {
+        this(DEFAULT_QUIET_PERIOD, DEFAULT_BURST_SIZE);
+    }
+    
+    /**
+     * Creates a detector.
+     * @param quietPeriod the length (milliseconds) of a quiet period that ends a burst of edits
+     * @param burstSize the number of code change operations in a burst of edits that are followed by a parse attempt
+     */
+    public IncrementalDependencyDetector(long quietPeriod, int burstSize) {
+        this.quietPeriod = Math.max(quietPeriod, 0);
+        this.burstSize = Math.max(burstSize, 1);
+    }
+    
+    /**
+     * Clears the states of files and the statistics.
+     */
+    public void clear() {
+        pendingStates.clear();
+        operationCount = 0;
+        parseCount = 0;
+    }
+    
+    /**
+     * Receives a change operation that was added to the history of a file.
+     * @param finfo information about the file
+     * @param op the added change operation
+     */
+    public void operationAdded(CTFile finfo, IChangeOperation op) {
+        operationCount++;
+        int index = finfo.getOperationIndexAt(op.getTime());
+        if (index < 0) {
+            return;
+        }
+        
+        PendingState state = pendingStates.get(finfo);
+        if (state == null) {
+            state = new PendingState();
+            pendingStates.put(finfo, state);
+        }
+        
+        boolean quiet = state.codeOperations > 0 && op.getTimeAsLong() - state.lastTime >= quietPeriod;
+        state.lastTime = op.getTimeAsLong();
+        if (op.isDocumentOrCopy()) {
+            state.codeOperations++;
+        }
+        if (quiet) {
+            analyze(finfo, state, index - 1);
+        }
+        
+        if (op.isDocumentOrCopy()) {
+            if (state.codeOperations >= burstSize) {
+                analyze(finfo, state, index);
+            }
+        } else if (op.isFile()) {
+            FileOperation fop = (FileOperation)op;
+            if (state.codeOperations > 0 && (fop.isSave() || fop.isClose())) {
+                analyze(finfo, state, index);
+            }
+        }
+    }
+    
+    /**
+     * Analyzes all the change operations that are not analyzed yet.
+     */
+    public void flush() {
+        for (Map.Entry<CTFile, PendingState> entry : pendingStates.entrySet()) {
+            PendingState state = entry.getValue();
+            if (state.codeOperations > 0) {
+                CTFile finfo = entry.getKey();
+                analyze(finfo, state, finfo.getNumberOfOprations() - 1);
+            }
+        }
+    }
+    
+    /**
+     * Submits a parse attempt at a change operation, which detects Java constructs affected by the change operations
+     * that were performed after the last parse attempt.
+     * @param finfo information about the file
+     * @param state the state of the file
+     * @param index the index number of the change operation that generates the snapshot
+     */
+    private void analyze(CTFile finfo, PendingState state, int index) {
+        if (index <= state.lastIndex) {
+            return;
+        }
+        
+        SnapshotParsingPool.getInstance().submit(finfo, index);
+        parseCount++;
+        state.lastIndex = index;
+        state.codeOperations = countCodeOperations(finfo, index + 1);
+    }
+    
+    /**
+     * Counts code change operations that were performed at a change operation and after.
+     * @param finfo information about the file
+     * @param from the index number of the first change operation
+     * @return the number of the code change operations
+     */
+    private int countCodeOperations(CTFile finfo, int from) {
+        int count = 0;
+        for (int idx = from; idx < finfo.getNumberOfOprations(); idx++) {
+            if (finfo.getOperation(idx).isDocumentOrCopy()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Returns the number of change operations that were added.
+     * @return the number of the change operations
+     */
+    public long getOperationCount() {
+        return operationCount;
+    }
+    
+    /**
+     * Returns the number of parse attempts.
+     * @return the number of the parse attempts
+     */
+    public long getParseCount() {
+        return parseCount;
+    }
+    
+    /**
+     * Estimates the time saved by not parsing the code at every change operation.
+     * @return the time in milliseconds, which is estimated from the average time of parsing in the snapshot parsing pool
+     */
+    public long getEstimatedTimeSaved() {
+        return (operationCount - parseCount) * SnapshotParsingPool.getInstance().getAverageParseTime() / 1000000L;
+    }
+    
+    /**
+     * Returns the string for printing.
+     * @return the string for printing
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("Incremental analysis: operations=" + operationCount);
+        buf.append(" parses=" + parseCount);
+        buf.append(" parse time=" + SnapshotParsingPool.getInstance().getParseTime() + "ms");
+        buf.append(" (failed=" + SnapshotParsingPool.getInstance().getFailedParseCount() + ")");
+        buf.append(" estimated time saved=" + getEstimatedTimeSaved() + "ms");
+        return buf.toString();
+    }
+    
+    /**
+     * Stores the state of a file whose change operations are not analyzed yet.
+     */
+    private class PendingState {
+        
+        /**
+         * The number of code change operations that are not analyzed yet.
+         */
+        int codeOperations = 0;
+        
+        /**
+         * The index number of the change operation at the last parse attempt.
+         */
+        int lastIndex = -1;
+        
+        /**
+         * The time of the last change operation.
+         */
+        long lastTime = 0;
+    }
+}
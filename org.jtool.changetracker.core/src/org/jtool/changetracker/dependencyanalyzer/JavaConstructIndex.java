@@ -0,0 +1,260 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.dependencyanalyzer;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/**
+ * Indexes the code ranges of Java constructs within a parse-able snapshot.
+ * The ranges excluded from each Java construct are resolved in advance, so the Java constructs that contain any of
+ * offset values within a code range are found by range intersection.
+ * @author Katsuhisa Maruyama
+ */
+class JavaConstructIndex {
+    
+    /**
+     * The Java constructs in the order of the snapshot.
+     */
+    private List<JavaConstruct> constructs;
+    
+    /**
+     * The ranges of offset values for which Java constructs are affected by deletion.
+     */
+    private RangeTable deletionRanges;
+    
+    /**
+     * The ranges of offset values for which Java constructs are affected by insertion.
+     */
+    private RangeTable insertionRanges;
+    
+    /**
+     * Creates an index of Java constructs.
+     * @param cons the Java constructs in the order of the snapshot
+     */
+    JavaConstructIndex(List<JavaConstruct> cons) {
+        this.constructs = cons;
+        
+        List<int[]> dranges = new ArrayList<int[]>();
+        List<int[]> iranges = new ArrayList<int[]>();
+        for (int idx = 0; idx < cons.size(); idx++) {
+            JavaConstruct con = cons.get(idx);
+            subtract(con.getStart(), con.getEnd(), con.excludedCodeRanges, 0, idx, dranges);
+            subtract(con.getStart() + 1, con.getEnd(), con.excludedCodeRanges, 1, idx, iranges);
+        }
+        deletionRanges = new RangeTable(dranges);
+        insertionRanges = new RangeTable(iranges);
+    }
+    
+    /**
+     * Collects ranges of offset values within a range except excluded ranges.
+     * The offset values satisfy the same conditions as <code>JavaConstruct.inRangeForDeletion()</code> when the shift is
+     * <code>0</code>, and as <code>JavaConstruct.inRangeForInsertion()</code> when the shift is <code>1</code>.
+     * @param start the start point of the range
+     * @param end the end point of the range
+     * @param excluded the excluded ranges sorted by their start points
+     * @param shift the value added to the start points of the excluded ranges
+     * @param owner the index number of the Java construct that has the range
+     * @param ranges the collection that stores the resulting ranges
+     */
+    private static void subtract(int start, int end, List<CodeRange> excluded, int shift, int owner, List<int[]> ranges) {
+        int cur = start;
+        for (CodeRange range : excluded) {
+            int lo = range.getStart() + shift;
+            int hi = range.getEnd();
+            if (lo > hi || hi < cur) {
+                continue;
+            }
+            if (lo > end) {
+                break;
+            }
+            if (lo > cur) {
+                ranges.add(new int[] { cur, lo - 1, owner });
+            }
+            cur = hi + 1;
+        }
+        if (cur <= end) {
+            ranges.add(new int[] { cur, end, owner });
+        }
+    }
+    
+    /**
+     * Returns the number of the indexed Java constructs.
+     * @return the number of the Java constructs
+     */
+    int size() {
+        return constructs.size();
+    }
+    
+    /**
+     * Marks Java constructs affected by deletion at any of offset values within a range.
+     * @param lo the first offset value of the range
+     * @param hi the last offset value of the range
+     * @param marks the set of the index numbers of the affected Java constructs
+     */
+    void collectForDeletion(int lo, int hi, BitSet marks) {
+        deletionRanges.collect(lo, hi, marks);
+    }
+    
+    /**
+     * Marks Java constructs affected by insertion at any of offset values within a range.
+     * @param lo the first offset value of the range
+     * @param hi the last offset value of the range
+     * @param marks the set of the index numbers of the affected Java constructs
+     */
+    void collectForInsertion(int lo, int hi, BitSet marks) {
+        insertionRanges.collect(lo, hi, marks);
+    }
+    
+    /**
+     * Obtains marked Java constructs.
+     * @param marks the set of the index numbers of the Java constructs
+     * @return the collection of the Java constructs in the order of the snapshot
+     */
+    List<JavaConstruct> getJavaConstructs(BitSet marks) {
+        List<JavaConstruct> cons = new ArrayList<JavaConstruct>(marks.cardinality());
+        for (int idx = marks.nextSetBit(0); idx >= 0; idx = marks.nextSetBit(idx + 1)) {
+            cons.add(constructs.get(idx));
+        }
+        return cons;
+    }
+    
+    /**
+     * Stores ranges sorted by their start points, augmented with the maximum end points of their subtrees.
+     */
+    private static class RangeTable {
+        
+        /**
+         * The start points of the ranges.
+         */
+        private int[] starts;
+        
+        /**
+         * The end points of the ranges.
+         */
+        private int[] ends;
+        
+        /**
+         * The index numbers of the Java constructs that have the ranges.
+         */
+        private int[] owners;
+        
+        /**
+         * The maximum end points of the ranges within each node of the implicit tree.
+         */
+        private int[] maxEnds;
+        
+        /**
+         * The number of the leaves of the implicit tree.
+         */
+        private int leaves;
+        
+        /**
+         * Creates a table of ranges.
+         * @param ranges the collection of the ranges, each of which is the start point, the end point, and the owner
+         */
+        RangeTable(List<int[]> ranges) {
+            int[][] sorted = ranges.toArray(new int[ranges.size()][]);
+            Arrays.sort(sorted, new Comparator<int[]>() {
+                
+                /**
+                 * Compares two ranges for their order.
+                 * @param r1 one of the ranges
+                 * @param r2 the other range
+                 * @return the negative integer, zero, or the positive integer
+                 */
+                @Override
+                public int compare(int[] r1, int[] r2) {
+                    return Integer.compare(r1[0], r2[0]);
+                }
+            });
+            
+            int size = sorted.length;
+            starts = new int[size];
+            ends = new int[size];
+            owners = new int[size];
+            for (int idx = 0; idx < size; idx++) {
+                starts[idx] = sorted[idx][0];
+                ends[idx] = sorted[idx][1];
+                owners[idx] = sorted[idx][2];
+            }
+            
+            leaves = 1;
+            while (leaves < size) {
+                leaves = leaves * 2;
+            }
+            maxEnds = new int[leaves * 2];
+            Arrays.fill(maxEnds, Integer.MIN_VALUE);
+            for (int idx = 0; idx < size; idx++) {
+                maxEnds[leaves + idx] = ends[idx];
+            }
+            for (int node = leaves - 1; node >= 1; node--) {
+                maxEnds[node] = Math.max(maxEnds[node * 2], maxEnds[node * 2 + 1]);
+            }
+        }
+        
+        /**
+         * Marks the owners of the ranges that intersect a given range.
+         * @param lo the first offset value of the given range
+         * @param hi the last offset value of the given range
+         * @param marks the set of the index numbers of the owners
+         */
+        void collect(int lo, int hi, BitSet marks) {
+            if (starts.length == 0 || lo > hi) {
+                return;
+            }
+            int limit = upperBound(hi);
+            if (limit > 0) {
+                collect(1, 0, leaves, limit, lo, marks);
+            }
+        }
+        
+        /**
+         * Marks the owners of the ranges within a node that end at a given offset value or after.
+         * @param node the node of the implicit tree
+         * @param from the first position of the ranges covered by the node
+         * @param to the position next to the last range covered by the node
+         * @param limit the position next to the last range that starts at the end of the given range or before
+         * @param lo the first offset value of the given range
+         * @param marks the set of the index numbers of the owners
+         */
+        private void collect(int node, int from, int to, int limit, int lo, BitSet marks) {
+            if (from >= limit || maxEnds[node] < lo) {
+                return;
+            }
+            if (to - from == 1) {
+                marks.set(owners[from]);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            collect(node * 2, from, mid, limit, lo, marks);
+            collect(node * 2 + 1, mid, to, limit, lo, marks);
+        }
+        
+        /**
+         * Finds the first range that starts after a given offset value.
+         * @param offset the offset value
+         * @return the position of the found range, or the number of the ranges if none
+         */
+        private int upperBound(int offset) {
+            int low = 0;
+            int high = starts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= offset) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
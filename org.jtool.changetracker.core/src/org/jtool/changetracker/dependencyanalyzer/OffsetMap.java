@@ -0,0 +1,347 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.dependencyanalyzer;
+
+import org.jtool.changetracker.operation.CodeOperation;
+import java.util.List;
+import java.util.Arrays;
+
+/**
+ * Maps offset values across a sequence of code change operations.
+ * The map is piecewise linear: each piece of offset values is either shifted by a fixed amount or moved to a fixed
+ * offset value. It returns the same values as <code>DependencyDetector.adjustBackwardOffset()</code> or
+ * <code>DependencyDetector.adjustForwardOffset()</code>, but an offset value is mapped by a binary search.
+ * Maps are immutable and can be composed with each other.
+ * @author Katsuhisa Maruyama
+ */
+public class OffsetMap {
+    
+    /**
+     * The start point of the first piece, which is lower than any offset value.
+     */
+    private static final long LOWEST = Long.MIN_VALUE / 4;
+    
+    /**
+     * The end point of the last piece, which is higher than any offset value.
+     */
+    private static final long HIGHEST = Long.MAX_VALUE / 4;
+    
+    /**
+     * The map that does not change any offset value.
+     */
+    private static final OffsetMap IDENTITY = new OffsetMap(new long[] { LOWEST }, new long[] { 0 }, new boolean[] { false }, 1);
+    
+    /**
+     * The start points of the pieces in ascending order.
+     */
+    private long[] starts;
+    
+    /**
+     * The amounts of the shift of the pieces, or the fixed offset values of the pieces.
+     */
+    private long[] values;
+    
+    /**
+     * Indicates whether each of the pieces moves offset values to a fixed offset value.
+     */
+    private boolean[] fixed;
+    
+    /**
+     * The number of the pieces.
+     */
+    private int size;
+    
+    /**
+     * Creates a map.
+     * @param starts the start points of the pieces
+     * @param values the amounts of the shift or the fixed offset values of the pieces
+     * @param fixed whether each of the pieces moves offset values to a fixed offset value
+     * @param size the number of the pieces
+     */
+    private OffsetMap(long[] starts, long[] values, boolean[] fixed, int size) {
+        this.starts = starts;
+        this.values = values;
+        this.fixed = fixed;
+        this.size = size;
+    }
+    
+    /**
+     * Returns the map that does not change any offset value.
+     * @return the identity map
+     */
+    public static OffsetMap identity() {
+        return IDENTITY;
+    }
+    
+    /**
+     * Creates a map for a single change operation.
+     * An offset value at the start point of the change operation or after is shifted but not moved before the start point.
+     * @param start the start point of the change operation
+     * @param shift the amount of the shift
+     * @return the created map
+     */
+    static OffsetMap of(int start, int shift) {
+        if (shift == 0) {
+            return IDENTITY;
+        }
+        if (shift > 0) {
+            return new OffsetMap(new long[] { LOWEST, start }, new long[] { 0, shift }, new boolean[] { false, false }, 2);
+        }
+        return new OffsetMap(new long[] { LOWEST, start, (long)start - shift },
+                             new long[] { 0, start, shift }, new boolean[] { false, true, false }, 3);
+    }
+    
+    /**
+     * Creates a map that adjusts offset values in the same way as <code>DependencyDetector.adjustBackwardOffset()</code>.
+     * @param ops the operations related to the adjustment
+     * @return the created map
+     */
+    public static OffsetMap backward(List<CodeOperation> ops) {
+        return backward(ops, 0, ops.size());
+    }
+    
+    /**
+     * Creates a map that adjusts offset values backward by change operations within a range.
+     * @param ops the operations related to the adjustment
+     * @param from the index number of the first operation of the range
+     * @param to the index number next to the last operation of the range
+     * @return the created map
+     */
+    private static OffsetMap backward(List<CodeOperation> ops, int from, int to) {
+        if (to - from == 0) {
+            return IDENTITY;
+        }
+        if (to - from == 1) {
+            CodeOperation op = ops.get(from);
+            return of(op.getStart(), op.getDeletedText().length() - op.getInsertedText().length());
+        }
+        int mid = (from + to) >>> 1;
+        return backward(ops, mid, to).andThen(backward(ops, from, mid));
+    }
+    
+    /**
+     * Creates a map that adjusts offset values in the same way as <code>DependencyDetector.adjustForwardOffset()</code>.
+     * @param ops the operations related to the adjustment
+     * @return the created map
+     */
+    public static OffsetMap forward(List<CodeOperation> ops) {
+        return forward(ops, 0, ops.size());
+    }
+    
+    /**
+     * Creates a map that adjusts offset values forward by change operations within a range.
+     * @param ops the operations related to the adjustment
+     * @param from the index number of the first operation of the range
+     * @param to the index number next to the last operation of the range
+     * @return the created map
+     */
+    private static OffsetMap forward(List<CodeOperation> ops, int from, int to) {
+        if (to - from == 0) {
+            return IDENTITY;
+        }
+        if (to - from == 1) {
+            CodeOperation op = ops.get(from);
+            return of(op.getStart(), op.getInsertedText().length() - op.getDeletedText().length());
+        }
+        int mid = (from + to) >>> 1;
+        return forward(ops, from, mid).andThen(forward(ops, mid, to));
+    }
+    
+    /**
+     * Maps an offset value.
+     * @param offset the offset value to be mapped
+     * @return the mapped offset value
+     */
+    public int map(int offset) {
+        int idx = find(offset);
+        if (fixed[idx]) {
+            return (int)values[idx];
+        }
+        return (int)(offset + values[idx]);
+    }
+    
+    /**
+     * Tests if any of offset values within a range is mapped into another range.
+     * @param first the first offset value of the range to be mapped
+     * @param last the last offset value of the range to be mapped
+     * @param lo the first offset value of the range to be checked
+     * @param hi the last offset value of the range to be checked
+     * @return <code>true</code> if any of the mapped offset values is within the checked range, otherwise <code>false</code>
+     */
+    public boolean mapsInto(int first, int last, int lo, int hi) {
+        if (first > last || lo > hi) {
+            return false;
+        }
+        for (int idx = find(first); idx < size && starts[idx] <= last; idx++) {
+            long from = Math.max(starts[idx], first);
+            long to = Math.min(end(idx) - 1, last);
+            long min = fixed[idx] ? values[idx] : from + values[idx];
+            long max = fixed[idx] ? values[idx] : to + values[idx];
+            if (min > hi) {
+                return false;
+            }
+            if (max >= lo) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Composes this map and another map.
+     * @param map the map that is applied after this map
+     * @return the composed map
+     */
+    public OffsetMap andThen(OffsetMap map) {
+        if (this == IDENTITY) {
+            return map;
+        }
+        if (map == IDENTITY) {
+            return this;
+        }
+        
+        Builder builder = new Builder(size + map.size);
+        for (int idx = 0; idx < size; idx++) {
+            if (fixed[idx]) {
+                int gidx = map.find(values[idx]);
+                builder.add(starts[idx], map.fixed[gidx] ? map.values[gidx] : values[idx] + map.values[gidx], true);
+            } else {
+                long shift = values[idx];
+                long end = end(idx);
+                for (int gidx = map.find(starts[idx] + shift); gidx < map.size && map.starts[gidx] < end + shift; gidx++) {
+                    long start = Math.max(starts[idx], map.starts[gidx] - shift);
+                    if (map.fixed[gidx]) {
+                        builder.add(start, map.values[gidx], true);
+                    } else {
+                        builder.add(start, shift + map.values[gidx], false);
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Returns the number of the pieces of this map.
+     * @return the number of the pieces
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Finds the piece that contains an offset value.
+     * @param offset the offset value
+     * @return the index number of the piece
+     */
+    private int find(long offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Returns the end point of a piece.
+     * @param idx the index number of the piece
+     * @return the offset value next to the last offset value of the piece
+     */
+    private long end(int idx) {
+        if (idx + 1 < size) {
+            return starts[idx + 1];
+        }
+        return HIGHEST;
+    }
+    
+    /**
+     * Returns the string for printing.
+     * @return the string for printing
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (int idx = 0; idx < size; idx++) {
+            buf.append(idx == 0 ? "-" : String.valueOf(starts[idx]));
+            buf.append(fixed[idx] ? "=" : "+");
+            buf.append(values[idx]);
+            buf.append(" ");
+        }
+        return buf.toString().trim();
+    }
+    
+    /**
+     * Builds a map by appending pieces in ascending order of their start points.
+     */
+    private static class Builder {
+        
+        /**
+         * The start points of the pieces.
+         */
+        private long[] starts;
+        
+        /**
+         * The amounts of the shift or the fixed offset values of the pieces.
+         */
+        private long[] values;
+        
+        /**
+         * Indicates whether each of the pieces moves offset values to a fixed offset value.
+         */
+        private boolean[] fixed;
+        
+        /**
+         * The number of the appended pieces.
+         */
+        private int size = 0;
+        
+        /**
+         * Creates a builder.
+         * @param capacity the initial capacity for the pieces
+         */
+        Builder(int capacity) {
+            starts = new long[capacity];
+            values = new long[capacity];
+            fixed = new boolean[capacity];
+        }
+        
+        /**
+         * Appends a piece, which is merged into the last piece if both map offset values in the same way.
+         * @param start the start point of the piece
+         * @param value the amount of the shift or the fixed offset value of the piece
+         * @param fix <code>true</code> if the piece moves offset values to the fixed offset value, otherwise <code>false</code>
+         */
+        void add(long start, long value, boolean fix) {
+            if (size > 0 && fixed[size - 1] == fix && values[size - 1] == value) {
+                return;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                fixed = Arrays.copyOf(fixed, size * 2);
+            }
+            starts[size] = size == 0 ? LOWEST : start;
+            values[size] = value;
+            fixed[size] = fix;
+            size++;
+        }
+        
+        /**
+         * Builds the map.
+         * @return the built map
+         */
+        OffsetMap build() {
+            return new OffsetMap(starts, values, fixed, size);
+        }
+    }
+}
@@ -7,6 +7,7 @@
 package org.jtool.changetracker.dependencyanalyzer;
 
 import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.CodeOperation;
 import org.jtool.changetracker.repository.CTFile;
 import java.util.List;
 import java.util.ArrayList;
@@ -49,6 +50,16 @@ public class ParseableSnapshot {
      */
     private ParseableSnapshot nextParseableSnapshot = null;
     
+    /**
+     * The index of the code ranges of the Java constructs, which is created on demand.
+     */
+    private JavaConstructIndex constructIndex = null;
+    
+    /**
+     * The map that adjusts offset values within this snapshot into the previous snapshot, which is created on demand.
+     */
+    private OffsetMap backwardOffsetMap = null;
+    
     /**
      * Creates an instance that stores information about this parse-able snapshot.
      * @param finfo information about a file for this parse-able snapshot
@@ -144,6 +155,33 @@ public class ParseableSnapshot {
         return constructs;
     }
     
+    /**
+     * Returns the index of the code ranges of the Java constructs within this parse-able snapshot.
+     * @return the index of the Java constructs
+     */
+    synchronized JavaConstructIndex getJavaConstructIndex() {
+        if (constructIndex == null) {
+            constructIndex = new JavaConstructIndex(constructs);
+        }
+        return constructIndex;
+    }
+    
+    /**
+     * Returns the map that adjusts offset values within this parse-able snapshot into the previous snapshot.
+     * The map is created from the code change operations between the two snapshots and is kept for later use.
+     * @return the map of offset values, or <code>null</code> if this snapshot has no previous snapshot
+     */
+    public synchronized OffsetMap getBackwardOffsetMap() {
+        if (prevParseableSnapshot == null) {
+            return null;
+        }
+        if (backwardOffsetMap == null) {
+            List<CodeOperation> ops = CodeOperation.getOperations(fileInfo, prevParseableSnapshot.getTime(), getTime());
+            backwardOffsetMap = OffsetMap.backward(ops);
+        }
+        return backwardOffsetMap;
+    }
+    
     /**
      * Returns the Java class members within this parse-able snapshot.
      * @return the collection of the Java class members
@@ -0,0 +1,229 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.dependencyanalyzer;
+
+import org.jtool.changetracker.repository.CTFile;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses the code of files into parse-able snapshots on a bounded pool of worker threads.
+ * Snapshots of different files are parsed in parallel, and the snapshots of each file are added to it in the order
+ * of their submission through its snapshot queue. The caller runs a parse job by itself when the pool is full.
+ * @author Katsuhisa Maruyama
+ */
+public class SnapshotParsingPool {
+    
+    /**
+     * The number of worker threads that parse code.
+     */
+    private static final int WORKER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    
+    /**
+     * The maximum number of parse jobs waiting for a worker thread.
+     */
+    private static final int QUEUE_CAPACITY = WORKER_THREADS * 16;
+    
+    /**
+     * The time (seconds) that idle worker threads wait for a parse job before terminating.
+     */
+    private static final long KEEP_ALIVE_TIME = 60;
+    
+    /**
+     * The single instance of this parsing pool.
+     */
+    private static SnapshotParsingPool instance = new SnapshotParsingPool();
+    
+    /**
+     * The executor that runs parse jobs.
+     */
+    private ThreadPoolExecutor executor;
+    
+    /**
+     * The number of parsed snapshots.
+     */
+    private AtomicLong parseCount = new AtomicLong();
+    
+    /**
+     * The number of snapshots that were not parse-able.
+     */
+    private AtomicLong failedParseCount = new AtomicLong();
+    
+    /**
+     * The total time (nanoseconds) spent on parsing.
+     */
+    private AtomicLong parseTime = new AtomicLong();
+    
+    /**
+     * Prohibits the creation of an instance.
+     */
+    private SnapshotParsingPool() {
+        executor = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new ParserThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * Returns the single instance of this parsing pool.
+     * @return the parsing pool
+     */
+    public static SnapshotParsingPool getInstance() {
+        return instance;
+    }
+    
+    /**
+     * Submits a job that parses the code of a file restored at a change operation.
+     * The code is restored in the current thread.
+     * @param finfo information about the file
+     * @param index the index number of the change operation that generates the snapshot
+     * @return the future that returns the parse-able snapshot, or <code>null</code> if the code is not parse-able
+     */
+    public Future<ParseableSnapshot> submit(CTFile finfo, int index) {
+        return submit(finfo, index, finfo.getCode(index));
+    }
+    
+    /**
+     * Submits a job that parses the code of a file.
+     * @param finfo information about the file
+     * @param index the index number of the change operation that generates the snapshot
+     * @param code the contents of the snapshot
+     * @return the future that returns the parse-able snapshot, or <code>null</code> if the code is not parse-able
+     */
+    public Future<ParseableSnapshot> submit(CTFile finfo, int index, String code) {
+        final SnapshotQueue.ParseJob job = finfo.getSnapshotQueue().enqueue(index, code);
+        executor.execute(new Runnable() {
+            
+            /**
+             * Parses the code of the job.
+             */
+            @Override
+            public void run() {
+                try {
+                    job.constructs = parse(job.code);
+                } finally {
+                    job.queue.parsed(job);
+                }
+            }
+        });
+        return job.result;
+    }
+    
+    /**
+     * Parses code and collects Java constructs within it.
+     * @param code the contents of the code
+     * @return the collection of the Java constructs, or <code>null</code> if the code is not parse-able
+     */
+    private List<JavaConstruct> parse(String code) {
+        if (code == null) {
+            failedParseCount.incrementAndGet();
+            return null;
+        }
+        
+        long start = System.nanoTime();
+        try {
+            CTParser parser = new CTParser();
+            CompilationUnit cu = parser.parse(code);
+            if (cu != null) {
+                return parser.getJavaConstructs(cu);
+            }
+        } catch (RuntimeException e) {
+            // the code is regarded as not parse-able
+        } finally {
+            parseCount.incrementAndGet();
+            parseTime.addAndGet(System.nanoTime() - start);
+        }
+        failedParseCount.incrementAndGet();
+        return null;
+    }
+    
+    /**
+     * Waits until the analysis of a file quiesces.
+     * @param finfo information about the file
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void awaitQuiescence(CTFile finfo) throws InterruptedException {
+        finfo.getSnapshotQueue().awaitQuiescence();
+    }
+    
+    /**
+     * Waits until the analysis of files quiesces.
+     * @param finfos the collection of information about the files
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void awaitQuiescence(List<CTFile> finfos) throws InterruptedException {
+        for (CTFile finfo : finfos) {
+            awaitQuiescence(finfo);
+        }
+    }
+    
+    /**
+     * Returns the number of parsed snapshots.
+     * @return the number of the snapshots
+     */
+    public long getParseCount() {
+        return parseCount.get();
+    }
+    
+    /**
+     * Returns the number of snapshots that were not parse-able.
+     * @return the number of the snapshots
+     */
+    public long getFailedParseCount() {
+        return failedParseCount.get();
+    }
+    
+    /**
+     * Returns the total time spent on parsing.
+     * @return the time in milliseconds
+     */
+    public long getParseTime() {
+        return parseTime.get() / 1000000L;
+    }
+    
+    /**
+     * Returns the average time spent on parsing a snapshot.
+     * @return the time in nanoseconds
+     */
+    public long getAverageParseTime() {
+        long count = parseCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return parseTime.get() / count;
+    }
+    
+    /**
+     * Creates daemon threads for the parsing pool.
+     */
+    private static class ParserThreadFactory implements ThreadFactory {
+        
+        /**
+         * The number of the created threads.
+         */
+        private AtomicInteger count = new AtomicInteger();
+        
+        /**
+         * Creates a worker thread.
+         * @param r the runnable that the thread runs
+         * @return the created thread
+         */
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ChangeTracker snapshot parser " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
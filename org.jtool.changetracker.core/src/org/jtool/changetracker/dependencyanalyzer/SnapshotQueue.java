@@ -0,0 +1,188 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.dependencyanalyzer;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.CodeOperation;
+import org.jtool.changetracker.repository.CTFile;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps parse jobs for a file in the order of their submission.
+ * The jobs are parsed in parallel by the parsing pool, but their parse-able snapshots are added to the file
+ * and the edges of their change operations are detected in that order.
+ * @author Katsuhisa Maruyama
+ */
+public class SnapshotQueue {
+    
+    /**
+     * Information about the file whose parse jobs are kept.
+     */
+    private CTFile fileInfo;
+    
+    /**
+     * The index number of the change operation that was last submitted for parsing.
+     */
+    private int lastIndex = -1;
+    
+    /**
+     * The parse jobs whose snapshots have not been added to the file yet.
+     */
+    private Deque<ParseJob> jobs = new ArrayDeque<ParseJob>();
+    
+    /**
+     * The code change operations whose edges have not been detected since the code was not parse-able.
+     */
+    private List<CodeOperation> pendingOperations = new ArrayList<CodeOperation>();
+    
+    /**
+     * Creates a queue for a file.
+     * @param finfo information about the file
+     */
+    public SnapshotQueue(CTFile finfo) {
+        this.fileInfo = finfo;
+    }
+    
+    /**
+     * Creates a parse job and appends it to this queue.
+     * The code change operations performed after the last submitted job are assigned to the job.
+     * @param index the index number of the change operation that generates the snapshot
+     * @param code the contents of the snapshot, or <code>null</code> if the code was not restored
+     * @return the created parse job
+     */
+    synchronized ParseJob enqueue(int index, String code) {
+        List<CodeOperation> cops = new ArrayList<CodeOperation>();
+        for (int idx = lastIndex + 1; idx <= index; idx++) {
+            IChangeOperation op = fileInfo.getOperation(idx);
+            if (op != null && op.isDocumentOrCopy()) {
+                cops.add((CodeOperation)op);
+            }
+        }
+        lastIndex = Math.max(lastIndex, index);
+        
+        ParseJob job = new ParseJob(this, index, code, cops);
+        jobs.addLast(job);
+        return job;
+    }
+    
+    /**
+     * Receives a parse job whose parsing finished, and attaches the jobs at the head of this queue in order.
+     * @param job the parse job
+     */
+    synchronized void parsed(ParseJob job) {
+        job.parsed = true;
+        while (!jobs.isEmpty() && jobs.peekFirst().parsed) {
+            attach(jobs.removeFirst());
+        }
+        if (jobs.isEmpty()) {
+            notifyAll();
+        }
+    }
+    
+    /**
+     * Adds the snapshot of a parse job to the file and detects the edges of its change operations.
+     * The change operations are carried over to the next job if the code was not parse-able.
+     * @param job the parse job
+     */
+    private void attach(ParseJob job) {
+        List<CodeOperation> cops = pendingOperations;
+        cops.addAll(job.operations);
+        if (job.constructs == null) {
+            job.result.complete(null);
+            return;
+        }
+        
+        ParseableSnapshot prevsn = fileInfo.getLastSnapshot();
+        ParseableSnapshot sn = new ParseableSnapshot(fileInfo, job.index, job.code, job.constructs);
+        for (JavaConstruct con : job.constructs) {
+            con.setSnapshot(sn);
+        }
+        DependencyDetector.detectBackwardChangeEdges(prevsn, cops);
+        DependencyDetector.detectForwardChangeEdges(sn, cops);
+        fileInfo.addSnapshot(sn);
+        
+        pendingOperations = new ArrayList<CodeOperation>();
+        job.result.complete(sn);
+    }
+    
+    /**
+     * Tests if all the parse jobs in this queue finished.
+     * @return <code>true</code> if no parse job remains, otherwise <code>false</code>
+     */
+    public synchronized boolean isQuiescent() {
+        return jobs.isEmpty();
+    }
+    
+    /**
+     * Waits until all the parse jobs in this queue finish.
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public synchronized void awaitQuiescence() throws InterruptedException {
+        while (!jobs.isEmpty()) {
+            wait();
+        }
+    }
+    
+    /**
+     * Stores a job that parses the code of a file at a change operation.
+     */
+    static class ParseJob {
+        
+        /**
+         * The queue that keeps this job.
+         */
+        final SnapshotQueue queue;
+        
+        /**
+         * The index number of the change operation that generates the snapshot.
+         */
+        final int index;
+        
+        /**
+         * The contents of the snapshot.
+         */
+        final String code;
+        
+        /**
+         * The code change operations whose edges are detected with the snapshot.
+         */
+        final List<CodeOperation> operations;
+        
+        /**
+         * The Java constructs within the snapshot, or <code>null</code> if the code is not parse-able.
+         */
+        List<JavaConstruct> constructs = null;
+        
+        /**
+         * Indicates whether the parsing of the code finished.
+         */
+        boolean parsed = false;
+        
+        /**
+         * The future that returns the parse-able snapshot after it is added to the file.
+         */
+        final CompletableFuture<ParseableSnapshot> result = new CompletableFuture<ParseableSnapshot>();
+        
+        /**
+         * Creates a parse job.
+         * @param queue the queue that keeps the job
+         * @param index the index number of the change operation that generates the snapshot
+         * @param code the contents of the snapshot
+         * @param cops the code change operations whose edges are detected with the snapshot
+         */
+        ParseJob(SnapshotQueue queue, int index, String code, List<CodeOperation> cops) {
+            this.queue = queue;
+            this.index = index;
+            this.code = code;
+            this.operations = cops;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.lang.ref.SoftReference;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -63,6 +64,21 @@ public abstract class ChangeOperation implements IChangeOperation {
      */
     protected CTFile fileInfo;
     
+    /**
+     * The loader that loads the body of this change operation on demand, or <code>null</code> if the body was already set.
+     */
+    private volatile IOperationBodyLoader bodyLoader = null;
+    
+    /**
+     * The position where the body of this change operation is stored.
+     */
+    private long bodyPosition;
+    
+    /**
+     * The body of this change operation that was lastly loaded, which can be reclaimed when memory runs short.
+     */
+    private SoftReference<String[]> loadedBody = null;
+    
     /**
      * Creates an instance storing information about this change operation.
      * @param time the time when the change operation was performed
@@ -416,6 +432,109 @@ public abstract class ChangeOperation implements IChangeOperation {
         fileInfo = finfo;
     }
     
+    /**
+     * Sets the loader that loads the body of this change operation on demand.
+     * @param loader the loader of the body
+     * @param position the position where the body is stored
+     */
+    public synchronized void setBodyLoader(IOperationBodyLoader loader, long position) {
+        bodyLoader = loader;
+        bodyPosition = position;
+        loadedBody = null;
+    }
+    
+    /**
+     * Obtains the body of this change operation, which is loaded if it has not been loaded or has been reclaimed.
+     * @param count the number of the texts in the body
+     * @return the texts in the body, or <code>null</code> if the body is not loaded on demand
+     */
+    protected String[] getLazyBody(int count) {
+        if (bodyLoader == null) {
+            return null;
+        }
+        
+        synchronized (this) {
+            if (bodyLoader == null) {
+                return null;
+            }
+            String[] body = loadedBody != null ? loadedBody.get() : null;
+            if (body == null) {
+                body = bodyLoader.loadBody(bodyPosition, count);
+                loadedBody = new SoftReference<String[]>(body);
+            }
+            return body;
+        }
+    }
+    
+    /**
+     * Obtains the sizes of the texts in the body of this change operation without loading the body.
+     * @param count the number of the texts in the body
+     * @return the numbers of the bytes of the texts encoded in UTF-8, or <code>null</code> if the body is not loaded on demand
+     */
+    protected int[] getLazyBodySizes(int count) {
+        if (bodyLoader == null) {
+            return null;
+        }
+        
+        synchronized (this) {
+            if (bodyLoader == null) {
+                return null;
+            }
+            return bodyLoader.loadBodySizes(bodyPosition, count);
+        }
+    }
+    
+    /**
+     * Returns the size of a text encoded in UTF-8, where an unpaired surrogate is encoded into a single byte.
+     * @param str the text
+     * @return the number of the bytes, or <code>0</code> if the text is <code>null</code>
+     */
+    protected static int getEncodedSize(String str) {
+        if (str == null) {
+            return 0;
+        }
+        
+        int len = str.length();
+        int size = 0;
+        for (int idx = 0; idx < len; idx++) {
+            char ch = str.charAt(idx);
+            if (ch < 0x80) {
+                size = size + 1;
+            } else if (ch < 0x800) {
+                size = size + 2;
+            } else if (Character.isHighSurrogate(ch) && idx + 1 < len && Character.isLowSurrogate(str.charAt(idx + 1))) {
+                size = size + 4;
+                idx++;
+            } else if (Character.isSurrogate(ch)) {
+                size = size + 1;
+            } else {
+                size = size + 3;
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Sets the body of this change operation that was loaded on demand, and stops loading it on demand.
+     * This method is called before a part of the body is modified.
+     * @param count the number of the texts in the body
+     */
+    protected synchronized void fixLazyBody(int count) {
+        String[] body = getLazyBody(count);
+        if (body != null) {
+            bodyLoader = null;
+            loadedBody = null;
+            setBody(body);
+        }
+    }
+    
+    /**
+     * Sets the body of this change operation.
+     * @param body the texts in the body
+     */
+    protected void setBody(String[] body) {
+    }
+    
     /**
      * Tests if this change operation is the same as a given one.
      * @param op the change operation
@@ -0,0 +1,232 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.operation;
+
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * Encodes the contents of source code as a delta against its base code, and restores the code from the delta.
+ * A delta is a sequence of instructions, each of which copies a range of the base code ("=offset,length;")
+ * or inserts a text ("+length:text"). Ranges of the code are matched with the base code line by line.
+ * @author Katsuhisa Maruyama
+ */
+public class CodeDelta {
+    
+    /**
+     * The minimum length of a line that starts a copy from the base code.
+     */
+    private static final int MIN_LINE_LENGTH = 8;
+    
+    /**
+     * The minimum length of a range that is copied from the base code instead of being inserted.
+     */
+    private static final int MIN_COPY_LENGTH = 16;
+    
+    /**
+     * Encodes the contents of source code as a delta against its base code.
+     * @param base the contents of the base code
+     * @param code the contents of the code to be encoded
+     * @return the delta, or <code>null</code> if the delta is not shorter than the code
+     */
+    public static String encode(String base, String code) {
+        int prefix = getCommonPrefixLength(base, code);
+        int suffix = getCommonSuffixLength(base, code, prefix);
+        int end = code.length() - suffix;
+        
+        StringBuilder buf = new StringBuilder();
+        if (prefix > 0) {
+            appendCopy(buf, 0, prefix);
+        }
+        if (prefix < end) {
+            appendMiddle(buf, base, code, prefix, end);
+        }
+        if (suffix > 0) {
+            appendCopy(buf, base.length() - suffix, suffix);
+        }
+        
+        if (buf.length() >= code.length()) {
+            return null;
+        }
+        return buf.toString();
+    }
+    
+    /**
+     * Encodes a range of source code that differs from its base code.
+     * @param buf the buffer that stores the delta
+     * @param base the contents of the base code
+     * @param code the contents of the code to be encoded
+     * @param start the start point of the range of the code
+     * @param end the end point of the range of the code
+     */
+    private static void appendMiddle(StringBuilder buf, String base, String code, int start, int end) {
+        Map<String, Integer> lines = getLineOffsets(base);
+        int literalStart = start;
+        int copyStart = start;
+        int copyOffset = 0;
+        int copyLength = 0;
+        int pos = start;
+        while (pos < end) {
+            int lineEnd = code.indexOf('\n', pos);
+            lineEnd = (lineEnd < 0 || lineEnd >= end) ? end : lineEnd + 1;
+            int length = lineEnd - pos;
+            
+            if (copyLength > 0 && base.regionMatches(copyOffset + copyLength, code, pos, length)) {
+                copyLength = copyLength + length;
+            } else {
+                if (copyLength >= MIN_COPY_LENGTH) {
+                    appendInsert(buf, code, literalStart, copyStart);
+                    appendCopy(buf, copyOffset, copyLength);
+                    literalStart = copyStart + copyLength;
+                }
+                copyLength = 0;
+                
+                if (length >= MIN_LINE_LENGTH) {
+                    Integer offset = lines.get(code.substring(pos, lineEnd));
+                    if (offset != null) {
+                        copyStart = pos;
+                        copyOffset = offset.intValue();
+                        copyLength = length;
+                    }
+                }
+            }
+            pos = lineEnd;
+        }
+        
+        if (copyLength >= MIN_COPY_LENGTH) {
+            appendInsert(buf, code, literalStart, copyStart);
+            appendCopy(buf, copyOffset, copyLength);
+            literalStart = copyStart + copyLength;
+        }
+        appendInsert(buf, code, literalStart, end);
+    }
+    
+    /**
+     * Collects the offsets of the lines of source code.
+     * @param code the contents of the code
+     * @return the map that stores the offset of the first occurrence of each line, which includes its line terminator
+     */
+    private static Map<String, Integer> getLineOffsets(String code) {
+        Map<String, Integer> lines = new HashMap<String, Integer>();
+        int pos = 0;
+        while (pos < code.length()) {
+            int lineEnd = code.indexOf('\n', pos);
+            lineEnd = lineEnd < 0 ? code.length() : lineEnd + 1;
+            if (lineEnd - pos >= MIN_LINE_LENGTH) {
+                String line = code.substring(pos, lineEnd);
+                if (!lines.containsKey(line)) {
+                    lines.put(line, pos);
+                }
+            }
+            pos = lineEnd;
+        }
+        return lines;
+    }
+    
+    /**
+     * Returns the length of the common prefix of two strings, which does not split a surrogate pair.
+     * @param str1 the former string
+     * @param str2 the latter string
+     * @return the length of the common prefix
+     */
+    private static int getCommonPrefixLength(String str1, String str2) {
+        int max = Math.min(str1.length(), str2.length());
+        int len = 0;
+        while (len < max && str1.charAt(len) == str2.charAt(len)) {
+            len++;
+        }
+        if (len > 0 && Character.isHighSurrogate(str2.charAt(len - 1))) {
+            len--;
+        }
+        return len;
+    }
+    
+    /**
+     * Returns the length of the common suffix of two strings, which does not overlap their common prefix.
+     * @param str1 the former string
+     * @param str2 the latter string
+     * @param prefix the length of the common prefix
+     * @return the length of the common suffix
+     */
+    private static int getCommonSuffixLength(String str1, String str2, int prefix) {
+        int max = Math.min(str1.length(), str2.length()) - prefix;
+        int len = 0;
+        while (len < max && str1.charAt(str1.length() - len - 1) == str2.charAt(str2.length() - len - 1)) {
+            len++;
+        }
+        if (len > 0 && Character.isLowSurrogate(str2.charAt(str2.length() - len))) {
+            len--;
+        }
+        return len;
+    }
+    
+    /**
+     * Appends an instruction that copies a range of the base code.
+     * @param buf the buffer that stores the delta
+     * @param offset the start point of the range
+     * @param length the length of the range
+     */
+    private static void appendCopy(StringBuilder buf, int offset, int length) {
+        buf.append('=');
+        buf.append(offset);
+        buf.append(',');
+        buf.append(length);
+        buf.append(';');
+    }
+    
+    /**
+     * Appends an instruction that inserts a range of the code.
+     * @param buf the buffer that stores the delta
+     * @param code the contents of the code
+     * @param start the start point of the range
+     * @param end the end point of the range
+     */
+    private static void appendInsert(StringBuilder buf, String code, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        buf.append('+');
+        buf.append(end - start);
+        buf.append(':');
+        buf.append(code, start, end);
+    }
+    
+    /**
+     * Restores the contents of source code from a delta against its base code.
+     * @param base the contents of the base code
+     * @param delta the delta
+     * @return the contents of the restored code
+     * @throws IllegalArgumentException if the delta is broken
+     */
+    public static String apply(String base, String delta) {
+        StringBuilder buf = new StringBuilder(base.length() + delta.length());
+        int pos = 0;
+        try {
+            while (pos < delta.length()) {
+                char ch = delta.charAt(pos);
+                if (ch == '=') {
+                    int comma = delta.indexOf(',', pos);
+                    int semicolon = delta.indexOf(';', comma);
+                    int offset = Integer.parseInt(delta.substring(pos + 1, comma));
+                    int length = Integer.parseInt(delta.substring(comma + 1, semicolon));
+                    buf.append(base, offset, offset + length);
+                    pos = semicolon + 1;
+                } else if (ch == '+') {
+                    int colon = delta.indexOf(':', pos);
+                    int length = Integer.parseInt(delta.substring(pos + 1, colon));
+                    buf.append(delta, colon + 1, colon + 1 + length);
+                    pos = colon + 1 + length;
+                } else {
+                    throw new IllegalArgumentException("Broken delta of code at " + pos);
+                }
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Broken delta of code at " + pos);
+        }
+        return buf.toString();
+    }
+}
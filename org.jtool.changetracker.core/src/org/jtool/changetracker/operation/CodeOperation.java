@@ -97,7 +97,7 @@ public abstract class CodeOperation extends ChangeOperation implements ICodeOper
      */
     @Override
     public List<JavaConstruct> getForwardJavaConstructs() {
-        return backwardJavaConstructs;
+        return forwardJavaConstructs;
     }
     
     /**
@@ -219,6 +219,7 @@ public abstract class CodeOperation extends ChangeOperation implements ICodeOper
     
     /**
      * Obtains change operations that affect this change operation.
+     * Change operations other than code change operations are skipped, since they never affect it.
      * @return the collection of the affecting change operations
      */
     @Override
@@ -231,8 +232,6 @@ public abstract class CodeOperation extends ChangeOperation implements ICodeOper
                 if (cop.getTime().isBefore(getTime()) && dependsOn(cop)) {
                     retops.add(cop);
                 }
-            } else {
-                break;
             }
         }
         return retops;
@@ -6,7 +6,7 @@
 
 package org.jtool.changetracker.operation;
 
-import org.jtool.changetracker.dependencyanalyzer.DependencyDetector;
+import org.jtool.changetracker.dependencyanalyzer.OffsetMap;
 import org.jtool.changetracker.repository.CTPath;
 import java.util.List;
 import java.time.ZonedDateTime;
@@ -66,6 +66,10 @@ public class CopyOperation extends CodeOperation implements ICodeOperation {
      */
     @Override
     public String getCopiedText() {
+        String[] body = getLazyBody(1);
+        if (body != null) {
+            return body[0];
+        }
         return copiedText;
     }
     
@@ -75,9 +79,19 @@ public class CopyOperation extends CodeOperation implements ICodeOperation {
      */
     public void setCopiedText(String text) {
         assert text != null;
+        fixLazyBody(1);
         copiedText = text;
     }
     
+    /**
+     * Sets the body of this copy operation that was loaded on demand.
+     * @param body the copied text
+     */
+    @Override
+    protected void setBody(String[] body) {
+        copiedText = body[0];
+    }
+    
     /**
      * Tests if this copy operation depends on a given change operation.
      * @param op the change operation that might affect this copy operation
@@ -85,9 +99,9 @@ public class CopyOperation extends CodeOperation implements ICodeOperation {
      */
     @Override
     public boolean dependsOn(IChangeOperation op) {
-        List<CodeOperation> ops = CodeOperation.getOperations(fileInfo, op.getTime(), getTime());
         if (isDocument()) {
-            return dependsOnForCopy((DocumentOperation)op, ops);
+            List<CodeOperation> ops = CodeOperation.getOperations(fileInfo, op.getTime(), getTime());
+            return dependsOnForCopy((DocumentOperation)op, OffsetMap.backward(ops));
         }
         return false;
     }
@@ -95,22 +109,17 @@ public class CopyOperation extends CodeOperation implements ICodeOperation {
     /**
      * Tests if this copy operation depends on a given document operation.
      * @param op the document operation that might affect this copy operation
-     * @param ops the collection of change operations for offset adjustment
+     * @param map the map that adjusts offset values across the change operations performed between the two operations
      * @return <code>true</code> if this copy operation depends on, otherwise <code>false</code>
      */
-    private boolean dependsOnForCopy(DocumentOperation op, List<CodeOperation> ops) {
+    private boolean dependsOnForCopy(DocumentOperation op, OffsetMap map) {
         if (op.getInsertedText().length() > 0) {
-            for (int o = getStart(); o <= getStart() + getCopiedText().length(); o++) {
-                int offset = DependencyDetector.adjustBackwardOffset(o, ops);
-                if (op.getStart() <= offset && offset < op.getStart() + op.getInsertedText().length()) {
-                    return true;
-                }
-            }
-            return false;
+            return map.mapsInto(getStart(), getStart() + getCopiedText().length(),
+                                op.getStart(), op.getStart() + op.getInsertedText().length() - 1);
         }
         if (op.getDeletedText().length() > 0) {
-            int soffset = DependencyDetector.adjustBackwardOffset(getStart(), ops);
-            int eoffset = DependencyDetector.adjustBackwardOffset(getStart() + op.getCopiedText().length(), ops);
+            int soffset = map.map(getStart());
+            int eoffset = map.map(getStart() + op.getCopiedText().length());
             if (soffset< op.getStart() && op.getStart() + op.getDeletedText().length() < eoffset) {
                 return true;
             } else {
@@ -128,7 +137,7 @@ public class CopyOperation extends CodeOperation implements ICodeOperation {
     public String toString() {
         StringBuilder buf = new StringBuilder();
         buf.append(super.toString());
-        buf.append(" copy=[" + getShortText(copiedText) + "]");
+        buf.append(" copy=[" + getShortText(getCopiedText()) + "]");
         return buf.toString();
     }
 }
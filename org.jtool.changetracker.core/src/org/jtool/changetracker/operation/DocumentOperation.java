@@ -6,9 +6,10 @@
 
 package org.jtool.changetracker.operation;
 
-import org.jtool.changetracker.dependencyanalyzer.DependencyDetector;
+import org.jtool.changetracker.dependencyanalyzer.OffsetMap;
 import org.jtool.changetracker.repository.CTPath;
 import java.util.List;
+import java.util.ArrayList;
 import java.time.ZonedDateTime;
 
 /**
@@ -27,6 +28,12 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
      */
     protected String deletedText = "";
     
+    /**
+     * The keystrokes coalesced into this document operation, which are stored as pairs of the number of the characters
+     * typed by each keystroke and the time of the keystroke in milliseconds after the time of this document operation.
+     */
+    protected int[] keystrokes = null;
+    
     /**
      * Creates an instance storing information about this document operation.
      * @param time the time when the document operation was performed
@@ -54,6 +61,10 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
      */
     @Override
     public String getInsertedText() {
+        String[] body = getLazyBody(2);
+        if (body != null) {
+            return body[0];
+        }
         return insertedText;
     }
     
@@ -63,6 +74,7 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
      */
     public void setInsertedText(String text) {
         assert text != null;
+        fixLazyBody(2);
         insertedText = text;
     }
     
@@ -72,18 +84,143 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
      */
     @Override
     public String getDeletedText() {
+        String[] body = getLazyBody(2);
+        if (body != null) {
+            return body[1];
+        }
         return deletedText;
     }
     
+    /**
+     * Returns the size of the text inserted by this document operation, which is obtained without loading the text.
+     * @return the number of the bytes of the inserted text encoded in UTF-8
+     */
+    public int getInsertedTextSize() {
+        int[] sizes = getLazyBodySizes(2);
+        if (sizes != null) {
+            return sizes[0];
+        }
+        return getEncodedSize(insertedText);
+    }
+    
+    /**
+     * Returns the size of the text deleted by this document operation, which is obtained without loading the text.
+     * @return the number of the bytes of the deleted text encoded in UTF-8
+     */
+    public int getDeletedTextSize() {
+        int[] sizes = getLazyBodySizes(2);
+        if (sizes != null) {
+            return sizes[1];
+        }
+        return getEncodedSize(deletedText);
+    }
+    
     /**
      * Sets the contents of the text deleted by this document operation.
      * @param text the contents of the deleted text
      */
     public void setDeletedText(String text) {
         assert text != null;
+        fixLazyBody(2);
         deletedText = text;
     }
     
+    /**
+     * Returns the keystrokes coalesced into this document operation.
+     * @return the pairs of the number of the typed characters and the time in milliseconds after the time of this operation,
+     *         or <code>null</code> if this document operation was not coalesced
+     */
+    public int[] getKeystrokes() {
+        return keystrokes;
+    }
+    
+    /**
+     * Sets the keystrokes coalesced into this document operation.
+     * @param keystrokes the pairs of the number of the typed characters and the time in milliseconds after the time of this operation
+     */
+    public void setKeystrokes(int[] keystrokes) {
+        this.keystrokes = keystrokes;
+    }
+    
+    /**
+     * Tests if this document operation was coalesced from keystrokes.
+     * @return <code>true</code> if this document operation has its keystrokes, otherwise <code>false</code>
+     */
+    public boolean isCoalesced() {
+        return keystrokes != null;
+    }
+    
+    /**
+     * Tests if the keystrokes coalesced into this document operation are consistent with its text.
+     * @return <code>true</code> if this document operation was not coalesced or the numbers of the typed characters
+     *         add up to the length of the inserted or deleted text, otherwise <code>false</code>
+     */
+    public boolean hasValidKeystrokes() {
+        if (keystrokes == null) {
+            return true;
+        }
+        if (keystrokes.length % 2 != 0) {
+            return false;
+        }
+        
+        String dtext = getDeletedText();
+        String text = dtext.length() == 0 ? getInsertedText() : dtext;
+        long sum = 0;
+        for (int idx = 0; idx < keystrokes.length; idx += 2) {
+            if (keystrokes[idx] < 0) {
+                return false;
+            }
+            sum = sum + keystrokes[idx];
+        }
+        return sum == text.length();
+    }
+    
+    /**
+     * Obtains document operations corresponding to the keystrokes coalesced into this document operation.
+     * The keystrokes of an insertion are typed forward, and those of a deletion are backspaces.
+     * The replayer does not use them yet, so it shows a coalesced document operation as a single change operation.
+     * @return the collection of the document operations, which contains only this operation if it was not coalesced
+     *         or its keystrokes are inconsistent with its text
+     */
+    public List<DocumentOperation> getKeystrokeOperations() {
+        List<DocumentOperation> ops = new ArrayList<DocumentOperation>();
+        if (keystrokes == null || !hasValidKeystrokes()) {
+            ops.add(this);
+            return ops;
+        }
+        
+        CTPath pathinfo = new CTPath(getProjectName(), getPackageName(), getFileName(), getPath(), getBranch());
+        String itext = getInsertedText();
+        String dtext = getDeletedText();
+        int pos = 0;
+        for (int idx = 0; idx + 1 < keystrokes.length; idx += 2) {
+            int len = keystrokes[idx];
+            ZonedDateTime ktime = getTime().plusNanos(keystrokes[idx + 1] * 1000000L);
+            DocumentOperation op = new DocumentOperation(ktime, pathinfo, getAction(), getAuthor());
+            if (dtext.length() == 0) {
+                op.setStart(getStart() + pos);
+                op.setInsertedText(itext.substring(pos, pos + len));
+            } else {
+                int end = dtext.length() - pos;
+                op.setStart(getStart() + end - len);
+                op.setDeletedText(dtext.substring(end - len, end));
+            }
+            ops.add(op);
+            pos = pos + len;
+        }
+        return ops;
+    }
+    
+    /**
+     * Sets the body of this document operation that was loaded on demand.
+     * @param body the inserted text and the deleted text
+     */
+    @Override
+    protected void setBody(String[] body) {
+        insertedText = body[0];
+        deletedText = body[1];
+    }
+    
     /**
      * Returns the contents of the text copied by this document operation.
      * @return the empty string
@@ -98,7 +235,7 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
      * @return <code>true</code> if the inserted text is not empty but the deleted text is empty, otherwise <code>false</code>
      */
     public boolean isInsertion() {
-        return insertedText.length() != 0 && deletedText.length() == 0;
+        return getInsertedText().length() != 0 && getDeletedText().length() == 0;
     }
     
     /**
@@ -106,7 +243,7 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
      * @return <code>true</code> if the deleted text is not empty but the inserted text is empty, otherwise <code>false</code>
      */
     public boolean isDeletion() {
-        return insertedText.length() == 0 && deletedText.length() != 0;
+        return getInsertedText().length() == 0 && getDeletedText().length() != 0;
     }
     
     /**
@@ -114,7 +251,7 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
      * @return <code>true</code> if the inserted and deleted texts are not empty, otherwise <code>false</code>
      */
     public boolean isReplace() {
-        return insertedText.length() != 0 && deletedText.length() != 0;
+        return getInsertedText().length() != 0 && getDeletedText().length() != 0;
     }
     
     /**
@@ -137,37 +274,11 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
      */
     public ICodeOperation getCutOrCopyOperationForPaste() {
         if (isPaste()) {
-            List<IChangeOperation> ops = fileInfo.getProject().getOperations();
-            for (int idx = ops.size() - 1; idx >= 0; idx--) {
-                if (ops.get(idx).isDocument()) {
-                    ICodeOperation cop = (ICodeOperation)ops.get(idx);
-                    if ((cop.isCopy() || cop.isCut()) && cop.getTime().isBefore(getTime())) {
-                        String ccText = getCutOrCopyText(cop).trim();
-                        String pasteText = getInsertedText().trim();
-                        if (ccText.equals(pasteText)) {
-                            return cop;
-                        }
-                    }
-                }
-            }
+            return fileInfo.getProject().getCutOrCopyOperationBefore(getInsertedText().trim(), getTime());
         }
         return null;
     }
     
-    /**
-     * Returns text that a change operation cuts or copies.
-     * @param op the change operation corresponding to the cut or copy action
-     * @return the contents of the cut or copied text, or empty string if no cut or copy action
-     */
-    private static String getCutOrCopyText(ICodeOperation op) {
-        if (op.isDocument()) {
-            return ((ICodeOperation)op).getDeletedText();
-        } else if (op.isCopy()) {
-            return ((ICodeOperation)op).getCopiedText();
-        }
-        return "";
-    }
-    
     /**
      * Tests if this document operation depends on a given change operation.
      * @param op the change operation that might affect this document operation
@@ -183,9 +294,10 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
         }
         
         if (isDocument()) {
-            List<CodeOperation> ops = CodeOperation.getOperations(fileInfo, op.getTime(), getTime());
             if (op.isDocument()) {
-                return dependsOnForInsertion((DocumentOperation)op, ops) || dependsOnForDeletion((DocumentOperation)op, ops);
+                List<CodeOperation> ops = CodeOperation.getOperations(fileInfo, op.getTime(), getTime());
+                OffsetMap map = OffsetMap.backward(ops);
+                return dependsOnForInsertion((DocumentOperation)op, map) || dependsOnForDeletion((DocumentOperation)op, map);
             }
         }
         return false;
@@ -194,16 +306,16 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
     /**
      * Tests if this document operation with its inserted text depends on a given document operation.
      * @param op the document operation that might affect this document operation
-     * @param ops the collection of change operations for offset adjustment
+     * @param map the map that adjusts offset values across the change operations performed between the two operations
      * @return <code>true</code> if this document operation depends on, otherwise <code>false</code>
      */
-    private boolean dependsOnForInsertion(DocumentOperation op, List<CodeOperation> ops) {
+    private boolean dependsOnForInsertion(DocumentOperation op, OffsetMap map) {
         if (getInsertedText().length() == 0) {
             return false;
         }
         
         if (op.getInsertedText().length() > 0) {
-            int offset = DependencyDetector.adjustBackwardOffset(getStart(), ops);
+            int offset = map.map(getStart());
             if (op.getStart() < offset && offset < op.getStart() + op.getInsertedText().length()) {
                 return true;
             } else {
@@ -216,26 +328,21 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
     /**
      * Tests if this document operation with its deleted text depends on a given document operation.
      * @param op the document operation that might affect this document operation
-     * @param ops the collection of change operations for offset adjustment
+     * @param map the map that adjusts offset values across the change operations performed between the two operations
      * @return <code>true</code> if this document operation depends on, otherwise <code>false</code>
      */
-    private boolean dependsOnForDeletion(DocumentOperation op, List<CodeOperation> ops) {
+    private boolean dependsOnForDeletion(DocumentOperation op, OffsetMap map) {
         if (getDeletedText().length() == 0) {
             return false;
         }
         
         if (op.getInsertedText().length() > 0) {
-            for (int o = getStart(); o <= getStart() + getDeletedText().length(); o++) {
-                int offset = DependencyDetector.adjustBackwardOffset(o, ops);
-                if (op.getStart() <= offset && offset < op.getStart() + op.getInsertedText().length()) {
-                    return true;
-                }
-            }
-            return false;
+            return map.mapsInto(getStart(), getStart() + getDeletedText().length(),
+                                op.getStart(), op.getStart() + op.getInsertedText().length() - 1);
         }
         if (op.getDeletedText().length() > 0) {
-            int soffset = DependencyDetector.adjustBackwardOffset(getStart(), ops);
-            int eoffset = DependencyDetector.adjustBackwardOffset(getStart() + op.getDeletedText().length(), ops);
+            int soffset = map.map(getStart());
+            int eoffset = map.map(getStart() + op.getDeletedText().length());
             if (soffset< op.getStart() && op.getStart() + op.getDeletedText().length() < eoffset) {
                 return true;
             } else {
@@ -266,8 +373,8 @@ public class DocumentOperation extends CodeOperation implements ICodeOperation {
     public String toString() {
         StringBuilder buf = new StringBuilder();
         buf.append(super.toString());
-        buf.append(" ins=[" + getShortText(insertedText) + "]");
-        buf.append(" del=[" + getShortText(deletedText) + "]");
+        buf.append(" ins=[" + getShortText(getInsertedText()) + "]");
+        buf.append(" del=[" + getShortText(getDeletedText()) + "]");
         return buf.toString();
     }
 }
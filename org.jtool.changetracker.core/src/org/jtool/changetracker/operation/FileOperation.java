@@ -7,7 +7,9 @@
 package org.jtool.changetracker.operation;
 
 import org.jtool.changetracker.repository.CTPath;
+import org.jtool.changetracker.core.CTConsole;
 import java.time.ZonedDateTime;
+import java.lang.ref.SoftReference;
 
 /**
  * Stores information about a file operation.
@@ -39,6 +41,17 @@ public class FileOperation extends ChangeOperation {
      */
     protected String srcDstPath = "";
     
+    /**
+     * The file operation whose code is the base of the delta stored as the code of this file operation,
+     * or <code>null</code> if this file operation stores its code as it is.
+     */
+    protected FileOperation codeBase = null;
+    
+    /**
+     * The code that was lastly restored from the delta, which can be reclaimed when memory runs short.
+     */
+    private volatile SoftReference<String> restoredCode = null;
+    
     /**
      * Creates an instance storing information about this file operation.
      * @param time the time when the file operation was performed
@@ -65,7 +78,26 @@ public class FileOperation extends ChangeOperation {
      * @return the contents of the source code
      */
     public String getCode() {
-        return code;
+        String[] body = getLazyBody(1);
+        String text = body != null ? body[0] : code;
+        FileOperation base = codeBase;
+        if (base == null || text == null) {
+            return text;
+        }
+        
+        SoftReference<String> ref = restoredCode;
+        String restored = ref != null ? ref.get() : null;
+        if (restored == null) {
+            String baseCode = base.getCode();
+            try {
+                restored = CodeDelta.apply(baseCode != null ? baseCode : "", text);
+            } catch (IllegalArgumentException e) {
+                CTConsole.println("Failed to restore the code of a file operation: " + getPath() + " " + e.getMessage());
+                restored = "";
+            }
+            restoredCode = new SoftReference<String>(restored);
+        }
+        return restored;
     }
     
     /**
@@ -74,7 +106,38 @@ public class FileOperation extends ChangeOperation {
      */
     public void setCode(String code) {
         assert code != null;
+        fixLazyBody(1);
         this.code = code;
+        codeBase = null;
+        restoredCode = null;
+    }
+    
+    /**
+     * Sets the file operation whose code is the base of the delta stored as the code of this file operation.
+     * The code of this file operation is restored from the delta when it is obtained.
+     * @param base the file operation that has the base code
+     */
+    public void setCodeBase(FileOperation base) {
+        assert base != null && base != this;
+        codeBase = base;
+        restoredCode = null;
+    }
+    
+    /**
+     * Returns the file operation whose code is the base of the delta stored as the code of this file operation.
+     * @return the file operation that has the base code, or <code>null</code> if the code is stored as it is
+     */
+    public FileOperation getCodeBase() {
+        return codeBase;
+    }
+    
+    /**
+     * Sets the body of this file operation that was loaded on demand.
+     * @param body the contents of the source code
+     */
+    @Override
+    protected void setBody(String[] body) {
+        code = body[0];
     }
     
     /**
@@ -239,7 +302,7 @@ public class FileOperation extends ChangeOperation {
     public String toString() {
         StringBuilder buf = new StringBuilder();
         buf.append(super.toString());
-        buf.append(" code=[" + getShortText(code) + "]");
+        buf.append(" code=[" + getShortText(getCode()) + "]");
         return buf.toString();
     }
 }
@@ -0,0 +1,31 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.operation;
+
+/**
+ * Defines an interface that loads the bodies of change operations on demand.
+ * The body of a change operation consists of the texts that it inserts, deletes, copies, or stores.
+ * @author Katsuhisa Maruyama
+ */
+public interface IOperationBodyLoader {
+    
+    /**
+     * Loads the body of a change operation.
+     * @param position the position where the body is stored
+     * @param count the number of the texts in the body
+     * @return the texts in the body
+     */
+    public String[] loadBody(long position, int count);
+    
+    /**
+     * Obtains the sizes of the texts in the body of a change operation without decoding them.
+     * @param position the position where the body is stored
+     * @param count the number of the texts in the body
+     * @return the numbers of the bytes of the texts encoded in UTF-8
+     */
+    public int[] loadBodySizes(long position, int count);
+}
@@ -7,8 +7,11 @@
 package org.jtool.changetracker.repository;
 
 import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.ChangeOperation;
+import org.jtool.changetracker.operation.FileOperation;
 import org.jtool.changetracker.dependencyanalyzer.ParseableSnapshot;
-import org.jtool.changetracker.dependencyanalyzer.DependencyDetector;
+import org.jtool.changetracker.dependencyanalyzer.SnapshotParsingPool;
+import org.jtool.changetracker.dependencyanalyzer.SnapshotQueue;
 import java.util.List;
 import java.util.ArrayList;
 import java.time.ZonedDateTime;
@@ -59,6 +62,26 @@ public class CTFile extends CTResource {
      */
     private List<ParseableSnapshot> snapshots = new ArrayList<ParseableSnapshot>();
     
+    /**
+     * The queue of parse jobs that generate snapshots of this file.
+     */
+    private SnapshotQueue snapshotQueue = new SnapshotQueue(this);
+    
+    /**
+     * The file operation whose code is the initial code of this file, which has not been parsed yet.
+     */
+    private FileOperation deferredInitialOperation = null;
+    
+    /**
+     * The change operations whose restoration of code and analysis are deferred until this file is first accessed.
+     */
+    private List<IChangeOperation> deferredOperations = null;
+    
+    /**
+     * The lock that makes accesses wait until the deferred analysis of this file finishes.
+     */
+    private Object analysisLock = new Object();
+    
     /**
      * Creates an instance that stores information about this file.
      * @param pathinfo information about path of this file
@@ -117,6 +140,7 @@ public class CTFile extends CTResource {
      * @return the operation history
      */
     public OperationHistory getOperationHistory() {
+        analyzeDeferredOperations();
         return history;
     }
     
@@ -127,12 +151,17 @@ public class CTFile extends CTResource {
     public void setOperations(List<IChangeOperation> ops) {
         history.clear();
         history.addAll(ops);
+        if (projectInfo != null) {
+            projectInfo.getClipboardIndex().removeAll(this);
+            projectInfo.getClipboardIndex().addAll(this, history.getOperations());
+        }
         lastUpdatedTime = ZonedDateTime.now();
     }
     
     /**
      * Returns all the change operations related to this file.
-     * @return the collection of the change operations related to the file
+     * The returned list is a read-only snapshot of the operation history of this file.
+     * @return the unmodifiable collection of the change operations related to the file
      */
     public List<IChangeOperation> getOperations() {
         return history.getOperations();
@@ -152,6 +181,9 @@ public class CTFile extends CTResource {
      */
     void addOperation(IChangeOperation op) {
         history.add(op);
+        if (projectInfo != null) {
+            projectInfo.getClipboardIndex().add(this, op);
+        }
         lastUpdatedTime = ZonedDateTime.now();
     }
     
@@ -161,6 +193,9 @@ public class CTFile extends CTResource {
      */
     void addOperations(List<IChangeOperation> ops) {
         history.addAll(ops);
+        if (projectInfo != null) {
+            projectInfo.getClipboardIndex().addAll(this, ops);
+        }
         lastUpdatedTime = ZonedDateTime.now();
     }
     
@@ -333,6 +368,7 @@ public class CTFile extends CTResource {
      * @return the contents of the restored source code, <code>null</code> if the restoration fails
      */
     public String getCode(int index) {
+        analyzeDeferredOperations();
         return history.getCode(index);
     }
     
@@ -344,6 +380,7 @@ public class CTFile extends CTResource {
      * @return the contents of restored source code, <code>null</code> if the restoration fails
      */
     public String getCode(String curCode, int curIndex, int index) {
+        analyzeDeferredOperations();
         return history.getCode(curCode, curIndex, index);
     }
     
@@ -352,15 +389,64 @@ public class CTFile extends CTResource {
      * @param code the contents of the initial source code
      */
     void setInitialCode(String code) {
-        ParseableSnapshot sn = DependencyDetector.parse(this, -1, code);
-        addSnapshot(sn);
+        SnapshotParsingPool.getInstance().submit(this, -1, code);
+    }
+    
+    /**
+     * Defers the parse of the initial source code until this file is first accessed.
+     * @param fop the file operation whose code is the initial source code
+     */
+    synchronized void deferInitialCode(FileOperation fop) {
+        deferredInitialOperation = fop;
+    }
+    
+    /**
+     * Defers the restoration of code and the analysis of a change operation until this file is first accessed.
+     * @param op the change operation
+     */
+    synchronized void deferAnalysis(IChangeOperation op) {
+        if (deferredOperations == null) {
+            deferredOperations = new ArrayList<IChangeOperation>();
+        }
+        deferredOperations.add(op);
+    }
+    
+    /**
+     * Restores code and analyzes the change operations whose analysis was deferred.
+     * Other accesses to the code or the snapshots of this file wait until the analysis finishes.
+     */
+    void analyzeDeferredOperations() {
+        synchronized (analysisLock) {
+            FileOperation initialOp;
+            List<IChangeOperation> ops;
+            synchronized (this) {
+                if (deferredInitialOperation == null && deferredOperations == null) {
+                    return;
+                }
+                initialOp = deferredInitialOperation;
+                ops = deferredOperations != null ? deferredOperations : new ArrayList<IChangeOperation>();
+                deferredInitialOperation = null;
+                deferredOperations = null;
+            }
+            ChangeOperation.sort(ops);
+            Repository.analyzeDeferredOperations(this, initialOp, ops);
+        }
+    }
+    
+    /**
+     * Returns the queue of parse jobs that generate snapshots of this file.
+     * @return the snapshot queue
+     */
+    public SnapshotQueue getSnapshotQueue() {
+        analyzeDeferredOperations();
+        return snapshotQueue;
     }
     
     /**
      * Adds a parseable snapshot for this file.
      * @param sn the parseable snapshot to be added
      */
-    public void addSnapshot(ParseableSnapshot sn) {
+    public synchronized void addSnapshot(ParseableSnapshot sn) {
         if (sn != null) {
             snapshots.add(sn);
         }
@@ -368,17 +454,21 @@ public class CTFile extends CTResource {
     
     /**
      * Returns all parseable snapshot for this file.
-     * @return the collection of the parseable snapshots
+     * Snapshots are added in the background, so callers should wait until the analysis of this file quiesces.
+     * @return the copy of the collection of the parseable snapshots
      */
     public List<ParseableSnapshot> getSnapshots() {
-        return snapshots;
+        analyzeDeferredOperations();
+        synchronized (this) {
+            return new ArrayList<ParseableSnapshot>(snapshots);
+        }
     }
     
     /**
      * Returns the last parseable snapshot for this file.
      * @param snapshot the last parseable, or <code>null</code> if no parseable snapshots have been stored
      */
-    public ParseableSnapshot getLastSnapshot() {
+    public synchronized ParseableSnapshot getLastSnapshot() {
         if (snapshots.size() > 0) {
             return snapshots.get(snapshots.size() - 1);
         };
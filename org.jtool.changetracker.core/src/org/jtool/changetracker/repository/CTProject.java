@@ -7,6 +7,7 @@
 package org.jtool.changetracker.repository;
 
 import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.ICodeOperation;
 import org.jtool.changetracker.operation.ChangeOperation;
 import java.util.List;
 import java.util.ArrayList;
@@ -28,6 +29,11 @@ public class CTProject extends CTResource {
      */
     private List<CTPackage> packages = new ArrayList<CTPackage>();
     
+    /**
+     * The index of cut and copy operations within this project.
+     */
+    private ClipboardIndex clipboardIndex = new ClipboardIndex(this);
+    
     /**
      * Creates an instance that stores information about this project.
      * @param pathinfo information about path of this project
@@ -42,6 +48,7 @@ public class CTProject extends CTResource {
      */
     public void clear() {
         packages.clear();
+        clipboardIndex.clear();
     }
     
     /**
@@ -98,6 +105,25 @@ public class CTProject extends CTResource {
         return null;
     }
     
+    /**
+     * Returns the index of cut and copy operations within this project.
+     * @return the clipboard index
+     */
+    ClipboardIndex getClipboardIndex() {
+        return clipboardIndex;
+    }
+    
+    /**
+     * Finds the latest cut or copy operation within this project that was performed before a given time and whose
+     * trimmed text equals to a given text.
+     * @param text the trimmed text
+     * @param time the time
+     * @return the found cut or copy operation, or <code>null</code> if none
+     */
+    public ICodeOperation getCutOrCopyOperationBefore(String text, ZonedDateTime time) {
+        return clipboardIndex.find(text, time);
+    }
+    
     /**
      * Returns change operations related to this project.
      * @return the collection of the change operations
@@ -0,0 +1,252 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.repository;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.ICodeOperation;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+
+/**
+ * Indexes cut and copy operations within a project for finding the source of a paste operation.
+ * The operations are hashed by their trimmed text, and are sorted by their time within each hash bucket.
+ * @author Katsuhisa Maruyama
+ */
+class ClipboardIndex {
+    
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    
+    /**
+     * The project whose cut and copy operations are indexed.
+     */
+    private CTProject projectInfo;
+    
+    /**
+     * The map of the hash values of the trimmed text and the entries of the cut and copy operations sorted by their time.
+     */
+    private Map<Integer, List<Entry>> buckets = new HashMap<Integer, List<Entry>>();
+    
+    /**
+     * The number of the entries that have been added, which orders the entries of operations at the same time.
+     */
+    private long sequence = 0;
+    
+    /**
+     * Creates an index of cut and copy operations.
+     * @param pinfo the project whose cut and copy operations are indexed
+     */
+    ClipboardIndex(CTProject pinfo) {
+        this.projectInfo = pinfo;
+    }
+    
+    /**
+     * Clears all the entries of this index.
+     */
+    synchronized void clear() {
+        buckets.clear();
+    }
+    
+    /**
+     * Adds a change operation to this index if it is a cut or copy operation.
+     * @param finfo the file that the change operation is related to
+     * @param op the change operation
+     */
+    synchronized void add(CTFile finfo, IChangeOperation op) {
+        if (!op.isDocument()) {
+            return;
+        }
+        ICodeOperation cop = (ICodeOperation)op;
+        if (!cop.isCopy() && !cop.isCut()) {
+            return;
+        }
+        
+        Entry entry = new Entry(finfo, cop, toNanos(cop.getTime()), sequence++);
+        Integer key = cop.getDeletedText().trim().hashCode();
+        List<Entry> entries = buckets.get(key);
+        if (entries == null) {
+            entries = new ArrayList<Entry>();
+            buckets.put(key, entries);
+        }
+        int size = entries.size();
+        if (size == 0 || entries.get(size - 1).time <= entry.time) {
+            entries.add(entry);
+        } else {
+            entries.add(upperBound(entries, entry.time), entry);
+        }
+    }
+    
+    /**
+     * Adds change operations to this index.
+     * @param finfo the file that the change operations are related to
+     * @param ops the collection of the change operations
+     */
+    synchronized void addAll(CTFile finfo, List<? extends IChangeOperation> ops) {
+        for (IChangeOperation op : ops) {
+            add(finfo, op);
+        }
+    }
+    
+    /**
+     * Removes all the change operations related to a file from this index.
+     * @param finfo the file
+     */
+    synchronized void removeAll(CTFile finfo) {
+        for (Iterator<List<Entry>> it = buckets.values().iterator(); it.hasNext(); ) {
+            List<Entry> entries = it.next();
+            for (Iterator<Entry> eit = entries.iterator(); eit.hasNext(); ) {
+                if (eit.next().fileInfo == finfo) {
+                    eit.remove();
+                }
+            }
+            if (entries.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Finds the latest cut or copy operation whose trimmed text equals to a given text before a given time.
+     * Among operations performed at the same time, the one that appears last in the change operations of the project
+     * sorted by time is found.
+     * @param text the trimmed text
+     * @param time the time
+     * @return the found cut or copy operation, or <code>null</code> if none
+     */
+    synchronized ICodeOperation find(String text, ZonedDateTime time) {
+        List<Entry> entries = buckets.get(text.hashCode());
+        if (entries == null) {
+            return null;
+        }
+        
+        Entry found = null;
+        for (int idx = lowerBound(entries, toNanos(time)) - 1; idx >= 0; idx--) {
+            Entry entry = entries.get(idx);
+            if (found != null && entry.time != found.time) {
+                break;
+            }
+            if (entry.operation.getDeletedText().trim().equals(text)) {
+                if (found == null || follows(entry, found)) {
+                    found = entry;
+                }
+            }
+        }
+        return found != null ? found.operation : null;
+    }
+    
+    /**
+     * Tests if an entry follows another entry at the same time in the change operations of the project sorted by time.
+     * The change operations are ordered by their files and then by their order within each file.
+     * @param entry the entry to be checked
+     * @param other the other entry
+     * @return <code>true</code> if the entry follows the other entry, otherwise <code>false</code>
+     */
+    private boolean follows(Entry entry, Entry other) {
+        if (entry.fileInfo == other.fileInfo) {
+            return entry.sequence > other.sequence;
+        }
+        List<CTFile> files = projectInfo.getFiles();
+        return files.indexOf(entry.fileInfo) > files.indexOf(other.fileInfo);
+    }
+    
+    /**
+     * Finds the position of the first entry at a given time or after.
+     * @param entries the entries sorted by time
+     * @param time the time in nanoseconds
+     * @return the position of the found entry, or the number of the entries if none
+     */
+    private static int lowerBound(List<Entry> entries, long time) {
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries.get(mid).time < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Finds the position of the first entry after a given time.
+     * @param entries the entries sorted by time
+     * @param time the time in nanoseconds
+     * @return the position of the found entry, or the number of the entries if none
+     */
+    private static int upperBound(List<Entry> entries, long time) {
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries.get(mid).time <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Converts time into nanoseconds from the epoch.
+     * @param time the time
+     * @return the nanoseconds
+     */
+    private static long toNanos(ZonedDateTime time) {
+        Instant instant = time.toInstant();
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+    
+    /**
+     * Stores a cut or copy operation within the index.
+     */
+    private static class Entry {
+        
+        /**
+         * The file that the cut or copy operation is related to.
+         */
+        final CTFile fileInfo;
+        
+        /**
+         * The cut or copy operation.
+         */
+        final ICodeOperation operation;
+        
+        /**
+         * The time of the cut or copy operation in nanoseconds.
+         */
+        final long time;
+        
+        /**
+         * The number that orders entries added at the same time.
+         */
+        final long sequence;
+        
+        /**
+         * Creates an entry.
+         * @param finfo the file that the cut or copy operation is related to
+         * @param op the cut or copy operation
+         * @param time the time of the cut or copy operation in nanoseconds
+         * @param sequence the number that orders entries
+         */
+        Entry(CTFile finfo, ICodeOperation op, long time, long sequence) {
+            this.fileInfo = finfo;
+            this.operation = op;
+            this.time = time;
+            this.sequence = sequence;
+        }
+    }
+}
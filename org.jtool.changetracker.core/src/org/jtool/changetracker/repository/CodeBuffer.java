@@ -0,0 +1,284 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.repository;
+
+/**
+ * Stores the contents of code that is modified by change operations.
+ * The contents are represented by a piece table whose pieces refer to the original code and inserted texts without
+ * copying them. The pieces are kept in a balanced tree (treap) keyed by their offsets, so that text is replaced in
+ * logarithmic time, and the contents are materialized into a string only when it is requested.
+ * @author Katsuhisa Maruyama
+ */
+public class CodeBuffer {
+    
+    /**
+     * The root of the tree of pieces.
+     */
+    private Piece root = null;
+    
+    /**
+     * The seed for generating priorities of pieces.
+     */
+    private int seed = 0x2545F491;
+    
+    /**
+     * The contents that were lastly materialized, or <code>null</code> if the contents were modified after that.
+     */
+    private String contents = null;
+    
+    /**
+     * Creates a buffer that stores the contents of code.
+     * @param code the initial contents of the code
+     */
+    public CodeBuffer(String code) {
+        root = createPiece(code, 0, code.length());
+        contents = code;
+    }
+    
+    /**
+     * Returns the length of the contents of this buffer.
+     * @return the number of characters
+     */
+    public int length() {
+        return size(root);
+    }
+    
+    /**
+     * Replaces the characters in a substring of this buffer with a text.
+     * This method behaves like <code>StringBuilder.replace</code>.
+     * @param start the beginning offset of the replaced substring, inclusive
+     * @param end the ending offset of the replaced substring, exclusive
+     * @param text the text that will replace the substring
+     * @throws StringIndexOutOfBoundsException if <code>start</code> is negative, greater than the length, or greater than <code>end</code>
+     */
+    public void replace(int start, int end, String text) {
+        int length = length();
+        if (start < 0 || start > length || start > end) {
+            throw new StringIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        if (end > length) {
+            end = length;
+        }
+        if (start == end && text.length() == 0) {
+            return;
+        }
+        
+        Piece[] front = split(root, start);
+        Piece[] back = split(front[1], end - start);
+        root = merge(merge(front[0], createPiece(text, 0, text.length())), back[1]);
+        contents = null;
+    }
+    
+    /**
+     * Returns a substring of the contents of this buffer.
+     * @param start the beginning offset of the substring, inclusive
+     * @param end the ending offset of the substring, exclusive
+     * @return the substring
+     * @throws StringIndexOutOfBoundsException if the offsets are out of the range of the contents
+     */
+    public String substring(int start, int end) {
+        if (contents != null) {
+            return contents.substring(start, end);
+        }
+        if (start < 0 || end > length() || start > end) {
+            throw new StringIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        
+        StringBuilder buf = new StringBuilder(end - start);
+        append(root, start, end, buf);
+        return buf.toString();
+    }
+    
+    /**
+     * Returns the contents of this buffer.
+     * @return the string of the contents
+     */
+    @Override
+    public String toString() {
+        if (contents == null) {
+            StringBuilder buf = new StringBuilder(length());
+            append(root, 0, length(), buf);
+            contents = buf.toString();
+        }
+        return contents;
+    }
+    
+    /**
+     * Appends the characters within a range of a subtree to a string buffer.
+     * @param node the root of the subtree
+     * @param start the beginning offset of the range in the subtree, inclusive
+     * @param end the ending offset of the range in the subtree, exclusive
+     * @param buf the string buffer
+     */
+    private void append(Piece node, int start, int end, StringBuilder buf) {
+        while (node != null && start < end) {
+            int leftSize = size(node.left);
+            if (start < leftSize) {
+                append(node.left, start, Math.min(end, leftSize), buf);
+            }
+            
+            int pieceStart = Math.max(start - leftSize, 0);
+            int pieceEnd = Math.min(end - leftSize, node.length);
+            if (pieceStart < pieceEnd) {
+                buf.append(node.text, node.start + pieceStart, node.start + pieceEnd);
+            }
+            
+            int rightOffset = leftSize + node.length;
+            start = Math.max(start - rightOffset, 0);
+            end = end - rightOffset;
+            node = node.right;
+        }
+    }
+    
+    /**
+     * Creates a piece that refers to a part of a text.
+     * @param text the text
+     * @param start the beginning offset of the part
+     * @param length the length of the part
+     * @return the created piece, or <code>null</code> if the part is empty
+     */
+    private Piece createPiece(String text, int start, int length) {
+        if (length == 0) {
+            return null;
+        }
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return new Piece(text, start, length, seed);
+    }
+    
+    /**
+     * Splits a subtree into two subtrees at an offset.
+     * @param node the root of the subtree
+     * @param offset the offset within the subtree
+     * @return the subtree before the offset and the subtree after the offset
+     */
+    private Piece[] split(Piece node, int offset) {
+        if (node == null) {
+            return new Piece[] { null, null };
+        }
+        
+        int leftSize = size(node.left);
+        if (offset <= leftSize) {
+            Piece[] parts = split(node.left, offset);
+            node.left = parts[1];
+            node.update();
+            return new Piece[] { parts[0], node };
+        }
+        if (offset >= leftSize + node.length) {
+            Piece[] parts = split(node.right, offset - leftSize - node.length);
+            node.right = parts[0];
+            node.update();
+            return new Piece[] { node, parts[1] };
+        }
+        
+        int pos = offset - leftSize;
+        Piece tail = createPiece(node.text, node.start + pos, node.length - pos);
+        Piece right = node.right;
+        node.length = pos;
+        node.right = null;
+        node.update();
+        return new Piece[] { node, merge(tail, right) };
+    }
+    
+    /**
+     * Merges two subtrees into one.
+     * @param left the subtree whose contents precede
+     * @param right the subtree whose contents follow
+     * @return the merged subtree
+     */
+    private Piece merge(Piece left, Piece right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            right.update();
+            return right;
+        }
+    }
+    
+    /**
+     * Returns the number of characters in a subtree.
+     * @param node the root of the subtree
+     * @return the number of the characters
+     */
+    private static int size(Piece node) {
+        return node != null ? node.size : 0;
+    }
+    
+    /**
+     * A piece that refers to a part of a text.
+     */
+    private static class Piece {
+        
+        /**
+         * The text that this piece refers to.
+         */
+        private String text;
+        
+        /**
+         * The beginning offset of the part in the text.
+         */
+        private int start;
+        
+        /**
+         * The length of the part.
+         */
+        private int length;
+        
+        /**
+         * The priority of this piece in the tree.
+         */
+        private int priority;
+        
+        /**
+         * The number of characters in the subtree whose root is this piece.
+         */
+        private int size;
+        
+        /**
+         * The left child of this piece.
+         */
+        private Piece left = null;
+        
+        /**
+         * The right child of this piece.
+         */
+        private Piece right = null;
+        
+        /**
+         * Creates a piece.
+         * @param text the text that the piece refers to
+         * @param start the beginning offset of the part in the text
+         * @param length the length of the part
+         * @param priority the priority of the piece
+         */
+        Piece(String text, int start, int length, int priority) {
+            this.text = text;
+            this.start = start;
+            this.length = length;
+            this.priority = priority;
+            this.size = length;
+        }
+        
+        /**
+         * Updates the number of characters in the subtree after its children were changed.
+         */
+        void update() {
+            size = size(left) + length + size(right);
+        }
+    }
+}
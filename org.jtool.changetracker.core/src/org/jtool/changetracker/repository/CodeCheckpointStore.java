@@ -0,0 +1,260 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.repository;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.LinkedHashMap;
+
+/**
+ * Stores checkpoints of code restored from the history of change operations.
+ * The code is materialized every fixed number of change operations (or every fixed amount of edited text)
+ * while it is restored, and later restoration starts from the closest checkpoint that lies between the restoration
+ * point and the target, which is before the target when restoring forward and after it when restoring backward.
+ * Checkpoints of all the histories share a memory budget, and the least recently used ones are evicted.
+ * @author Katsuhisa Maruyama
+ */
+class CodeCheckpointStore {
+    
+    /**
+     * The number of change operations between checkpoints.
+     */
+    private static final int CHECKPOINT_INTERVAL = 100;
+    
+    /**
+     * The number of edited characters over which a checkpoint is materialized.
+     */
+    private static final int CHECKPOINT_EDIT_SIZE = 8 * 1024;
+    
+    /**
+     * The maximum number of bytes used by checkpoints of all the histories.
+     */
+    private static final long MEMORY_BUDGET = 64 * 1024 * 1024;
+    
+    /**
+     * The checkpoints of all the histories in the order of their use.
+     */
+    private static LinkedHashMap<Checkpoint, Checkpoint> lruCheckpoints = new LinkedHashMap<Checkpoint, Checkpoint>(256, 0.75f, true);
+    
+    /**
+     * The number of bytes used by checkpoints of all the histories.
+     */
+    private static long usedMemory = 0;
+    
+    /**
+     * The history of change operations whose code is restored.
+     */
+    private OperationHistory history;
+    
+    /**
+     * The checkpoints of the history, which are sorted by the index numbers of the change operations.
+     */
+    private TreeMap<Integer, Checkpoint> checkpoints = new TreeMap<Integer, Checkpoint>();
+    
+    /**
+     * Creates an empty store of checkpoints.
+     * @param history the history of change operations whose code is restored
+     */
+    CodeCheckpointStore(OperationHistory history) {
+        this.history = history;
+    }
+    
+    /**
+     * Restores code at the time when a specified change operation was performed.
+     * @param findex the index number of the file operation at the restoration point
+     * @param index the index of the change operation
+     * @return the contents of the restored code
+     */
+    String getCode(int findex, int index) {
+        FileOperation fop = (FileOperation)history.getOperation(findex);
+        String code = fop.getCode();
+        if (findex == index) {
+            return code;
+        }
+        
+        int from = findex;
+        Checkpoint cp = getClosestCheckpoint(findex, index);
+        if (cp != null) {
+            from = cp.index;
+            code = cp.code;
+        }
+        return restore(findex, code, from, index);
+    }
+    
+    /**
+     * Applies change operations to code and materializes checkpoints on the way.
+     * @param findex the index number of the file operation at the restoration point
+     * @param code the code at the time of the first change operation
+     * @param from the index number of the first change operation
+     * @param to the index number of the last change operation
+     * @return the resulting code after the application
+     */
+    private String restore(int findex, String code, int from, int to) {
+        CodeBuffer buffer = new CodeBuffer(code);
+        int edited = 0;
+        if (from < to) {
+            for (int idx = from + 1; idx <= to; idx++) {
+                IChangeOperation op = history.getOperation(idx);
+                if (op.isDocument()) {
+                    DocumentOperation dop = (DocumentOperation)op;
+                    CodeRestorer.applyOperationForward(buffer, dop);
+                    edited = edited + dop.getInsertedText().length() + dop.getDeletedText().length();
+                }
+                if (idx != to && (idx % CHECKPOINT_INTERVAL == 0 || edited >= CHECKPOINT_EDIT_SIZE)) {
+                    addCheckpoint(findex, idx, buffer.toString());
+                    edited = 0;
+                }
+            }
+        } else {
+            for (int idx = from; idx > to; idx--) {
+                IChangeOperation op = history.getOperation(idx);
+                if (op.isDocument()) {
+                    DocumentOperation dop = (DocumentOperation)op;
+                    CodeRestorer.applyOperationBackward(buffer, dop);
+                    edited = edited + dop.getInsertedText().length() + dop.getDeletedText().length();
+                }
+                if (idx - 1 != to && ((idx - 1) % CHECKPOINT_INTERVAL == 0 || edited >= CHECKPOINT_EDIT_SIZE)) {
+                    addCheckpoint(findex, idx - 1, buffer.toString());
+                    edited = 0;
+                }
+            }
+        }
+        return buffer.toString();
+    }
+    
+    /**
+     * Finds the checkpoint closest to a change operation between the restoration point and the change operation.
+     * Checkpoints beyond the change operation are not used since applying change operations backward is not
+     * the exact inverse of applying them forward when the history is inconsistent.
+     * @param findex the index number of the file operation at the restoration point
+     * @param index the index number of the change operation
+     * @return the found checkpoint, or <code>null</code> if none
+     */
+    private Checkpoint getClosestCheckpoint(int findex, int index) {
+        synchronized (lruCheckpoints) {
+            Map.Entry<Integer, Checkpoint> entry;
+            if (findex < index) {
+                entry = checkpoints.floorEntry(index);
+            } else {
+                entry = checkpoints.ceilingEntry(index);
+            }
+            if (entry == null) {
+                return null;
+            }
+            
+            Checkpoint cp = entry.getValue();
+            if (cp.findex != findex || (findex < index && cp.index <= findex) || (findex > index && cp.index >= findex)) {
+                return null;
+            }
+            lruCheckpoints.get(cp);
+            return cp;
+        }
+    }
+    
+    /**
+     * Adds a checkpoint, which evicts the least recently used checkpoints if the memory budget is exceeded.
+     * @param findex the index number of the file operation at the restoration point
+     * @param index the index number of the change operation at the checkpoint
+     * @param code the code at the checkpoint
+     */
+    private void addCheckpoint(int findex, int index, String code) {
+        synchronized (lruCheckpoints) {
+            Checkpoint old = checkpoints.get(index);
+            if (old != null) {
+                if (old.findex == findex) {
+                    lruCheckpoints.get(old);
+                    return;
+                }
+                remove(old);
+            }
+            
+            Checkpoint cp = new Checkpoint(this, findex, index, code);
+            checkpoints.put(index, cp);
+            lruCheckpoints.put(cp, cp);
+            usedMemory = usedMemory + cp.getMemorySize();
+            
+            while (usedMemory > MEMORY_BUDGET && !lruCheckpoints.isEmpty()) {
+                Checkpoint eldest = lruCheckpoints.keySet().iterator().next();
+                eldest.store.remove(eldest);
+            }
+        }
+    }
+    
+    /**
+     * Removes a checkpoint.
+     * @param cp the checkpoint to be removed
+     */
+    private void remove(Checkpoint cp) {
+        checkpoints.remove(cp.index);
+        lruCheckpoints.remove(cp);
+        usedMemory = usedMemory - cp.getMemorySize();
+    }
+    
+    /**
+     * Removes all the checkpoints, which is called when the history was changed.
+     */
+    void clear() {
+        synchronized (lruCheckpoints) {
+            for (Checkpoint cp : checkpoints.values()) {
+                lruCheckpoints.remove(cp);
+                usedMemory = usedMemory - cp.getMemorySize();
+            }
+            checkpoints.clear();
+        }
+    }
+    
+    /**
+     * Stores code at a checkpoint.
+     */
+    private static class Checkpoint {
+        
+        /**
+         * The store containing this checkpoint.
+         */
+        private CodeCheckpointStore store;
+        
+        /**
+         * The index number of the file operation at the restoration point where the code was restored from.
+         */
+        private int findex;
+        
+        /**
+         * The index number of the change operation at this checkpoint.
+         */
+        private int index;
+        
+        /**
+         * The code at this checkpoint.
+         */
+        private String code;
+        
+        /**
+         * Creates a checkpoint.
+         * @param store the store containing the checkpoint
+         * @param findex the index number of the file operation at the restoration point
+         * @param index the index number of the change operation at the checkpoint
+         * @param code the code at the checkpoint
+         */
+        Checkpoint(CodeCheckpointStore store, int findex, int index, String code) {
+            this.store = store;
+            this.findex = findex;
+            this.index = index;
+            this.code = code;
+        }
+        
+        /**
+         * Returns the approximate number of bytes used by this checkpoint.
+         * @return the number of bytes
+         */
+        long getMemorySize() {
+            return 2L * code.length() + 64;
+        }
+    }
+}
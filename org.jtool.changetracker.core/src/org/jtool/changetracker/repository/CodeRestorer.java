@@ -8,7 +8,6 @@ package org.jtool.changetracker.repository;
 
 import org.jtool.changetracker.operation.DocumentOperation;
 import org.jtool.changetracker.operation.IChangeOperation;
-import java.util.List;
 
 /**
  * Applies an change operation into code.
@@ -37,27 +36,27 @@ public class CodeRestorer {
      * @return the resulting code after the application
      */
     public static String applyOperations(OperationHistory history, String code, int from, int to) {
-        if (from == to) {
+        if (from == to || code == null) {
             return code;
         }
         
-        List<IChangeOperation> ops = history.getOperations();
+        CodeBuffer buffer = new CodeBuffer(code);
         if (from < to) {
-            for (int idx = from + 1; idx <= to && code != null; idx++) {
-                IChangeOperation op = ops.get(idx);
+            for (int idx = from + 1; idx <= to; idx++) {
+                IChangeOperation op = history.getOperation(idx);
                 if (op.isDocument()) {
-                    code = applyOperationForward(code, (DocumentOperation)op);
+                    applyOperationForward(buffer, (DocumentOperation)op);
                 }
             }
         } else {
-            for (int idx = from; idx > to && code != null; idx--) {
-                IChangeOperation op = ops.get(idx);
+            for (int idx = from; idx > to; idx--) {
+                IChangeOperation op = history.getOperation(idx);
                 if (op.isDocument()) {
-                    code = applyOperationBackward(code, (DocumentOperation)op);
+                    applyOperationBackward(buffer, (DocumentOperation)op);
                 }
             }
         }
-        return code;
+        return buffer.toString();
     }
     
     /**
@@ -67,15 +66,24 @@ public class CodeRestorer {
      * @return the resulting code after the application
      */
     public static String applyOperationForward(String code, DocumentOperation op) {
+        CodeBuffer buffer = new CodeBuffer(code);
+        applyOperationForward(buffer, op);
+        return buffer.toString();
+    }
+    
+    /**
+     * Applies forward a change operation to code stored in a buffer.
+     * @param buffer the buffer storing the code which the code change operation will be applied to
+     * @param op the change operation to be applied
+     */
+    public static void applyOperationForward(CodeBuffer buffer, DocumentOperation op) {
         int start = op.getStart();
         int end = start + op.getDeletedText().length();
-        StringBuilder postCode = new StringBuilder(code);
         try {
-            postCode.replace(start, end, op.getInsertedText());
+            buffer.replace(start, end, op.getInsertedText());
         } catch (StringIndexOutOfBoundsException e) {
             System.err.println(e.getMessage() + " " + op.getTimeAsString());
         }
-        return postCode.toString();
     }
     
     /**
@@ -85,10 +93,19 @@ public class CodeRestorer {
      * @return the resulting code after the application
      */
     public static String applyOperationBackward(String code, DocumentOperation op) {
+        CodeBuffer buffer = new CodeBuffer(code);
+        applyOperationBackward(buffer, op);
+        return buffer.toString();
+    }
+    
+    /**
+     * Applies backward a change operation to code stored in a buffer.
+     * @param buffer the buffer storing the code which the change operation will be applied to
+     * @param op the change operation to be applied
+     */
+    public static void applyOperationBackward(CodeBuffer buffer, DocumentOperation op) {
         int start = op.getStart();
         int end = start + op.getInsertedText().length();
-        StringBuilder postCode = new StringBuilder(code);
-        postCode.replace(start, end, op.getDeletedText());
-        return postCode.toString();
+        buffer.replace(start, end, op.getDeletedText());
     }
 }
@@ -89,7 +89,7 @@ public class ConsistencyCheker {
             return null;
         }
         
-        FileOperation fop  = (FileOperation)history.getOperations().get(findex);
+        FileOperation fop  = (FileOperation)history.getOperation(findex);
         return applyOperationsWithConsistencyCheck(history, fop.getCode(), findex, index);
     }
     
@@ -106,47 +106,51 @@ public class ConsistencyCheker {
             return code;
         }
         
-        List<IChangeOperation> ops = history.getOperations();
+        if (code == null) {
+            return null;
+        }
+        
+        CodeBuffer buffer = new CodeBuffer(code);
         if (from < to) {
             assert from >= 0;
-            assert to < ops.size();
-            for (int idx = from + 1; idx <= to && code != null; idx++) {
-                IChangeOperation op = ops.get(idx);
+            assert to < history.size();
+            for (int idx = from + 1; idx <= to; idx++) {
+                IChangeOperation op = history.getOperation(idx);
                 
                 if (op.isDocument()) {
-                    boolean result = consistentForward(code, (DocumentOperation)op);
+                    boolean result = consistentForward(buffer, (DocumentOperation)op);
                     if (!result) {
                          return null;
                     }
-                    code = CodeRestorer.applyOperationForward(code, (DocumentOperation)op);
+                    CodeRestorer.applyOperationForward(buffer, (DocumentOperation)op);
                     
                 } else if (op.isCopy()) {
-                    boolean result = consistentCopy(code, (CopyOperation)op);
+                    boolean result = consistentCopy(buffer, (CopyOperation)op);
                     if (!result) {
                         return null;
                     }
                 }
             }
         } else {
-            for (int idx = from; idx > to && code != null; idx--) {
-                IChangeOperation op = ops.get(idx);
+            for (int idx = from; idx > to; idx--) {
+                IChangeOperation op = history.getOperation(idx);
                 
                 if (op.isDocument()) {
-                    boolean result = consistentBackward(code, (DocumentOperation)op);
+                    boolean result = consistentBackward(buffer, (DocumentOperation)op);
                     if (!result) {
                         return null;
                     }
-                    code = CodeRestorer.applyOperationBackward(code, (DocumentOperation)op);
+                    CodeRestorer.applyOperationBackward(buffer, (DocumentOperation)op);
                     
                 } else if (op.isCopy()) {
-                    boolean result = consistentCopy(code, (CopyOperation)op);
+                    boolean result = consistentCopy(buffer, (CopyOperation)op);
                     if (!result) {
                         return null;
                     }
                 }
             }
         }
-        return code;
+        return buffer.toString();
     }
     
     /**
@@ -159,7 +163,16 @@ public class ConsistencyCheker {
         if (code == null) {
             return false;
         }
-        
+        return consistentForward(new CodeBuffer(code), op);
+    }
+    
+    /**
+     * Tests if a successive change operation was consistently applied to the source code.
+     * @param code the buffer storing the source code before the application
+     * @param op the operation to be applied
+     * @return <code>true</code> if the application is consistent, otherwise <code>false</code>
+     */
+    private static boolean consistentForward(CodeBuffer code, DocumentOperation op) {
         int start = op.getStart();
         String itext = op.getInsertedText();
         String dtext = op.getDeletedText();
@@ -198,7 +211,16 @@ public class ConsistencyCheker {
         if (code == null) {
             return false;
         }
-        
+        return consistentBackward(new CodeBuffer(code), op);
+    }
+    
+    /**
+     * Tests if a precedent change operation was consistently applied to the source code.
+     * @param code the buffer storing the source code after the application
+     * @param op the operation to be applied
+     * @return <code>true</code> if the application is consistent, otherwise <code>false</code>
+     */
+    private static boolean consistentBackward(CodeBuffer code, DocumentOperation op) {
         int start = op.getStart();
         String itext = op.getInsertedText();
         String dtext = op.getDeletedText();
@@ -236,7 +258,16 @@ public class ConsistencyCheker {
         if (code == null) {
             return false;
         }
-        
+        return consistentCopy(new CodeBuffer(code), op);
+    }
+    
+    /**
+     * Tests if a copy operation was consistently applied to the source code.
+     * @param code the buffer storing the source code to be checked
+     * @param op the copy operation
+     * @return <code>true</code> if the application is consistent, otherwise <code>false</code>
+     */
+    private static boolean consistentCopy(CodeBuffer code, CopyOperation op) {
         String ctext = op.getCopiedText();
         int start = op.getStart();
         int end = start + ctext.length();
@@ -14,177 +14,308 @@ import java.util.ArrayList;
 
 /**
  * Compacts change operations.
+ * The compaction consists of the removal, the merge, and the elimination of unnecessary file activation, open-close,
+ * and save operations, which are fused into a single pass. Each stage passes a change operation to the next one as soon as
+ * no later change operation can affect it, so a compactor can be fed with a stream of change operations.
  * @author Katsuhisa Maruyama
  */
 public class OperationCompactor {
     
+    /**
+     * The collection that the compacted change operations are written into.
+     */
+    private List<IChangeOperation> output;
+    
+    /**
+     * The position of the collection at which the next compacted change operation is written.
+     */
+    private int writeIndex;
+    
+    /**
+     * The change operation that is waiting for the next one in the merge stage.
+     */
+    private IChangeOperation mergeCandidate = null;
+    
+    /**
+     * The file activation operations that might be eliminated by the next change operation in the activation stage.
+     */
+    private List<IChangeOperation> activateCandidates = new ArrayList<IChangeOperation>();
+    
+    /**
+     * The change operation that was lastly passed to the next stage by the activation stage, which is not an activation.
+     */
+    private IChangeOperation activatePassed = null;
+    
+    /**
+     * The change operation that is waiting for the next one in the open-close stage.
+     */
+    private IChangeOperation openCloseCandidate = null;
+    
+    /**
+     * The change operation that is waiting for the next one in the save stage.
+     */
+    private IChangeOperation saveCandidate = null;
+    
+    /**
+     * Creates a compactor that collects the compacted change operations.
+     */
+    public OperationCompactor() {
+        this(new ArrayList<IChangeOperation>(), 0);
+    }
+    
+    /**
+     * Creates a compactor that writes the compacted change operations into a collection.
+     * @param output the collection that the compacted change operations are written into
+     * @param writeIndex the position of the collection at which the first compacted change operation is written
+     */
+    private OperationCompactor(List<IChangeOperation> output, int writeIndex) {
+        this.output = output;
+        this.writeIndex = writeIndex;
+    }
+    
     /**
      * Compacts change operations.
+     * The given collection is not changed, but the texts of merged document operations are changed in place.
      * @param ops the change operations
      * @return the collection of change operations after the compaction
      */
     public static List<IChangeOperation> compact(List<IChangeOperation> ops) {
         List<IChangeOperation> retops = new ArrayList<IChangeOperation>(ops);
-        retops = remove(retops);
-        retops = merge(retops);
-        retops = eliminateUnnecessaryActivate(retops);
-        retops = eliminateUnnecessaryOpenClose(retops);
-        retops = eliminateUnnecessarySave(retops);
+        compactInPlace(retops);
         return retops;
     }
     
     /**
-     * Removes change operations that have the same inserted and deleted text.
-     * @param ops the change operations that the removal applies to
-     * @return the collection of change operations after the removal
+     * Compacts change operations within a given collection, which is overwritten by the compacted change operations.
+     * @param ops the change operations
+     */
+    public static void compactInPlace(List<IChangeOperation> ops) {
+        OperationCompactor compactor = new OperationCompactor(ops, 0);
+        int size = ops.size();
+        for (int idx = 0; idx < size; idx++) {
+            compactor.add(ops.get(idx));
+        }
+        compactor.flush();
+        ops.subList(compactor.writeIndex, size).clear();
+    }
+    
+    /**
+     * Feeds a change operation to this compactor.
+     * @param op the change operation
      */
-    private static List<IChangeOperation> remove(List<IChangeOperation> ops) {
-        for (int idx = 0; idx < ops.size(); idx++) {
-            IChangeOperation op = ops.get(idx);
-            if (op.isDocument()) {
-                DocumentOperation dop = (DocumentOperation)op;
-                if (dop.getInsertedText().equals(dop.getDeletedText())) {
-                    ops.remove(idx);
-                    idx--;
-                }
+    public void add(IChangeOperation op) {
+        if (op.isDocument()) {
+            DocumentOperation dop = (DocumentOperation)op;
+            if (dop.getInsertedTextSize() == dop.getDeletedTextSize() && dop.getInsertedText().equals(dop.getDeletedText())) {
+                return;
             }
         }
+        addToMerge(op);
+    }
+    
+    /**
+     * Passes all the change operations waiting in the stages, which ends the stream of change operations.
+     */
+    public void flush() {
+        if (mergeCandidate != null) {
+            addToActivate(mergeCandidate);
+            mergeCandidate = null;
+        }
+        for (IChangeOperation op : activateCandidates) {
+            addToOpenClose(op);
+        }
+        activateCandidates.clear();
+        activatePassed = null;
+        if (openCloseCandidate != null) {
+            addToSave(openCloseCandidate);
+            openCloseCandidate = null;
+        }
+        if (saveCandidate != null) {
+            write(saveCandidate);
+            saveCandidate = null;
+        }
+    }
+    
+    /**
+     * Returns the compacted change operations that have been collected, and clears them.
+     * Change operations that are still waiting in the stages are not returned until later ones or a flush pass them.
+     * @return the collection of the compacted change operations
+     */
+    public List<IChangeOperation> takeOperations() {
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>(output.subList(0, writeIndex));
+        output.clear();
+        writeIndex = 0;
         return ops;
     }
     
     /**
      * Merges change operations that contain the multi-byte text that was inserted and immediately deleted.
      * These change operations appear in the history due to Kana-Kanji conversion etc.
-     * @param ops the change operations that the merge applies to
-     * @return the collection of the operations after the merge
-     */
-    private static List<IChangeOperation> merge(List<IChangeOperation> ops) {
-        for (int idx = 0; idx < ops.size() - 1; idx++) {
-            IChangeOperation op1 = ops.get(idx);
-            IChangeOperation op2 = ops.get(idx + 1);
-            
-            if (!op1.isDocument() || !op2.isDocument()) {
-                continue;
-            }
-            if (!op1.getPath().equals(op2.getPath()) || !op1.getAuthor().equals(op2.getAuthor())) {
-                continue;
-            }
-            
-            DocumentOperation dop1 = (DocumentOperation)op1;
-            DocumentOperation dop2 = (DocumentOperation)op2;
-            if (!dop1.isTyping() || !dop2.isTyping()) {
-                continue;
-            }
-            
-            String itext1 = dop1.getInsertedText();
+     * @param op the change operation passed to the merge stage
+     */
+    private void addToMerge(IChangeOperation op) {
+        IChangeOperation prev = mergeCandidate;
+        if (prev == null) {
+            mergeCandidate = op;
+            return;
+        }
+        
+        if (isMergeable(prev, op)) {
+            DocumentOperation dop1 = (DocumentOperation)prev;
+            DocumentOperation dop2 = (DocumentOperation)op;
             String itext2 = dop2.getInsertedText();
-            String dtext1 = dop1.getDeletedText();
-            String dtext2 = dop2.getDeletedText();
-            if (itext1.length() == 0 || dtext2.length() == 0) {
-                continue;
-            }
-            
-            if (dop1.getStart() == dop2.getStart() && itext1.equals(dtext2)) {
-                if (containsMultiByteCode(itext1)) {
-                    ops.remove(idx + 1);
-                    if (dtext1.length() == 0 && itext2.length() == 0) {
-                        ops.remove(idx);
-                    } else {
-                        dop1.setInsertedText(itext2);
-                    }
-                    idx--;
-                }
+            if (dop1.getDeletedText().length() == 0 && itext2.length() == 0) {
+                mergeCandidate = null;
+            } else {
+                dop1.setInsertedText(itext2);
+                dop1.setKeystrokes(null);
             }
+            return;
         }
-        return ops;
+        
+        addToActivate(prev);
+        mergeCandidate = op;
+    }
+    
+    /**
+     * Tests if the text inserted by a change operation was immediately deleted by the next one.
+     * @param op1 the former change operation
+     * @param op2 the latter change operation
+     * @return <code>true</code> if the two change operations can be merged, otherwise <code>false</code>
+     */
+    private static boolean isMergeable(IChangeOperation op1, IChangeOperation op2) {
+        if (!op1.isDocument() || !op2.isDocument()) {
+            return false;
+        }
+        if (!op1.getPath().equals(op2.getPath()) || !op1.getAuthor().equals(op2.getAuthor())) {
+            return false;
+        }
+        
+        DocumentOperation dop1 = (DocumentOperation)op1;
+        DocumentOperation dop2 = (DocumentOperation)op2;
+        if (!dop1.isTyping() || !dop2.isTyping() || dop1.getStart() != dop2.getStart()) {
+            return false;
+        }
+        
+        int size = dop1.getInsertedTextSize();
+        if (size == 0 || size != dop2.getDeletedTextSize()) {
+            return false;
+        }
+        String itext1 = dop1.getInsertedText();
+        return itext1.equals(dop2.getDeletedText()) && containsMultiByteCode(itext1);
     }
     
     /**
-     * Tests if a given string contains the multibyte code.
+     * Tests if a given string contains the multibyte code, that is, if it becomes longer when encoded in UTF-8.
+     * An unpaired surrogate is not multibyte since it is encoded into a single replacement byte.
      * @param str the string to be checked
      * @return <code>true</code> if the string contains the multibyte code, otherwise <code>false</code>
      */
     private static boolean containsMultiByteCode(String str) {
-        try {
-            byte[] bytes = str.getBytes("UTF8");
-            return str.length() != bytes.length;
-        } catch (Exception ex) {
+        int len = str.length();
+        for (int idx = 0; idx < len; idx++) {
+            char ch = str.charAt(idx);
+            if (ch < 0x80) {
+                continue;
+            }
+            if (!Character.isSurrogate(ch)) {
+                return true;
+            }
+            if (Character.isHighSurrogate(ch) && idx + 1 < len && Character.isLowSurrogate(str.charAt(idx + 1))) {
+                return true;
+            }
         }
         return false;
     }
     
     /**
-     * Eliminates unnecessary file open-close operations.
-     * @param ops the change operations that the elimination applies to
-     * @return the collection of the code change operations after the elimination
-     */
-    private static List<IChangeOperation> eliminateUnnecessaryOpenClose(List<IChangeOperation> ops) {
-        for (int idx = 0; idx < ops.size() - 1; idx++) {
-            IChangeOperation op1 = ops.get(idx);
-            if (op1.isFile()) {
-                IChangeOperation op2 = ops.get(idx + 1);
-                if (op2.isFile()) {
-                    FileOperation fop1 = (FileOperation)op1;
-                    FileOperation fop2 = (FileOperation)op2;
-                    if (op1.getPath().equals(op2.getPath()) && fop1.isOpen() && fop2.isClose()) {
-                        ops.remove(idx);
-                        ops.remove(idx);
-                        idx--;
-                    }
-                }
+     * Eliminates unnecessary file activation operations.
+     * A file activation operation followed by a file operation on the same file is eliminated, and so is a file activation
+     * operation that follows a file operation on the same file.
+     * @param op the change operation passed to the activation stage
+     */
+    private void addToActivate(IChangeOperation op) {
+        while (true) {
+            int last = activateCandidates.size() - 1;
+            IChangeOperation prev = last >= 0 ? activateCandidates.get(last) : activatePassed;
+            if (prev == null || !isFileOperationOnSamePath(prev, op)) {
+                break;
+            }
+            if (((FileOperation)prev).isActivate()) {
+                activateCandidates.remove(last);
+            } else if (((FileOperation)op).isActivate()) {
+                return;
+            } else {
+                break;
             }
         }
-        return ops;
+        
+        if (op.isFile() && ((FileOperation)op).isActivate()) {
+            activateCandidates.add(op);
+            return;
+        }
+        for (IChangeOperation cop : activateCandidates) {
+            addToOpenClose(cop);
+        }
+        activateCandidates.clear();
+        activatePassed = op;
+        addToOpenClose(op);
+    }
+    
+    /**
+     * Eliminates unnecessary file open-close operations.
+     * @param op the change operation passed to the open-close stage
+     */
+    private void addToOpenClose(IChangeOperation op) {
+        IChangeOperation prev = openCloseCandidate;
+        if (prev == null) {
+            openCloseCandidate = op;
+            return;
+        }
+        
+        if (isFileOperationOnSamePath(prev, op) && ((FileOperation)prev).isOpen() && ((FileOperation)op).isClose()) {
+            openCloseCandidate = null;
+            return;
+        }
+        
+        addToSave(prev);
+        openCloseCandidate = op;
     }
     
     /**
      * Eliminates unnecessary file save operations.
-     * @param ops the change operations that the elimination applies to
-     * @return the collection of the code change operations after the elimination
-     */
-    private static List<IChangeOperation> eliminateUnnecessarySave(List<IChangeOperation> ops) {
-        for (int idx = 0; idx < ops.size() - 1; idx++) {
-            IChangeOperation op1 = ops.get(idx);
-            if (op1.isFile()) {
-                IChangeOperation op2 = ops.get(idx + 1);
-                if (op2.isFile()) {
-                    FileOperation fop1 = (FileOperation)op1;
-                    FileOperation fop2 = (FileOperation)op2;
-                    if (op1.getPath().equals(op2.getPath()) && fop1.isSave() && fop2.isSave()) {
-                        ops.remove(idx);
-                        idx--;
-                    }
-                }
+     * @param op the change operation passed to the save stage
+     */
+    private void addToSave(IChangeOperation op) {
+        IChangeOperation prev = saveCandidate;
+        if (prev != null) {
+            if (!isFileOperationOnSamePath(prev, op) || !((FileOperation)prev).isSave() || !((FileOperation)op).isSave()) {
+                write(prev);
             }
         }
-        return ops;
+        saveCandidate = op;
     }
     
     /**
-     * Eliminates unnecessary file activation operations.
-     * @param ops the change operations that the elimination applies to
-     * @return the collection of the code change operations after the elimination
-     */
-    private static List<IChangeOperation> eliminateUnnecessaryActivate(List<IChangeOperation> ops) {
-        for (int idx = 1; idx < ops.size(); idx++) {
-            IChangeOperation op1 = ops.get(idx - 1);
-            if (op1.isFile()) {
-                IChangeOperation op2 = ops.get(idx);
-                if (op2.isFile()) {
-                    FileOperation fop1 = (FileOperation)op1;
-                    FileOperation fop2 = (FileOperation)op2;
-                    if (op1.getPath().equals(op2.getPath())) {
-                        if (fop1.isActivate()) {
-                            ops.remove(idx - 1);
-                            idx--;
-                        } else if (fop2.isActivate()) {
-                            ops.remove(idx);
-                            idx--;
-                        }
-                    }
-                }
-            }
+     * Tests if two change operations are file operations on the same file.
+     * @param op1 the former change operation
+     * @param op2 the latter change operation
+     * @return <code>true</code> if both are file operations on the same file, otherwise <code>false</code>
+     */
+    private static boolean isFileOperationOnSamePath(IChangeOperation op1, IChangeOperation op2) {
+        return op1.isFile() && op2.isFile() && op1.getPath().equals(op2.getPath());
+    }
+    
+    /**
+     * Writes a compacted change operation.
+     * @param op the compacted change operation
+     */
+    private void write(IChangeOperation op) {
+        if (writeIndex < output.size()) {
+            output.set(writeIndex, op);
+        } else {
+            output.add(op);
         }
-        return ops;
+        writeIndex++;
     }
 }
@@ -11,6 +11,8 @@ import org.jtool.changetracker.operation.ChangeOperation;
 import org.jtool.changetracker.operation.FileOperation;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 
 /**
@@ -19,10 +21,36 @@ import java.time.ZonedDateTime;
  */
 public class OperationHistory {
     
+    /**
+     * The initial capacity of the array storing the times of change operations.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    
     /**
      * The change operations stored in the history.
      */
-    private List<IChangeOperation> operations = new ArrayList<IChangeOperation>();;
+    private List<IChangeOperation> operations = new ArrayList<IChangeOperation>();
+    
+    /**
+     * The read-only snapshot of the change operations stored in the history,
+     * or <code>null</code> if the history was changed after the snapshot was taken.
+     */
+    private volatile List<IChangeOperation> snapshot = null;
+    
+    /**
+     * The times (nanoseconds from the epoch) of the change operations, which are stored in the same order as the operations.
+     */
+    private long[] times = new long[INITIAL_CAPACITY];
+    
+    /**
+     * The checkpoints of code restored from the history.
+     */
+    private CodeCheckpointStore checkpoints = new CodeCheckpointStore(this);
     
     /**
      * Create an empty instance.
@@ -35,38 +63,149 @@ public class OperationHistory {
      * @param ops the collection of change operations
      */
     public OperationHistory(List<? extends IChangeOperation> ops) {
-        operations.addAll(ops);
+        addAll(ops);
     }
     
     /**
      * Clears the history of change operations.
      */
-    public void clear() {
+    public synchronized void clear() {
+        snapshot = null;
         operations.clear();
+        times = new long[INITIAL_CAPACITY];
+        checkpoints.clear();
     }
     
     /**
      * Adds a change operation in the history.
+     * The change operation is inserted after the change operations performed at the same time or before, which keeps them in time order.
      * @param operation the change operation to be added
      */
-    public void add(IChangeOperation op) {
-        operations.add(op);
+    public synchronized void add(IChangeOperation op) {
+        snapshot = null;
+        long time = toNanos(op.getTime());
+        int size = operations.size();
+        ensureCapacity(size + 1);
+        if (size == 0 || times[size - 1] <= time) {
+            operations.add(op);
+            times[size] = time;
+        } else {
+            int idx = upperBound(0, size - 1, time);
+            operations.add(idx, op);
+            System.arraycopy(times, idx, times, idx + 1, size - idx);
+            times[idx] = time;
+            checkpoints.clear();
+        }
     }
     
     /**
      * Adds change operations in the history.
+     * The change operations are sorted in time order if any of them was performed before the change operations preceding it.
      * @param operation the change operations to be added
      */
-    public void addAll(List<? extends IChangeOperation> ops) {
-        operations.addAll(ops);
+    public synchronized void addAll(List<? extends IChangeOperation> ops) {
+        snapshot = null;
+        int size = operations.size();
+        ensureCapacity(size + ops.size());
+        boolean ordered = true;
+        for (int idx = 0; idx < ops.size(); idx++) {
+            IChangeOperation op = ops.get(idx);
+            long time = toNanos(op.getTime());
+            if (size > 0 && time < times[size - 1]) {
+                ordered = false;
+            }
+            operations.add(op);
+            times[size] = time;
+            size++;
+        }
+        
+        if (!ordered) {
+            sort();
+        }
+    }
+    
+    /**
+     * Enlarges the array storing the times of change operations if necessary.
+     * @param capacity the required capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > times.length) {
+            long[] newTimes = new long[Math.max(capacity, times.length * 2)];
+            System.arraycopy(times, 0, newTimes, 0, operations.size());
+            times = newTimes;
+        }
+    }
+    
+    /**
+     * Converts time information into the number of nanoseconds from the epoch.
+     * @param time the time information
+     * @return the number of nanoseconds
+     */
+    private static long toNanos(ZonedDateTime time) {
+        Instant instant = time.toInstant();
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+    
+    /**
+     * Finds the first change operation that was performed at the specified time or after within the index range.
+     * @param from the index number of the starting change operation within the index range
+     * @param to the index number of the ending change operation within the index range
+     * @param time the specified time (nanoseconds from the epoch)
+     * @return the index number of the found operation, or <code>to + 1</code> if none
+     */
+    private int lowerBound(int from, int to, long time) {
+        int low = from;
+        int high = to + 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Finds the first change operation that was performed after the specified time within the index range.
+     * @param from the index number of the starting change operation within the index range
+     * @param to the index number of the ending change operation within the index range
+     * @param time the specified time (nanoseconds from the epoch)
+     * @return the index number of the found operation, or <code>to + 1</code> if none
+     */
+    private int upperBound(int from, int to, long time) {
+        int low = from;
+        int high = to + 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
     }
     
     /**
      * Obtains all the change operations stored in the history.
-     * @return the collection of the change operations
+     * The returned list is a read-only snapshot that can be iterated while change operations are added to the history.
+     * The snapshot is shared by the calls until the history is changed, so it is not copied on each call.
+     * @return the unmodifiable collection of the change operations
      */
     public List<IChangeOperation> getOperations() {
-        return new ArrayList<IChangeOperation>(operations);
+        List<IChangeOperation> ops = snapshot;
+        if (ops != null) {
+            return ops;
+        }
+        
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = Collections.unmodifiableList(new ArrayList<IChangeOperation>(operations));
+            }
+            return snapshot;
+        }
     }
     
     /**
@@ -172,15 +311,15 @@ public class OperationHistory {
      * @return the index number of the found operation, or <code>-1</code> if none
      */
     public int getLastOperationIndexBefore(int from, int to, ZonedDateTime time) {
+        from = Math.max(from, 0);
+        to = Math.min(to, operations.size() - 1);
         if (from > to) {
             return -1;
         }
         
-        for (int idx = to; idx >= from; idx--) {
-            IChangeOperation op = operations.get(idx);
-            if (op.getTime().isBefore(time) || time.isEqual(op.getTime())) {
-                return idx;
-            }
+        int idx = upperBound(from, to, toNanos(time)) - 1;
+        if (idx >= from) {
+            return idx;
         }
         return -1;
     }
@@ -202,15 +341,15 @@ public class OperationHistory {
      * @return the index number of the found operation, or <code>-1</code> if none
      */
     public int getFirstOperationIndexAfter(int from, int to, ZonedDateTime time) {
+        from = Math.max(from, 0);
+        to = Math.min(to, operations.size() - 1);
         if (from > to) {
             return -1;
         }
         
-        for (int idx = from; idx <= to; idx++) {
-            IChangeOperation op = operations.get(idx);
-            if (op.getTime().isAfter(time) || time.isEqual(op.getTime())) {
-                return idx;
-            }
+        int idx = lowerBound(from, to, toNanos(time));
+        if (idx <= to) {
+            return idx;
         }
         return -1;
     }
@@ -232,15 +371,16 @@ public class OperationHistory {
      * @return the index number of the found operation, or <code>-1</code> if none
      */
     public int getOperationIndexAt(int from, int to, ZonedDateTime time) {
+        from = Math.max(from, 0);
+        to = Math.min(to, operations.size() - 1);
         if (from > to) {
             return -1;
         }
         
-        for (int idx = from; idx <= to; idx++) {
-            IChangeOperation op = operations.get(idx);
-            if (time.isEqual(op.getTime())) {
-                return idx;
-            }
+        long nanos = toNanos(time);
+        int idx = lowerBound(from, to, nanos);
+        if (idx <= to && times[idx] == nanos) {
+            return idx;
         }
         return -1;
     }
@@ -261,7 +401,7 @@ public class OperationHistory {
      * @return the collection of the change operations
      */
     public List<IChangeOperation> getOperations(int from, int to) {
-        List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>(Math.max(to - from + 1, 0));
         for (int idx = from; idx <= to; idx++) {
             ops.add(operations.get(idx));
         }
@@ -288,6 +428,7 @@ public class OperationHistory {
     
     /**
      * Obtains the contents of source code restored at the time when a specified change operation was performed.
+     * The restoration starts from the closest checkpoint of the code if it exists.
      * @param index the index of the code change operation at the restoration point
      * @return the contents of the restored source code, <code>null</code> if the restoration fails
      */
@@ -296,9 +437,7 @@ public class OperationHistory {
         if (findex == -1) {
             return null;
         }
-        
-        FileOperation fop  = (FileOperation)getOperations().get(findex);
-        return CodeRestorer.applyOperations(this, fop.getCode(), findex, index);
+        return checkpoints.getCode(findex, index);
     }
     
     /**
@@ -357,12 +496,9 @@ public class OperationHistory {
             return false;
         }
         
-        List<IChangeOperation> ops1 = getOperations();
-        List<IChangeOperation> ops2 = history.getOperations();
-        
-        for (int i = 0; i < ops1.size(); i++) {
-            IChangeOperation op1 = ops1.get(i);
-            IChangeOperation op2 = ops2.get(i);
+        for (int i = 0; i < operations.size(); i++) {
+            IChangeOperation op1 = operations.get(i);
+            IChangeOperation op2 = history.getOperation(i);
             if (!op1.equals(op2)) {
                 return false;
             }
@@ -395,8 +531,13 @@ public class OperationHistory {
     /**
      * Sorts change operations stored in this history in time order.
      */
-    public void sort() {
+    public synchronized void sort() {
+        snapshot = null;
         ChangeOperation.sort(operations);
+        for (int idx = 0; idx < operations.size(); idx++) {
+            times[idx] = toNanos(operations.get(idx).getTime());
+        }
+        checkpoints.clear();
     }
     
     /**
@@ -8,21 +8,32 @@ package org.jtool.changetracker.repository;
 
 import org.jtool.changetracker.operation.IChangeOperation;
 import org.jtool.changetracker.operation.ChangeOperation;
-import org.jtool.changetracker.operation.CodeOperation;
 import org.jtool.changetracker.operation.FileOperation;
 import org.jtool.changetracker.core.CTConsole;
-import org.jtool.changetracker.dependencyanalyzer.DependencyDetector;
-import org.jtool.changetracker.dependencyanalyzer.ParseableSnapshot;
+import org.jtool.changetracker.core.CTPreferencePage;
+import org.jtool.changetracker.dependencyanalyzer.IncrementalDependencyDetector;
+import org.jtool.changetracker.dependencyanalyzer.SnapshotParsingPool;
+import org.jtool.changetracker.xml.Binary2Operation;
+import org.jtool.changetracker.xml.MappedSegment;
+import org.jtool.changetracker.xml.Operation2Binary;
 import org.jtool.changetracker.xml.Operation2Xml;
 import org.jtool.changetracker.xml.Xml2Operation;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.ui.progress.UIJob;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.io.File;
 
 /**
@@ -31,6 +42,21 @@ import java.io.File;
  */
 public class Repository {
     
+    /**
+     * The number of threads that read history files in parallel.
+     */
+    private static final int READER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    
+    /**
+     * The maximum number of history files that are read ahead of the files whose change operations are stored.
+     */
+    private static final int READ_AHEAD_FILES = READER_THREADS * 4;
+    
+    /**
+     * The interval time (milliseconds) for checking requests for cancellation while waiting for reading.
+     */
+    private static final long CANCEL_CHECK_INTERVAL = 100;
+    
     /**
      * The path of the location of this repository.
      */
@@ -61,12 +87,27 @@ public class Repository {
      */
     protected List<IRepositoryListener> listeners = new ArrayList<IRepositoryListener>();
     
+    /**
+     * The detector that analyzes change operations only at meaningful boundaries, or <code>null</code> if every change operation is analyzed.
+     */
+    private IncrementalDependencyDetector incrementalDetector = null;
+    
+    /**
+     * A flag that indicates if the restoration of code and the analysis of added change operations are deferred
+     * until the files of the change operations are first accessed.
+     */
+    private boolean deferringAnalysis = false;
+    
     /**
      * Creates an instance that stores information about the repository.
      * @param location the path of the location of the repository
      */
     public Repository(String location) {
         this.location = location;
+        if (CTPreferencePage.incrementalAnalysis()) {
+            incrementalDetector = new IncrementalDependencyDetector(
+                    CTPreferencePage.getAnalysisQuietPeriod(), CTPreferencePage.getAnalysisBurstSize());
+        }
     }
     
     /**
@@ -77,6 +118,9 @@ public class Repository {
         packageMap.clear();
         fileMap.clear();
         fileHistory.clear();
+        if (incrementalDetector != null) {
+            incrementalDetector.clear();
+        }
     }
     
     /**
@@ -128,17 +172,29 @@ public class Repository {
      * @param ops the collection of the change operations to be stored
      */
     public void storeChangeOperations(List<IChangeOperation> ops) {
+        List<IChangeOperation> addedOps = addChangeOperations(ops);
+        storeChangeOperationsIntoHistoryFile(addedOps);
+    }
+    
+    /**
+     * Adds change operations to the main repository without storing them into a history file.
+     * The change operations are sorted and compacted, and the listeners receive the events of the addition.
+     * This method must be called in the UI thread since the listeners update the views.
+     * @param ops the collection of the change operations to be added
+     * @return the collection of the compacted change operations, which are to be stored into a history file
+     */
+    public List<IChangeOperation> addChangeOperations(List<IChangeOperation> ops) {
         if (ops == null || ops.size() == 0) {
-            return;
+            return new ArrayList<IChangeOperation>();
         }
         
         ChangeOperation.sort(ops);
         ops = OperationCompactor.compact(ops);
         fireAboutTo(RepositoryEvent.Type.OPERATION_ADD);
         addOperationAll(ops);
+        flushDependencyDetection();
         fireChanged(RepositoryEvent.Type.OPERATION_ADD);
-        
-        storeChangeOperationsIntoHistoryFile(ops);
+        return ops;
     }
     
     /**
@@ -162,18 +218,28 @@ public class Repository {
     /**
      * Stores change operations into a history file.
      * @param ops the collection of the change operations
+     * @return <code>true</code> if the change operations were successfully written and synced, otherwise <code>false</code>
      */
-    public void storeChangeOperationsIntoHistoryFile(List<IChangeOperation> ops) {
+    public boolean storeChangeOperationsIntoHistoryFile(List<IChangeOperation> ops) {
         if (ops.size() == 0) {
-            return;
+            return true;
+        }
+        
+        if (CTPreferencePage.storeBinarySegments()) {
+            boolean result = Operation2Binary.storeOperations(ops, location);
+            if (!result) {
+                CTConsole.println("Failed to store change operations into a segment in: " + location);
+            }
+            return result;
         }
         
         long time = ops.get(0).getTimeAsLong();
         String filename = location + File.separatorChar + String.valueOf(time) + Xml2Operation.XML_FILE_EXTENTION;
-        boolean result = Operation2Xml.storeOperations(ops, filename);
+        boolean result = Operation2Xml.storeOperations(ops, filename, CTPreferencePage.storeCodeDeltas());
         if (!result) {
             CTConsole.println("Failed to store change operations into a history file: " + filename);
         }
+        return result;
     }
     
     /**
@@ -207,11 +273,55 @@ public class Repository {
         packageInfo.updateTimeRange(op);
         fileInfo.updateTimeRange(op);
         
+        if (deferringAnalysis) {
+            fileInfo.deferAnalysis(op);
+        } else {
+            fileInfo.analyzeDeferredOperations();
+            analyzeOperation(fileInfo, op, incrementalDetector);
+        }
+    }
+    
+    /**
+     * Restores code on a file operation and detects Java constructs that a change operation affects.
+     * @param finfo file information about the change operation
+     * @param op the change operation
+     * @param detector the detector that analyzes change operations only at meaningful boundaries, or <code>null</code>
+     */
+    private static void analyzeOperation(CTFile finfo, IChangeOperation op, IncrementalDependencyDetector detector) {
         if (op.isFile()) {
-            fileInfo.getOperationHistory().restoreCodeOnFileOperation((FileOperation)op);
+            finfo.getOperationHistory().restoreCodeOnFileOperation((FileOperation)op);
+        }
+        
+        if (detector != null) {
+            detector.operationAdded(finfo, op);
+        } else {
+            detectAffectedJavaConstructs(finfo, op);
+        }
+    }
+    
+    /**
+     * Restores code and detects Java constructs for the change operations of a file whose analysis was deferred.
+     * A detector of its own is used for the file, since the file may be first accessed in any thread.
+     * @param finfo file information about the change operations
+     * @param initialOp the file operation that has the initial code of the file, or <code>null</code> if none
+     * @param ops the collection of the change operations in the order of their time
+     */
+    static void analyzeDeferredOperations(CTFile finfo, FileOperation initialOp, List<IChangeOperation> ops) {
+        if (initialOp != null) {
+            finfo.setInitialCode(initialOp.getCode());
         }
         
-        detectAffectedJavaConstructs(fileInfo, op);
+        IncrementalDependencyDetector detector = null;
+        if (CTPreferencePage.incrementalAnalysis()) {
+            detector = new IncrementalDependencyDetector(
+                    CTPreferencePage.getAnalysisQuietPeriod(), CTPreferencePage.getAnalysisBurstSize());
+        }
+        for (IChangeOperation op : ops) {
+            analyzeOperation(finfo, op, detector);
+        }
+        if (detector != null) {
+            detector.flush();
+        }
     }
     
     /**
@@ -257,37 +367,39 @@ public class Repository {
     
     /**
      * Detects Java constructs within a snapshot that a change operation affects.
+     * The code is parsed in the background, and the affected Java constructs are attached to the change operation
+     * when the parsing finishes.
      * @param finfo file information about the change operation
      * @param op the change operation
      */
-    private void detectAffectedJavaConstructs(CTFile finfo, IChangeOperation op) {
+    private static void detectAffectedJavaConstructs(CTFile finfo, IChangeOperation op) {
         int index = finfo.getOperationIndexAt(op.getTime());
-        ParseableSnapshot sn = DependencyDetector.parse(finfo, index);
-        if (sn == null) {
-            return;
-        }
-        
-        finfo.addSnapshot(sn);
-        
-        ParseableSnapshot lastsn = finfo.getLastSnapshot();
-        List<IChangeOperation> ops;
-        if (lastsn != null) {
-            if (lastsn.getIndex() < 0) {
-                ops = finfo.getOperations();
-            } else {
-                ops = finfo.getOperationsAfter(lastsn.getTime());
-                ops.remove(0);
-            }
-        } else {
-            ops = finfo.getOperations();
+        SnapshotParsingPool.getInstance().submit(finfo, index);
+    }
+    
+    /**
+     * Detects Java constructs affected by change operations that have not been analyzed in the incremental analysis mode.
+     */
+    private void flushDependencyDetection() {
+        if (incrementalDetector != null) {
+            incrementalDetector.flush();
         }
-        List<CodeOperation> cops = DependencyDetector.getCodeOperations(ops);
-        DependencyDetector.detectBackwardChangeEdges(lastsn, cops);
-        DependencyDetector.detectForwardChangeEdges(sn, cops);
+    }
+    
+    /**
+     * Returns the detector that analyzes change operations only at meaningful boundaries.
+     * @return the detector, or <code>null</code> if the incremental analysis mode is disabled
+     */
+    public IncrementalDependencyDetector getIncrementalDependencyDetector() {
+        return incrementalDetector;
     }
     
     /**
      * Collects change operations from history files and stores them into this repository.
+     * The history files are read into a separate repository in a background job, which is published to this repository
+     * in the UI thread at once. The listeners then receive a refresh event in the UI thread.
+     * The restoration of code and the analysis of the read change operations are deferred until each file is first
+     * accessed, so the bodies of change operations in segments are not loaded while reading.
      */
     public void collectFromHistoryFiles() {
         File dir = new File(location);
@@ -295,24 +407,28 @@ public class Repository {
             return;
         }
         
-        UIJob job = new UIJob("Collect") {
+        final Repository loaded = new Repository(location);
+        loaded.deferringAnalysis = true;
+        Job job = new Job("Collect") {
             
             /**
-             * Run the job in the UI thread.
+             * Runs the job in a background thread.
              * @param monitor the progress monitor to use to display progress
              */
             @Override
-            public IStatus runInUIThread(IProgressMonitor monitor) {
+            public IStatus run(IProgressMonitor monitor) {
                 try {
-                    List<File> files = Xml2Operation.getHistoryFiles(location);
+                    List<File> files = Xml2Operation.getHistoryFiles(location, null,
+                            Xml2Operation.XML_FILE_EXTENTION, Binary2Operation.SEGMENT_FILE_EXTENTION);
                     monitor.beginTask("Reading change operations from history files", files.size());
-                    readHistoryFiles(files, monitor);
+                    loaded.readHistoryFiles(files, monitor);
                 } catch (InterruptedException e) {
-                    clear();
                     return Status.CANCEL_STATUS;
                 } finally {
                     monitor.done();
                 }
+                
+                publishInUIThread(loaded);
                 return Status.OK_STATUS;
             }
         };
@@ -320,30 +436,127 @@ public class Repository {
         job.schedule();
     }
     
+    /**
+     * Replaces the information about this repository with that of a repository loaded from history files.
+     * Change operations that were added to this repository during the loading are added again after the replacement.
+     * This method must be called in the UI thread.
+     * @param loaded the loaded repository
+     */
+    private void publish(Repository loaded) {
+        List<IChangeOperation> addedOps = getOperations();
+        ChangeOperation.sort(addedOps);
+        if (incrementalDetector != null) {
+            incrementalDetector.clear();
+        }
+        
+        projectMap = loaded.projectMap;
+        packageMap = loaded.packageMap;
+        fileMap = loaded.fileMap;
+        fileHistory = loaded.fileHistory;
+        incrementalDetector = loaded.incrementalDetector;
+        addOperationAll(addedOps);
+        flushDependencyDetection();
+    }
+    
     /**
      * Reads history files and stores change operations into this repository.
-     * @param repo the repository that stores the change operations
+     * The history files are parsed and compacted by a pool of worker threads, and the change operations
+     * are stored in the order of the history files. Segments are mapped into memory, and the bodies of
+     * change operations stored in them are loaded on demand.
      * @param files the collection of the history files
      * @param monitor the progress monitor to use to display progress and receive requests for cancellation
-     * @throws Exception if a request to cancel or any failure is detected
+     * @throws InterruptedException if a request to cancel is detected
      */
     private void readHistoryFiles(List<File> files, IProgressMonitor monitor) throws InterruptedException {
-        for (File file : files) {
-            String path = file.getAbsolutePath();
-            
-            List<IChangeOperation> ops = Xml2Operation.getOperations(path);
-            if (ops.size() > 0) {
-                ops = OperationCompactor.compact(ops);
+        ExecutorService executor = Executors.newFixedThreadPool(READER_THREADS);
+        List<Future<List<IChangeOperation>>> futures = new ArrayList<Future<List<IChangeOperation>>>(files.size());
+        try {
+            for (int idx = 0; idx < files.size(); idx++) {
+                while (futures.size() < files.size() && futures.size() < idx + READ_AHEAD_FILES) {
+                    futures.add(submitHistoryFile(executor, files.get(futures.size())));
+                }
+                
+                monitor.subTask(files.get(idx).getName());
+                List<IChangeOperation> ops = waitForHistoryFile(futures.get(idx), files.get(idx), monitor);
+                futures.set(idx, null);
+                
+                addOperationAll(ops);
+                
+                checkCanceled(monitor);
+                monitor.worked(1);
             }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Submits a task that reads change operations from a history file and compacts them.
+     * @param executor the executor that runs the task
+     * @param file the history file
+     * @return the future that returns the read change operations
+     */
+    private Future<List<IChangeOperation>> submitHistoryFile(ExecutorService executor, final File file) {
+        return executor.submit(new Callable<List<IChangeOperation>>() {
             
-            addOperationAll(ops);
-            
-            if (monitor.isCanceled()) {
-                clear();
-                monitor.done();
-                throw new InterruptedException("User interrupted");
+            /**
+             * Reads change operations from the history file.
+             * @return the collection of the read change operations
+             */
+            @Override
+            public List<IChangeOperation> call() {
+                List<IChangeOperation> ops;
+                if (Binary2Operation.isSegmentFile(file)) {
+                    MappedSegment segment = MappedSegment.open(file.getAbsolutePath());
+                    if (segment != null) {
+                        ops = segment.getOperations();
+                    } else {
+                        ops = new ArrayList<IChangeOperation>();
+                    }
+                } else {
+                    ops = Xml2Operation.getOperations(file.getAbsolutePath());
+                }
+                if (ops.size() > 0) {
+                    OperationCompactor.compactInPlace(ops);
+                }
+                return ops;
             }
-            monitor.worked(1);
+        });
+    }
+    
+    /**
+     * Waits until change operations are read from a history file.
+     * @param future the future that returns the read change operations
+     * @param file the history file
+     * @param monitor the progress monitor to use to receive requests for cancellation
+     * @return the collection of the read change operations, or empty set when failures in reading the file
+     * @throws InterruptedException if a request to cancel is detected
+     */
+    private List<IChangeOperation> waitForHistoryFile(Future<List<IChangeOperation>> future, File file,
+            IProgressMonitor monitor) throws InterruptedException {
+        while (true) {
+            checkCanceled(monitor);
+            try {
+                return future.get(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                continue;
+            } catch (ExecutionException e) {
+                CTConsole.println("Failed to read change operations from a history file: " + file.getAbsolutePath());
+                return new ArrayList<IChangeOperation>();
+            }
+        }
+    }
+    
+    /**
+     * Checks if a request to cancel is detected.
+     * @param monitor the progress monitor to use to receive requests for cancellation
+     * @throws InterruptedException if a request to cancel is detected
+     */
+    private void checkCanceled(IProgressMonitor monitor) throws InterruptedException {
+        if (monitor.isCanceled()) {
+            clear();
+            monitor.done();
+            throw new InterruptedException("User interrupted");
         }
     }
     
@@ -397,7 +610,11 @@ public class Repository {
         finfo = new CTFile(pathinfo, pckinfo.getProject(), pckinfo);
         if (op.isFile()) {
             FileOperation fop = (FileOperation)op;
-            finfo.setInitialCode(fop.getCode());
+            if (deferringAnalysis) {
+                finfo.deferInitialCode(fop);
+            } else {
+                finfo.setInitialCode(fop.getCode());
+            }
         }
         fileMap.put(key, finfo);
         fileHistory.add(finfo);
@@ -456,6 +673,29 @@ public class Repository {
         }
     }
     
+    /**
+     * Publishes a repository loaded from history files to this repository in the UI thread,
+     * and sends a refresh event to all the listeners.
+     * @param loaded the loaded repository
+     */
+    private void publishInUIThread(final Repository loaded) {
+        UIJob job = new UIJob("Notify") {
+            
+            /**
+             * Run the job in the UI thread.
+             * @param monitor the progress monitor to use to display progress
+             */
+            @Override
+            public IStatus runInUIThread(IProgressMonitor monitor) {
+                publish(loaded);
+                fireChanged(RepositoryEvent.Type.REFRESH);
+                return Status.OK_STATUS;
+            }
+        };
+        job.setSystem(true);
+        job.schedule();
+    }
+    
     /**
      * Checks if change operations are consistent with restored code.
      * @return <code>true</code> if all the change operations are consistent with the restored code, otherwise <code>false</code>
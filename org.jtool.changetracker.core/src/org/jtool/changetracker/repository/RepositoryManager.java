@@ -62,6 +62,22 @@ public class RepositoryManager {
         return repositoryHandlers;
     }
     
+    /**
+     * Adds a repository handler that receives events of the opened repositories and those opened later.
+     * @param handler the repository handler to be added
+     */
+    public void addRepositoryHandler(IRepositoryHandler handler) {
+        if (handler == null || !repositoryHandlers.add(handler)) {
+            return;
+        }
+        for (Repository repo : repositories.values()) {
+            repo.addEventListener(handler);
+        }
+        for (Repository repo : onlineRepositories) {
+            repo.addEventListener(handler);
+        }
+    }
+    
     /**
      * Initializes the whole information about the main repository.
      */
@@ -0,0 +1,469 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+import org.jtool.changetracker.core.CTConsole;
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.IOperationBodyLoader;
+import org.jtool.changetracker.operation.ChangeOperation;
+import org.jtool.changetracker.operation.CopyOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import org.jtool.changetracker.operation.CommandOperation;
+import org.jtool.changetracker.operation.RefactoringOperation;
+import org.jtool.changetracker.operation.ResourceOperation;
+import org.jtool.changetracker.repository.CTPath;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Converts the binary representation stored in segments into the history of change operations.
+ * @author Katsuhisa Maruyama
+ */
+public class Binary2Operation {
+    
+    /**
+     * The extension string of a segment.
+     */
+    public static String SEGMENT_FILE_EXTENTION = ".ctlog";
+    
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    
+    /**
+     * Tests if a file is a segment.
+     * @param file the file
+     * @return <code>true</code> if the file is a segment, otherwise <code>false</code>
+     */
+    public static boolean isSegmentFile(File file) {
+        return file.getName().endsWith(SEGMENT_FILE_EXTENTION);
+    }
+    
+    /**
+     * Returns all descendant segments of a directory.
+     * @param path the path of the directory
+     * @return the collection of all the descendant segments
+     */
+    public static List<File> getSegmentFiles(String path) {
+        return Xml2Operation.getHistoryFiles(path, null, SEGMENT_FILE_EXTENTION);
+    }
+    
+    /**
+     * Returns all descendant segments of a directory.
+     * @param path the path of the directory
+     * @param prefix a character that indicates the prefix of the name of a directory excluded
+     * @return the collection of all the descendant segments
+     */
+    public static List<File> getSegmentFiles(String path, String prefix) {
+        return Xml2Operation.getHistoryFiles(path, prefix, SEGMENT_FILE_EXTENTION);
+    }
+    
+    /**
+     * Obtains change operations from a segment.
+     * @param path the path name of a segment to be read
+     * @return the collection of the change operations, or empty set when failures in reading a segment
+     */
+    public static List<IChangeOperation> getOperations(String path) {
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+        for (List<IChangeOperation> block : getOperationBlocks(path)) {
+            ops.addAll(block);
+        }
+        return ops;
+    }
+    
+    /**
+     * Obtains change operations from a segment for each block, which corresponds to a single store of change operations.
+     * Only the blocks whose records are all complete are read, so a block that was broken by an interrupted write is
+     * ignored as a whole, and the lengths and the counts in the records are checked before they are used.
+     * @param path the path name of a segment to be read
+     * @return the collection of the blocks of change operations, or empty set when failures in reading a segment
+     */
+    public static List<List<IChangeOperation>> getOperationBlocks(String path) {
+        List<List<IChangeOperation>> blocks = new ArrayList<List<IChangeOperation>>();
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(Paths.get(path)));
+            long validLength = Operation2Binary.getValidLength(buf.duplicate());
+            if (validLength < 0) {
+                CTConsole.println("Not a segment of change operations: " + path);
+                return blocks;
+            }
+            if (validLength < buf.limit()) {
+                CTConsole.println("Incomplete block ignored in a segment: " + path);
+            }
+            if (validLength < 4) {
+                return blocks;
+            }
+            buf.limit((int)validLength);
+            buf.position(4);
+            
+            SegmentDecoder decoder = new SegmentDecoder();
+            List<IChangeOperation> block = null;
+            while (buf.hasRemaining()) {
+                int length = readVarInt(buf);
+                int end = buf.position() + length;
+                ByteBuffer record = buf.duplicate();
+                record.limit(end);
+                buf.position(end);
+                
+                byte kind = record.get();
+                if (kind == BinaryConstants.BlockRecord) {
+                    block = new ArrayList<IChangeOperation>(Math.min(readVarInt(record), buf.remaining()));
+                    blocks.add(block);
+                    decoder.startBlock();
+                } else if (kind == BinaryConstants.StringRecord) {
+                    decoder.defineString(record);
+                } else if (kind == BinaryConstants.OperationRecord && block != null) {
+                    IChangeOperation op = decoder.getOperation(record);
+                    if (op != null) {
+                        block.add(op);
+                    }
+                }
+            }
+        
+        } catch (BufferUnderflowException e) {
+            CTConsole.println("Broken record ignored in a segment: " + path);
+        } catch (IOException e) {
+            CTConsole.println("Read error occurred: " + path + " " + e.getMessage() + ".");
+        }
+        return blocks;
+    }
+    
+    /**
+     * Decodes records in a segment, which stores the state of the current block.
+     */
+    static class SegmentDecoder {
+        
+        /**
+         * The table of interned strings that were defined in the current block.
+         */
+        private List<String> stringTable = new ArrayList<String>();
+        
+        /**
+         * The time of the change operation that was lastly decoded.
+         */
+        private long lastTime = 0;
+        
+        /**
+         * The map that stores the last file operation on each file in the current block.
+         */
+        private Map<String, FileOperation> snapshots = new HashMap<String, FileOperation>();
+        
+        /**
+         * Starts decoding a new block.
+         */
+        void startBlock() {
+            stringTable = new ArrayList<String>();
+            stringTable.add(null);
+            lastTime = 0;
+            snapshots.clear();
+        }
+        
+        /**
+         * Restarts decoding in the middle of a block.
+         * @param strings the table of interned strings that were defined in the block
+         * @param time the time of the change operation that precedes the next operation in the block
+         */
+        void resumeBlock(List<String> strings, long time) {
+            stringTable = strings;
+            lastTime = time;
+        }
+        
+        /**
+         * Returns the table of interned strings that were defined in the current block.
+         * @return the table of the interned strings
+         */
+        List<String> getStringTable() {
+            return stringTable;
+        }
+        
+        /**
+         * Returns the time of the change operation that was lastly decoded.
+         * @return the number of nanoseconds from the epoch
+         */
+        long getLastTime() {
+            return lastTime;
+        }
+        
+        /**
+         * Decodes a string record, which defines an interned string.
+         * @param record the payload of the record following its kind
+         */
+        void defineString(ByteBuffer record) {
+            int id = readVarInt(record);
+            String str = readString(record);
+            while (stringTable.size() <= id) {
+                stringTable.add(null);
+            }
+            stringTable.set(id, str);
+        }
+        
+        /**
+         * Returns an interned string.
+         * @param id the identification number of the interned string
+         * @return the string, or <code>null</code> if the string is not defined
+         */
+        String getString(int id) {
+            if (id <= 0 || id >= stringTable.size()) {
+                return null;
+            }
+            return stringTable.get(id);
+        }
+        
+        /**
+         * Returns the file operation whose code is the base of the delta stored in the file operation being decoded.
+         * @param path the path of the file on which the file operation being decoded was performed
+         * @return the previous file operation on the same file in the current block, or <code>null</code> if none
+         */
+        FileOperation getCodeBase(String path) {
+            return snapshots.get(path);
+        }
+        
+        /**
+         * Decodes an operation record.
+         * @param record the payload of the record following its kind
+         * @return the decoded change operation, or <code>null</code> if the operation is unknown
+         */
+        IChangeOperation getOperation(ByteBuffer record) {
+            return getOperation(record, null);
+        }
+        
+        /**
+         * Decodes an operation record.
+         * The body of the change operation is not decoded but loaded on demand if a loader is given.
+         * @param record the payload of the record following its kind
+         * @param loader the loader that loads the body of the change operation, or <code>null</code> if the body is decoded
+         * @return the decoded change operation, or <code>null</code> if the operation is unknown
+         */
+        IChangeOperation getOperation(ByteBuffer record, IOperationBodyLoader loader) {
+            byte kind = record.get();
+            lastTime = lastTime + unzigzag(readVarLong(record));
+            ZonedDateTime time = toTime(lastTime, getString(readVarInt(record)));
+            String path = getString(readVarInt(record));
+            String branch = getString(readVarInt(record));
+            String projectName = getString(readVarInt(record));
+            String packageName = getString(readVarInt(record));
+            String action = getString(readVarInt(record));
+            String author = getString(readVarInt(record));
+            String desc = readString(record);
+            ZonedDateTime ctime = null;
+            byte flags = record.get();
+            if ((flags & BinaryConstants.CompoundTimeFlag) != 0) {
+                long nanos = lastTime + unzigzag(readVarLong(record));
+                ctime = toTime(nanos, getString(readVarInt(record)));
+            }
+            CTPath pathinfo = new CTPath(projectName, packageName, Xml2Operation.getFileName(path), path, branch);
+            
+            ChangeOperation operation;
+            if (kind == BinaryConstants.DocumentOperationKind) {
+                DocumentOperation op = new DocumentOperation(time, pathinfo, action, author);
+                op.setStart(unzigzag(readVarInt(record)));
+                if (loader != null) {
+                    op.setBodyLoader(loader, record.position());
+                    if ((flags & BinaryConstants.KeystrokesFlag) != 0) {
+                        skipString(record);
+                        skipString(record);
+                    }
+                } else {
+                    op.setInsertedText(readString(record));
+                    op.setDeletedText(readString(record));
+                }
+                if ((flags & BinaryConstants.KeystrokesFlag) != 0) {
+                    int[] keystrokes = new int[readVarInt(record)];
+                    for (int idx = 0; idx < keystrokes.length; idx++) {
+                        keystrokes[idx] = readVarInt(record);
+                    }
+                    op.setKeystrokes(keystrokes);
+                    if (loader == null && !op.hasValidKeystrokes()) {
+                        CTConsole.println("Dropped keystrokes inconsistent with the text of a document operation: " + path);
+                        op.setKeystrokes(null);
+                    }
+                }
+                operation = op;
+            } else if (kind == BinaryConstants.CopyOperationKind) {
+                CopyOperation op = new CopyOperation(time, pathinfo, author);
+                op.setStart(unzigzag(readVarInt(record)));
+                if (loader != null) {
+                    op.setBodyLoader(loader, record.position());
+                } else {
+                    op.setCopiedText(readString(record));
+                }
+                operation = op;
+            } else if (kind == BinaryConstants.FileOperationKind) {
+                FileOperation op = new FileOperation(time, pathinfo, action, author);
+                op.setCharset(getString(readVarInt(record)));
+                op.setSrcDstPath(getString(readVarInt(record)));
+                if (loader != null) {
+                    op.setBodyLoader(loader, record.position());
+                } else {
+                    op.setCode(readString(record));
+                }
+                if ((flags & BinaryConstants.CodeDeltaFlag) != 0) {
+                    FileOperation base = getCodeBase(path);
+                    if (base != null) {
+                        op.setCodeBase(base);
+                    } else {
+                        CTConsole.println("Missing base of the code of a file operation: " + path);
+                        op.setCode("");
+                    }
+                }
+                snapshots.put(path, op);
+                operation = op;
+            } else if (kind == BinaryConstants.CommandOperationKind) {
+                CommandOperation op = new CommandOperation(time, pathinfo, action, author);
+                op.setCommandId(getString(readVarInt(record)));
+                operation = op;
+            } else if (kind == BinaryConstants.RefactorOperationKind) {
+                RefactoringOperation op = new RefactoringOperation(time, pathinfo, action, author);
+                op.setName(getString(readVarInt(record)));
+                op.setSelectionStart(unzigzag(readVarInt(record)));
+                op.setArguments(readString(record));
+                op.setSelectedText(readString(record));
+                operation = op;
+            } else if (kind == BinaryConstants.ResourceOperationKind) {
+                ResourceOperation op = new ResourceOperation(time, pathinfo, action, author);
+                op.setTarget(getString(readVarInt(record)));
+                op.setSrcDstPath(getString(readVarInt(record)));
+                operation = op;
+            } else {
+                return null;
+            }
+            operation.setDescription(desc);
+            operation.setCompoundTime(ctime);
+            return operation;
+        }
+    }
+    
+    /**
+     * Converts time information into the number of nanoseconds from the epoch.
+     * @param time the time information
+     * @return the number of nanoseconds
+     */
+    static long toNanos(ZonedDateTime time) {
+        Instant instant = time.toInstant();
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+    
+    /**
+     * Converts the number of nanoseconds from the epoch into time information.
+     * @param nanos the number of nanoseconds
+     * @param zone the identification of the time zone
+     * @return the time information
+     */
+    static ZonedDateTime toTime(long nanos, String zone) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND), Math.floorMod(nanos, NANOS_PER_SECOND));
+        ZoneId zoneId = zone != null ? ZoneId.of(zone) : ZoneId.systemDefault();
+        return ZonedDateTime.ofInstant(instant, zoneId);
+    }
+    
+    /**
+     * Decodes a value encoded by zigzag encoding.
+     * @param value the encoded value
+     * @return the decoded value
+     */
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    /**
+     * Decodes a value encoded by zigzag encoding.
+     * @param value the encoded value
+     * @return the decoded value
+     */
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    /**
+     * Reads an unsigned integer stored as a varint from a buffer.
+     * @param buf the buffer
+     * @return the value
+     */
+    static int readVarInt(ByteBuffer buf) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+    
+    /**
+     * Reads an unsigned long integer stored as a varint from a buffer.
+     * @param buf the buffer
+     * @return the value
+     */
+    static long readVarLong(ByteBuffer buf) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            value |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+    
+    /**
+     * Reads a string stored with its length from a buffer.
+     * @param buf the buffer
+     * @return the string, or <code>null</code> if the stored string is <code>null</code>
+     */
+    static String readString(ByteBuffer buf) {
+        int length = readVarInt(buf);
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        if (length > buf.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String str;
+        if (buf.hasArray()) {
+            str = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buf.duplicate().get(bytes);
+            str = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buf.position(buf.position() + length);
+        return str;
+    }
+    
+    /**
+     * Skips a string stored with its length in a buffer.
+     * @param buf the buffer
+     */
+    static void skipString(ByteBuffer buf) {
+        int length = readVarInt(buf);
+        if (length == 0) {
+            return;
+        }
+        length--;
+        if (length > buf.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        buf.position(buf.position() + length);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+/**
+ * The constants appearing in binary segments that store the history of change operations.
+ *
+ * A segment starts with the magic number and is followed by length-prefixed records.
+ * Each record consists of its length (varint), its kind (byte), and its payload.
+ * A block record starts a group of records written at once and resets the table of interned strings
+ * and the base time of the time deltas, so that a block can be decoded without reading preceding blocks.
+ * A string record defines an interned string that is referred to by its identification number.
+ * An operation record stores a change operation whose time is a zigzag varint delta in nanoseconds.
+ * The keystrokes of a coalesced document operation follow its body as varints when the keystrokes flag is set.
+ * The code of a file operation is a delta against the code of the previous file operation on the same file
+ * in the block when the code delta flag is set.
+ * @author Katsuhisa Maruyama
+ */
+public class BinaryConstants {
+    
+    public static final int SEGMENT_MAGIC = 0x43545331;
+    
+    public static final byte BlockRecord     = 1;
+    public static final byte StringRecord    = 2;
+    public static final byte OperationRecord = 3;
+    
+    public static final byte DocumentOperationKind = 1;
+    public static final byte CopyOperationKind     = 2;
+    public static final byte FileOperationKind     = 3;
+    public static final byte CommandOperationKind  = 4;
+    public static final byte RefactorOperationKind = 5;
+    public static final byte ResourceOperationKind = 6;
+    
+    public static final byte CompoundTimeFlag = 0x01;
+    public static final byte KeystrokesFlag   = 0x02;
+    public static final byte CodeDeltaFlag    = 0x04;
+    
+    public static final int NULL_STRING_ID = 0;
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import org.jtool.changetracker.operation.CodeDelta;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * Encodes the code of file operations written into a history file or a block of a segment.
+ * The code of a file operation is encoded as a delta against the code of the previous file operation on the same file
+ * in the history file or the block, and the code is stored as it is at every keyframe interval so that the code
+ * can be restored from a bounded number of deltas.
+ * @author Katsuhisa Maruyama
+ */
+public class CodeSnapshotEncoder {
+    
+    /**
+     * The maximum number of the deltas that follow the code stored as it is.
+     */
+    public static final int KEYFRAME_INTERVAL = 16;
+    
+    /**
+     * The map that stores the code of the last file operation on each file.
+     */
+    private Map<String, String> lastCodes = new HashMap<String, String>();
+    
+    /**
+     * The map that stores the number of the deltas following the last code stored as it is for each file.
+     */
+    private Map<String, Integer> chainLengths = new HashMap<String, Integer>();
+    
+    /**
+     * The total length of the code of the encoded file operations.
+     */
+    private long codeLength = 0;
+    
+    /**
+     * The total length of the stored code or deltas of the encoded file operations.
+     */
+    private long storedLength = 0;
+    
+    /**
+     * Creates an encoder for a history file or a block of a segment.
+     */
+    public CodeSnapshotEncoder() {
+    }
+    
+    /**
+     * Encodes the code of a file operation. File operations must be given in the order of their writing.
+     * @param fop the file operation
+     * @return the delta of the code, or <code>null</code> if the code is stored as it is
+     */
+    public String encode(FileOperation fop) {
+        String path = fop.getPath();
+        String code = fop.getCode();
+        String base = lastCodes.get(path);
+        lastCodes.put(path, code);
+        if (code == null) {
+            chainLengths.remove(path);
+            return null;
+        }
+        
+        Integer chainLength = chainLengths.get(path);
+        String delta = null;
+        if (base != null && chainLength != null && chainLength.intValue() < KEYFRAME_INTERVAL) {
+            delta = CodeDelta.encode(base, code);
+        }
+        
+        codeLength = codeLength + code.length();
+        if (delta == null) {
+            chainLengths.put(path, 0);
+            storedLength = storedLength + code.length();
+        } else {
+            chainLengths.put(path, chainLength.intValue() + 1);
+            storedLength = storedLength + delta.length();
+        }
+        return delta;
+    }
+    
+    /**
+     * Encodes the code of file operations in a collection of change operations.
+     * @param ops the collection of the change operations
+     */
+    public void encode(List<IChangeOperation> ops) {
+        for (IChangeOperation op : ops) {
+            if (op.isFile()) {
+                encode((FileOperation)op);
+            }
+        }
+    }
+    
+    /**
+     * Returns the total length of the code of the encoded file operations.
+     * @return the number of the characters
+     */
+    public long getCodeLength() {
+        return codeLength;
+    }
+    
+    /**
+     * Returns the total length of the stored code or deltas of the encoded file operations.
+     * @return the number of the characters
+     */
+    public long getStoredLength() {
+        return storedLength;
+    }
+}
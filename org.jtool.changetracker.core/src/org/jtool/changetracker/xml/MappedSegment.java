@@ -0,0 +1,374 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+import org.jtool.changetracker.core.CTConsole;
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import org.jtool.changetracker.operation.IOperationBodyLoader;
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads change operations from a segment mapped into memory.
+ * The records of the segment are indexed when it is opened, and the change operations are decoded from the index.
+ * The bodies of the change operations (inserted, deleted, copied texts and the contents of code) are not
+ * decoded but loaded from the mapped segment on demand, so that the heap holds only their metadata.
+ * @author Katsuhisa Maruyama
+ */
+public class MappedSegment implements IOperationBodyLoader {
+    
+    /**
+     * The initial capacity of the index.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+    
+    /**
+     * The segment.
+     */
+    private File file;
+    
+    /**
+     * The contents of the segment mapped into memory.
+     */
+    private MappedByteBuffer buffer;
+    
+    /**
+     * The tables of interned strings for the respective blocks in the segment.
+     */
+    private List<List<String>> stringTables = new ArrayList<List<String>>();
+    
+    /**
+     * The number of the operation records in the segment.
+     */
+    private int size = 0;
+    
+    /**
+     * The positions of the payloads of the operation records.
+     */
+    private int[] positions = new int[INITIAL_CAPACITY];
+    
+    /**
+     * The index numbers of the blocks containing the operation records.
+     */
+    private int[] blocks = new int[INITIAL_CAPACITY];
+    
+    /**
+     * The times (nanoseconds from the epoch) of the change operations stored in the operation records.
+     */
+    private long[] times = new long[INITIAL_CAPACITY];
+    
+    /**
+     * The map that stores the index numbers of operation records for each path of a file.
+     */
+    private Map<String, IndexList> pathIndex = new LinkedHashMap<String, IndexList>();
+    
+    /**
+     * Creates an instance that reads change operations from a segment.
+     * @param file the segment
+     * @param buffer the contents of the segment mapped into memory
+     */
+    private MappedSegment(File file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+    }
+    
+    /**
+     * Opens a segment and indexes its records.
+     * @param path the path name of a segment to be read
+     * @return the opened segment, or <code>null</code> when failures in reading the segment
+     */
+    public static MappedSegment open(String path) {
+        File file = new File(path);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                CTConsole.println("Too large segment: " + path);
+                return null;
+            }
+            
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            MappedSegment segment = new MappedSegment(file, buffer);
+            if (!segment.index()) {
+                return null;
+            }
+            return segment;
+        
+        } catch (IOException e) {
+            CTConsole.println("Read error occurred: " + path + " " + e.getMessage() + ".");
+            return null;
+        }
+    }
+    
+    /**
+     * Indexes the records of this segment.
+     * Only the blocks whose records are all complete are indexed, so a block that was broken by an interrupted write
+     * is ignored as a whole.
+     * @return <code>true</code> if this segment stores change operations, otherwise <code>false</code>
+     */
+    private boolean index() {
+        ByteBuffer buf = buffer.duplicate();
+        long validLength = Operation2Binary.getValidLength(buffer.duplicate());
+        if (validLength < 4) {
+            CTConsole.println("Not a segment of change operations: " + file.getAbsolutePath());
+            return false;
+        }
+        if (validLength < buf.limit()) {
+            CTConsole.println("Incomplete block ignored in a segment: " + file.getAbsolutePath());
+        }
+        buf.limit((int)validLength);
+        buf.position(4);
+        
+        Binary2Operation.SegmentDecoder decoder = new Binary2Operation.SegmentDecoder();
+        int block = -1;
+        long lastTime = 0;
+        try {
+            while (buf.hasRemaining()) {
+                int length = Binary2Operation.readVarInt(buf);
+                int end = buf.position() + length;
+                
+                ByteBuffer record = buf.duplicate();
+                record.limit(end);
+                byte kind = record.get();
+                if (kind == BinaryConstants.BlockRecord) {
+                    decoder.startBlock();
+                    stringTables.add(decoder.getStringTable());
+                    block++;
+                    lastTime = 0;
+                } else if (kind == BinaryConstants.StringRecord) {
+                    decoder.defineString(record);
+                } else if (kind == BinaryConstants.OperationRecord && block >= 0) {
+                    int position = record.position();
+                    record.get();
+                    lastTime = lastTime + Binary2Operation.unzigzag(Binary2Operation.readVarLong(record));
+                    Binary2Operation.readVarInt(record);
+                    String path = decoder.getString(Binary2Operation.readVarInt(record));
+                    addIndex(position, block, lastTime, path);
+                }
+                buf.position(end);
+            }
+        
+        } catch (BufferUnderflowException e) {
+            CTConsole.println("Broken record ignored in a segment: " + file.getAbsolutePath());
+        }
+        return true;
+    }
+    
+    /**
+     * Adds an operation record to the index.
+     * @param position the position of the payload of the operation record
+     * @param block the index number of the block containing the operation record
+     * @param time the time of the change operation stored in the operation record
+     * @param path the path of a file on which the change operation was performed
+     */
+    private void addIndex(int position, int block, long time, String path) {
+        if (size == positions.length) {
+            int capacity = size * 2;
+            int[] newPositions = new int[capacity];
+            int[] newBlocks = new int[capacity];
+            long[] newTimes = new long[capacity];
+            System.arraycopy(positions, 0, newPositions, 0, size);
+            System.arraycopy(blocks, 0, newBlocks, 0, size);
+            System.arraycopy(times, 0, newTimes, 0, size);
+            positions = newPositions;
+            blocks = newBlocks;
+            times = newTimes;
+        }
+        positions[size] = position;
+        blocks[size] = block;
+        times[size] = time;
+        
+        String key = path != null ? path : "";
+        IndexList list = pathIndex.get(key);
+        if (list == null) {
+            list = new IndexList();
+            pathIndex.put(key, list);
+        }
+        list.add(size);
+        size++;
+    }
+    
+    /**
+     * Returns the segment.
+     * @return the segment
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * Returns the number of the operation records in this segment.
+     * @return the number of the operation records
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Obtains all change operations stored in this segment.
+     * @return the collection of the change operations
+     */
+    public List<IChangeOperation> getOperations() {
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>(size);
+        Map<Integer, IChangeOperation> decoded = new HashMap<Integer, IChangeOperation>();
+        for (int idx = 0; idx < size; idx++) {
+            IChangeOperation op = getOperation(idx, decoded);
+            if (op != null) {
+                ops.add(op);
+            }
+        }
+        return ops;
+    }
+    
+    /**
+     * Decodes the metadata of a change operation stored in an operation record.
+     * @param index the index number of the operation record
+     * @param decoded the map that stores the change operations that have been decoded for each index number
+     * @return the decoded change operation, or <code>null</code> if the operation is unknown or broken
+     */
+    private IChangeOperation getOperation(int index, Map<Integer, IChangeOperation> decoded) {
+        if (decoded.containsKey(index)) {
+            return decoded.get(index);
+        }
+        
+        long baseTime = 0;
+        if (index > 0 && blocks[index - 1] == blocks[index]) {
+            baseTime = times[index - 1];
+        }
+        
+        Binary2Operation.SegmentDecoder decoder = new Binary2Operation.SegmentDecoder() {
+            
+            /**
+             * Returns the file operation whose code is the base of the delta stored in the file operation being decoded.
+             * @param path the path of the file on which the file operation being decoded was performed
+             * @return the previous file operation on the same file in the same block, or <code>null</code> if none
+             */
+            @Override
+            FileOperation getCodeBase(String path) {
+                return getPreviousFileOperation(index, path, decoded);
+            }
+        };
+        decoder.resumeBlock(stringTables.get(blocks[index]), baseTime);
+        ByteBuffer record = buffer.duplicate();
+        record.position(positions[index]);
+        IChangeOperation op;
+        try {
+            op = decoder.getOperation(record, this);
+        } catch (BufferUnderflowException e) {
+            CTConsole.println("Broken record ignored in a segment: " + file.getAbsolutePath());
+            op = null;
+        }
+        decoded.put(index, op);
+        return op;
+    }
+    
+    /**
+     * Obtains the file operation on a file that precedes an operation record in the same block.
+     * @param index the index number of the operation record
+     * @param path the path of the file
+     * @param decoded the map that stores the change operations that have been decoded for each index number
+     * @return the previous file operation, or <code>null</code> if none
+     */
+    private FileOperation getPreviousFileOperation(int index, String path, Map<Integer, IChangeOperation> decoded) {
+        IndexList list = pathIndex.get(path != null ? path : "");
+        if (list == null) {
+            return null;
+        }
+        
+        int i = Arrays.binarySearch(list.indices, 0, list.size, index) - 1;
+        for (; i >= 0 && blocks[list.indices[i]] == blocks[index]; i--) {
+            int prev = list.indices[i];
+            if (buffer.get(positions[prev]) == BinaryConstants.FileOperationKind) {
+                IChangeOperation op = getOperation(prev, decoded);
+                if (op != null && op.isFile()) {
+                    return (FileOperation)op;
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Loads the body of a change operation from this segment.
+     * @param position the position where the body is stored
+     * @param count the number of the texts in the body
+     * @return the texts in the body
+     */
+    @Override
+    public String[] loadBody(long position, int count) {
+        ByteBuffer buf = buffer.duplicate();
+        buf.position((int)position);
+        String[] body = new String[count];
+        for (int i = 0; i < count; i++) {
+            body[i] = Binary2Operation.readString(buf);
+        }
+        return body;
+    }
+    
+    /**
+     * Obtains the sizes of the texts in the body of a change operation from this segment without decoding them.
+     * @param position the position where the body is stored
+     * @param count the number of the texts in the body
+     * @return the numbers of the bytes of the texts encoded in UTF-8
+     */
+    @Override
+    public int[] loadBodySizes(long position, int count) {
+        ByteBuffer buf = buffer.duplicate();
+        buf.position((int)position);
+        int[] sizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            int length = Binary2Operation.readVarInt(buf);
+            if (length > 0) {
+                sizes[i] = length - 1;
+                buf.position(buf.position() + length - 1);
+            }
+        }
+        return sizes;
+    }
+    
+    /**
+     * Stores index numbers of operation records.
+     */
+    private static class IndexList {
+        
+        /**
+         * The index numbers of the operation records.
+         */
+        private int[] indices = new int[8];
+        
+        /**
+         * The number of the stored index numbers.
+         */
+        private int size = 0;
+        
+        /**
+         * Adds an index number of an operation record.
+         * @param index the index number
+         */
+        void add(int index) {
+            if (size == indices.length) {
+                int[] newIndices = new int[size * 2];
+                System.arraycopy(indices, 0, newIndices, 0, size);
+                indices = newIndices;
+            }
+            indices[size] = index;
+            size++;
+        }
+    }
+}
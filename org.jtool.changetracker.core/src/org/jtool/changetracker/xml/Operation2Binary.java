@@ -0,0 +1,547 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+import org.jtool.changetracker.core.CTConsole;
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.CopyOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import org.jtool.changetracker.operation.CommandOperation;
+import org.jtool.changetracker.operation.RefactoringOperation;
+import org.jtool.changetracker.operation.ResourceOperation;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+
+/**
+ * Converts the history of change operations into its binary representation and appends it to a segment.
+ * @author Katsuhisa Maruyama
+ */
+public class Operation2Binary {
+    
+    /**
+     * The size of a segment over which change operations are appended to a new segment.
+     */
+    public static final long SEGMENT_SIZE_LIMIT = 16 * 1024 * 1024;
+    
+    /**
+     * The map that stores the length of each segment that was lastly validated or written.
+     */
+    private static Map<String, Long> validLengths = new HashMap<String, Long>();
+    
+    /**
+     * Appends change operations to the last segment in a directory, or to a new segment if the last one is full.
+     * @param operations the collections of change operations to be stored
+     * @param dirpath the path of the directory that contains the segments
+     * @return <code>true</code> if the change operations were successfully stored, otherwise <code>false</code>
+     */
+    public static boolean storeOperations(List<IChangeOperation> operations, String dirpath) {
+        if (operations.size() == 0) {
+            return true;
+        }
+        
+        File dir = new File(dirpath);
+        if (!XmlFileManager.makeDir(dir)) {
+            return false;
+        }
+        
+        File file = getLastSegmentFile(dir);
+        if (file != null && !repairSegment(file)) {
+            file = null;
+        }
+        if (file == null || file.length() >= SEGMENT_SIZE_LIMIT) {
+            String name = String.valueOf(operations.get(0).getTimeAsLong()) + Binary2Operation.SEGMENT_FILE_EXTENTION;
+            file = new File(dir, name);
+        }
+        return appendOperations(operations, file);
+    }
+    
+    /**
+     * Returns the segment that was lastly created in a directory.
+     * @param dir the directory that contains the segments
+     * @return the last segment, or <code>null</code> if none
+     */
+    private static File getLastSegmentFile(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+        
+        File last = null;
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(Binary2Operation.SEGMENT_FILE_EXTENTION)) {
+                if (last == null || compareSegmentNames(file.getName(), last.getName()) > 0) {
+                    last = file;
+                }
+            }
+        }
+        return last;
+    }
+    
+    /**
+     * Compares the names of two segments in the order of their creation.
+     * @param name1 the name of the first segment
+     * @param name2 the name of the second segment
+     * @return a negative integer, zero, or a positive integer as the first segment was created earlier than, at the same time as, or later than the second one
+     */
+    private static int compareSegmentNames(String name1, String name2) {
+        if (name1.length() != name2.length()) {
+            return name1.length() - name2.length();
+        }
+        return name1.compareTo(name2);
+    }
+    
+    /**
+     * Truncates a segment to the end of its last complete block so that a block broken by an interrupted write
+     * is not followed by appended blocks.
+     * @param file the segment
+     * @return <code>true</code> if change operations can be appended to the segment, otherwise <code>false</code>
+     */
+    private static boolean repairSegment(File file) {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        synchronized (validLengths) {
+            Long validLength = validLengths.get(path);
+            if (validLength != null && validLength.longValue() == length) {
+                return true;
+            }
+        }
+        
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate((int)Math.min(channel.size(), Integer.MAX_VALUE));
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) {
+                    break;
+                }
+            }
+            buf.flip();
+            
+            long validLength = getValidLength(buf);
+            if (validLength < 0) {
+                CTConsole.println("Not a segment of change operations: " + path);
+                return false;
+            }
+            if (validLength < channel.size()) {
+                channel.truncate(validLength);
+                channel.force(true);
+                CTConsole.println("Incomplete block truncated in a segment: " + path);
+            }
+            putValidLength(file, validLength);
+            return true;
+        
+        } catch (IOException e) {
+            CTConsole.println("Read error occurred: " + path + " " + e.getMessage() + ".");
+            return false;
+        }
+    }
+    
+    /**
+     * Returns the length of the part of a segment that ends with its last complete block.
+     * A block is complete if all the records in it have valid lengths and kinds, and it contains as many operation
+     * records as its block record declares.
+     * @param buf the buffer that stores the contents of the segment
+     * @return the length in bytes, or <code>-1</code> if the contents do not start with the magic number
+     */
+    static long getValidLength(ByteBuffer buf) {
+        if (buf.remaining() < 4) {
+            return 0;
+        }
+        if (buf.getInt() != BinaryConstants.SEGMENT_MAGIC) {
+            return -1;
+        }
+        
+        long validLength = buf.position();
+        int remaining = 0;
+        try {
+            while (buf.hasRemaining()) {
+                int length = Binary2Operation.readVarInt(buf);
+                if (length <= 0 || length > buf.remaining()) {
+                    break;
+                }
+                int end = buf.position() + length;
+                
+                byte kind = buf.get();
+                if (kind == BinaryConstants.BlockRecord) {
+                    remaining = Binary2Operation.readVarInt(buf);
+                } else if (kind == BinaryConstants.OperationRecord) {
+                    byte opKind = buf.get();
+                    if (opKind < BinaryConstants.DocumentOperationKind || opKind > BinaryConstants.ResourceOperationKind) {
+                        break;
+                    }
+                    remaining--;
+                } else if (kind != BinaryConstants.StringRecord) {
+                    break;
+                }
+                buf.position(end);
+                if (remaining == 0) {
+                    validLength = end;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // the last record is incomplete
+        }
+        return validLength;
+    }
+    
+    /**
+     * Records the length of a segment whose contents end with a complete block.
+     * @param file the segment
+     * @param length the length in bytes
+     */
+    private static void putValidLength(File file, long length) {
+        synchronized (validLengths) {
+            validLengths.put(file.getAbsolutePath(), length);
+        }
+    }
+    
+    /**
+     * Appends change operations to a segment as a single block.
+     * @param operations the collections of change operations to be stored
+     * @param file the segment
+     * @return <code>true</code> if the change operations were successfully stored, otherwise <code>false</code>
+     */
+    public static boolean appendOperations(List<IChangeOperation> operations, File file) {
+        boolean isNew = !file.exists() || file.length() == 0;
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            byte[] block = encodeOperations(operations, isNew);
+            out.write(block);
+            out.flush();
+            out.getFD().sync();
+            putValidLength(file, file.length());
+            return true;
+        
+        } catch (IOException e) {
+            CTConsole.println("Write error occurred: " + file.getAbsolutePath() + " " + e.getMessage() + ".");
+            return false;
+        }
+    }
+    
+    /**
+     * Encodes the header that starts a new segment.
+     * @return the bytes of the header
+     */
+    public static byte[] encodeSegmentHeader() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4);
+        writeInt(out, BinaryConstants.SEGMENT_MAGIC);
+        return out.toByteArray();
+    }
+    
+    /**
+     * Encodes change operations into a block of records, which can be appended to a segment.
+     * @param operations the collections of change operations to be encoded
+     * @param withHeader <code>true</code> if the block starts a new segment, otherwise <code>false</code>
+     * @return the bytes of the block
+     */
+    public static byte[] encodeOperations(List<IChangeOperation> operations, boolean withHeader) {
+        BlockWriter writer = new BlockWriter();
+        return writer.getBlock(operations, withHeader);
+    }
+    
+    /**
+     * Encodes change operations into a block of records.
+     */
+    private static class BlockWriter {
+        
+        /**
+         * The table of interned strings that were defined in the block.
+         */
+        private Map<String, Integer> stringTable = new HashMap<String, Integer>();
+        
+        /**
+         * The bytes of the block.
+         */
+        private ByteArrayOutputStream block = new ByteArrayOutputStream(64 * 1024);
+        
+        /**
+         * The bytes of the record being encoded.
+         */
+        private ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+        
+        /**
+         * The time of the change operation that was lastly encoded.
+         */
+        private long lastTime = 0;
+        
+        /**
+         * The encoder of the code of file operations in the block.
+         */
+        private CodeSnapshotEncoder codeEncoder = new CodeSnapshotEncoder();
+        
+        /**
+         * Encodes change operations into a block.
+         * @param operations the collections of change operations to be encoded
+         * @param withHeader <code>true</code> if the block starts a new segment, otherwise <code>false</code>
+         * @return the bytes of the block
+         */
+        byte[] getBlock(List<IChangeOperation> operations, boolean withHeader) {
+            if (withHeader) {
+                writeInt(block, BinaryConstants.SEGMENT_MAGIC);
+            }
+            int count = 0;
+            for (IChangeOperation op : operations) {
+                if (getKind(op) != 0) {
+                    count++;
+                }
+            }
+            record.write(BinaryConstants.BlockRecord);
+            writeVarInt(record, count);
+            flushRecord();
+            
+            for (IChangeOperation op : operations) {
+                writeOperation(op);
+            }
+            return block.toByteArray();
+        }
+        
+        /**
+         * Writes the record being encoded into the block with its length.
+         */
+        private void flushRecord() {
+            writeVarInt(block, record.size());
+            block.write(record.toByteArray(), 0, record.size());
+            record.reset();
+        }
+        
+        /**
+         * Encodes a change operation.
+         * @param op the change operation
+         */
+        private void writeOperation(IChangeOperation op) {
+            byte kind = getKind(op);
+            if (kind == 0) {
+                CTConsole.println("Unknown operation");
+                return;
+            }
+            
+            int zoneId = intern(op.getTime().getZone().getId());
+            int pathId = intern(op.getPath());
+            int branchId = intern(op.getBranch());
+            int projectId = intern(op.getProjectName());
+            int packageId = intern(op.getPackageName());
+            int actionId = intern(op.getAction());
+            int authorId = intern(op.getAuthor());
+            ZonedDateTime ctime = op.getCompoundTime();
+            int ctimeZoneId = ctime != null ? intern(ctime.getZone().getId()) : BinaryConstants.NULL_STRING_ID;
+            int[] extraIds = internExtras(op);
+            
+            long time = Binary2Operation.toNanos(op.getTime());
+            record.write(BinaryConstants.OperationRecord);
+            record.write(kind);
+            writeVarLong(record, zigzag(time - lastTime));
+            lastTime = time;
+            writeVarInt(record, zoneId);
+            writeVarInt(record, pathId);
+            writeVarInt(record, branchId);
+            writeVarInt(record, projectId);
+            writeVarInt(record, packageId);
+            writeVarInt(record, actionId);
+            writeVarInt(record, authorId);
+            writeString(record, op.getDescription());
+            int[] keystrokes = null;
+            if (op.isDocument() && ((DocumentOperation)op).hasValidKeystrokes()) {
+                keystrokes = ((DocumentOperation)op).getKeystrokes();
+            }
+            String codeDelta = op.isFile() ? codeEncoder.encode((FileOperation)op) : null;
+            int flags = 0;
+            if (ctime != null) {
+                flags = flags | BinaryConstants.CompoundTimeFlag;
+            }
+            if (keystrokes != null) {
+                flags = flags | BinaryConstants.KeystrokesFlag;
+            }
+            if (codeDelta != null) {
+                flags = flags | BinaryConstants.CodeDeltaFlag;
+            }
+            record.write(flags);
+            if (ctime != null) {
+                writeVarLong(record, zigzag(Binary2Operation.toNanos(ctime) - time));
+                writeVarInt(record, ctimeZoneId);
+            }
+            
+            if (op.isDocument()) {
+                DocumentOperation dop = (DocumentOperation)op;
+                writeVarInt(record, zigzag(dop.getStart()));
+                writeString(record, dop.getInsertedText());
+                writeString(record, dop.getDeletedText());
+                if (keystrokes != null) {
+                    writeVarInt(record, keystrokes.length);
+                    for (int value : keystrokes) {
+                        writeVarInt(record, value);
+                    }
+                }
+            } else if (op.isCopy()) {
+                CopyOperation cop = (CopyOperation)op;
+                writeVarInt(record, zigzag(cop.getStart()));
+                writeString(record, cop.getCopiedText());
+            } else if (op.isFile()) {
+                FileOperation fop = (FileOperation)op;
+                writeVarInt(record, extraIds[0]);
+                writeVarInt(record, extraIds[1]);
+                writeString(record, codeDelta != null ? codeDelta : fop.getCode());
+            } else if (op.isCommand()) {
+                writeVarInt(record, extraIds[0]);
+            } else if (op.isRefactor()) {
+                RefactoringOperation rop = (RefactoringOperation)op;
+                writeVarInt(record, extraIds[0]);
+                writeVarInt(record, zigzag(rop.getSelectionStart()));
+                writeString(record, rop.getArgumentText());
+                writeString(record, rop.getSelectedText());
+            } else if (op.isResource()) {
+                writeVarInt(record, extraIds[0]);
+                writeVarInt(record, extraIds[1]);
+            }
+            flushRecord();
+        }
+        
+        /**
+         * Interns the strings specific to the kind of a change operation.
+         * @param op the change operation
+         * @return the identification numbers of the interned strings
+         */
+        private int[] internExtras(IChangeOperation op) {
+            if (op.isFile()) {
+                FileOperation fop = (FileOperation)op;
+                return new int[] { intern(fop.getCharset()), intern(fop.getSrcDstPath()) };
+            } else if (op.isCommand()) {
+                return new int[] { intern(((CommandOperation)op).getCommandId()) };
+            } else if (op.isRefactor()) {
+                return new int[] { intern(((RefactoringOperation)op).getName()) };
+            } else if (op.isResource()) {
+                ResourceOperation rop = (ResourceOperation)op;
+                return new int[] { intern(rop.getTarget()), intern(rop.getSrcDstPath()) };
+            }
+            return new int[0];
+        }
+        
+        /**
+         * Interns a string, which writes a string record if the string has not been defined in the block.
+         * @param str the string to be interned
+         * @return the identification number of the string
+         */
+        private int intern(String str) {
+            if (str == null) {
+                return BinaryConstants.NULL_STRING_ID;
+            }
+            Integer id = stringTable.get(str);
+            if (id != null) {
+                return id.intValue();
+            }
+            
+            int newId = stringTable.size() + 1;
+            stringTable.put(str, newId);
+            record.write(BinaryConstants.StringRecord);
+            writeVarInt(record, newId);
+            writeString(record, str);
+            flushRecord();
+            return newId;
+        }
+    }
+    
+    /**
+     * Returns the kind of a change operation in the binary representation.
+     * @param op the change operation
+     * @return the kind of the change operation, or <code>0</code> if the operation is unknown
+     */
+    private static byte getKind(IChangeOperation op) {
+        if (op.isDocument()) {
+            return BinaryConstants.DocumentOperationKind;
+        } else if (op.isCopy()) {
+            return BinaryConstants.CopyOperationKind;
+        } else if (op.isFile()) {
+            return BinaryConstants.FileOperationKind;
+        } else if (op.isCommand()) {
+            return BinaryConstants.CommandOperationKind;
+        } else if (op.isRefactor()) {
+            return BinaryConstants.RefactorOperationKind;
+        } else if (op.isResource()) {
+            return BinaryConstants.ResourceOperationKind;
+        }
+        return 0;
+    }
+    
+    /**
+     * Encodes a signed value so that values with small magnitude have short varint representations.
+     * @param value the value
+     * @return the encoded value
+     */
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    /**
+     * Encodes a signed value so that values with small magnitude have short varint representations.
+     * @param value the value
+     * @return the encoded value
+     */
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+    
+    /**
+     * Writes a 4-byte integer in big-endian order.
+     * @param out the stream which the value is written into
+     * @param value the value
+     */
+    static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+    
+    /**
+     * Writes an unsigned integer as a varint.
+     * @param out the stream which the value is written into
+     * @param value the value
+     */
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+    
+    /**
+     * Writes an unsigned long integer as a varint.
+     * @param out the stream which the value is written into
+     * @param value the value
+     */
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+    
+    /**
+     * Writes a string with its length, where <code>null</code> is distinguished from the empty string.
+     * @param out the stream which the string is written into
+     * @param str the string
+     */
+    static void writeString(ByteArrayOutputStream out, String str) {
+        if (str == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -15,12 +15,13 @@ import org.jtool.changetracker.operation.FileOperation;
 import org.jtool.changetracker.operation.CommandOperation;
 import org.jtool.changetracker.operation.RefactoringOperation;
 import org.jtool.changetracker.operation.ResourceOperation;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import java.util.List;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * Converts the history of change operations into its XML representation.
@@ -29,205 +30,238 @@ import java.util.List;
 public class Operation2Xml {
     
     /**
-     * Converts the change operations into the XML representation.
+     * The size of the buffer used for writing a history file.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Converts the change operations into the XML representation, which older versions can read.
      * @param operations the collections of change operations to be converted
      * @param filename the name of the history file, or <code>null</code> when failures in writing a file
      */
     public static boolean storeOperations(List<IChangeOperation> operations, String filename) {
-        Document doc = getXML(operations);
-        if (doc == null) {
-            return false;
-        }
-        XmlFileManager.writeXML(doc, filename);
-        return true;
+        return storeOperations(operations, filename, false);
     }
     
     /**
      * Converts the change operations into the XML representation.
      * @param operations the collections of change operations to be converted
-     * @return the DOM instance that has the XML representation, or <code>null</code> if the conversion failed
+     * @param filename the name of the history file, or <code>null</code> when failures in writing a file
+     * @param codeDeltas <code>true</code> if the code of file operations is written as deltas, otherwise <code>false</code>
      */
-    private static Document getXML(List<IChangeOperation> operations) {
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.newDocument();
-            generateTree(doc, operations);
-            return doc;
-            
-        } catch (ParserConfigurationException e) {
-            e.printStackTrace();
-            return null;
+    public static boolean storeOperations(List<IChangeOperation> operations, String filename, boolean codeDeltas) {
+        File file = new File(filename);
+        if (!XmlFileManager.makeDir(file.getParentFile())) {
+            return false;
+        }
+        
+        try (FileOutputStream out = new FileOutputStream(file);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, XmlFileManager.DEFALUT_CHARSET), BUFFER_SIZE)) {
+            XmlStreamWriter xml = new XmlStreamWriter(writer);
+            writeOperations(xml, operations, codeDeltas);
+            out.getFD().sync();
+            return true;
+        
+        } catch (IOException e) {
+            CTConsole.println("Write error occurred: " + filename + " " + e.getMessage() + ".");
+            return false;
         }
     }
     
     /**
-     * Generates the DOM tree corresponding from change operations.
-     * @param the DOM instance that has the XML representation
+     * Writes the XML representation of change operations.
+     * The version 2.1 is written only when the code of file operations is written as deltas.
+     * @param xml the writer of the XML representation
      * @param operations the collections of change operations to be converted
+     * @param codeDeltas <code>true</code> if the code of file operations is written as deltas, otherwise <code>false</code>
+     * @throws IOException if writing fails
      */
-    private static void generateTree(Document doc, List<IChangeOperation> operations) {
-        Element rootElem = doc.createElement(XmlConstants.HistoryElem);
-        rootElem.setAttribute(XmlConstants.VersionAttr, Xml2Operation.HISTORY_VERSION2);
-        doc.appendChild(rootElem);
-        Element operationsElem = doc.createElement(XmlConstants.OperationsElem);
-        rootElem.appendChild(operationsElem);
+    private static void writeOperations(XmlStreamWriter xml, List<IChangeOperation> operations, boolean codeDeltas)
+            throws IOException {
+        xml.writeStartDocument(XmlFileManager.DEFALUT_CHARSET);
+        xml.writeStartElement(XmlConstants.HistoryElem);
+        if (codeDeltas) {
+            xml.writeAttribute(XmlConstants.VersionAttr, Xml2Operation.HISTORY_VERSION2_1);
+        } else {
+            xml.writeAttribute(XmlConstants.VersionAttr, Xml2Operation.HISTORY_VERSION2);
+        }
+        xml.writeStartElement(XmlConstants.OperationsElem);
+        CodeSnapshotEncoder encoder = codeDeltas ? new CodeSnapshotEncoder() : null;
         for (IChangeOperation op : operations) {
-            createOperationsElement(doc, operationsElem, op);
+            writeOperationElement(xml, op, encoder);
         }
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndDocument();
     }
     
     /**
-     * Creates a DOM element corresponding to a change operation.
-     * @param the DOM instance that has the XML representation
-     * @param parent the parent of the DOM element
+     * Writes an element corresponding to a change operation.
+     * @param xml the writer of the XML representation
      * @param operation the change operation
+     * @param encoder the encoder of the code of file operations
+     * @throws IOException if writing fails
      */
-    private static void createOperationsElement(Document doc, Element parent, IChangeOperation operation) {
+    private static void writeOperationElement(XmlStreamWriter xml, IChangeOperation operation, CodeSnapshotEncoder encoder)
+            throws IOException {
         if (operation.isDocument()) {
-            Element opElem = appendDocumentOperationElement(doc, (DocumentOperation)operation);
-            parent.appendChild(opElem);
+            writeDocumentOperationElement(xml, (DocumentOperation)operation);
         } else if (operation.isCopy()) {
-            Element opElem = appendCopyOperationElement(doc, (CopyOperation)operation);
-            parent.appendChild(opElem);
+            writeCopyOperationElement(xml, (CopyOperation)operation);
         } else if (operation.isFile()) {
-            Element opElem = appendFileOperationElement(doc, (FileOperation)operation);
-            parent.appendChild(opElem);
+            writeFileOperationElement(xml, (FileOperation)operation, encoder);
         } else if (operation.isCommand()) {
-            Element opElem = appendCommandOperationElement(doc, (CommandOperation)operation);
-            parent.appendChild(opElem);
+            writeCommandOperationElement(xml, (CommandOperation)operation);
         } else if (operation.isRefactor()) {
-            Element opElem = appendRefactoringOperationElement(doc, (RefactoringOperation)operation);
-            parent.appendChild(opElem);
+            writeRefactoringOperationElement(xml, (RefactoringOperation)operation);
         } else if (operation.isResource()) {
-            Element opElem = appendResourceOperationElement(doc, (ResourceOperation)operation);
-            parent.appendChild(opElem);
+            writeResourceOperationElement(xml, (ResourceOperation)operation);
         } else {
             CTConsole.println("Unknown operation");
         }
     }
     
     /**
-     * Creates a DOM element corresponding to a document operation.
-     * @param the DOM instance that has the XML representation
-     * @param operation the document operation
-     * @return the DOM element corresponding to the document operation
+     * Writes the start tag of an element and the basic attributes of a change operation.
+     * @param xml the writer of the XML representation
+     * @param name the name of the element
+     * @param operation the change operation
+     * @throws IOException if writing fails
+     */
+    private static void writeOperationStartElement(XmlStreamWriter xml, String name, IChangeOperation operation) throws IOException {
+        xml.writeStartElement(name);
+        xml.writeAttribute(XmlConstants.TimeAttr, ChangeOperation.getTimeAsString(operation.getTime()));
+        xml.writeAttribute(XmlConstants.PathAttr, operation.getPath());
+        xml.writeAttribute(XmlConstants.BranchAttr, operation.getBranch());
+        xml.writeAttribute(XmlConstants.ProjectNameAttr, operation.getProjectName());
+        xml.writeAttribute(XmlConstants.PackageNameAttr, operation.getPackageName());
+        xml.writeAttribute(XmlConstants.ActionAttr, operation.getAction());
+        xml.writeAttribute(XmlConstants.AuthorAttr, operation.getAuthor());
+        xml.writeAttribute(XmlConstants.DescriptionAttr, operation.getDescription());
+        xml.writeAttribute(XmlConstants.CompoundTimeAttr, ChangeOperation.getTimeAsString(operation.getCompoundTime()));
+    }
+    
+    /**
+     * Writes an element that contains only a text.
+     * @param xml the writer of the XML representation
+     * @param name the name of the element
+     * @param text the text contained in the element
+     * @throws IOException if writing fails
      */
-    private static void setOperationElement(Document doc, Element elem, IChangeOperation operation) {
-        elem.setAttribute(XmlConstants.TimeAttr, ChangeOperation.getTimeAsString(operation.getTime()));
-        elem.setAttribute(XmlConstants.PathAttr, operation.getPath());
-        elem.setAttribute(XmlConstants.BranchAttr, operation.getBranch());
-        elem.setAttribute(XmlConstants.ProjectNameAttr, operation.getProjectName());
-        elem.setAttribute(XmlConstants.PackageNameAttr, operation.getPackageName());
-        elem.setAttribute(XmlConstants.ActionAttr, operation.getAction());
-        elem.setAttribute(XmlConstants.AuthorAttr, operation.getAuthor());
-        elem.setAttribute(XmlConstants.DescriptionAttr, operation.getDescription());
-        elem.setAttribute(XmlConstants.CompoundTimeAttr, ChangeOperation.getTimeAsString(operation.getCompoundTime()));
+    private static void writeTextElement(XmlStreamWriter xml, String name, String text) throws IOException {
+        xml.writeStartElement(name);
+        xml.writeCharacters(text);
+        xml.writeEndElement();
     }
     
     /**
-     * Creates a DOM element corresponding to a document operation.
-     * @param the DOM instance that has the XML representation
+     * Writes an element corresponding to a document operation.
+     * @param xml the writer of the XML representation
      * @param op the document operation
-     * @return the DOM element corresponding to the document operation
+     * @throws IOException if writing fails
      */
-    private static Element appendDocumentOperationElement(Document doc, DocumentOperation op) {
-        Element elem = doc.createElement(XmlConstants.DocumentOperationElem);
-        setOperationElement(doc, elem, op);
-        
-        elem.setAttribute(XmlConstants.OffsetAttr, String.valueOf(op.getStart()));
-        Element insElem = doc.createElement(XmlConstants.InsertedElem);
-        elem.appendChild(insElem);
-        insElem.appendChild(doc.createTextNode(op.getInsertedText()));
-        Element delElem = doc.createElement(XmlConstants.DeletedElem);
-        elem.appendChild(delElem);
-        delElem.appendChild(doc.createTextNode(op.getDeletedText()));
-        return elem;
+    private static void writeDocumentOperationElement(XmlStreamWriter xml, DocumentOperation op) throws IOException {
+        writeOperationStartElement(xml, XmlConstants.DocumentOperationElem, op);
+        xml.writeAttribute(XmlConstants.OffsetAttr, String.valueOf(op.getStart()));
+        if (op.isCoalesced() && op.hasValidKeystrokes()) {
+            xml.writeAttribute(XmlConstants.KeystrokesAttr, getKeystrokesAsString(op.getKeystrokes()));
+        }
+        writeTextElement(xml, XmlConstants.InsertedElem, op.getInsertedText());
+        writeTextElement(xml, XmlConstants.DeletedElem, op.getDeletedText());
+        xml.writeEndElement();
+    }
+    
+    /**
+     * Returns the string representation of keystrokes coalesced into a document operation.
+     * @param keystrokes the pairs of the number of the typed characters and the time in milliseconds
+     * @return the string that separates the values with spaces
+     */
+    private static String getKeystrokesAsString(int[] keystrokes) {
+        StringBuilder buf = new StringBuilder();
+        for (int idx = 0; idx < keystrokes.length; idx++) {
+            if (idx > 0) {
+                buf.append(' ');
+            }
+            buf.append(keystrokes[idx]);
+        }
+        return buf.toString();
     }
     
     /**
-     * Creates a DOM element corresponding to a copy operation.
-     * @param the DOM instance that has the XML representation
+     * Writes an element corresponding to a copy operation.
+     * @param xml the writer of the XML representation
      * @param op the copy operation
-     * @return the DOM element corresponding to the copy operation
+     * @throws IOException if writing fails
      */
-    private static Element appendCopyOperationElement(Document doc, CopyOperation op) {
-        Element elem = doc.createElement(XmlConstants.CopyOperationElem);
-        setOperationElement(doc, elem, op);
-        
-        elem.setAttribute(XmlConstants.OffsetAttr, String.valueOf(op.getStart()));
-        Element copiedElem = doc.createElement(XmlConstants.CopiedElem);
-        elem.appendChild(copiedElem);
-        copiedElem.appendChild(doc.createTextNode(op.getCopiedText()));
-        return elem;
+    private static void writeCopyOperationElement(XmlStreamWriter xml, CopyOperation op) throws IOException {
+        writeOperationStartElement(xml, XmlConstants.CopyOperationElem, op);
+        xml.writeAttribute(XmlConstants.OffsetAttr, String.valueOf(op.getStart()));
+        writeTextElement(xml, XmlConstants.CopiedElem, op.getCopiedText());
+        xml.writeEndElement();
     }
     
     /**
-     * Creates a DOM element corresponding to a file operation.
-     * @param the DOM instance that has the XML representation
+     * Writes an element corresponding to a file operation.
+     * The code is written as a delta against the code of the previous file operation on the same file if possible.
+     * @param xml the writer of the XML representation
      * @param op the file operation
-     * @return the DOM element corresponding to the file operation
+     * @param encoder the encoder of the code of file operations, or <code>null</code> if no delta is written
+     * @throws IOException if writing fails
      */
-    private static Element appendFileOperationElement(Document doc, FileOperation op) {
-        Element elem = doc.createElement(XmlConstants.FileOperationElem);
-        setOperationElement(doc, elem, op);
-        
-        elem.setAttribute(XmlConstants.CharsetAttr, op.getCharset());
-        elem.setAttribute(XmlConstants.SrcDstPathAttr, op.getSrcDstPath());
-        String code = op.getCode();
-        if (code != null) {
-            Element codeElem = doc.createElement(XmlConstants.CodeElem);
-            elem.appendChild(codeElem);
-            codeElem.appendChild(doc.createTextNode(code));
+    private static void writeFileOperationElement(XmlStreamWriter xml, FileOperation op, CodeSnapshotEncoder encoder)
+            throws IOException {
+        writeOperationStartElement(xml, XmlConstants.FileOperationElem, op);
+        xml.writeAttribute(XmlConstants.CharsetAttr, op.getCharset());
+        xml.writeAttribute(XmlConstants.SrcDstPathAttr, op.getSrcDstPath());
+        String delta = encoder != null ? encoder.encode(op) : null;
+        if (delta != null) {
+            writeTextElement(xml, XmlConstants.CodeDeltaElem, delta);
+        } else {
+            String code = op.getCode();
+            if (code != null) {
+                writeTextElement(xml, XmlConstants.CodeElem, code);
+            }
         }
-        return elem;
+        xml.writeEndElement();
     }
     
     /**
-     * Creates a DOM element corresponding to a command operation.
-     * @param the DOM instance that has the XML representation
+     * Writes an element corresponding to a command operation.
+     * @param xml the writer of the XML representation
      * @param op the command operation
-     * @return the DOM element corresponding to the command operation
+     * @throws IOException if writing fails
      */
-    private static Element appendCommandOperationElement(Document doc, CommandOperation op) {
-        Element elem = doc.createElement(XmlConstants.CommandOperationElem);
-        setOperationElement(doc, elem, op);
-        
-        elem.setAttribute(XmlConstants.CommandIdAttr, op.getCommandId());
-        return elem;
+    private static void writeCommandOperationElement(XmlStreamWriter xml, CommandOperation op) throws IOException {
+        writeOperationStartElement(xml, XmlConstants.CommandOperationElem, op);
+        xml.writeAttribute(XmlConstants.CommandIdAttr, op.getCommandId());
+        xml.writeEndElement();
     }
     
     /**
-     * Creates a DOM element corresponding to a refactoring operation.
-     * @param the DOM instance that has the XML representation
+     * Writes an element corresponding to a refactoring operation.
+     * @param xml the writer of the XML representation
      * @param op the refactoring operation
-     * @return the DOM element corresponding to the refactoring operation
+     * @throws IOException if writing fails
      */
-    private static Element appendRefactoringOperationElement(Document doc, RefactoringOperation op) {
-        Element elem = doc.createElement(XmlConstants.RefactorOperationElem);
-        setOperationElement(doc, elem, op);
-        
-        elem.setAttribute(XmlConstants.NameAttr, op.getName());
-        elem.setAttribute(XmlConstants.OffsetAttr, String.valueOf(op.getSelectionStart()));
-        elem.setAttribute(XmlConstants.ArgumentAttr, op.getArgumentText());
-        Element selElem = doc.createElement(XmlConstants.SelectedElem);
-        elem.appendChild(selElem);
-        selElem.appendChild(doc.createTextNode(op.getSelectedText()));
-        return elem;
+    private static void writeRefactoringOperationElement(XmlStreamWriter xml, RefactoringOperation op) throws IOException {
+        writeOperationStartElement(xml, XmlConstants.RefactorOperationElem, op);
+        xml.writeAttribute(XmlConstants.NameAttr, op.getName());
+        xml.writeAttribute(XmlConstants.OffsetAttr, String.valueOf(op.getSelectionStart()));
+        xml.writeAttribute(XmlConstants.ArgumentAttr, op.getArgumentText());
+        writeTextElement(xml, XmlConstants.SelectedElem, op.getSelectedText());
+        xml.writeEndElement();
     }
     
     /**
-     * Creates a DOM element corresponding to a resource operation.
-     * @param the DOM instance that has the XML representation
+     * Writes an element corresponding to a resource operation.
+     * @param xml the writer of the XML representation
      * @param op the resource operation
-     * @return the DOM element corresponding to the resource operation
+     * @throws IOException if writing fails
      */
-    private static Element appendResourceOperationElement(Document doc, ResourceOperation op) {
-        Element elem = doc.createElement(XmlConstants.ResourceOperationElem);
-        setOperationElement(doc, elem, op);
-        
-        elem.setAttribute(XmlConstants.TargetAttr, op.getTarget());
-        elem.setAttribute(XmlConstants.SrcDstPathAttr, op.getSrcDstPath());
-        return elem;
+    private static void writeResourceOperationElement(XmlStreamWriter xml, ResourceOperation op) throws IOException {
+        writeOperationStartElement(xml, XmlConstants.ResourceOperationElem, op);
+        xml.writeAttribute(XmlConstants.TargetAttr, op.getTarget());
+        xml.writeAttribute(XmlConstants.SrcDstPathAttr, op.getSrcDstPath());
+        xml.writeEndElement();
     }
 }
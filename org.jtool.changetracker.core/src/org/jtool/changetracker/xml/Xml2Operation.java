@@ -6,17 +6,20 @@
 
 package org.jtool.changetracker.xml;
 
+import org.jtool.changetracker.core.CTConsole;
 import org.jtool.changetracker.operation.IChangeOperation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
+import javax.xml.stream.XMLStreamException;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.io.File;
+import java.io.IOException;
 
 /**
  * Converts the XML representation into the history of change operations.
@@ -31,10 +34,12 @@ public class Xml2Operation {
     
     /**
      * The string that indicates the version of stored change operations.
+     * The version 2.1 of "changeTracker v2" stores the code of file operations as deltas.
      */
     static final String HISTORY_VERSION1_EXT = "a";
     static final String HISTORY_VERSION2_EXT = "ct2";
     static final String HISTORY_VERSION2 = "2.0" + HISTORY_VERSION2_EXT;
+    static final String HISTORY_VERSION2_1 = "2.1" + HISTORY_VERSION2_EXT;
     
     /**
      * Obtains change operations from the XML representation.
@@ -42,7 +47,15 @@ public class Xml2Operation {
      * @return the collection of the change operations, or empty set when failures in reading a file
      */
     public static List<IChangeOperation> getOperations(String path) {
-        Document doc = XmlFileManager.readXML(path);
+        return Xml2OperationStAX.getOperations(path);
+    }
+    
+    /**
+     * Obtains change operations from the DOM instance that has the XML representation.
+     * @param doc the DOM instance that has the XML representation
+     * @return the collection of the change operations
+     */
+    public static List<IChangeOperation> getOperations(Document doc) {
         NodeList list = doc.getElementsByTagName(XmlConstants.HistoryElem);
         
         if (list.getLength() == 0) {
@@ -51,6 +64,10 @@ public class Xml2Operation {
         
         String version = getVersion(list);
         if (version.endsWith(HISTORY_VERSION2_EXT)) {
+            if (!isSupportedVersion2(version)) {
+                CTConsole.println("Unsupported version of change operations: " + version);
+                return new ArrayList<IChangeOperation>();
+            }
             return Xml2OperationCT2.getOperations(doc);
         } else if (version.endsWith(HISTORY_VERSION1_EXT)) {
             return Xml2OperationCT.getOperations(doc);
@@ -69,6 +86,15 @@ public class Xml2Operation {
         return topElem.getAttribute(XmlConstants.VersionAttr);
     }
     
+    /**
+     * Tests if a version of the XML representation in the format of "changeTracker v2" can be read.
+     * @param version the version string
+     * @return <code>true</code> if the version is known, otherwise <code>false</code>
+     */
+    static boolean isSupportedVersion2(String version) {
+        return version.equals(HISTORY_VERSION2) || version.equals(HISTORY_VERSION2_1);
+    }
+    
     /**
      * Tests if the version of the XML representation is compatible with "changeTracker v2"
      * @param dirpath the path of a directory that contains operation history files
@@ -79,13 +105,17 @@ public class Xml2Operation {
         if (files.size() == 0) {
             return false;
         }
-        Document doc = XmlFileManager.readXML(files.get(0).getAbsolutePath());
-        NodeList list = doc.getElementsByTagName(XmlConstants.HistoryElem);
-        if (list.getLength() <= 0) {
+        try {
+            String version = Xml2OperationStAX.getVersion(files.get(0).getAbsolutePath());
+            if (version == null) {
+                return false;
+            }
+            return version.endsWith(HISTORY_VERSION2_EXT);
+        
+        } catch (XMLStreamException | IOException e) {
+            CTConsole.println("StAX: Parse error occurred: " + e.getMessage() + ".");
             return false;
         }
-        String version = getVersion(list);
-        return version.endsWith(HISTORY_VERSION2_EXT);
     }
     
     /**
@@ -104,6 +134,17 @@ public class Xml2Operation {
      * @return the collection of all the descendant files
      */
     public static List<File> getHistoryFiles(String path, String prefix) {
+        return getHistoryFiles(path, prefix, XML_FILE_EXTENTION);
+    }
+    
+    /**
+     * Returns all descendant files with given extensions of a directory.
+     * @param path the path of the directory
+     * @param prefix a character that indicates the prefix of the name of a directory excluded
+     * @param extensions the extension strings of the files to be returned
+     * @return the collection of all the descendant files
+     */
+    public static List<File> getHistoryFiles(String path, String prefix, String... extensions) {
         List<File> files = new ArrayList<File>();
         String name = getFileName(path);
         if ((prefix != null && name.startsWith(prefix)) || name.startsWith(".")) {
@@ -112,13 +153,16 @@ public class Xml2Operation {
         
         File dir = new File(path);
         if (dir.isFile()) {
-            if (path.endsWith(XML_FILE_EXTENTION)) {
-                files.add(dir);
+            for (String extension : extensions) {
+                if (path.endsWith(extension)) {
+                    files.add(dir);
+                    break;
+                }
             }
         } else if (dir.isDirectory() ) {
             File[] children = dir.listFiles();
             for (File f : children) {
-                files.addAll(getHistoryFiles(f.getPath(), prefix));
+                files.addAll(getHistoryFiles(f.getPath(), prefix, extensions));
             }
         }
         
@@ -142,8 +142,8 @@ public class Xml2OperationCT {
      * @param doc the DOM instance that has the XML representation
      * @return the collection of the change operations
      */
-    static List<IChangeOperation> getOperations(Document doc) {
-        timeCount = new HashMap<String, Integer>();
+    static synchronized List<IChangeOperation> getOperations(Document doc) {
+        initialize();
         
         List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
         NodeList operationList = doc.getElementsByTagName(XmlConstants.OperationsElem);
@@ -165,12 +165,19 @@ public class Xml2OperationCT {
         return ops;
     }
     
+    /**
+     * Prepares for reading change operations stored in a single file.
+     */
+    static void initialize() {
+        timeCount = new HashMap<String, Integer>();
+    }
+    
     /**
      * Obtains a change operation from the DOM element.
      * @param node the DOM element
      * @return the collection of change operations
      */
-    private static List<IChangeOperation> getOperation(Node node) {
+    static List<IChangeOperation> getOperation(Node node) {
         Element elem = (Element)node;
         String elemName = elem.getNodeName();
         
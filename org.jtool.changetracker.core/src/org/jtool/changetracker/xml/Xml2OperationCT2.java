@@ -6,6 +6,7 @@
 
 package org.jtool.changetracker.xml;
 
+import org.jtool.changetracker.core.CTConsole;
 import org.jtool.changetracker.operation.IChangeOperation;
 import org.jtool.changetracker.operation.ChangeOperation;
 import org.jtool.changetracker.operation.CopyOperation;
@@ -21,6 +22,8 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
 import java.time.ZonedDateTime;
 
 /**
@@ -46,11 +49,12 @@ class Xml2OperationCT2 {
         }
         
         NodeList childOperations = operationsElem.getChildNodes();
+        Map<String, FileOperation> snapshots = new HashMap<String, FileOperation>();
         for (int i = 0; i < childOperations.getLength(); i++) {
             Node node = childOperations.item(i);
             
             if (node.getNodeType() == Node.ELEMENT_NODE) {
-                IChangeOperation operation = getOperation(node);
+                IChangeOperation operation = getOperation(node, snapshots);
                 if (operation != null) {
                     ops.add(operation);
                 }
@@ -61,10 +65,12 @@ class Xml2OperationCT2 {
     
     /**
      * Obtains a change operation from the DOM element.
+     * DOM elements must be given in the order of their appearance.
      * @param node the DOM element
+     * @param snapshots the map that stores the last file operation on each file, which is updated by this call
      * @return the change operation
      */
-    private static IChangeOperation getOperation(Node node) {
+    static IChangeOperation getOperation(Node node, Map<String, FileOperation> snapshots) {
         Element elem = (Element)node;
         String elemName = elem.getNodeName();
         
@@ -73,7 +79,7 @@ class Xml2OperationCT2 {
         } else if (elemName.equals(XmlConstants.CopyOperationElem)) {
             return getCopyOperation(elem);
         } else if (elemName.equals(XmlConstants.FileOperationElem)) {
-            return getFileOperation(elem);
+            return getFileOperation(elem, snapshots);
         } else if (elemName.equals(XmlConstants.CommandOperationElem)) {
             return getCommandOperation(elem);
         } else if (elemName.equals(XmlConstants.RefactorOperationElem)) {
@@ -97,9 +103,37 @@ class Xml2OperationCT2 {
         op.setStart(Integer.parseInt(elem.getAttribute(XmlConstants.OffsetAttr)));
         op.setInsertedText(Xml2Operation.getFirstChildText(elem.getElementsByTagName(XmlConstants.InsertedElem)));
         op.setDeletedText(Xml2Operation.getFirstChildText(elem.getElementsByTagName(XmlConstants.DeletedElem)));
+        op.setKeystrokes(getKeystrokes(elem.getAttribute(XmlConstants.KeystrokesAttr)));
+        if (!op.hasValidKeystrokes()) {
+            CTConsole.println("Dropped keystrokes inconsistent with the text of a document operation: " + op.getPath());
+            op.setKeystrokes(null);
+        }
         return op;
     }
     
+    /**
+     * Obtains keystrokes coalesced into a document operation from their string representation.
+     * @param str the string that separates the values with spaces
+     * @return the pairs of the number of the typed characters and the time in milliseconds, or <code>null</code> if none
+     *         or the string is malformed
+     */
+    private static int[] getKeystrokes(String str) {
+        if (str == null || str.length() == 0) {
+            return null;
+        }
+        String[] values = str.trim().split(" +");
+        int[] keystrokes = new int[values.length];
+        try {
+            for (int idx = 0; idx < values.length; idx++) {
+                keystrokes[idx] = Integer.parseInt(values[idx]);
+            }
+        } catch (NumberFormatException e) {
+            CTConsole.println("Dropped malformed keystrokes of a document operation: " + str);
+            return null;
+        }
+        return keystrokes;
+    }
+    
     /**
      * Obtains a copy operation from the DOM element.
      * @param node the DOM element
@@ -117,10 +151,12 @@ class Xml2OperationCT2 {
     
     /**
      * Obtains a file operation from the DOM element.
+     * The code written as a delta is restored from the code of the previous file operation on the same file.
      * @param node the DOM element
+     * @param snapshots the map that stores the last file operation on each file
      * @return the file operation
      */
-    private static FileOperation getFileOperation(Element elem) {
+    private static FileOperation getFileOperation(Element elem, Map<String, FileOperation> snapshots) {
         OperationAttribute attr = new OperationAttribute(elem);
         FileOperation op = new FileOperation(attr.time, attr.pathinfo, attr.action, attr.author);
         op.setDescription(attr.desc);
@@ -128,10 +164,24 @@ class Xml2OperationCT2 {
         op.setCharset(elem.getAttribute(XmlConstants.CharsetAttr));
         op.setSrcDstPath(elem.getAttribute(XmlConstants.SrcDstPathAttr));
         String code = Xml2Operation.getFirstChildCode(elem.getElementsByTagName(XmlConstants.CodeElem));
+        boolean isDelta = false;
+        if (code == null) {
+            code = Xml2Operation.getFirstChildCode(elem.getElementsByTagName(XmlConstants.CodeDeltaElem));
+            isDelta = code != null;
+        }
+        FileOperation base = snapshots.put(op.getPath(), code != null ? op : null);
         if (code == null) {
             return null;
         }
         op.setCode(code);
+        if (isDelta) {
+            if (base == null) {
+                CTConsole.println("Missing base of the code of a file operation: " + op.getPath());
+                op.setCode("");
+            } else {
+                op.setCodeBase(base);
+            }
+        }
         return op;
     }
     
@@ -116,9 +116,7 @@ public class Xml2OperationOR {
      * @param doc the DOM instance that has the XML representation
      * @return the collection of the change operations
      */
-    static List<IChangeOperation> getOperations(Document doc) {
-        timeCount = new HashMap<String, Integer>();
-        
+    static synchronized List<IChangeOperation> getOperations(Document doc) {
         List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
         NodeList operationList = doc.getElementsByTagName(XmlConstants.OperationsElem);
         if (operationList == null) {
@@ -129,15 +127,8 @@ public class Xml2OperationOR {
             return ops;
         }
         NodeList developers = doc.getElementsByTagName(DeveloperElem);
-        developer = Xml2Operation.getFirstChildText(developers);
-        if (developer.length() == 0) {
-            developer = "Unknown";
-        }
         NodeList paths = doc.getElementsByTagName(FileElem);
-        path = Xml2Operation.getFirstChildText(paths);
-        if (path.length() == 0) {
-            path = "Unknown";
-        }
+        initialize(Xml2Operation.getFirstChildText(developers), Xml2Operation.getFirstChildText(paths));
         
         NodeList childOperations = operationsElem.getChildNodes();
         for (int i = 0; i < childOperations.getLength(); i++) {
@@ -149,12 +140,30 @@ public class Xml2OperationOR {
         return ops;
     }
     
+    /**
+     * Prepares for reading change operations stored in a single file.
+     * @param developerName the name of the developer recorded in the file
+     * @param pathName the path of the file recorded in the file
+     */
+    static void initialize(String developerName, String pathName) {
+        timeCount = new HashMap<String, Integer>();
+        
+        developer = developerName;
+        if (developer.length() == 0) {
+            developer = "Unknown";
+        }
+        path = pathName;
+        if (path.length() == 0) {
+            path = "Unknown";
+        }
+    }
+    
     /**
      * Obtains a change operation from the DOM element.
      * @param node the DOM element
      * @return the collection of change operations
      */
-    private static List<IChangeOperation> getOperation(Node node) {
+    static List<IChangeOperation> getOperation(Node node) {
         Element elem = (Element)node;
         String elemName = elem.getNodeName();
         
@@ -0,0 +1,361 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+import org.jtool.changetracker.core.CTConsole;
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+
+/**
+ * Converts the XML representation into the history of change operations without building the DOM of a whole file.
+ * Each child element of the <code>operations</code> element is materialized one by one as a small detached
+ * DOM element and handed to the converter for its format, so that the semantics of the conversion are preserved.
+ * @author Katsuhisa Maruyama
+ */
+class Xml2OperationStAX {
+    
+    /**
+     * The formats of the XML representation.
+     */
+    private static final int FORMAT_CT2 = 0;
+    private static final int FORMAT_CT = 1;
+    private static final int FORMAT_OR = 2;
+    
+    /**
+     * The property that makes a stream reader report CDATA sections as individual events.
+     */
+    private static final String REPORT_CDATA_PROPERTY = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+    
+    /**
+     * The factory that creates stream readers.
+     */
+    private static XMLInputFactory inputFactory = createInputFactory();
+    
+    /**
+     * Creates the factory that creates stream readers.
+     * @return the created factory
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+        if (factory.isPropertySupported(REPORT_CDATA_PROPERTY)) {
+            factory.setProperty(REPORT_CDATA_PROPERTY, Boolean.TRUE);
+        }
+        return factory;
+    }
+    
+    /**
+     * Creates a stream reader.
+     * @param in the input stream to be read
+     * @return the created stream reader
+     * @throws XMLStreamException if the stream reader cannot be created
+     */
+    private static XMLStreamReader createReader(InputStream in) throws XMLStreamException {
+        synchronized (inputFactory) {
+            return inputFactory.createXMLStreamReader(in);
+        }
+    }
+    
+    /**
+     * Obtains change operations from the XML representation stored in a file.
+     * Files in the format of ChangeTracker-v2 can be read by multiple threads at the same time.
+     * @param path the path name of a file to be read
+     * @return the collection of the change operations, or empty set when failures in reading a file
+     */
+    static List<IChangeOperation> getOperations(String path) {
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+        try {
+            String version = getVersion(path);
+            if (version == null) {
+                return ops;
+            }
+            
+            if (version.endsWith(Xml2Operation.HISTORY_VERSION2_EXT)) {
+                if (!Xml2Operation.isSupportedVersion2(version)) {
+                    CTConsole.println("Unsupported version of change operations: " + path + " " + version + ".");
+                    return ops;
+                }
+                readOperations(path, FORMAT_CT2, ops);
+            } else if (version.endsWith(Xml2Operation.HISTORY_VERSION1_EXT)) {
+                synchronized (Xml2OperationCT.class) {
+                    Xml2OperationCT.initialize();
+                    readOperations(path, FORMAT_CT, ops);
+                }
+            } else {
+                synchronized (Xml2OperationOR.class) {
+                    String[] header = getHeaderTexts(path, newDocument());
+                    Xml2OperationOR.initialize(header[0], header[1]);
+                    readOperations(path, FORMAT_OR, ops);
+                }
+            }
+            return ops;
+        
+        } catch (XMLStreamException | IOException | ParserConfigurationException e) {
+            CTConsole.println("StAX: Parse error occurred: " + path + " " + e.getMessage() + ".");
+            return new ArrayList<IChangeOperation>();
+        }
+    }
+    
+    /**
+     * Obtains the version of the XML representation stored in a file.
+     * Only the beginning of the file is read.
+     * @param path the path name of a file to be read
+     * @return the version string, or <code>null</code> if the file contains no history element
+     * @throws XMLStreamException if the contents of the file are not well-formed
+     * @throws IOException if the file cannot be read
+     */
+    static String getVersion(String path) throws XMLStreamException, IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(path));
+        XMLStreamReader reader = createReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+                    XmlConstants.HistoryElem.equals(getName(reader))) {
+                    return getAttribute(reader, XmlConstants.VersionAttr);
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+            in.close();
+        }
+    }
+    
+    /**
+     * Obtains the texts of the developer and file elements that appear in the XML representation of OperationRecorder.
+     * @param path the path name of a file to be read
+     * @param doc the document that owns temporarily created DOM nodes
+     * @return the array of the text of the first developer element and the text of the first file element
+     * @throws XMLStreamException if the contents of the file are not well-formed
+     * @throws IOException if the file cannot be read
+     */
+    private static String[] getHeaderTexts(String path, Document doc) throws XMLStreamException, IOException {
+        String[] texts = new String[] { null, null };
+        InputStream in = new BufferedInputStream(new FileInputStream(path));
+        XMLStreamReader reader = createReader(in);
+        try {
+            while (reader.hasNext() && (texts[0] == null || texts[1] == null)) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    String name = getName(reader);
+                    if (texts[0] == null && Xml2OperationOR.DeveloperElem.equals(name)) {
+                        texts[0] = getFirstChildText(reader, doc);
+                    } else if (texts[1] == null && Xml2OperationOR.FileElem.equals(name)) {
+                        texts[1] = getFirstChildText(reader, doc);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+            in.close();
+        }
+        
+        if (texts[0] == null) {
+            texts[0] = "";
+        }
+        if (texts[1] == null) {
+            texts[1] = "";
+        }
+        return texts;
+    }
+    
+    /**
+     * Reads change operations stored in a file.
+     * @param path the path name of a file to be read
+     * @param format the format of the XML representation
+     * @param ops the collection that stores the read change operations
+     * @throws XMLStreamException if the contents of the file are not well-formed
+     * @throws IOException if the file cannot be read
+     * @throws ParserConfigurationException if the DOM elements cannot be created
+     */
+    private static void readOperations(String path, int format, List<IChangeOperation> ops)
+            throws XMLStreamException, IOException, ParserConfigurationException {
+        Document doc = newDocument();
+        InputStream in = new BufferedInputStream(new FileInputStream(path));
+        XMLStreamReader reader = createReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+                    XmlConstants.OperationsElem.equals(getName(reader))) {
+                    break;
+                }
+            }
+            
+            Map<String, FileOperation> snapshots = new HashMap<String, FileOperation>();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    Element elem = readElement(reader, doc);
+                    addOperations(elem, format, ops, snapshots);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+            in.close();
+        }
+    }
+    
+    /**
+     * Creates an empty document that owns DOM elements created during reading.
+     * @return the created document
+     * @throws ParserConfigurationException if the document cannot be created
+     */
+    private static Document newDocument() throws ParserConfigurationException {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    }
+    
+    /**
+     * Converts a DOM element into change operations and stores them.
+     * @param elem the DOM element for a change operation
+     * @param format the format of the XML representation
+     * @param ops the collection that stores the converted change operations
+     * @param snapshots the map that stores the last file operation on each file
+     */
+    private static void addOperations(Element elem, int format, List<IChangeOperation> ops,
+            Map<String, FileOperation> snapshots) {
+        if (format == FORMAT_CT2) {
+            IChangeOperation op = Xml2OperationCT2.getOperation(elem, snapshots);
+            if (op != null) {
+                ops.add(op);
+            }
+        } else if (format == FORMAT_CT) {
+            ops.addAll(Xml2OperationCT.getOperation(elem));
+        } else {
+            ops.addAll(Xml2OperationOR.getOperation(elem));
+        }
+    }
+    
+    /**
+     * Reads an element whose start tag the stream reader is positioned at, together with its descendants.
+     * The stream reader is positioned at the end tag of the element after reading.
+     * @param reader the stream reader
+     * @param doc the document that owns the created DOM nodes
+     * @return the detached DOM element
+     * @throws XMLStreamException if the contents of the file are not well-formed
+     */
+    private static Element readElement(XMLStreamReader reader, Document doc) throws XMLStreamException {
+        Element root = createElement(reader, doc);
+        Node parent = root;
+        while (parent != null) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    Element elem = createElement(reader, doc);
+                    parent.appendChild(elem);
+                    parent = elem;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    parent = (parent == root) ? null : parent.getParentNode();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    Node last = parent.getLastChild();
+                    if (last != null && last.getNodeType() == Node.TEXT_NODE) {
+                        ((Text)last).appendData(reader.getText());
+                    } else {
+                        parent.appendChild(doc.createTextNode(reader.getText()));
+                    }
+                    break;
+                case XMLStreamConstants.CDATA:
+                    parent.appendChild(doc.createCDATASection(reader.getText()));
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    parent.appendChild(doc.createComment(reader.getText()));
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    parent.appendChild(doc.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return root;
+    }
+    
+    /**
+     * Creates a DOM element from the start tag the stream reader is positioned at.
+     * @param reader the stream reader
+     * @param doc the document that owns the created DOM element
+     * @return the created DOM element
+     */
+    private static Element createElement(XMLStreamReader reader, Document doc) {
+        Element elem = doc.createElement(getName(reader));
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String name = reader.getAttributeLocalName(i);
+            if (prefix != null && prefix.length() > 0) {
+                name = prefix + ":" + name;
+            }
+            elem.setAttribute(name, reader.getAttributeValue(i));
+        }
+        return elem;
+    }
+    
+    /**
+     * Obtains the text stored in the first child of the element whose start tag the stream reader is positioned at.
+     * The stream reader is positioned at the end tag of the element after reading.
+     * @param reader the stream reader
+     * @param doc the document that owns temporarily created DOM nodes
+     * @return the text string, or empty string if the first child is not a text
+     * @throws XMLStreamException if the contents of the file are not well-formed
+     */
+    private static String getFirstChildText(XMLStreamReader reader, Document doc) throws XMLStreamException {
+        Element elem = readElement(reader, doc);
+        String text = Xml2Operation.getFirstChildText(elem);
+        if (text == null) {
+            return "";
+        }
+        return text;
+    }
+    
+    /**
+     * Returns the qualified name of the element whose start tag the stream reader is positioned at.
+     * @param reader the stream reader
+     * @return the name of the element
+     */
+    private static String getName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        if (prefix != null && prefix.length() > 0) {
+            return prefix + ":" + reader.getLocalName();
+        }
+        return reader.getLocalName();
+    }
+    
+    /**
+     * Returns the value of an attribute of the element whose start tag the stream reader is positioned at.
+     * @param reader the stream reader
+     * @param name the name of the attribute
+     * @return the value of the attribute, or empty string if the element does not have the attribute
+     */
+    private static String getAttribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            return "";
+        }
+        return value;
+    }
+}
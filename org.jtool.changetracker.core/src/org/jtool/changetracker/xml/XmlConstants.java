@@ -22,11 +22,12 @@ public class XmlConstants {
     public static final String RefactorOperationElem = "refactoringOperation";
     public static final String ResourceOperationElem = "resourceOperation";
     
-    public static final String InsertedElem = "inserted";
-    public static final String DeletedElem  = "deleted";
-    public static final String CopiedElem   = "copied";
-    public static final String CodeElem     = "code";
-    public static final String SelectedElem = "selected";
+    public static final String InsertedElem  = "inserted";
+    public static final String DeletedElem   = "deleted";
+    public static final String CopiedElem    = "copied";
+    public static final String CodeElem      = "code";
+    public static final String CodeDeltaElem = "codeDelta";
+    public static final String SelectedElem  = "selected";
     
     public static final String VersionAttr = "version";
     
@@ -41,6 +42,7 @@ public class XmlConstants {
     public static final String CompoundTimeAttr = "ctime";
     
     public static final String OffsetAttr     = "offset";
+    public static final String KeystrokesAttr = "keystrokes";
     public static final String CharsetAttr    = "charset";
     public static final String SrcDstPathAttr = "srcdst";
     public static final String CommandIdAttr  = "commandId";
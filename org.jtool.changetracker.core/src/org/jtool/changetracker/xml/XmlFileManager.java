@@ -37,7 +37,10 @@ import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
  */
 public class XmlFileManager {
     
-    private static String DEFALUT_CHARSET = "UTF-8";
+    /**
+     * The name of the default charset of files.
+     */
+    static final String DEFALUT_CHARSET = "UTF-8";
     
     /**
      * Reads and returns the contents of a file.
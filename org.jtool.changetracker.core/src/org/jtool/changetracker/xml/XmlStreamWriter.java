@@ -0,0 +1,228 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Stack;
+import java.io.Writer;
+import java.io.IOException;
+
+/**
+ * Writes the XML representation into a character stream element by element.
+ * The output has the same layout and escaping as a DOM tree serialized with indentation, which keeps
+ * carriage returns, line feeds, and tabs in attribute values and carriage returns in texts intact.
+ * @author Katsuhisa Maruyama
+ */
+class XmlStreamWriter {
+    
+    /**
+     * The string used for indentation.
+     */
+    private static final String INDENT = "    ";
+    
+    /**
+     * The line separator.
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    /**
+     * The character stream which the XML representation is written into.
+     */
+    private Writer writer;
+    
+    /**
+     * The names of elements whose start tags were written but end tags were not written yet.
+     */
+    private Stack<String> openElements = new Stack<String>();
+    
+    /**
+     * The flags indicating whether the respective open elements contain child elements.
+     */
+    private Stack<Boolean> hasChildElements = new Stack<Boolean>();
+    
+    /**
+     * The attributes of the start tag that was not closed yet, which are sorted by their names.
+     */
+    private Map<String, String> pendingAttributes = new TreeMap<String, String>();
+    
+    /**
+     * A flag indicating whether the start tag of the innermost open element was not closed yet.
+     */
+    private boolean pendingStartTag = false;
+    
+    /**
+     * Creates an instance that writes the XML representation.
+     * @param writer the character stream which the XML representation is written into
+     */
+    XmlStreamWriter(Writer writer) {
+        this.writer = writer;
+    }
+    
+    /**
+     * Writes the XML declaration.
+     * @param charset the name of a charset of the stream
+     * @throws IOException if writing fails
+     */
+    void writeStartDocument(String charset) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"" + charset + "\" standalone=\"no\"?>");
+        writer.write(LINE_SEPARATOR);
+    }
+    
+    /**
+     * Finishes writing the XML representation.
+     * @throws IOException if writing fails
+     */
+    void writeEndDocument() throws IOException {
+        while (!openElements.isEmpty()) {
+            writeEndElement();
+        }
+        writer.write(LINE_SEPARATOR);
+        writer.flush();
+    }
+    
+    /**
+     * Writes the start tag of an element.
+     * @param name the name of the element
+     * @throws IOException if writing fails
+     */
+    void writeStartElement(String name) throws IOException {
+        closeStartTag();
+        if (!openElements.isEmpty()) {
+            hasChildElements.set(hasChildElements.size() - 1, Boolean.TRUE);
+            writer.write(LINE_SEPARATOR);
+            writeIndent(openElements.size());
+        }
+        writer.write('<');
+        writer.write(name);
+        
+        openElements.push(name);
+        hasChildElements.push(Boolean.FALSE);
+        pendingStartTag = true;
+    }
+    
+    /**
+     * Writes an attribute of the element whose start tag was lastly written.
+     * @param name the name of the attribute
+     * @param value the value of the attribute
+     */
+    void writeAttribute(String name, String value) {
+        if (pendingStartTag) {
+            pendingAttributes.put(name, value != null ? value : "");
+        }
+    }
+    
+    /**
+     * Writes a text as the content of the element whose start tag was lastly written.
+     * @param text the text to be written
+     * @throws IOException if writing fails
+     */
+    void writeCharacters(String text) throws IOException {
+        if (text == null || text.length() == 0) {
+            return;
+        }
+        closeStartTag();
+        writeEscaped(text, false);
+    }
+    
+    /**
+     * Writes the end tag of the innermost open element.
+     * @throws IOException if writing fails
+     */
+    void writeEndElement() throws IOException {
+        String name = openElements.pop();
+        boolean hasChildren = hasChildElements.pop().booleanValue();
+        if (pendingStartTag) {
+            writeAttributes();
+            writer.write("/>");
+            pendingStartTag = false;
+            return;
+        }
+        
+        if (hasChildren) {
+            writer.write(LINE_SEPARATOR);
+            writeIndent(openElements.size());
+        }
+        writer.write("</");
+        writer.write(name);
+        writer.write('>');
+    }
+    
+    /**
+     * Closes the start tag of the innermost open element if it was not closed yet.
+     * @throws IOException if writing fails
+     */
+    private void closeStartTag() throws IOException {
+        if (pendingStartTag) {
+            writeAttributes();
+            writer.write('>');
+            pendingStartTag = false;
+        }
+    }
+    
+    /**
+     * Writes the attributes of the start tag that was not closed yet.
+     * @throws IOException if writing fails
+     */
+    private void writeAttributes() throws IOException {
+        for (Map.Entry<String, String> entry : pendingAttributes.entrySet()) {
+            writer.write(' ');
+            writer.write(entry.getKey());
+            writer.write("=\"");
+            writeEscaped(entry.getValue(), true);
+            writer.write('"');
+        }
+        pendingAttributes.clear();
+    }
+    
+    /**
+     * Writes the indentation.
+     * @param depth the depth of the indentation
+     * @throws IOException if writing fails
+     */
+    private void writeIndent(int depth) throws IOException {
+        for (int i = 0; i < depth; i++) {
+            writer.write(INDENT);
+        }
+    }
+    
+    /**
+     * Writes a string after escaping characters that cannot appear in the XML representation as they are.
+     * @param str the string to be written
+     * @param inAttribute <code>true</code> if the string is the value of an attribute, otherwise <code>false</code>
+     * @throws IOException if writing fails
+     */
+    private void writeEscaped(String str, boolean inAttribute) throws IOException {
+        int start = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            String ref = null;
+            if (ch == '&') {
+                ref = "&amp;";
+            } else if (ch == '<') {
+                ref = "&lt;";
+            } else if (ch == '>') {
+                ref = "&gt;";
+            } else if (ch == '"' && inAttribute) {
+                ref = "&quot;";
+            } else if (ch == '\r') {
+                ref = "&#13;";
+            } else if ((ch == '\n' || ch == '\t') && inAttribute) {
+                ref = "&#" + (int)ch + ";";
+            } else if (ch < 0x20 && ch != '\n' && ch != '\t') {
+                ref = "&#" + (int)ch + ";";
+            }
+            
+            if (ref != null) {
+                writer.write(str, start, i - start);
+                writer.write(ref);
+                start = i + 1;
+            }
+        }
+        writer.write(str, start, str.length() - start);
+    }
+}
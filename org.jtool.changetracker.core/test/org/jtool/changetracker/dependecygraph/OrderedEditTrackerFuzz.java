@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.dependecygraph;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.ICodeOperation;
+import org.jtool.changetracker.operation.ChangeOperation;
+import org.jtool.changetracker.operation.CopyOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import org.jtool.changetracker.repository.CTFile;
+import org.jtool.changetracker.repository.CTPath;
+import org.jtool.changetracker.repository.ResourceBuilder;
+import java.util.List;
+import java.util.Random;
+import java.time.ZonedDateTime;
+
+/**
+ * Compares the change operations that the ordered edit tracker finds for ordered editing edges
+ * with those found by scanning the history backward from each document operation.
+ * Usage: <code>OrderedEditTrackerFuzz [seed] [trials] [max-operations]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class OrderedEditTrackerFuzz {
+    
+    /**
+     * The texts that are inserted or copied.
+     */
+    private static final String[] TEXTS = { "a", "bc", "def\n", "", "", "xyzw" };
+    
+    /**
+     * The actions of document operations.
+     */
+    private static final String[] ACTIONS = { "TYPING", "CUT", "COPY", "PASTE", "TYPING", "TYPING" };
+    
+    /**
+     * Runs the differential test.
+     * @param args the seed, the number of the trials, and the maximum number of change operations in a trial
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int maxOps = args.length > 2 ? Integer.parseInt(args[2]) : 80;
+        
+        Random random = new Random(seed);
+        long docs = 0;
+        long edges = 0;
+        long trackerTime = 0;
+        long scanTime = 0;
+        for (int t = 0; t < trials; t++) {
+            CTPath pathinfo = new CTPath("P", "p", "F.java", "/P/p/F.java", "master");
+            CTFile finfo = ResourceBuilder.createFile(ResourceBuilder.createPackage(pathinfo), pathinfo);
+            ZonedDateTime time = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+            int length = 0;
+            int num = 1 + random.nextInt(maxOps);
+            for (int i = 0; i < num; i++) {
+                if (random.nextInt(4) != 0) {
+                    time = time.plusSeconds(1);
+                }
+                ChangeOperation op;
+                if (i == 0 || random.nextInt(12) == 0) {
+                    FileOperation fop = new FileOperation(time, pathinfo, random.nextBoolean() ? "OPENED" : "SAVED");
+                    fop.setCode("");
+                    op = fop;
+                } else if (random.nextInt(15) == 0) {
+                    CopyOperation cop = new CopyOperation(time, pathinfo, "COPY");
+                    cop.setStart(length == 0 ? 0 : random.nextInt(length));
+                    cop.setCopiedText(TEXTS[random.nextInt(TEXTS.length)]);
+                    op = cop;
+                } else {
+                    DocumentOperation dop = new DocumentOperation(time, pathinfo, ACTIONS[random.nextInt(ACTIONS.length)]);
+                    int start = length == 0 ? 0 : random.nextInt(length + 1);
+                    String deleted = "";
+                    if (random.nextInt(3) == 0 && start < length) {
+                        deleted = "zzzzzzzz".substring(0, 1 + random.nextInt(Math.min(8, length - start)));
+                    }
+                    String inserted = random.nextInt(4) == 0 ? "" : TEXTS[random.nextInt(TEXTS.length)];
+                    dop.setStart(start);
+                    dop.setDeletedText(deleted);
+                    dop.setInsertedText(inserted);
+                    length = length + inserted.length() - deleted.length();
+                    op = dop;
+                }
+                ResourceBuilder.addOperation(finfo, op);
+            }
+            
+            long start = System.nanoTime();
+            OrderedEditTracker tracker = new OrderedEditTracker();
+            tracker.advance(finfo.getOperations());
+            long middle = System.nanoTime();
+            for (IChangeOperation op : finfo.getOperations()) {
+                if (!op.isDocument()) {
+                    continue;
+                }
+                docs++;
+                List<ICodeOperation> expected = op.getAffectingOperations();
+                List<ICodeOperation> actual = tracker.takeAffectingOperations(op);
+                edges = edges + expected.size();
+                if (expected.size() != actual.size()) {
+                    throw new IllegalStateException("Mismatch of the number of the affecting operations at trial " + t);
+                }
+                for (int k = 0; k < expected.size(); k++) {
+                    if (expected.get(k) != actual.get(k)) {
+                        throw new IllegalStateException("Mismatch of the affecting operations at trial " + t);
+                    }
+                }
+            }
+            long end = System.nanoTime();
+            trackerTime = trackerTime + (middle - start);
+            scanTime = scanTime + (end - middle);
+        }
+        System.out.println("OK trials=" + trials + " docs=" + docs + " edges=" + edges +
+                " tracker=" + trackerTime / 1000000 + "ms scan=" + scanTime / 1000000 + "ms");
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.dependencyanalyzer;
+
+import org.jtool.changetracker.operation.CodeOperation;
+import org.jtool.changetracker.operation.CopyOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.repository.CTFile;
+import org.jtool.changetracker.repository.CTPath;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+import java.time.ZonedDateTime;
+
+/**
+ * Compares the Java constructs affected by change operations with those found by checking every offset against every construct.
+ * Usage: <code>DependencyDetectorFuzz [seed] [trials]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class DependencyDetectorFuzz {
+    
+    /**
+     * Runs the differential test.
+     * @param args the seed and the number of the trials
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        
+        Random random = new Random(seed);
+        CTPath pathinfo = new CTPath("P", "p", "F.java", "/P/p/F.java", "master");
+        ZonedDateTime time = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+        long checks = 0;
+        for (int t = 0; t < trials; t++) {
+            List<JavaConstruct> cons = new ArrayList<JavaConstruct>();
+            int numCons = random.nextInt(8);
+            for (int i = 0; i < numCons; i++) {
+                int start = random.nextInt(60);
+                JavaConstruct con = new JavaConstruct(JavaConstruct.Type.METHOD, start, start + random.nextInt(40), "m" + i);
+                int numExcluded = random.nextInt(4);
+                for (int k = 0; k < numExcluded; k++) {
+                    int estart = random.nextInt(100);
+                    con.addExcludedCodeRange(estart, estart + random.nextInt(15));
+                }
+                cons.add(con);
+            }
+            ParseableSnapshot sn = new ParseableSnapshot(new CTFile(pathinfo, null, null), 0, "", cons);
+            
+            List<CodeOperation> ops = new ArrayList<CodeOperation>();
+            int numOps = 1 + random.nextInt(8);
+            for (int i = 0; i < numOps; i++) {
+                CodeOperation op;
+                if (random.nextInt(6) == 0) {
+                    CopyOperation cop = new CopyOperation(time, pathinfo);
+                    cop.setCopiedText(OffsetMapFuzz.getText(random, 12));
+                    op = cop;
+                } else {
+                    DocumentOperation dop = new DocumentOperation(time, pathinfo, "Typing");
+                    dop.setInsertedText(OffsetMapFuzz.getText(random, 12));
+                    dop.setDeletedText(OffsetMapFuzz.getText(random, 12));
+                    op = dop;
+                }
+                op.setStart(random.nextInt(100));
+                ops.add(op);
+            }
+            
+            List<List<JavaConstruct>> backward = new ArrayList<List<JavaConstruct>>();
+            List<List<JavaConstruct>> forward = new ArrayList<List<JavaConstruct>>();
+            for (int i = 0; i < numOps; i++) {
+                backward.add(getBackwardJavaConstructs(sn, ops, i));
+                forward.add(getForwardJavaConstructs(sn, ops, i));
+            }
+            DependencyDetector.detectBackwardChangeEdges(sn, ops);
+            DependencyDetector.detectForwardChangeEdges(sn, ops);
+            for (int i = 0; i < numOps; i++) {
+                checks++;
+                if (!backward.get(i).equals(ops.get(i).getBackwardJavaConstructs()) ||
+                    !forward.get(i).equals(ops.get(i).getForwardJavaConstructs())) {
+                    throw new IllegalStateException("Mismatch of the Java constructs of operation " + i + " at trial " + t);
+                }
+            }
+        }
+        System.out.println("OK checks=" + checks);
+    }
+    
+    /**
+     * Collects Java constructs that a change operation backward affects by checking every offset it deletes or copies.
+     * @param sn the parseable snapshot
+     * @param ops the change operations
+     * @param index the index of the change operation
+     * @return the collection of the affected Java constructs
+     */
+    private static List<JavaConstruct> getBackwardJavaConstructs(ParseableSnapshot sn, List<CodeOperation> ops, int index) {
+        CodeOperation op = ops.get(index);
+        List<CodeOperation> aops = ops.subList(index + 1, ops.size());
+        List<JavaConstruct> cons = new ArrayList<JavaConstruct>();
+        for (JavaConstruct con : sn.getJavaConstructs()) {
+            int length = op.isCopy() ? op.getCopiedText().length() : op.getDeletedText().length();
+            for (int offset = op.getStart(); offset < op.getStart() + length; offset++) {
+                int aoffset = DependencyDetector.adjustBackwardOffset(offset, aops);
+                if (con.inRangeForDeletion(aoffset) && !cons.contains(con)) {
+                    cons.add(con);
+                }
+            }
+            if (op.getInsertedText().length() != 0) {
+                int aoffset = DependencyDetector.adjustBackwardOffset(op.getStart(), aops);
+                if (con.inRangeForInsertion(aoffset) && !cons.contains(con)) {
+                    cons.add(con);
+                }
+            }
+        }
+        return cons;
+    }
+    
+    /**
+     * Collects Java constructs that a change operation forward affects by checking every offset it inserts.
+     * @param sn the parseable snapshot
+     * @param ops the change operations
+     * @param index the index of the change operation
+     * @return the collection of the affected Java constructs
+     */
+    private static List<JavaConstruct> getForwardJavaConstructs(ParseableSnapshot sn, List<CodeOperation> ops, int index) {
+        CodeOperation op = ops.get(index);
+        List<CodeOperation> aops = ops.subList(index + 1, ops.size());
+        List<JavaConstruct> cons = new ArrayList<JavaConstruct>();
+        for (JavaConstruct con : sn.getJavaConstructs()) {
+            int length = op.getInsertedText().length();
+            for (int offset = op.getStart(); offset < op.getStart() + length; offset++) {
+                int aoffset = DependencyDetector.adjustForwardOffset(offset, aops);
+                if (con.inRangeForInsertion(aoffset) && !cons.contains(con)) {
+                    cons.add(con);
+                }
+            }
+            if (op.getDeletedText().length() != 0) {
+                int aoffset = DependencyDetector.adjustBackwardOffset(op.getStart(), aops);
+                if (con.inRangeForDeletion(aoffset) && !cons.contains(con)) {
+                    cons.add(con);
+                }
+            }
+        }
+        return cons;
+    }
+}
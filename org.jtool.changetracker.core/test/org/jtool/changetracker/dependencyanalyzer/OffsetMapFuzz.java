@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.dependencyanalyzer;
+
+import org.jtool.changetracker.operation.CodeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.repository.CTPath;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+import java.time.ZonedDateTime;
+
+/**
+ * Compares the composed offset maps with the offsets adjusted by scanning change operations one by one.
+ * Usage: <code>OffsetMapFuzz [seed] [trials]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class OffsetMapFuzz {
+    
+    /**
+     * Runs the differential test.
+     * @param args the seed and the number of the trials
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        
+        Random random = new Random(seed);
+        CTPath pathinfo = new CTPath("P", "p", "F.java", "/P/p/F.java", "master");
+        ZonedDateTime time = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+        long checks = 0;
+        int maxSize = 0;
+        for (int t = 0; t < trials; t++) {
+            List<CodeOperation> ops = new ArrayList<CodeOperation>();
+            int num = random.nextInt(40);
+            for (int i = 0; i < num; i++) {
+                DocumentOperation op = new DocumentOperation(time, pathinfo, "Typing");
+                op.setInsertedText(getText(random, 10));
+                op.setDeletedText(getText(random, 10));
+                op.setStart(random.nextInt(120));
+                ops.add(op);
+            }
+            
+            OffsetMap backward = OffsetMap.backward(ops);
+            OffsetMap forward = OffsetMap.forward(ops);
+            maxSize = Math.max(maxSize, backward.size());
+            for (int offset = -5; offset < 300; offset++) {
+                checks++;
+                if (backward.map(offset) != DependencyDetector.adjustBackwardOffset(offset, ops)) {
+                    throw new IllegalStateException("Mismatch of the backward offset " + offset + " at trial " + t + ": " + backward);
+                }
+                if (forward.map(offset) != DependencyDetector.adjustForwardOffset(offset, ops)) {
+                    throw new IllegalStateException("Mismatch of the forward offset " + offset + " at trial " + t + ": " + forward);
+                }
+            }
+            
+            for (int k = 0; k < 50; k++) {
+                int first = random.nextInt(200);
+                int last = first + random.nextInt(30) - 3;
+                int lo = random.nextInt(300);
+                int hi = lo + random.nextInt(20) - 2;
+                boolean expected = false;
+                for (int offset = first; offset <= last; offset++) {
+                    int adjusted = DependencyDetector.adjustBackwardOffset(offset, ops);
+                    if (lo <= adjusted && adjusted <= hi) {
+                        expected = true;
+                    }
+                }
+                if (expected != backward.mapsInto(first, last, lo, hi)) {
+                    throw new IllegalStateException("Mismatch of the range [" + first + ", " + last + "] at trial " + t);
+                }
+            }
+        }
+        System.out.println("OK checks=" + checks + " max pieces=" + maxSize);
+    }
+    
+    /**
+     * Obtains a text with a random length.
+     * @param random the random generator
+     * @param max the maximum length of the text
+     * @return the text
+     */
+    static String getText(Random random, int max) {
+        int length = random.nextInt(max + 1);
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            buf.append('x');
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.repository;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.ICodeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+import java.time.ZonedDateTime;
+
+/**
+ * Compares the indexed lookup of the cut or copy operation for a paste operation with a scan of the project history.
+ * Change operations are appended to random files, and are sometimes set to a file as a whole.
+ * Usage: <code>ClipboardIndexFuzz [seed] [trials]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class ClipboardIndexFuzz {
+    
+    /**
+     * The texts that are inserted or deleted.
+     */
+    private static final String[] TEXTS = { "a", " a", "b\n", "c", "", "  ", "ab" };
+    
+    /**
+     * The actions of document operations.
+     */
+    private static final String[] ACTIONS = {
+        ICodeOperation.Action.CUT.toString(),
+        ICodeOperation.Action.COPY.toString(),
+        ICodeOperation.Action.PASTE.toString(),
+        ICodeOperation.Action.TYPING.toString()
+    };
+    
+    /**
+     * Runs the differential test.
+     * @param args the seed and the number of the trials
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        
+        Random random = new Random(seed);
+        ZonedDateTime base = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+        long checks = 0;
+        long hits = 0;
+        for (int t = 0; t < trials; t++) {
+            CTPackage pkginfo = ResourceBuilder.createPackage(new CTPath("P", "p", "A.java", "/P/p/A.java", "master"));
+            List<CTFile> files = new ArrayList<CTFile>();
+            int numFiles = 1 + random.nextInt(3);
+            for (int f = 0; f < numFiles; f++) {
+                CTPath pathinfo = new CTPath("P", "p", "F" + f + ".java", "/P/p/F" + f + ".java", "master");
+                files.add(ResourceBuilder.createFile(pkginfo, pathinfo));
+            }
+            
+            List<DocumentOperation> pastes = new ArrayList<DocumentOperation>();
+            int num = random.nextInt(60);
+            for (int i = 0; i < num; i++) {
+                CTFile finfo = files.get(random.nextInt(numFiles));
+                DocumentOperation op = new DocumentOperation(base.plusSeconds(random.nextInt(20)),
+                        new CTPath("P", "p", "A.java", "/P/p/A.java", "master"), ACTIONS[random.nextInt(ACTIONS.length)]);
+                op.setDeletedText(TEXTS[random.nextInt(TEXTS.length)]);
+                op.setInsertedText(TEXTS[random.nextInt(TEXTS.length)]);
+                if (random.nextInt(10) == 0) {
+                    op.setFile(finfo);
+                    List<IChangeOperation> ops = new ArrayList<IChangeOperation>(finfo.getOperations());
+                    ops.add(op);
+                    finfo.setOperations(ops);
+                } else {
+                    ResourceBuilder.addOperation(finfo, op);
+                }
+                if (op.isPaste()) {
+                    pastes.add(op);
+                }
+                
+                if (random.nextInt(5) == 0) {
+                    for (DocumentOperation paste : pastes) {
+                        checks++;
+                        if (check(paste, pkginfo.getProject())) {
+                            hits++;
+                        }
+                    }
+                }
+            }
+            for (DocumentOperation paste : pastes) {
+                checks++;
+                if (check(paste, pkginfo.getProject())) {
+                    hits++;
+                }
+            }
+        }
+        System.out.println("OK checks=" + checks + " hits=" + hits);
+    }
+    
+    /**
+     * Compares the cut or copy operation found for a paste operation with that found by scanning the project history.
+     * @param paste the paste operation
+     * @param prjinfo the project containing the file of the paste operation
+     * @return <code>true</code> if the cut or copy operation is found, otherwise <code>false</code>
+     */
+    private static boolean check(DocumentOperation paste, CTProject prjinfo) {
+        ICodeOperation expected = findCutOrCopyOperation(paste, prjinfo);
+        if (expected != paste.getCutOrCopyOperationForPaste()) {
+            throw new IllegalStateException("Mismatch for a paste operation at " + paste.getTime());
+        }
+        return expected != null;
+    }
+    
+    /**
+     * Finds the cut or copy operation for a paste operation by scanning the project history backward.
+     * @param paste the paste operation
+     * @param prjinfo the project containing the file of the paste operation
+     * @return the cut or copy operation, or <code>null</code> if none
+     */
+    private static ICodeOperation findCutOrCopyOperation(DocumentOperation paste, CTProject prjinfo) {
+        List<IChangeOperation> ops = prjinfo.getOperations();
+        for (int idx = ops.size() - 1; idx >= 0; idx--) {
+            if (ops.get(idx).isDocument()) {
+                ICodeOperation op = (ICodeOperation)ops.get(idx);
+                if ((op.isCopy() || op.isCut()) && op.getTime().isBefore(paste.getTime())) {
+                    if (op.getDeletedText().trim().equals(paste.getInsertedText().trim())) {
+                        return op;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
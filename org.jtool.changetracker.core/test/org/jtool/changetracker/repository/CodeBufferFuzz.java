@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.repository;
+
+import java.util.Random;
+
+/**
+ * Compares the piece-table buffer with a string builder under random replacements,
+ * and measures the time of sequential typing into a large buffer.
+ * Usage: <code>CodeBufferFuzz [seed] [trials]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class CodeBufferFuzz {
+    
+    /**
+     * The number of replacements in a trial.
+     */
+    private static final int REPLACEMENTS = 2000;
+    
+    /**
+     * The number of characters typed in the benchmark.
+     */
+    private static final int TYPED_CHARACTERS = 500000;
+    
+    /**
+     * Runs the differential test and the benchmark.
+     * @param args the seed and the number of the trials
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        
+        Random random = new Random(seed);
+        for (int t = 0; t < trials; t++) {
+            StringBuilder expected = new StringBuilder("hello world initial text " + t);
+            CodeBuffer buffer = new CodeBuffer(expected.toString());
+            for (int i = 0; i < REPLACEMENTS; i++) {
+                int start = random.nextInt(expected.length() + 1);
+                int end = Math.min(expected.length(), start + random.nextInt(5));
+                String text = random.nextBoolean() ? "" : "ab".substring(0, random.nextInt(3));
+                expected.replace(start, end, text);
+                buffer.replace(start, end, text);
+                
+                if (buffer.length() != expected.length()) {
+                    throw new IllegalStateException("Length mismatch at trial " + t);
+                }
+                if (random.nextInt(50) == 0 && !expected.toString().equals(buffer.toString())) {
+                    throw new IllegalStateException("Mismatch at trial " + t);
+                }
+                if (random.nextInt(50) == 0 && expected.length() > 2) {
+                    int from = random.nextInt(expected.length());
+                    int to = from + random.nextInt(expected.length() - from);
+                    if (!expected.substring(from, to).equals(buffer.substring(from, to))) {
+                        throw new IllegalStateException("Substring mismatch at trial " + t);
+                    }
+                }
+            }
+            if (!expected.toString().equals(buffer.toString())) {
+                throw new IllegalStateException("Mismatch at the end of trial " + t);
+            }
+        }
+        System.out.println("OK trials=" + trials);
+        
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            code.append("    int x = 0; // line " + i + "\n");
+        }
+        CodeBuffer buffer = new CodeBuffer(code.toString());
+        int offset = code.length() / 2;
+        long start = System.nanoTime();
+        for (int i = 0; i < TYPED_CHARACTERS; i++) {
+            buffer.replace(offset, offset, "x");
+            offset++;
+        }
+        String result = buffer.toString();
+        long end = System.nanoTime();
+        System.out.println("Typed " + TYPED_CHARACTERS + " characters: " + (end - start) / 1000000 + "ms length=" + result.length());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.repository;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import java.util.List;
+
+/**
+ * Measures the time of the streaming compaction and the compaction before it was streamed.
+ * The compaction before it was streamed is skipped for more than 100,000 change operations to keep the run short.
+ * Usage: <code>OperationCompactorBenchmark</code>
+ * @author Katsuhisa Maruyama
+ */
+public class OperationCompactorBenchmark {
+    
+    /**
+     * The numbers of the change operations to be compacted.
+     */
+    private static final int[] SIZES = { 20000, 100000, 400000 };
+    
+    /**
+     * Runs the benchmark.
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        for (int size : SIZES) {
+            List<IChangeOperation> ops1 = OperationCompactorFuzz.generate(7, size);
+            List<IChangeOperation> ops2 = OperationCompactorFuzz.generate(7, size);
+            
+            String baseline = "skipped";
+            if (size <= 100000) {
+                long start = System.nanoTime();
+                int num = BaselineOperationCompactor.compact(ops1).size();
+                long end = System.nanoTime();
+                baseline = (end - start) / 1000000 + "ms (" + num + ")";
+            }
+            
+            long start = System.nanoTime();
+            int num = OperationCompactor.compact(ops2).size();
+            long end = System.nanoTime();
+            System.out.println(size + " operations: baseline=" + baseline + " streaming=" + (end - start) / 1000000 + "ms (" + num + ")");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.repository;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.time.ZonedDateTime;
+
+/**
+ * Compares the streaming compaction of change operations with the compaction before it was streamed.
+ * The change operations are randomly generated, and are compacted at once, in place, and incrementally.
+ * Usage: <code>OperationCompactorFuzz [seed] [trials] [max-operations]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class OperationCompactorFuzz {
+    
+    /**
+     * The texts that are inserted or deleted, which contain surrogate pairs and unpaired surrogates.
+     */
+    private static final String[] TEXTS = { "", "a", "ab", "\u3042", "\u3042\u3044", "\uD800", "\uD83D\uDE00", "x\uDC00", "\u00E9", "a\uD800" };
+    
+    /**
+     * The actions of file operations.
+     */
+    private static final String[] FILE_ACTIONS = { "OPENED", "CLOSED", "SAVED", "ACTIVATED", "ADDED" };
+    
+    /**
+     * Runs the differential test.
+     * @param args the seed, the number of the trials, and the maximum number of change operations in a trial
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int maxOps = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+        
+        for (int t = 0; t < trials; t++) {
+            int num = new Random(seed + t).nextInt(maxOps);
+            List<IChangeOperation> ops1 = generate(seed + t, num);
+            List<IChangeOperation> ops2 = generate(seed + t, num);
+            List<IChangeOperation> ops3 = generate(seed + t, num);
+            List<IChangeOperation> ops4 = generate(seed + t, num);
+            
+            String expected = getSignature(ops1, BaselineOperationCompactor.compact(ops1));
+            String compacted = getSignature(ops2, OperationCompactor.compact(ops2));
+            
+            List<IChangeOperation> inplace = new ArrayList<IChangeOperation>(ops3);
+            OperationCompactor.compactInPlace(inplace);
+            String compactedInPlace = getSignature(ops3, inplace);
+            
+            OperationCompactor compactor = new OperationCompactor();
+            List<IChangeOperation> streamed = new ArrayList<IChangeOperation>();
+            Random random = new Random(t);
+            for (IChangeOperation op : ops4) {
+                compactor.add(op);
+                if (random.nextInt(3) == 0) {
+                    streamed.addAll(compactor.takeOperations());
+                }
+            }
+            compactor.flush();
+            streamed.addAll(compactor.takeOperations());
+            String compactedIncrementally = getSignature(ops4, streamed);
+            
+            if (!expected.equals(compacted) || !expected.equals(compactedInPlace) || !expected.equals(compactedIncrementally)) {
+                throw new IllegalStateException("Mismatch at seed " + (seed + t) + "\n" + expected + "\n" + compacted +
+                        "\n" + compactedInPlace + "\n" + compactedIncrementally);
+            }
+        }
+        System.out.println("OK trials=" + trials);
+    }
+    
+    /**
+     * Generates change operations on two files.
+     * @param seed the seed of the random generator
+     * @param num the number of the change operations
+     * @return the collection of the generated change operations
+     */
+    static List<IChangeOperation> generate(long seed, int num) {
+        Random random = new Random(seed);
+        CTPath[] paths = {
+            new CTPath("P", "p", "A.java", "/P/p/A.java", "master"),
+            new CTPath("P", "p", "B.java", "/P/p/B.java", "master")
+        };
+        ZonedDateTime base = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+        
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>(num);
+        for (int i = 0; i < num; i++) {
+            CTPath pathinfo = paths[random.nextInt(random.nextInt(5) == 0 ? 2 : 1)];
+            String author = random.nextInt(8) == 0 ? "bob" : "alice";
+            if (random.nextInt(10) < 6) {
+                String action = random.nextInt(6) == 0 ? "Cut" : "Typing";
+                DocumentOperation op = new DocumentOperation(base.plusSeconds(i), pathinfo, action, author);
+                op.setInsertedText(TEXTS[random.nextInt(TEXTS.length)]);
+                op.setDeletedText(TEXTS[random.nextInt(TEXTS.length)]);
+                op.setStart(random.nextInt(3));
+                ops.add(op);
+            } else {
+                String action = FILE_ACTIONS[random.nextInt(FILE_ACTIONS.length)];
+                ops.add(new FileOperation(base.plusSeconds(i), pathinfo, action, author));
+            }
+        }
+        return ops;
+    }
+    
+    /**
+     * Obtains the string that represents the result of compaction.
+     * @param ops the change operations before the compaction
+     * @param compacted the change operations after the compaction
+     * @return the positions of the remaining change operations in the original ones and their texts
+     */
+    private static String getSignature(List<IChangeOperation> ops, List<IChangeOperation> compacted) {
+        Map<IChangeOperation, Integer> positions = new IdentityHashMap<IChangeOperation, Integer>();
+        for (int idx = 0; idx < ops.size(); idx++) {
+            positions.put(ops.get(idx), idx);
+        }
+        
+        StringBuilder buf = new StringBuilder();
+        for (IChangeOperation op : compacted) {
+            buf.append(positions.get(op));
+            buf.append(":");
+            if (op.isDocument()) {
+                DocumentOperation dop = (DocumentOperation)op;
+                buf.append(dop.getInsertedText());
+                buf.append("/");
+                buf.append(dop.getDeletedText());
+            }
+            buf.append(" ");
+        }
+        return buf.toString();
+    }
+}
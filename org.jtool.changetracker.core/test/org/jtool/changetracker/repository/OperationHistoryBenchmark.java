@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.repository;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;
+import java.time.ZonedDateTime;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures code restoration, time lookups, and obtaining the change operations on a history of 100,000 change operations.
+ * The restored code is compared with the code that is replayed on a string builder.
+ * The allocated bytes are printed when the virtual machine measures them for each thread.
+ * Usage: <code>OperationHistoryBenchmark [seed] [operations]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class OperationHistoryBenchmark {
+    
+    /**
+     * The number of the restoration points that are checked.
+     */
+    private static final int RESTORATIONS = 200;
+    
+    /**
+     * Runs the benchmark.
+     * @param args the seed and the number of the change operations
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int num = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        
+        Random random = new Random(seed);
+        CTPath pathinfo = new CTPath("P", "p", "F.java", "/P/p/F.java", "master");
+        ZonedDateTime time = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+        
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            code.append("    int x" + i + " = 0;\n");
+        }
+        FileOperation fop = new FileOperation(time, pathinfo, "OPENED", "alice");
+        fop.setCode(code.toString());
+        
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>(num);
+        ops.add(fop);
+        int[] indices = new int[RESTORATIONS];
+        for (int i = 0; i < RESTORATIONS; i++) {
+            indices[i] = 1 + random.nextInt(num - 1);
+        }
+        Arrays.sort(indices);
+        
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        int offset = code.length() / 2;
+        int next = 0;
+        for (int idx = 1; idx < num; idx++) {
+            time = time.plusNanos(1000000L * (1 + random.nextInt(300)));
+            DocumentOperation op = new DocumentOperation(time, pathinfo, "Typing", "alice");
+            if (random.nextInt(50) == 0) {
+                offset = random.nextInt(code.length() + 1);
+            }
+            if (random.nextInt(5) == 0 && offset > 0) {
+                op.setStart(offset - 1);
+                op.setDeletedText(code.substring(offset - 1, offset));
+                code.delete(offset - 1, offset);
+                offset--;
+            } else {
+                String text = String.valueOf((char)('a' + random.nextInt(26)));
+                op.setStart(offset);
+                op.setInsertedText(text);
+                code.insert(offset, text);
+                offset++;
+            }
+            ops.add(op);
+            
+            while (next < RESTORATIONS && indices[next] == idx) {
+                expected.put(idx, code.toString());
+                next++;
+            }
+        }
+        OperationHistory history = new OperationHistory(ops);
+        
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int index : indices) {
+                if (!expected.get(index).equals(history.getCode(index))) {
+                    throw new IllegalStateException("Mismatch of the code at " + index);
+                }
+            }
+            long end = System.nanoTime();
+            System.out.println("Restored " + RESTORATIONS + " codes (" + (round == 0 ? "cold" : "warm") + "): " +
+                    (end - start) / 1000000 + "ms");
+        }
+        
+        long start = System.nanoTime();
+        for (int idx = 0; idx < num; idx++) {
+            if (history.getOperationIndexAt(ops.get(idx).getTime()) != idx) {
+                throw new IllegalStateException("Mismatch of the time lookup at " + idx);
+            }
+        }
+        long end = System.nanoTime();
+        System.out.println("Looked up " + num + " times: " + (end - start) / 1000000 + "ms");
+        
+        long allocated = getAllocatedBytes();
+        start = System.nanoTime();
+        long total = 0;
+        for (int i = 0; i < num; i++) {
+            total = total + history.getOperations().size();
+        }
+        end = System.nanoTime();
+        String bytes = "";
+        if (allocated >= 0) {
+            bytes = " allocated=" + (getAllocatedBytes() - allocated) + "bytes";
+        }
+        System.out.println("Obtained the operations " + num + " times: " + (end - start) / 1000000 + "ms" + bytes +
+                " total=" + total);
+    }
+    
+    /**
+     * Obtains the number of bytes allocated by the current thread.
+     * @return the number of the allocated bytes, or <code>-1</code> if the virtual machine does not measure them
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.repository;
+
+import org.jtool.changetracker.operation.ChangeOperation;
+
+/**
+ * Builds projects, packages, and files without a repository for the test harnesses in other packages.
+ * @author Katsuhisa Maruyama
+ */
+public class ResourceBuilder {
+    
+    /**
+     * Creates a package in a new project.
+     * @param pathinfo information about the path of the package
+     * @return the created package
+     */
+    public static CTPackage createPackage(CTPath pathinfo) {
+        CTProject prjinfo = new CTProject(pathinfo);
+        CTPackage pkginfo = new CTPackage(pathinfo, prjinfo);
+        prjinfo.addPackage(pkginfo);
+        return pkginfo;
+    }
+    
+    /**
+     * Creates a file in a package.
+     * @param pkginfo the package
+     * @param pathinfo information about the path of the file
+     * @return the created file
+     */
+    public static CTFile createFile(CTPackage pkginfo, CTPath pathinfo) {
+        CTFile finfo = new CTFile(pathinfo, pkginfo.getProject(), pkginfo);
+        pkginfo.addFile(finfo);
+        return finfo;
+    }
+    
+    /**
+     * Appends a change operation to the history of a file.
+     * @param finfo the file
+     * @param op the change operation
+     */
+    public static void addOperation(CTFile finfo, ChangeOperation op) {
+        op.setFile(finfo);
+        finfo.addOperation(op);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.CodeDelta;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import org.jtool.changetracker.repository.CTPath;
+import org.w3c.dom.Document;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Checks that the code of file operations survives delta encoding and the round trips through history files and segments.
+ * Histories of random code are written into XML files with and without code deltas and into segments of two blocks,
+ * and are read with the streaming reader, the DOM reader, the segment reader, and the mapped segment.
+ * Usage: <code>CodeDeltaFuzz [trials]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class CodeDeltaFuzz {
+    
+    /**
+     * The number of change operations in a history.
+     */
+    private static final int OPERATIONS = 80;
+    
+    /**
+     * The random generator.
+     */
+    private static Random random;
+    
+    /**
+     * Runs the round trip test.
+     * @param args the number of the trials
+     * @throws Exception if the test fails to read or write the files
+     */
+    public static void main(String[] args) throws Exception {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        
+        File dir = Files.createTempDirectory("changetracker").toFile();
+        long codeLength = 0;
+        long storedLength = 0;
+        for (int t = 0; t < trials; t++) {
+            random = new Random(t);
+            
+            StringBuilder base = new StringBuilder();
+            for (int i = random.nextInt(200); i > 0; i--) {
+                base.append(getLine());
+            }
+            String code = mutate(base.toString());
+            String delta = CodeDelta.encode(base.toString(), code);
+            if (delta != null && !CodeDelta.apply(base.toString(), delta).equals(code)) {
+                throw new IllegalStateException("Mismatch of the delta at trial " + t);
+            }
+            
+            List<IChangeOperation> ops = createOperations();
+            CodeSnapshotEncoder encoder = new CodeSnapshotEncoder();
+            encoder.encode(ops);
+            codeLength = codeLength + encoder.getCodeLength();
+            storedLength = storedLength + encoder.getStoredLength();
+            
+            File xml = new File(dir, "history" + t + ".xml");
+            Operation2Xml.storeOperations(ops, xml.getPath(), t % 2 == 0);
+            check(ops, Xml2Operation.getOperations(xml.getPath()), "streaming reader at trial " + t);
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xml);
+            check(ops, Xml2Operation.getOperations(doc), "DOM reader at trial " + t);
+            xml.delete();
+            
+            File segdir = new File(dir, "segment" + t);
+            segdir.mkdir();
+            Operation2Binary.storeOperations(ops.subList(0, OPERATIONS / 2), segdir.getPath());
+            Operation2Binary.storeOperations(ops.subList(OPERATIONS / 2, OPERATIONS), segdir.getPath());
+            File segment = segdir.listFiles()[0];
+            check(ops, Binary2Operation.getOperations(segment.getPath()), "segment reader at trial " + t);
+            check(ops, MappedSegment.open(segment.getPath()).getOperations(), "mapped segment at trial " + t);
+        }
+        System.out.println("OK trials=" + trials + " code=" + codeLength + " stored=" + storedLength +
+                " saved=" + (codeLength > 0 ? 100 - storedLength * 100 / codeLength : 0) + "%");
+    }
+    
+    /**
+     * Creates a history of file operations with mutated code and document operations on two files.
+     * @return the collection of the change operations
+     */
+    private static List<IChangeOperation> createOperations() {
+        String[] paths = { "/P/a/A.java", "/P/a/B.java", null };
+        Map<String, String> codes = new HashMap<String, String>();
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+        ZonedDateTime time = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+        for (int i = 0; i < OPERATIONS; i++) {
+            String path = paths[random.nextInt(paths.length)];
+            String name = path != null ? path.substring(path.lastIndexOf('/') + 1) : null;
+            CTPath pathinfo = new CTPath("P", "a", name, path, "master");
+            time = time.plusSeconds(1);
+            if (random.nextInt(4) == 0) {
+                DocumentOperation op = new DocumentOperation(time, pathinfo, "Typing", "alice");
+                op.setStart(0);
+                op.setInsertedText("x");
+                ops.add(op);
+                continue;
+            }
+            
+            String code = codes.get(path);
+            if (code == null) {
+                StringBuilder buf = new StringBuilder();
+                for (int k = random.nextInt(100); k > 0; k--) {
+                    buf.append(getLine());
+                }
+                code = buf.toString();
+            } else {
+                code = mutate(code);
+            }
+            codes.put(path, code);
+            
+            FileOperation op = new FileOperation(time, pathinfo, random.nextBoolean() ? "SAVED" : "OPENED", "alice");
+            op.setCode(code);
+            op.setCharset("UTF-8");
+            ops.add(op);
+        }
+        return ops;
+    }
+    
+    /**
+     * Obtains a random line of code.
+     * @return the line
+     */
+    private static String getLine() {
+        int kind = random.nextInt(12);
+        if (kind == 0) {
+            return "\n";
+        } else if (kind == 1) {
+            return "    }\r\n";
+        } else if (kind == 2) {
+            return "  // \uD83D\uDE00 emoji " + random.nextInt(5) + "\n";
+        }
+        
+        StringBuilder buf = new StringBuilder("    int v" + random.nextInt(200) + " = ");
+        for (int i = random.nextInt(30); i > 0; i--) {
+            buf.append((char)('a' + random.nextInt(26)));
+        }
+        buf.append(";\n");
+        return buf.toString();
+    }
+    
+    /**
+     * Mutates code with random insertions and deletions that do not split surrogate pairs.
+     * @param code the code
+     * @return the mutated code
+     */
+    private static String mutate(String code) {
+        StringBuilder buf = new StringBuilder(code);
+        for (int n = random.nextInt(6); n >= 0; n--) {
+            int pos = getBoundary(buf, buf.length() == 0 ? 0 : random.nextInt(buf.length() + 1));
+            int kind = random.nextInt(4);
+            if (kind == 0) {
+                buf.insert(pos, getLine());
+            } else if (kind == 1) {
+                int end = getBoundary(buf, Math.min(buf.length(), pos + random.nextInt(40)));
+                buf.delete(pos, end);
+            } else if (kind == 2) {
+                buf.insert(pos, (char)('a' + random.nextInt(26)));
+            } else if (buf.length() > 0) {
+                buf.insert(pos, "\u00E9");
+            }
+        }
+        return buf.toString();
+    }
+    
+    /**
+     * Moves a position back so that it does not split a surrogate pair.
+     * @param buf the code
+     * @param pos the position
+     * @return the position that is not between a high surrogate and a low surrogate
+     */
+    private static int getBoundary(StringBuilder buf, int pos) {
+        if (pos > 0 && pos < buf.length() && Character.isLowSurrogate(buf.charAt(pos))) {
+            return pos - 1;
+        }
+        return pos;
+    }
+    
+    /**
+     * Compares the code of file operations that were read with that of the original ones.
+     * @param expected the original change operations
+     * @param actual the change operations that were read
+     * @param msg the message that describes the reader
+     */
+    private static void check(List<IChangeOperation> expected, List<IChangeOperation> actual, String msg) {
+        if (expected.size() != actual.size()) {
+            throw new IllegalStateException("Mismatch of the number of the operations: " + msg);
+        }
+        for (int idx = 0; idx < expected.size(); idx++) {
+            if (expected.get(idx).isFile()) {
+                String code1 = ((FileOperation)expected.get(idx)).getCode();
+                String code2 = ((FileOperation)actual.get(idx)).getCode();
+                if (!code1.equals(code2)) {
+                    throw new IllegalStateException("Mismatch of the code at " + idx + ": " + msg);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.operation.FileOperation;
+import org.jtool.changetracker.repository.CTPath;
+import org.w3c.dom.Document;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Measures the time of reading change operations from history files with the DOM reader and the streaming reader,
+ * and from a segment with the segment reader and the mapped segment.
+ * Usage: <code>HistoryLoadBenchmark [files] [operations-per-file]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class HistoryLoadBenchmark {
+    
+    /**
+     * Runs the benchmark.
+     * @param args the number of the history files and the number of change operations in each of them
+     * @throws Exception if the benchmark fails to read or write the files
+     */
+    public static void main(String[] args) throws Exception {
+        int numFiles = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int numOps = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        
+        File dir = Files.createTempDirectory("changetracker").toFile();
+        File segdir = new File(dir, "segment");
+        segdir.mkdir();
+        Random random = new Random(1);
+        ZonedDateTime time = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+        List<File> files = new ArrayList<File>();
+        for (int f = 0; f < numFiles; f++) {
+            List<IChangeOperation> ops = createOperations(random, time.plusHours(f), f, numOps);
+            File file = new File(dir, "history" + f + Xml2Operation.XML_FILE_EXTENTION);
+            Operation2Xml.storeOperations(ops, file.getPath());
+            Operation2Binary.storeOperations(ops, segdir.getPath());
+            files.add(file);
+        }
+        File segment = segdir.listFiles()[0];
+        long expected = (long)numFiles * numOps;
+        
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long num = 0;
+            for (File file : files) {
+                Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+                num = num + Xml2Operation.getOperations(doc).size();
+            }
+            long end = System.nanoTime();
+            print("DOM reader", num, expected, end - start);
+            
+            start = System.nanoTime();
+            num = 0;
+            for (File file : files) {
+                num = num + Xml2Operation.getOperations(file.getPath()).size();
+            }
+            end = System.nanoTime();
+            print("Streaming reader", num, expected, end - start);
+            
+            start = System.nanoTime();
+            num = Binary2Operation.getOperations(segment.getPath()).size();
+            end = System.nanoTime();
+            print("Segment reader", num, expected, end - start);
+            
+            start = System.nanoTime();
+            num = MappedSegment.open(segment.getPath()).getOperations().size();
+            end = System.nanoTime();
+            print("Mapped segment", num, expected, end - start);
+        }
+    }
+    
+    /**
+     * Creates change operations on a file, which start with a file operation followed by typing operations.
+     * @param random the random generator
+     * @param time the time of the first change operation
+     * @param index the index number of the file
+     * @param num the number of the change operations
+     * @return the collection of the change operations
+     */
+    private static List<IChangeOperation> createOperations(Random random, ZonedDateTime time, int index, int num) {
+        CTPath pathinfo = new CTPath("P", "p", "F" + index + ".java", "/P/p/F" + index + ".java", "master");
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>(num);
+        FileOperation fop = new FileOperation(time, pathinfo, "OPENED", "alice");
+        fop.setCode("class F" + index + " {\n}\n");
+        fop.setCharset("UTF-8");
+        ops.add(fop);
+        for (int i = 1; i < num; i++) {
+            DocumentOperation op = new DocumentOperation(time.plusNanos(i * 100000000L), pathinfo, "Typing", "alice");
+            op.setStart(10 + i);
+            op.setInsertedText(String.valueOf((char)('a' + random.nextInt(26))));
+            ops.add(op);
+        }
+        return ops;
+    }
+    
+    /**
+     * Prints the time of reading change operations.
+     * @param name the name of the reader
+     * @param num the number of the change operations that were read
+     * @param expected the number of the change operations that were written
+     * @param time the time in nanoseconds
+     */
+    private static void print(String name, long num, long expected, long time) {
+        if (num != expected) {
+            throw new IllegalStateException(name + " read " + num + " operations instead of " + expected);
+        }
+        System.out.println(name + ": " + time / 1000000 + "ms for " + num + " operations");
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.ChangeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.repository.CTPath;
+import org.jtool.changetracker.repository.OperationCompactor;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+
+/**
+ * Checks that change operations read from a mapped segment are compacted in the same way as those kept on the heap,
+ * and counts the change operations whose bodies were loaded from the segment during the compaction.
+ * Usage: <code>MappedSegmentTest [seed] [operations]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class MappedSegmentTest {
+    
+    /**
+     * The texts that are inserted or deleted.
+     */
+    private static final String[] TEXTS = { "a", "", "\u3042\u3044", "\u611B", "x\uD83D\uDE00", "bb" };
+    
+    /**
+     * Runs the test.
+     * @param args the seed and the number of the change operations
+     * @throws Exception if the test fails to read or write the files
+     */
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int num = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        
+        Random random = new Random(seed);
+        CTPath pathinfo = new CTPath("P", "p", "F.java", "/P/p/F.java", "master");
+        ZonedDateTime time = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+        List<IChangeOperation> copies = new ArrayList<IChangeOperation>();
+        for (int i = 0; i < num; i++) {
+            time = time.plusSeconds(1);
+            int start = random.nextInt(3);
+            String inserted = TEXTS[random.nextInt(TEXTS.length)];
+            String deleted = TEXTS[random.nextInt(TEXTS.length)];
+            ops.add(createOperation(time, pathinfo, start, inserted, deleted));
+            copies.add(createOperation(time, pathinfo, start, inserted, deleted));
+        }
+        
+        File dir = Files.createTempDirectory("changetracker").toFile();
+        Operation2Binary.storeOperations(ops, dir.getPath());
+        MappedSegment segment = MappedSegment.open(dir.listFiles()[0].getPath());
+        List<IChangeOperation> mapped = segment.getOperations();
+        OperationCompactor.compactInPlace(mapped);
+        OperationCompactor.compactInPlace(copies);
+        
+        // the loaded bodies are not visible through the API, so they are inspected reflectively
+        Field field = ChangeOperation.class.getDeclaredField("loadedBody");
+        field.setAccessible(true);
+        int loaded = 0;
+        for (IChangeOperation op : mapped) {
+            if (field.get(op) != null) {
+                loaded++;
+            }
+        }
+        
+        if (mapped.size() != copies.size()) {
+            throw new IllegalStateException("Mismatch of the number of the operations: " + mapped.size() + " " + copies.size());
+        }
+        for (int idx = 0; idx < mapped.size(); idx++) {
+            DocumentOperation op1 = (DocumentOperation)mapped.get(idx);
+            DocumentOperation op2 = (DocumentOperation)copies.get(idx);
+            if (!op1.getInsertedText().equals(op2.getInsertedText()) || !op1.getDeletedText().equals(op2.getDeletedText()) ||
+                !op1.getTime().equals(op2.getTime())) {
+                throw new IllegalStateException("Mismatch of the operation at " + idx);
+            }
+        }
+        
+        System.out.println("OK operations=" + num + " compacted=" + mapped.size() + " loaded=" + loaded);
+    }
+    
+    /**
+     * Creates a typing operation.
+     * @param time the time of the change operation
+     * @param pathinfo information about the path of the file
+     * @param start the offset of the change operation
+     * @param inserted the inserted text
+     * @param deleted the deleted text
+     * @return the created change operation
+     */
+    private static DocumentOperation createOperation(ZonedDateTime time, CTPath pathinfo, int start, String inserted, String deleted) {
+        DocumentOperation op = new DocumentOperation(time, pathinfo, "Typing");
+        op.setStart(start);
+        op.setInsertedText(inserted);
+        op.setDeletedText(deleted);
+        return op;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.xml;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.repository.CTPath;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+
+/**
+ * Checks that a segment broken by an interrupted write yields only its complete blocks.
+ * The segment is truncated at random positions, filled with zeros after a truncation,
+ * or followed by an oversized length of a record, and is read with the segment reader and the mapped segment.
+ * Usage: <code>SegmentTornFuzz [seed] [trials]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class SegmentTornFuzz {
+    
+    /**
+     * The number of blocks written into the segment.
+     */
+    private static final int BLOCKS = 6;
+    
+    /**
+     * The number of change operations in a block.
+     */
+    private static final int BLOCK_SIZE = 7;
+    
+    /**
+     * Runs the test.
+     * @param args the seed and the number of the trials
+     * @throws Exception if the test fails to read or write the files
+     */
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 7;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        
+        File dir = Files.createTempDirectory("changetracker").toFile();
+        ZonedDateTime time = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+        for (int b = 0; b < BLOCKS; b++) {
+            Operation2Binary.storeOperations(createOperations(time.plusMinutes(b)), dir.getPath());
+        }
+        File segment = dir.listFiles()[0];
+        byte[] contents = Files.readAllBytes(segment.toPath());
+        int blocks = Binary2Operation.getOperationBlocks(segment.getPath()).size();
+        if (blocks != BLOCKS) {
+            throw new IllegalStateException("Mismatch of the number of the blocks: " + blocks);
+        }
+        
+        Random random = new Random(seed);
+        File broken = new File(dir, "broken" + Binary2Operation.SEGMENT_FILE_EXTENTION);
+        for (int i = 0; i < trials; i++) {
+            byte[] bytes;
+            if (i % 3 == 0) {
+                bytes = Arrays.copyOf(contents, contents.length + 5);
+                for (int j = contents.length; j < bytes.length - 1; j++) {
+                    bytes[j] = (byte)(0x80 | random.nextInt(128));
+                }
+                bytes[bytes.length - 1] = (byte)random.nextInt(16);
+            } else {
+                bytes = Arrays.copyOf(contents, 4 + random.nextInt(contents.length - 4));
+                if (i % 3 == 1) {
+                    bytes = Arrays.copyOf(bytes, bytes.length + 1 + random.nextInt(4096));
+                }
+            }
+            Files.write(broken.toPath(), bytes);
+            
+            List<List<IChangeOperation>> read = Binary2Operation.getOperationBlocks(broken.getPath());
+            int num = 0;
+            for (List<IChangeOperation> ops : read) {
+                if (ops.size() != BLOCK_SIZE && ops.size() != 0) {
+                    throw new IllegalStateException("Partial block read at trial " + i + ": valid length=" +
+                            Operation2Binary.getValidLength(ByteBuffer.wrap(bytes)) + " length=" + bytes.length);
+                }
+                num = num + ops.size();
+            }
+            if (i % 3 == 0 && read.size() != BLOCKS) {
+                throw new IllegalStateException("Blocks lost at trial " + i);
+            }
+            
+            MappedSegment mapped = MappedSegment.open(broken.getPath());
+            int mappedNum = mapped != null ? mapped.getOperations().size() : 0;
+            if (mappedNum != num) {
+                throw new IllegalStateException("Mismatch of the mapped segment at trial " + i + ": " + mappedNum + " " + num);
+            }
+        }
+        System.out.println("OK trials=" + trials + " blocks=" + BLOCKS);
+    }
+    
+    /**
+     * Creates typing operations that are written into a block.
+     * @param time the time of the first change operation
+     * @return the collection of the change operations
+     */
+    static List<IChangeOperation> createOperations(ZonedDateTime time) {
+        CTPath pathinfo = new CTPath("P", "p", "F.java", "/P/p/F.java", "master");
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            DocumentOperation op = new DocumentOperation(time.plusSeconds(i), pathinfo, "Typing");
+            op.setStart(i);
+            op.setInsertedText("abc" + i);
+            op.setDeletedText("");
+            ops.add(op);
+        }
+        return ops;
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.recorder;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.xml.Binary2Operation;
+import org.jtool.changetracker.xml.Operation2Binary;
+import org.jtool.changetracker.xml.XmlFileManager;
+import org.jtool.changetracker.core.CTConsole;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.IdentityHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Journals recorded change operations that have not been stored into the history files yet.
+ * Each change operation is appended to the journal as a block of the binary segment format, and appended blocks are
+ * written and forced to the disk together at a regular interval. Change operations are removed from the journal
+ * after the history files containing them were written, and those remaining in the journal are recovered at startup.
+ * The journal keeps the bytes encoded when each change operation was appended, and rewrites the journal file from them,
+ * since the compaction of recorded change operations may change them afterwards.
+ * @author Katsuhisa Maruyama
+ */
+class OperationJournal {
+    
+    /**
+     * The name of the journal file in the directory of the repository.
+     */
+    static final String JOURNAL_FILE_NAME = "recorder.ctjournal";
+    
+    /**
+     * The interval in nanoseconds at which appended change operations are forced to the disk.
+     */
+    private static final long SYNC_INTERVAL = TimeUnit.MILLISECONDS.toNanos(200);
+    
+    /**
+     * The journal file.
+     */
+    private File file;
+    
+    /**
+     * The channel for appending to the journal file.
+     */
+    private FileChannel channel;
+    
+    /**
+     * The bytes of the change operations that were appended but have not been written yet.
+     */
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 * 1024);
+    
+    /**
+     * A flag that indicates if the journal file is empty except the bytes in the buffer.
+     */
+    private boolean empty = true;
+    
+    /**
+     * The change operations in the journal in the order of their appending.
+     */
+    private List<IChangeOperation> journaledOperations = new ArrayList<IChangeOperation>();
+    
+    /**
+     * The change operations in the journal that have not been stored into the history files, with their encoded blocks.
+     */
+    private Map<IChangeOperation, byte[]> unstoredOperations = new IdentityHashMap<IChangeOperation, byte[]>();
+    
+    /**
+     * The lock that serializes writes into the journal file.
+     */
+    private Object ioLock = new Object();
+    
+    /**
+     * The number of the forces of the journal file.
+     */
+    private AtomicLong syncCount = new AtomicLong();
+    
+    /**
+     * The flag that indicates if the sync thread is running.
+     */
+    private volatile boolean running = false;
+    
+    /**
+     * The thread that forces appended change operations to the disk.
+     */
+    private Thread syncer;
+    
+    /**
+     * Creates a journal that has not been opened.
+     */
+    OperationJournal() {
+    }
+    
+    /**
+     * Opens the journal file in the directory of a repository and recovers the change operations remaining in it.
+     * The recovered change operations stay in the journal until they are stored.
+     * @param location the location of the repository
+     * @return the collection of the recovered change operations
+     */
+    List<IChangeOperation> open(String location) {
+        close();
+        
+        File dir = new File(location);
+        if (!XmlFileManager.makeDir(dir)) {
+            return new ArrayList<IChangeOperation>();
+        }
+        
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+        synchronized (ioLock) {
+            file = new File(dir, JOURNAL_FILE_NAME);
+            if (file.length() > 0) {
+                ops = Binary2Operation.getOperations(file.getPath());
+            }
+            synchronized (this) {
+                for (IChangeOperation op : ops) {
+                    journaledOperations.add(op);
+                    unstoredOperations.put(op, encode(op));
+                }
+            }
+            checkpoint();
+        }
+        if (ops.size() > 0) {
+            CTConsole.println("Recovered " + ops.size() + " change operations from the journal: " + file.getPath());
+        }
+        
+        running = true;
+        syncer = new Thread("ChangeTracker operation journal") {
+            
+            /**
+             * Forces appended change operations to the disk at a regular interval until the journal is closed.
+             */
+            @Override
+            public void run() {
+                while (running) {
+                    LockSupport.parkNanos(this, SYNC_INTERVAL);
+                    sync();
+                }
+            }
+        };
+        syncer.setDaemon(true);
+        syncer.start();
+        return ops;
+    }
+    
+    /**
+     * Closes the journal file after appended change operations are forced to the disk.
+     */
+    void close() {
+        if (syncer != null) {
+            running = false;
+            LockSupport.unpark(syncer);
+            try {
+                syncer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            syncer = null;
+        }
+        
+        synchronized (ioLock) {
+            sync();
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    CTConsole.println("Failed to close the journal: " + e.getMessage());
+                }
+                channel = null;
+            }
+            synchronized (this) {
+                journaledOperations.clear();
+                unstoredOperations.clear();
+                buffer.reset();
+                empty = true;
+            }
+        }
+    }
+    
+    /**
+     * Appends a change operation to this journal. It will be forced to the disk within the sync interval.
+     * @param op the change operation
+     */
+    synchronized void append(IChangeOperation op) {
+        if (channel == null) {
+            return;
+        }
+        
+        byte[] block = encode(op);
+        if (empty) {
+            byte[] header = Operation2Binary.encodeSegmentHeader();
+            buffer.write(header, 0, header.length);
+            empty = false;
+        }
+        buffer.write(block, 0, block.length);
+        journaledOperations.add(op);
+        unstoredOperations.put(op, block);
+    }
+    
+    /**
+     * Encodes a change operation into a block.
+     * @param op the change operation
+     * @return the bytes of the block
+     */
+    private static byte[] encode(IChangeOperation op) {
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>(1);
+        ops.add(op);
+        return Operation2Binary.encodeOperations(ops, false);
+    }
+    
+    /**
+     * Removes change operations from this journal after they were stored into the history files.
+     * @param ops the collection of the stored change operations
+     */
+    void release(List<IChangeOperation> ops) {
+        synchronized (ioLock) {
+            synchronized (this) {
+                boolean released = false;
+                for (IChangeOperation op : ops) {
+                    if (unstoredOperations.remove(op) != null) {
+                        released = true;
+                    }
+                }
+                if (!released) {
+                    return;
+                }
+            }
+            checkpoint();
+        }
+    }
+    
+    /**
+     * Writes appended change operations into the journal file and forces them to the disk.
+     */
+    void sync() {
+        synchronized (ioLock) {
+            byte[] bytes;
+            synchronized (this) {
+                if (channel == null || buffer.size() == 0) {
+                    return;
+                }
+                bytes = buffer.toByteArray();
+                buffer.reset();
+            }
+            
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(bytes);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                channel.force(false);
+                syncCount.incrementAndGet();
+            } catch (IOException e) {
+                CTConsole.println("Failed to write the journal: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Rewrites the journal file so that it contains only the change operations that have not been stored.
+     * The change operations are written with the blocks encoded when they were appended.
+     * The rewritten file replaces the old one atomically, or the old one is truncated if no operation remains.
+     */
+    private void checkpoint() {
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        synchronized (this) {
+            for (IChangeOperation op : journaledOperations) {
+                byte[] block = unstoredOperations.get(op);
+                if (block != null) {
+                    ops.add(op);
+                    bytes.write(block, 0, block.length);
+                }
+            }
+            journaledOperations = ops;
+            buffer.reset();
+            empty = ops.size() == 0;
+        }
+        
+        try {
+            if (ops.size() == 0) {
+                if (channel == null) {
+                    channel = FileChannel.open(file.toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                }
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(true);
+                return;
+            }
+            
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.wrap(Operation2Binary.encodeSegmentHeader());
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                buf = ByteBuffer.wrap(bytes.toByteArray());
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                out.force(true);
+            }
+            if (channel != null) {
+                channel.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        
+        } catch (IOException e) {
+            CTConsole.println("Failed to rewrite the journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Returns the number of the change operations in this journal that have not been stored.
+     * @return the number of the change operations
+     */
+    synchronized int getUnstoredOperationCount() {
+        return unstoredOperations.size();
+    }
+    
+    /**
+     * Returns the number of the forces of the journal file.
+     * @return the number of the forces
+     */
+    long getSyncCount() {
+        return syncCount.get();
+    }
+}
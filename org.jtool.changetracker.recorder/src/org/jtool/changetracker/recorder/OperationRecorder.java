@@ -36,6 +36,7 @@ import org.eclipse.ui.IEditorReference;
 import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PlatformUI;
+import org.eclipse.swt.widgets.Display;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
@@ -67,6 +68,21 @@ public class OperationRecorder {
      */
     private Map<String, List<IChangeOperation>> operationMap = new HashMap<String, List<IChangeOperation>>();
     
+    /**
+     * The journal that keeps recorded change operations until they are stored into the repository.
+     */
+    private OperationJournal journal = new OperationJournal();
+    
+    /**
+     * The coalescer that coalesces bursts of typing operations before they are stored into the repository.
+     */
+    private TypingCoalescer coalescer = new TypingCoalescer();
+    
+    /**
+     * The queue that passes recorded change operations to the writer thread storing them into the repository.
+     */
+    private OperationStoreQueue storeQueue = new OperationStoreQueue(journal);
+    
     /**
      * A flag that indicates if recorded change operations are displayed on the console.
      */
@@ -100,11 +116,15 @@ public class OperationRecorder {
     void initialize() {
         operationMap.clear();
         displayOperations = OperationRecorderPreferencePage.displayOperations();
+        coalescer.setEnabled(OperationRecorderPreferencePage.coalesceTyping());
+        coalescer.setIdleWindow(OperationRecorderPreferencePage.getCoalesceIdleWindow());
         String location = OperationRecorderPreferencePage.getLocation();
         if (location == null || location.length() == 0) {
             OperationRecorderPreferencePage.setLocation(CTPreferencePage.getDefaultLoaction());
         }
         setRepository(OperationRecorderPreferencePage.getLocation());
+        storeQueue.start();
+        openJournal();
     }
     
     /**
@@ -113,7 +133,29 @@ public class OperationRecorder {
     void terminate() {
         storeAllChangeOerations();
         macroReceiver.stop();
+        storeQueue.stop();
+        journal.close();
         operationMap.clear();
+        
+        if (coalescer.getInputCount() > 0) {
+            CTConsole.println("Coalesced " + coalescer.getInputCount() + " change operations into " +
+                    coalescer.getOutputCount() + " (" + Math.round(coalescer.getReductionRatio() * 100) + "% reduction)");
+        }
+        if (storeQueue.getFlushCount() > 0) {
+            CTConsole.println(storeQueue.toString());
+        }
+    }
+    
+    /**
+     * Opens the journal in the repository and stores the change operations recovered from it.
+     */
+    private void openJournal() {
+        if (onlineRepository == null) {
+            return;
+        }
+        
+        List<IChangeOperation> ops = journal.open(onlineRepository.getLocation());
+        storeChangeOperations(onlineRepository, ops);
     }
     
     /**
@@ -144,12 +186,14 @@ public class OperationRecorder {
         }
         storeAllChangeOerations();
         closeAllEditors();
+        storeQueue.flush();
         
         RepositoryManager.getInstance().removeOnlineRepository(onlineRepository);
         onlineRepository.clear();
         onlineRepository = new Repository(location);
         onlineRepository.collectFromHistoryFiles();
         RepositoryManager.getInstance().addOnlineRepository(onlineRepository);
+        openJournal();
     }
     
     /**
@@ -438,6 +482,7 @@ public class OperationRecorder {
             operationMap.put(key, ops);
         }
         ops.add(op);
+        journal.append(op);
         print(op);
         if (op.isFile()) {
             FileOperation fop = (FileOperation)op;
@@ -445,7 +490,7 @@ public class OperationRecorder {
                 storeChangeOerations(key);
             }
         }
-        
+    
     }
     
     /**
@@ -453,9 +498,10 @@ public class OperationRecorder {
      * @param key the key that specifies a file related to the change operations to be stored
      */
     private void storeChangeOerations(String key) {
-        List<IChangeOperation> ops = operationMap.get(key);
-        onlineRepository.storeChangeOperations(ops);
-        ops.clear();
+        List<IChangeOperation> ops = operationMap.remove(key);
+        if (ops != null) {
+            storeChangeOperations(onlineRepository, ops);
+        }
     }
     
     /**
@@ -463,9 +509,65 @@ public class OperationRecorder {
      */
     private void storeAllChangeOerations() {
         for (List<IChangeOperation> ops : operationMap.values()) {
-            onlineRepository.storeChangeOperations(ops);
-            ops.clear();
+            storeChangeOperations(onlineRepository, ops);
         }
+        operationMap.clear();
+    }
+    
+    /**
+     * Stores recorded change operations into a repository.
+     * The change operations are added to the repository in the UI thread, which is the only thread that accesses
+     * the repository, and the writer thread writes the added ones into a history file.
+     * @param repo the repository
+     * @param ops the collection of the recorded change operations
+     */
+    private void storeChangeOperations(final Repository repo, final List<IChangeOperation> ops) {
+        if (repo == null || ops.size() == 0) {
+            return;
+        }
+        
+        Display display = PlatformUI.isWorkbenchRunning() ? PlatformUI.getWorkbench().getDisplay() : null;
+        if (display == null || display.isDisposed() || Display.getCurrent() == display) {
+            addChangeOperations(repo, ops);
+            return;
+        }
+        display.asyncExec(new Runnable() {
+            
+            /**
+             * Adds the recorded change operations to the repository in the UI thread.
+             */
+            @Override
+            public void run() {
+                addChangeOperations(repo, ops);
+            }
+        });
+    }
+    
+    /**
+     * Adds recorded change operations to a repository after coalescing typing operations,
+     * and passes the added ones to the writer thread.
+     * @param repo the repository
+     * @param ops the collection of the recorded change operations
+     */
+    private void addChangeOperations(Repository repo, List<IChangeOperation> ops) {
+        List<IChangeOperation> addedOps = repo.addChangeOperations(new ArrayList<IChangeOperation>(coalescer.coalesce(ops)));
+        storeQueue.put(repo, addedOps, ops);
+    }
+    
+    /**
+     * Sets if bursts of typing operations will be coalesced.
+     * @param bool <code>true</code> if the coalescing is required, otherwise <code>false</code>
+     */
+    void coalesceTyping(boolean bool) {
+        coalescer.setEnabled(bool);
+    }
+    
+    /**
+     * Sets the maximum interval between keystrokes that will be coalesced.
+     * @param window the interval in milliseconds
+     */
+    void setCoalesceIdleWindow(int window) {
+        coalescer.setIdleWindow(window);
     }
     
     /**
@@ -27,5 +27,7 @@ public class OperationRecorderPreferenceInitializer extends AbstractPreferenceIn
         store.setDefault(OperationRecorderPreferencePage.REPOSITORY_LOCATION_FOR_RECORDING, location);
         store.setDefault(OperationRecorderPreferencePage.DISPLAY_OPERATIONS, false);
         store.setDefault(OperationRecorderPreferencePage.START_WITHOUT_PROMPT, false);
+        store.setDefault(OperationRecorderPreferencePage.COALESCE_TYPING, false);
+        store.setDefault(OperationRecorderPreferencePage.COALESCE_IDLE_WINDOW, 1000);
     }
 }
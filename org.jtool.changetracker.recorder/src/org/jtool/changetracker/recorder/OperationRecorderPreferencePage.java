@@ -10,6 +10,7 @@ import org.jtool.changetracker.recorder.Activator;
 import org.jtool.changetracker.core.CTDirectoryFieldEditor;
 import org.jtool.changetracker.core.CTPreferencePage;
 import org.eclipse.jface.preference.BooleanFieldEditor;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.ui.IWorkbenchPreferencePage;
@@ -37,6 +38,18 @@ public class OperationRecorderPreferencePage extends FieldEditorPreferencePage i
      */
     static final String START_WITHOUT_PROMPT = "start.recording.without.prompt";
     
+    /**
+     * Coalesces bursts of typing operations at adjacent offsets into single document operations.
+     * The replayer does not expand the coalesced keystrokes, so a burst is replayed as one change operation.
+     * This is off by default.
+     */
+    static final String COALESCE_TYPING = "recording.coalesce.typing";
+    
+    /**
+     * The maximum interval (milliseconds) between keystrokes that are coalesced.
+     */
+    static final String COALESCE_IDLE_WINDOW = "recording.coalesce.idle.window";
+    
     /**
      * Creates an object for a preference page.
      */
@@ -87,6 +100,34 @@ public class OperationRecorderPreferencePage extends FieldEditorPreferencePage i
                 OperationRecorder.getInstance().displayOperations(getBooleanValue());
             }
         });
+        
+        addField(new BooleanFieldEditor(COALESCE_TYPING,
+                "Coalesces bursts of typing into single change operations (replayed as single operations)", getFieldEditorParent()) {
+            
+            /**
+             * Stores the preference value from this field editor into the preference store.
+             */
+            @Override
+            protected void doStore() {
+                super.doStore();
+                OperationRecorder.getInstance().coalesceTyping(getBooleanValue());
+            }
+        });
+        
+        IntegerFieldEditor idleWindowEditor = new IntegerFieldEditor(COALESCE_IDLE_WINDOW,
+                "Pause of typing that ends a burst (milliseconds): ", getFieldEditorParent()) {
+            
+            /**
+             * Stores the preference value from this field editor into the preference store.
+             */
+            @Override
+            protected void doStore() {
+                super.doStore();
+                OperationRecorder.getInstance().setCoalesceIdleWindow(getIntValue());
+            }
+        };
+        idleWindowEditor.setValidRange(0, Integer.MAX_VALUE);
+        addField(idleWindowEditor);
     }
     
     /**
@@ -140,4 +181,22 @@ public class OperationRecorderPreferencePage extends FieldEditorPreferencePage i
         IPreferenceStore store = Activator.getPlugin().getPreferenceStore();
         return store.getBoolean(DISPLAY_OPERATIONS);
     }
+    
+    /**
+     * Tests if bursts of typing operations will be coalesced.
+     * @return <code>true</code> if the coalescing is required, otherwise <code>false</code>
+     */
+    public static boolean coalesceTyping() {
+        IPreferenceStore store = Activator.getPlugin().getPreferenceStore();
+        return store.getBoolean(COALESCE_TYPING);
+    }
+    
+    /**
+     * Returns the maximum interval between keystrokes that are coalesced.
+     * @return the interval in milliseconds
+     */
+    public static int getCoalesceIdleWindow() {
+        IPreferenceStore store = Activator.getPlugin().getPreferenceStore();
+        return store.getInt(COALESCE_IDLE_WINDOW);
+    }
 }
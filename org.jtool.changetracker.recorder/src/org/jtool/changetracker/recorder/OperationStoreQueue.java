@@ -0,0 +1,420 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.recorder;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.ChangeOperation;
+import org.jtool.changetracker.repository.Repository;
+import org.jtool.changetracker.core.CTConsole;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes change operations that were added to repositories into their history files on a dedicated writer thread.
+ * Batches of change operations are put into a bounded queue, and the writer thread commits the queued batches
+ * together when the number of the queued operations or the waiting time of the oldest batch exceeds its threshold.
+ * A thread that puts a batch into the full queue waits until the writer thread takes any batch.
+ * The writer thread only writes history files, and the recorded change operations are removed from the journal
+ * after they were written.
+ * @author Katsuhisa Maruyama
+ */
+class OperationStoreQueue {
+    
+    /**
+     * The maximum number of the batches in the queue.
+     */
+    private static final int CAPACITY = 64;
+    
+    /**
+     * The number of the queued operations that are committed without waiting.
+     */
+    private static final int COMMIT_SIZE = 1000;
+    
+    /**
+     * The maximum time in nanoseconds for which a batch waits to be committed together with later batches.
+     */
+    private static final long COMMIT_LATENCY = TimeUnit.MILLISECONDS.toNanos(500);
+    
+    /**
+     * The queue of the batches to be committed.
+     */
+    private Queue<Batch> queue = new ConcurrentLinkedQueue<Batch>();
+    
+    /**
+     * The permits for putting batches into the queue, which bound the number of the batches.
+     */
+    private Semaphore slots = new Semaphore(CAPACITY);
+    
+    /**
+     * The number of the change operations in the queue.
+     */
+    private AtomicInteger queuedOperationCount = new AtomicInteger();
+    
+    /**
+     * The number of the batches that have been put into the queue.
+     */
+    private AtomicLong enqueuedCount = new AtomicLong();
+    
+    /**
+     * The number of the batches that have been committed.
+     */
+    private AtomicLong committedCount = new AtomicLong();
+    
+    /**
+     * The number of the batches that needed to wait for the space of the queue.
+     */
+    private AtomicLong backpressureCount = new AtomicLong();
+    
+    /**
+     * The number of the commits.
+     */
+    private AtomicLong flushCount = new AtomicLong();
+    
+    /**
+     * The total time from putting the oldest batch of each commit until the commit was finished.
+     */
+    private AtomicLong flushLatency = new AtomicLong();
+    
+    /**
+     * The maximum time from putting the oldest batch of a commit until the commit was finished.
+     */
+    private AtomicLong maxFlushLatency = new AtomicLong();
+    
+    /**
+     * The lock on which threads wait for their batches to be committed.
+     */
+    private Object commitLock = new Object();
+    
+    /**
+     * The lock that serializes the stores of change operations into history files.
+     */
+    private Object storeLock = new Object();
+    
+    /**
+     * The number of the batches that a thread waits to be committed.
+     */
+    private volatile long requestedCount = 0;
+    
+    /**
+     * The flag that indicates if the writer thread accepts batches.
+     */
+    private volatile boolean running = false;
+    
+    /**
+     * The writer thread.
+     */
+    private Thread writer;
+    
+    /**
+     * The journal that keeps the change operations until they are stored.
+     */
+    private OperationJournal journal;
+    
+    /**
+     * Creates a queue that has not started its writer thread.
+     * @param journal the journal that keeps the change operations until they are stored
+     */
+    OperationStoreQueue(OperationJournal journal) {
+        this.journal = journal;
+    }
+    
+    /**
+     * Starts the writer thread.
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        
+        running = true;
+        writer = new Thread("ChangeTracker operation writer") {
+            
+            /**
+             * Commits queued batches until this queue is stopped.
+             */
+            @Override
+            public void run() {
+                write();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * Stops the writer thread after all the queued batches are committed.
+     */
+    synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        
+        running = false;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        writer = null;
+        commit();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Puts change operations into this queue. They are directly written if the writer thread is not running.
+     * A batch put while the writer thread is being stopped is committed by the putting thread.
+     * @param repo the repository that stores the change operations
+     * @param ops the collection of the change operations that were added to the repository, which must not be changed
+     * after this call
+     * @param recorded the collection of the recorded change operations from which the added ones were made
+     */
+    void put(Repository repo, List<IChangeOperation> ops, List<IChangeOperation> recorded) {
+        if (repo == null || recorded.size() == 0) {
+            return;
+        }
+        if (!running) {
+            synchronized (storeLock) {
+                store(repo, ops, recorded);
+            }
+            return;
+        }
+        
+        if (!slots.tryAcquire()) {
+            backpressureCount.incrementAndGet();
+            LockSupport.unpark(writer);
+            slots.acquireUninterruptibly();
+        }
+        queuedOperationCount.addAndGet(ops.size());
+        enqueuedCount.incrementAndGet();
+        queue.offer(new Batch(repo, ops, recorded));
+        LockSupport.unpark(writer);
+        if (!running) {
+            commit();
+        }
+    }
+    
+    /**
+     * Waits until all the batches that have been put into this queue are committed.
+     */
+    synchronized void flush() {
+        if (!running) {
+            commit();
+            return;
+        }
+        
+        long target = enqueuedCount.get();
+        synchronized (commitLock) {
+            requestedCount = Math.max(requestedCount, target);
+            LockSupport.unpark(writer);
+            boolean interrupted = false;
+            while (committedCount.get() < target && writer.isAlive()) {
+                try {
+                    commitLock.wait(COMMIT_LATENCY / 1000000L);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Commits batches on the writer thread until this queue is stopped.
+     */
+    private void write() {
+        while (running || !queue.isEmpty()) {
+            Batch head = queue.peek();
+            if (head == null) {
+                LockSupport.parkNanos(this, COMMIT_LATENCY);
+                continue;
+            }
+            
+            long wait = COMMIT_LATENCY - (System.nanoTime() - head.time);
+            if (running && wait > 0 && queuedOperationCount.get() < COMMIT_SIZE &&
+                    requestedCount <= committedCount.get() && !slots.hasQueuedThreads()) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            commit();
+        }
+    }
+    
+    /**
+     * Commits all the batches in the queue. The batches for the same repository are stored together.
+     * Commits by different threads are serialized, so that the history files are written in the order of the batches.
+     */
+    private void commit() {
+        synchronized (storeLock) {
+            commitBatches();
+        }
+    }
+    
+    /**
+     * Commits all the batches in the queue while holding the store lock.
+     */
+    private void commitBatches() {
+        Batch head = queue.poll();
+        while (head != null) {
+            Repository repo = head.repository;
+            long time = head.time;
+            List<IChangeOperation> ops = new ArrayList<IChangeOperation>(head.operations);
+            List<IChangeOperation> recorded = new ArrayList<IChangeOperation>(head.recorded);
+            int num = 1;
+            Batch batch = queue.poll();
+            while (batch != null && batch.repository == repo) {
+                ops.addAll(batch.operations);
+                recorded.addAll(batch.recorded);
+                num++;
+                batch = queue.poll();
+            }
+            
+            ChangeOperation.sort(ops);
+            store(repo, ops, recorded);
+            
+            long latency = System.nanoTime() - time;
+            flushCount.incrementAndGet();
+            flushLatency.addAndGet(latency);
+            long max = maxFlushLatency.get();
+            while (latency > max && !maxFlushLatency.compareAndSet(max, latency)) {
+                max = maxFlushLatency.get();
+            }
+            
+            queuedOperationCount.addAndGet(-ops.size());
+            slots.release(num);
+            committedCount.addAndGet(num);
+            synchronized (commitLock) {
+                commitLock.notifyAll();
+            }
+            head = batch;
+        }
+    }
+    
+    /**
+     * Writes change operations into a history file of a repository and removes the recorded ones from the journal.
+     * The recorded change operations are kept in the journal unless the history file was successfully written and synced.
+     * @param repo the repository
+     * @param ops the collection of the change operations to be written
+     * @param recorded the collection of the recorded change operations from which the written ones were made
+     */
+    private void store(Repository repo, List<IChangeOperation> ops, List<IChangeOperation> recorded) {
+        try {
+            if (!repo.storeChangeOperationsIntoHistoryFile(ops)) {
+                CTConsole.println("Kept " + recorded.size() + " change operations in the journal");
+                return;
+            }
+        } catch (RuntimeException e) {
+            CTConsole.println("Failed to store change operations: " + e.getMessage());
+            return;
+        }
+        journal.release(recorded);
+    }
+    
+    /**
+     * Returns the number of the batches that needed to wait for the space of this queue.
+     * @return the number of the batches
+     */
+    long getBackpressureCount() {
+        return backpressureCount.get();
+    }
+    
+    /**
+     * Returns the number of the commits.
+     * @return the number of the commits
+     */
+    long getFlushCount() {
+        return flushCount.get();
+    }
+    
+    /**
+     * Returns the average time from putting the oldest batch of a commit until the commit was finished.
+     * @return the time in milliseconds
+     */
+    long getAverageFlushLatency() {
+        long count = flushCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return flushLatency.get() / count / 1000000L;
+    }
+    
+    /**
+     * Returns the maximum time from putting the oldest batch of a commit until the commit was finished.
+     * @return the time in milliseconds
+     */
+    long getMaxFlushLatency() {
+        return maxFlushLatency.get() / 1000000L;
+    }
+    
+    /**
+     * Returns the string for printing the statistics of this queue.
+     * @return the string for printing
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("Operation store queue: batches=" + committedCount.get());
+        buf.append(" commits=" + getFlushCount());
+        buf.append(" average latency=" + getAverageFlushLatency() + "ms");
+        buf.append(" max latency=" + getMaxFlushLatency() + "ms");
+        buf.append(" waits for space=" + getBackpressureCount());
+        return buf.toString();
+    }
+    
+    /**
+     * Stores change operations to be committed into a repository.
+     */
+    private static class Batch {
+        
+        /**
+         * The repository that stores the change operations.
+         */
+        final Repository repository;
+        
+        /**
+         * The collection of the change operations to be written.
+         */
+        final List<IChangeOperation> operations;
+        
+        /**
+         * The collection of the recorded change operations from which the change operations to be written were made.
+         */
+        final List<IChangeOperation> recorded;
+        
+        /**
+         * The time in nanoseconds when the batch was put into the queue.
+         */
+        final long time;
+        
+        /**
+         * Creates a batch.
+         * @param repo the repository that stores the change operations
+         * @param ops the collection of the change operations to be written
+         * @param recorded the collection of the recorded change operations
+         */
+        Batch(Repository repo, List<IChangeOperation> ops, List<IChangeOperation> recorded) {
+            this.repository = repo;
+            this.operations = ops;
+            this.recorded = recorded;
+            this.time = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.recorder;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.repository.CTPath;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces bursts of typing operations into single document operations.
+ * Consecutive typing operations are coalesced if each of them inserts text just after the text inserted by the previous one,
+ * or deletes text just before the text deleted by the previous one, within the idle window.
+ * The time of each keystroke is kept in the coalesced document operation.
+ * Replaying is out of scope: the replayer shows a coalesced document operation as a single change operation.
+ * @author Katsuhisa Maruyama
+ */
+class TypingCoalescer {
+    
+    /**
+     * A flag that indicates if typing operations are coalesced.
+     */
+    private volatile boolean enabled = false;
+    
+    /**
+     * The maximum interval in milliseconds between keystrokes that are coalesced.
+     */
+    private volatile int idleWindow = 1000;
+    
+    /**
+     * The number of the change operations that were given to this coalescer.
+     */
+    private AtomicLong inputCount = new AtomicLong();
+    
+    /**
+     * The number of the change operations that this coalescer returned.
+     */
+    private AtomicLong outputCount = new AtomicLong();
+    
+    /**
+     * Creates a coalescer that is disabled.
+     */
+    TypingCoalescer() {
+    }
+    
+    /**
+     * Sets if typing operations are coalesced.
+     * @param bool <code>true</code> if typing operations are coalesced, otherwise <code>false</code>
+     */
+    void setEnabled(boolean bool) {
+        enabled = bool;
+    }
+    
+    /**
+     * Tests if typing operations are coalesced.
+     * @return <code>true</code> if typing operations are coalesced, otherwise <code>false</code>
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Sets the maximum interval between keystrokes that are coalesced.
+     * @param window the interval in milliseconds
+     */
+    void setIdleWindow(int window) {
+        idleWindow = Math.max(0, window);
+    }
+    
+    /**
+     * Coalesces typing operations in the change operations performed on a file.
+     * The given change operations are not changed.
+     * @param ops the change operations in the order of their recording
+     * @return the collection of the coalesced change operations, or the given one if the coalescing is disabled
+     */
+    List<IChangeOperation> coalesce(List<IChangeOperation> ops) {
+        if (!enabled) {
+            return ops;
+        }
+        
+        long window = idleWindow;
+        List<IChangeOperation> retops = new ArrayList<IChangeOperation>(ops.size());
+        Burst burst = null;
+        for (IChangeOperation op : ops) {
+            if (burst != null && burst.extend(op, window)) {
+                continue;
+            }
+            if (burst != null) {
+                retops.add(burst.getOperation());
+            }
+            burst = Burst.start(op);
+            if (burst == null) {
+                retops.add(op);
+            }
+        }
+        if (burst != null) {
+            retops.add(burst.getOperation());
+        }
+        
+        inputCount.addAndGet(ops.size());
+        outputCount.addAndGet(retops.size());
+        return retops;
+    }
+    
+    /**
+     * Returns the number of the change operations that were given to this coalescer.
+     * @return the number of the change operations
+     */
+    long getInputCount() {
+        return inputCount.get();
+    }
+    
+    /**
+     * Returns the number of the change operations that this coalescer returned.
+     * @return the number of the change operations
+     */
+    long getOutputCount() {
+        return outputCount.get();
+    }
+    
+    /**
+     * Returns the ratio of the change operations that were eliminated by the coalescing.
+     * @return the ratio between 0 and 1
+     */
+    double getReductionRatio() {
+        long input = inputCount.get();
+        if (input == 0) {
+            return 0;
+        }
+        return (double)(input - outputCount.get()) / input;
+    }
+    
+    /**
+     * Stores a burst of typing operations being coalesced.
+     */
+    private static class Burst {
+        
+        /**
+         * The first typing operation of the burst.
+         */
+        private DocumentOperation first;
+        
+        /**
+         * A flag that indicates if the burst inserts text, otherwise it deletes text.
+         */
+        private boolean insertion;
+        
+        /**
+         * The offset of the text inserted or deleted by the burst.
+         */
+        private int start;
+        
+        /**
+         * The text inserted or deleted by the burst.
+         */
+        private StringBuilder text = new StringBuilder();
+        
+        /**
+         * The time of the first keystroke in milliseconds.
+         */
+        private long firstTime;
+        
+        /**
+         * The time of the last keystroke in milliseconds.
+         */
+        private long lastTime;
+        
+        /**
+         * The pairs of the number of the typed characters and the time after the first keystroke.
+         */
+        private int[] keystrokes = new int[8];
+        
+        /**
+         * The number of the keystrokes.
+         */
+        private int count = 0;
+        
+        /**
+         * Starts a burst with a change operation.
+         * @param op the change operation
+         * @return the started burst, or <code>null</code> if the change operation cannot start a burst
+         */
+        static Burst start(IChangeOperation op) {
+            DocumentOperation dop = getTyping(op);
+            if (dop == null) {
+                return null;
+            }
+            
+            Burst burst = new Burst();
+            burst.first = dop;
+            burst.insertion = dop.getDeletedText().length() == 0;
+            burst.start = dop.getStart();
+            burst.text.append(burst.insertion ? dop.getInsertedText() : dop.getDeletedText());
+            burst.firstTime = dop.getTime().toInstant().toEpochMilli();
+            burst.lastTime = burst.firstTime;
+            burst.addKeystroke(burst.text.length(), burst.firstTime);
+            return burst;
+        }
+        
+        /**
+         * Extends this burst with a change operation.
+         * @param op the change operation
+         * @param window the maximum interval in milliseconds between keystrokes
+         * @return <code>true</code> if the change operation was coalesced into this burst, otherwise <code>false</code>
+         */
+        boolean extend(IChangeOperation op, long window) {
+            DocumentOperation dop = getTyping(op);
+            if (dop == null || !dop.getPath().equals(first.getPath()) || !Objects.equals(dop.getBranch(), first.getBranch()) ||
+                    !dop.getAuthor().equals(first.getAuthor())) {
+                return false;
+            }
+            
+            long time = dop.getTime().toInstant().toEpochMilli();
+            if (time < lastTime || time - lastTime > window || time - firstTime > Integer.MAX_VALUE) {
+                return false;
+            }
+            
+            if (insertion) {
+                String itext = dop.getInsertedText();
+                if (dop.getDeletedText().length() != 0 || dop.getStart() != start + text.length()) {
+                    return false;
+                }
+                text.append(itext);
+                addKeystroke(itext.length(), time);
+            } else {
+                String dtext = dop.getDeletedText();
+                if (dop.getInsertedText().length() != 0 || dop.getStart() + dtext.length() != start) {
+                    return false;
+                }
+                text.insert(0, dtext);
+                start = dop.getStart();
+                addKeystroke(dtext.length(), time);
+            }
+            lastTime = time;
+            return true;
+        }
+        
+        /**
+         * Records a keystroke of this burst.
+         * @param length the number of the typed characters
+         * @param time the time of the keystroke in milliseconds
+         */
+        private void addKeystroke(int length, long time) {
+            if (count * 2 + 2 > keystrokes.length) {
+                keystrokes = Arrays.copyOf(keystrokes, keystrokes.length * 2);
+            }
+            keystrokes[count * 2] = length;
+            keystrokes[count * 2 + 1] = (int)(time - firstTime);
+            count++;
+        }
+        
+        /**
+         * Returns the document operation that represents this burst.
+         * @return the first typing operation if the burst consists of it alone, otherwise a new coalesced document operation
+         */
+        DocumentOperation getOperation() {
+            if (count == 1) {
+                return first;
+            }
+            
+            CTPath pathinfo = new CTPath(first.getProjectName(), first.getPackageName(), first.getFileName(),
+                    first.getPath(), first.getBranch());
+            DocumentOperation op = new DocumentOperation(first.getTime(), pathinfo, first.getAction(), first.getAuthor());
+            op.setDescription(first.getDescription());
+            op.setStart(start);
+            if (insertion) {
+                op.setInsertedText(text.toString());
+            } else {
+                op.setDeletedText(text.toString());
+            }
+            op.setKeystrokes(Arrays.copyOf(keystrokes, count * 2));
+            return op;
+        }
+        
+        /**
+         * Returns a change operation as a typing operation that can be coalesced.
+         * @param op the change operation
+         * @return the typing operation that only inserts or deletes text, or <code>null</code> if the change operation is not
+         */
+        private static DocumentOperation getTyping(IChangeOperation op) {
+            if (!op.isDocument() || op.getCompoundTime() != null) {
+                return null;
+            }
+            
+            DocumentOperation dop = (DocumentOperation)op;
+            if (!dop.isTyping() || dop.isCoalesced()) {
+                return null;
+            }
+            if (dop.isInsertion() || dop.isDeletion()) {
+                return dop;
+            }
+            return null;
+        }
+    }
+}
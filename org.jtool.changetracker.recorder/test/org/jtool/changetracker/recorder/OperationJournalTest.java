@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.recorder;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.repository.CTPath;
+import java.util.List;
+import java.util.ArrayList;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+
+/**
+ * Checks that the journal recovers the change operations that were not stored after a crash that tore its tail,
+ * and that the recovered change operations keep the texts they had when they were appended.
+ * Usage: <code>OperationJournalTest</code>
+ * @author Katsuhisa Maruyama
+ */
+public class OperationJournalTest {
+    
+    /**
+     * The time of the first change operation.
+     */
+    private static final ZonedDateTime TIME = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+    
+    /**
+     * Runs the test.
+     * @param args not used
+     * @throws Exception if the test fails to read or write the files
+     */
+    public static void main(String[] args) throws Exception {
+        String dir = Files.createTempDirectory("changetracker").toString();
+        File file = new File(dir, OperationJournal.JOURNAL_FILE_NAME);
+        
+        OperationJournal journal = new OperationJournal();
+        check(journal.open(dir).size() == 0, "Operations recovered from an empty journal");
+        
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+        for (int i = 0; i < 1000; i++) {
+            IChangeOperation op = createOperation(i);
+            ops.add(op);
+            journal.append(op);
+        }
+        ((DocumentOperation)ops.get(700)).setInsertedText("mutated");
+        journal.release(ops.subList(0, 600));
+        check(journal.getUnstoredOperationCount() == 400, "Wrong number of unstored operations after a release");
+        for (int i = 1000; i < 1010; i++) {
+            IChangeOperation op = createOperation(i);
+            ops.add(op);
+            journal.append(op);
+        }
+        journal.sync();
+        
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[] { 50, 3, 1 });
+        }
+        
+        OperationJournal recovered = new OperationJournal();
+        List<IChangeOperation> rops = recovered.open(dir);
+        check(rops.size() == 410, "Wrong number of recovered operations: " + rops.size());
+        check(getText(rops.get(0)).equals("x600"), "Wrong first recovered operation");
+        check(getText(rops.get(100)).equals("x700"), "Text changed after the append was persisted");
+        check(getText(rops.get(rops.size() - 1)).equals("x1009"), "Wrong last recovered operation");
+        System.out.println("Recovered " + rops.size() + " operations, syncs=" + journal.getSyncCount());
+        
+        recovered.release(rops);
+        recovered.append(createOperation(5000));
+        recovered.close();
+        
+        OperationJournal reopened = new OperationJournal();
+        List<IChangeOperation> rops2 = reopened.open(dir);
+        check(rops2.size() == 1 && getText(rops2.get(0)).equals("x5000"), "Wrong operations recovered after a release");
+        reopened.close();
+        System.out.println("OK");
+    }
+    
+    /**
+     * Creates a typing operation.
+     * @param index the index number of the change operation
+     * @return the created change operation
+     */
+    private static IChangeOperation createOperation(int index) {
+        CTPath pathinfo = new CTPath("P", "p", "F.java", "/P/p/F.java", "master");
+        DocumentOperation op = new DocumentOperation(TIME.plusNanos(index * 1000L), pathinfo, "Typing");
+        op.setStart(index);
+        op.setInsertedText("x" + index);
+        return op;
+    }
+    
+    /**
+     * Returns the inserted text of a document operation.
+     * @param op the document operation
+     * @return the inserted text
+     */
+    private static String getText(IChangeOperation op) {
+        return ((DocumentOperation)op).getInsertedText();
+    }
+    
+    /**
+     * Checks a condition of the test.
+     * @param condition the condition
+     * @param msg the message when the condition does not hold
+     */
+    private static void check(boolean condition, String msg) {
+        if (!condition) {
+            throw new IllegalStateException(msg);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.recorder;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.repository.CTPath;
+import org.jtool.changetracker.repository.Repository;
+import java.util.List;
+import java.util.ArrayList;
+import java.time.ZonedDateTime;
+
+/**
+ * Checks that no batch of change operations is lost when the store queue is stopped while threads put batches into it.
+ * A repository reads the preferences of the core plug-in when it is created, so run this where the plug-in is active.
+ * Usage: <code>OperationStoreQueueTest [rounds]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class OperationStoreQueueTest {
+    
+    /**
+     * The number of the threads that put batches.
+     */
+    private static final int THREADS = 4;
+    
+    /**
+     * The number of the batches that each thread puts.
+     */
+    private static final int BATCHES = 500;
+    
+    /**
+     * Runs the test.
+     * @param args the number of the rounds
+     * @throws Exception if the test is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        
+        int lost = 0;
+        OperationStoreQueue queue = null;
+        for (int round = 0; round < rounds; round++) {
+            final CountingRepository repo = new CountingRepository();
+            final OperationStoreQueue squeue = new OperationStoreQueue(new OperationJournal());
+            squeue.start();
+            
+            Thread[] threads = new Thread[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                threads[t] = new Thread() {
+                    
+                    /**
+                     * Puts batches into the queue.
+                     */
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < BATCHES; i++) {
+                            List<IChangeOperation> ops = createOperations();
+                            squeue.put(repo, ops, ops);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            Thread.sleep(round % 5);
+            squeue.stop();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            
+            if (repo.getStoredOperationCount() != THREADS * BATCHES) {
+                lost++;
+            }
+            queue = squeue;
+        }
+        System.out.println(queue);
+        if (lost > 0) {
+            throw new IllegalStateException("Batches lost in " + lost + " rounds");
+        }
+        System.out.println("OK rounds=" + rounds);
+    }
+    
+    /**
+     * Creates a batch of a typing operation.
+     * @return the collection of the change operations
+     */
+    private static List<IChangeOperation> createOperations() {
+        CTPath pathinfo = new CTPath("P", "p", "F.java", "/P/p/F.java", "master");
+        DocumentOperation op = new DocumentOperation(ZonedDateTime.now(), pathinfo, "Typing");
+        op.setInsertedText("a");
+        List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+        ops.add(op);
+        return ops;
+    }
+    
+    /**
+     * A repository that counts the stored change operations instead of writing them into files.
+     */
+    private static class CountingRepository extends Repository {
+        
+        /**
+         * The number of the stored change operations.
+         */
+        private int count = 0;
+        
+        /**
+         * Creates a repository that does not have its location.
+         */
+        CountingRepository() {
+            super(null);
+        }
+        
+        /**
+         * Counts change operations instead of storing them.
+         * @param ops the collection of the change operations
+         * @return always <code>true</code>
+         */
+        @Override
+        public synchronized boolean storeChangeOperationsIntoHistoryFile(List<IChangeOperation> ops) {
+            count = count + ops.size();
+            return true;
+        }
+        
+        /**
+         * Returns the number of the stored change operations.
+         * @return the number of the change operations
+         */
+        synchronized int getStoredOperationCount() {
+            return count;
+        }
+    }
+}
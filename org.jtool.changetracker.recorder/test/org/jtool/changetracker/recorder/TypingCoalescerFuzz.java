@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2018
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.changetracker.recorder;
+
+import org.jtool.changetracker.operation.IChangeOperation;
+import org.jtool.changetracker.operation.ICodeOperation;
+import org.jtool.changetracker.operation.DocumentOperation;
+import org.jtool.changetracker.repository.CTPath;
+import org.jtool.changetracker.xml.Binary2Operation;
+import org.jtool.changetracker.xml.Operation2Binary;
+import org.jtool.changetracker.xml.Operation2Xml;
+import org.jtool.changetracker.xml.Xml2Operation;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+
+/**
+ * Checks that the keystrokes expanded from coalesced document operations reproduce the original typing operations,
+ * and that the keystrokes survive the round trips through segments and history files.
+ * Usage: <code>TypingCoalescerFuzz [seed] [trials]</code>
+ * @author Katsuhisa Maruyama
+ */
+public class TypingCoalescerFuzz {
+    
+    /**
+     * The number of typing operations in a trial.
+     */
+    private static final int OPERATIONS = 60;
+    
+    /**
+     * Runs the test.
+     * @param args the seed and the number of the trials
+     * @throws Exception if the test fails to read or write the files
+     */
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        
+        File dir = Files.createTempDirectory("changetracker").toFile();
+        Random random = new Random(seed);
+        CTPath pathinfo = new CTPath("P", "p", "F.java", "/P/p/F.java", "master");
+        ZonedDateTime time = ZonedDateTime.parse("2018-01-01T00:00:00Z");
+        long inputs = 0;
+        long outputs = 0;
+        for (int t = 0; t < trials; t++) {
+            List<IChangeOperation> ops = new ArrayList<IChangeOperation>();
+            StringBuilder code = new StringBuilder("hello world ");
+            for (int i = 0; i < OPERATIONS; i++) {
+                time = time.plusNanos((random.nextInt(10) == 0 ? 3000 : random.nextInt(400)) * 1000000L);
+                String action = random.nextInt(20) == 0 ? "PASTE" : ICodeOperation.Action.TYPING.toString();
+                DocumentOperation op = new DocumentOperation(time, pathinfo, action);
+                boolean deletion = random.nextInt(3) == 1;
+                int pos = code.length() == 0 ? 0 : random.nextInt(code.length());
+                if (!ops.isEmpty() && random.nextBoolean()) {
+                    DocumentOperation prev = (DocumentOperation)ops.get(ops.size() - 1);
+                    deletion = prev.getDeletedText().length() != 0;
+                    pos = deletion ? prev.getStart() : prev.getStart() + prev.getInsertedText().length();
+                }
+                
+                if (deletion && pos > 0) {
+                    int length = 1 + random.nextInt(Math.min(2, pos));
+                    op.setStart(pos - length);
+                    op.setDeletedText(code.substring(pos - length, pos));
+                    code.delete(pos - length, pos);
+                } else {
+                    String text = random.nextInt(5) == 0 ? "ab" : String.valueOf((char)('a' + random.nextInt(26)));
+                    op.setStart(pos);
+                    op.setInsertedText(text);
+                    code.insert(pos, text);
+                }
+                ops.add(op);
+            }
+            
+            TypingCoalescer coalescer = new TypingCoalescer();
+            coalescer.setEnabled(true);
+            coalescer.setIdleWindow(1000);
+            List<IChangeOperation> coalesced = coalescer.coalesce(ops);
+            inputs = inputs + coalescer.getInputCount();
+            outputs = outputs + coalescer.getOutputCount();
+            
+            List<String> expected = new ArrayList<String>();
+            for (IChangeOperation op : ops) {
+                expected.add(getSignature((DocumentOperation)op));
+            }
+            List<String> actual = new ArrayList<String>();
+            for (IChangeOperation op : coalesced) {
+                for (DocumentOperation kop : ((DocumentOperation)op).getKeystrokeOperations()) {
+                    actual.add(getSignature(kop));
+                }
+            }
+            if (!expected.equals(actual)) {
+                throw new IllegalStateException("Mismatch of the keystrokes at trial " + t + "\n" + expected + "\n" + actual);
+            }
+            
+            if (t % 50 == 0) {
+                File segment = new File(dir, "coalesced" + Binary2Operation.SEGMENT_FILE_EXTENTION);
+                Files.write(segment.toPath(), Operation2Binary.encodeOperations(coalesced, true));
+                check(coalesced, Binary2Operation.getOperations(segment.getPath()), "segment at trial " + t);
+                
+                File xml = new File(dir, "coalesced" + Xml2Operation.XML_FILE_EXTENTION);
+                Operation2Xml.storeOperations(coalesced, xml.getPath());
+                check(coalesced, Xml2Operation.getOperations(xml.getPath()), "history file at trial " + t);
+            }
+        }
+        System.out.println("OK trials=" + trials + " input=" + inputs + " output=" + outputs);
+    }
+    
+    /**
+     * Compares the keystrokes of document operations that were read with those of the original ones.
+     * @param expected the original document operations
+     * @param actual the document operations that were read
+     * @param msg the message that describes the file
+     */
+    private static void check(List<IChangeOperation> expected, List<IChangeOperation> actual, String msg) {
+        if (expected.size() != actual.size()) {
+            throw new IllegalStateException("Mismatch of the number of the operations: " + msg);
+        }
+        for (int idx = 0; idx < expected.size(); idx++) {
+            DocumentOperation op1 = (DocumentOperation)expected.get(idx);
+            DocumentOperation op2 = (DocumentOperation)actual.get(idx);
+            if (!Arrays.equals(op1.getKeystrokes(), op2.getKeystrokes()) || !getSignature(op1).equals(getSignature(op2))) {
+                throw new IllegalStateException("Mismatch of the operation at " + idx + ": " + msg);
+            }
+        }
+    }
+    
+    /**
+     * Obtains the string that represents a document operation.
+     * @param op the document operation
+     * @return the time in milliseconds, the offset, the inserted text, and the deleted text
+     */
+    private static String getSignature(DocumentOperation op) {
+        return op.getTime().toInstant().toEpochMilli() + ":" + op.getStart() + ":" + op.getInsertedText() + ":" + op.getDeletedText();
+    }
+}